@@ -19,6 +19,7 @@ import org.apache.fop.apps.FOUserAgent;
 import org.apache.fop.apps.Fop;
 import org.apache.fop.apps.FopFactory;
 import org.apache.fop.apps.MimeConstants;
+import org.xml.sax.ContentHandler;
 
 public class FopProcessor {
 	
@@ -58,9 +59,21 @@ public class FopProcessor {
 			Source xmlSource,
 			Transformer t
 	) throws FOPException, TransformerException {
+		this.process(fop.getDefaultHandler(), xmlSource, t);
+	}
+	
+	/**
+	 * Same as {@link #process(Fop, Source, Transformer)}, but sends the generated FO to the given handler, typically
+	 * the default handler of a Fop, possibly wrapped to observe the FO events.
+	 */
+	public void process(
+			ContentHandler foHandler,
+			Source xmlSource,
+			Transformer t
+	) throws FOPException, TransformerException {
 		
 		// Resulting SAX events (the generated FO) must be piped through to FOP
-		Result res = new SAXResult(fop.getDefaultHandler());
+		Result res = new SAXResult(foHandler);
 		
 		if(debugFo) {
 			File debugFile = new File(((debugPath != null)?debugPath:"")+".FopProcessor-debug.xml");
@@ -28,6 +28,9 @@ public class FopProvider {
 	private String fopUserConfigPath;
 	protected String outputMimeType = MimeConstants.MIME_PDF;
 	
+	// optimized PDF mode : fonts embedded once and subset, compressed streams, no tagged PDF
+	protected boolean optimized = false;
+	
 	// need to garantee that fopFactory is initialized only once;
 	private FopFactory fopFactory;
 
@@ -39,8 +42,13 @@ public class FopProvider {
 		super();
 		this.fopUserConfigPath = fopUserConfigPath;
 	}
+	
+	public FopProvider(String fopUserConfigPath, boolean optimized) {
+		this(fopUserConfigPath);
+		this.optimized = optimized;
+	}
 
-	public FopFactory getFopFactory() {
+	public synchronized FopFactory getFopFactory() {
 		if(fopFactory == null) {
 			fopFactory = this.createNewFopFactory();
 		}
@@ -88,10 +96,11 @@ public class FopProvider {
 			// s'il on ne donne pas de config, on en utilise une par defaut
 			try {
 				
-				// use default fop-config.xml
-				URL fopConfigUrl = this.getClass().getResource("fop-config.xml");
+				// use default fop-config.xml, or its optimized version
+				String fopConfigName = (this.optimized)?"fop-config-optimized.xml":"fop-config.xml";
+				URL fopConfigUrl = this.getClass().getResource(fopConfigName);
 				log.debug("Init FOP with base URI "+fopConfigUrl.toURI());
-				InputStream fopConfig = this.getClass().getResourceAsStream("fop-config.xml");
+				InputStream fopConfig = this.getClass().getResourceAsStream(fopConfigName);
 				
 				// Now use a builder with a custom resource resolver able to read from classpath
 				FopFactoryBuilder builder = new FopFactoryBuilder(new File(".").toURI(), new CustomPathResolver());
@@ -113,6 +122,11 @@ public class FopProvider {
 		
 		boolean isComplexScriptEnabled = foUserAgent.isComplexScriptFeaturesEnabled();
 		log.debug("FOUserAgent complex scripts enabled ? "+isComplexScriptEnabled);
+		
+		if(this.optimized) {
+			// the structure tree of a tagged PDF adds objects for each block and link of the document
+			foUserAgent.setAccessibility(false);
+		}
 
 		// Construct fop with desired output format
 		Fop fop = fopFactory.newFop(
@@ -158,6 +172,23 @@ public class FopProvider {
 		this.outputMimeType = outputMimeType;
 	}
 
+	public boolean isOptimized() {
+		return optimized;
+	}
+
+	/**
+	 * Sets the optimized PDF mode, in which each font file is embedded once and subset, all streams are compressed,
+	 * and tagged PDF is disabled. When no user config is given, the optimized mode uses <code>fop-config-optimized.xml</code>
+	 * instead of <code>fop-config.xml</code>.
+	 */
+	public synchronized void setOptimized(boolean optimized) {
+		if(optimized != this.optimized) {
+			// the factory depends on the configuration
+			this.fopFactory = null;
+		}
+		this.optimized = optimized;
+	}
+
 	public String getFopUserConfigPath() {
 		return fopUserConfigPath;
 	}
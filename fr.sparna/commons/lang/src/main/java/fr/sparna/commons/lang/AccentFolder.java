@@ -0,0 +1,154 @@
+package fr.sparna.commons.lang;
+
+import java.text.Normalizer;
+
+/**
+ * Removes diacritics from strings, with the same result as {@link StringUtil#withoutAccents(String)} (NFD decomposition
+ * followed by the removal of the combining marks U+0300 to U+036F), but without normalizing nor using a regular
+ * expression on each call :
+ * <ul>
+ *   <li>ASCII strings are returned as is, without any allocation;</li>
+ *   <li>characters of the Latin-1 Supplement and Latin Extended-A/B blocks are folded with a lookup table computed once;</li>
+ *   <li>folded characters are written in a per-thread buffer that is reused from one call to the other;</li>
+ *   <li>strings containing other non-ASCII characters (Greek, Cyrillic, Hangul...) fall back to the normalizer.</li>
+ * </ul>
+ * <p>{@link #sectionLetter(String)} gives the first letter of a label, folded and upper-cased, as used for the letter
+ * sections of the alphabetical displays and indexes, reading only the first character of the label.
+ * <p>Static methods can be used by multiple threads.
+ *
+ * @author Thomas Francart
+ */
+public final class AccentFolder {
+
+	// folding table covers U+0000 to U+024F
+	private static final int TABLE_SIZE = 0x250;
+	private static final char COMBINING_START = '\u0300';
+	private static final char COMBINING_END = '\u036F';
+
+	// folded form of each character of the table, as a single char; NO_SINGLE_CHAR if the folded form is not one char
+	private static final char[] FOLDED = new char[TABLE_SIZE];
+	// folded form of the characters that do not fold to a single char (none in the current Unicode version, but kept for safety)
+	private static final String[] FOLDED_STRINGS = new String[TABLE_SIZE];
+	private static final char NO_SINGLE_CHAR = '\uFFFF';
+
+	// section letter (upper-cased folded character) of each character of the table
+	private static final String[] SECTION_LETTERS = new String[TABLE_SIZE];
+
+	private static final int INITIAL_BUFFER_SIZE = 256;
+	// larger buffers are not kept between calls
+	private static final int MAX_KEPT_BUFFER_SIZE = 64 * 1024;
+	private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[INITIAL_BUFFER_SIZE]);
+
+	static {
+		for (int c = 0; c < TABLE_SIZE; c++) {
+			String folded = slowFold(String.valueOf((char)c));
+			if(folded.length() == 1) {
+				FOLDED[c] = folded.charAt(0);
+			} else {
+				FOLDED[c] = NO_SINGLE_CHAR;
+				FOLDED_STRINGS[c] = folded;
+			}
+			SECTION_LETTERS[c] = (folded.isEmpty())?"":folded.toUpperCase().substring(0, 1);
+		}
+	}
+
+	private AccentFolder() {
+	}
+
+	/**
+	 * Removes the diacritics of the given string.
+	 *
+	 * @return the string without diacritics; the same instance if it did not contain any
+	 */
+	public static String fold(String source) {
+		int length = source.length();
+
+		// ASCII fast path : nothing to fold
+		int i = 0;
+		while(i < length && source.charAt(i) < 0x80) {
+			i++;
+		}
+		if(i == length) {
+			return source;
+		}
+
+		// check that all remaining characters can be folded with the table
+		boolean changed = false;
+		for (int j = i; j < length; j++) {
+			char c = source.charAt(j);
+			if(c >= COMBINING_START && c <= COMBINING_END) {
+				changed = true;
+			} else if(c >= TABLE_SIZE) {
+				// not covered by the table, the normalizer handles it
+				return slowFold(source);
+			} else if(FOLDED[c] != c) {
+				changed = true;
+			}
+		}
+		if(!changed) {
+			return source;
+		}
+
+		char[] buffer = BUFFER.get();
+		int maxLength = length * 4;
+		if(buffer.length < maxLength) {
+			buffer = new char[Math.max(maxLength, buffer.length * 2)];
+			if(buffer.length <= MAX_KEPT_BUFFER_SIZE) {
+				BUFFER.set(buffer);
+			}
+		}
+		source.getChars(0, i, buffer, 0);
+		int out = i;
+		for (int j = i; j < length; j++) {
+			char c = source.charAt(j);
+			if(c >= COMBINING_START && c <= COMBINING_END) {
+				continue;
+			}
+			char f = FOLDED[c];
+			if(f != NO_SINGLE_CHAR) {
+				buffer[out++] = f;
+			} else {
+				String s = FOLDED_STRINGS[c];
+				s.getChars(0, s.length(), buffer, out);
+				out += s.length();
+			}
+		}
+		return new String(buffer, 0, out);
+	}
+
+	/**
+	 * Returns the first letter of the given label, without diacritics and upper-cased : same as
+	 * <code>StringUtil.withoutAccents(label).toUpperCase().substring(0, 1)</code>, but reading only the beginning of the label.
+	 *
+	 * @return the first letter, or an empty string if the label is empty once folded
+	 */
+	public static String sectionLetter(String label) {
+		int length = label.length();
+		for (int i = 0; i < length; i++) {
+			char c = label.charAt(i);
+			if(c >= COMBINING_START && c <= COMBINING_END) {
+				// combining marks are removed by the folding
+				continue;
+			}
+			if(c < TABLE_SIZE && FOLDED[c] != NO_SINGLE_CHAR) {
+				return SECTION_LETTERS[c];
+			}
+			// the decomposition of this character may depend on the following ones
+			break;
+		}
+		String folded = fold(label);
+		return (folded.isEmpty())?"":folded.toUpperCase().substring(0, 1);
+	}
+
+	/**
+	 * @return true if the given string does not contain any diacritic
+	 */
+	public static boolean isFolded(String source) {
+		return fold(source).equals(source);
+	}
+
+	private static String slowFold(String source) {
+		return Normalizer.normalize(source, Normalizer.Form.NFD).replaceAll("[\u0300-\u036F]", "");
+	}
+
+}
@@ -1,17 +1,15 @@
 package fr.sparna.commons.lang;
 
-import java.text.Normalizer;
-
 public class StringUtil {
 
 	/**
-	 * Remove diacritics from the input string
+	 * Remove diacritics from the input string. Delegates to {@link AccentFolder#fold(String)}.
 	 * 
 	 * @param source
 	 * @return
 	 */
 	public static String withoutAccents(String source) {
-		return Normalizer.normalize(source, Normalizer.Form.NFD).replaceAll("[\u0300-\u036F]", "");
+		return AccentFolder.fold(source);
 	}
 	
 }
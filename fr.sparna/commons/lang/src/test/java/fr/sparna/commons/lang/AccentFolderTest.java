@@ -0,0 +1,75 @@
+package fr.sparna.commons.lang;
+
+import java.text.Normalizer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AccentFolderTest {
+
+	private static final String[] LABELS = new String[] {
+			"",
+			"Thesaurus",
+			"Économie rurale",
+			"élevage",
+			"Ærø ŒUVRE ß Ð þ",
+			"Ångström ñandú Łódź",
+			"ǅemal Ǆ ǈ",
+			"Ȩ ȩ ȭ ȳ",
+			// decomposed : e followed by a combining acute accent
+			"Cafe\u0301",
+			"\u0301accent first",
+			"Οικονομία Ελλάδα ΐ",
+			"Экономика Йошкар-Ола ё",
+			"한국어 가나다",
+			"日本語のテキスト",
+			"اللغة العربية",
+			"ﬁ ﬂ Ⅻ ①",
+			"Ḁ ḁ Ẁ ỹ",
+			"mixed é and Ж and 가"
+	};
+
+	private static String nfd(String s) {
+		return Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("[\u0300-\u036F]", "");
+	}
+
+	@Test
+	public void foldSameAsNormalizer() {
+		for (String aLabel : LABELS) {
+			Assert.assertEquals(aLabel, nfd(aLabel), AccentFolder.fold(aLabel));
+		}
+	}
+
+	@Test
+	public void foldAllCharactersSameAsNormalizer() {
+		StringBuilder all = new StringBuilder();
+		for (char c = 0; c < 0x3000; c++) {
+			if(Character.isSurrogate(c)) {
+				continue;
+			}
+			String s = String.valueOf(c);
+			Assert.assertEquals(Integer.toHexString(c), nfd(s), AccentFolder.fold(s));
+			Assert.assertEquals(Integer.toHexString(c), nfd("a"+s+"b"), AccentFolder.fold("a"+s+"b"));
+			all.append(c);
+		}
+		Assert.assertEquals(nfd(all.toString()), AccentFolder.fold(all.toString()));
+	}
+
+	@Test
+	public void sectionLetterSameAsNormalizer() {
+		for (String aLabel : LABELS) {
+			String folded = nfd(aLabel);
+			String expected = (folded.isEmpty())?"":folded.toUpperCase().substring(0, 1);
+			Assert.assertEquals(aLabel, expected, AccentFolder.sectionLetter(aLabel));
+		}
+	}
+
+	@Test
+	public void asciiReturnedAsIs() {
+		String label = "Agriculture";
+		Assert.assertSame(label, AccentFolder.fold(label));
+		Assert.assertTrue(AccentFolder.isFolded(label));
+		Assert.assertFalse(AccentFolder.isFolded("Économie"));
+	}
+
+}
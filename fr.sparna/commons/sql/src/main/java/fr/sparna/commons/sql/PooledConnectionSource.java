@@ -0,0 +1,581 @@
+package fr.sparna.commons.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of connections, created by another {@link ConnectionSource} (typically a {@link JDBCConnectionSource}).
+ * <p>Calling <code>close()</code> on a connection returned by this source gives it back to the pool, so it can be used
+ * as any other ConnectionSource, e.g. with a {@link SQLExecution}. The pool :
+ * <ul>
+ *   <li>opens at most <code>maxSize</code> connections; when they are all in use, <code>getConnection()</code> waits for
+ *   one to be given back, up to <code>maxWait</code> ms;</li>
+ *   <li>validates the connections that were idle for more than <code>validationInterval</code> ms before giving them,
+ *   and replaces the ones that are not valid anymore;</li>
+ *   <li>rolls back uncommitted work and restores auto-commit when a connection is given back;</li>
+ *   <li>keeps the prepared statements of each connection, so that preparing the same SQL again on the same connection
+ *   reuses the statement : closing a cached statement only clears its parameters and batch, and a statement kept after
+ *   being closed, or after its connection was given back, cannot be used anymore;</li>
+ *   <li>logs the connections that are held for more than <code>leakThreshold</code> ms, along with the stack trace of
+ *   the code that borrowed them;</li>
+ *   <li>counts the connections created, borrowed, and the time spent waiting for them, see {@link #getMetrics()}.</li>
+ * </ul>
+ * <p>The pool must be closed with {@link #close()} when it is not used anymore.
+ *
+ * @author thomas
+ *
+ */
+public class PooledConnectionSource implements ConnectionSource {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	protected ConnectionSource delegate;
+	protected int maxSize;
+
+	// max time to wait for a connection, in ms
+	protected long maxWait = 30000;
+	// connections idle for more than this time are validated before being used, in ms
+	protected long validationInterval = 30000;
+	// timeout of the validation, in seconds
+	protected int validationTimeout = 5;
+	// max number of prepared statements kept for each connection, 0 to disable the cache
+	protected int statementCacheSize = 50;
+	// connections held for more than this time are reported, in ms ; 0 to disable leak detection
+	protected long leakThreshold = 0;
+
+	// idle connections, most recently used first
+	protected LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	// connections currently borrowed
+	protected Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+	protected Semaphore permits;
+	protected volatile boolean closed = false;
+
+	protected ScheduledExecutorService leakDetector;
+
+	protected AtomicLong created = new AtomicLong();
+	protected AtomicLong destroyed = new AtomicLong();
+	protected AtomicLong borrowCount = new AtomicLong();
+	protected AtomicLong waitTime = new AtomicLong();
+	protected AtomicLong timeouts = new AtomicLong();
+	protected AtomicLong validationFailures = new AtomicLong();
+	protected AtomicLong statementHits = new AtomicLong();
+	protected AtomicLong statementMisses = new AtomicLong();
+	protected AtomicLong leaks = new AtomicLong();
+
+	/**
+	 * @param delegate	creates the connections of the pool
+	 * @param maxSize	max number of connections
+	 */
+	public PooledConnectionSource(ConnectionSource delegate, int maxSize) {
+		super();
+		this.delegate = delegate;
+		this.maxSize = maxSize;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Returns a connection of the pool, waiting for one to be available if needed. The connection must be closed to be
+	 * given back to the pool.
+	 */
+	@Override
+	public Connection getConnection() throws ConnectionSourceException {
+		if(this.closed) {
+			throw new ConnectionSourceException("Connection pool is closed");
+		}
+
+		long start = System.nanoTime();
+		try {
+			if(!this.permits.tryAcquire(this.maxWait, TimeUnit.MILLISECONDS)) {
+				this.timeouts.incrementAndGet();
+				throw new ConnectionSourceException("No connection available after "+this.maxWait+" ms, all "+this.maxSize+" connections are in use");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ConnectionSourceException("Interrupted while waiting for a connection", e);
+		}
+		this.waitTime.addAndGet(System.nanoTime() - start);
+
+		try {
+			PooledConnection pooled = takeValidConnection();
+			pooled.borrow();
+			this.borrowed.add(pooled);
+			this.borrowCount.incrementAndGet();
+			return pooled.proxy;
+		} catch (ConnectionSourceException | RuntimeException e) {
+			this.permits.release();
+			throw e;
+		}
+	}
+
+	private PooledConnection takeValidConnection() throws ConnectionSourceException {
+		PooledConnection pooled;
+		while((pooled = this.idle.pollFirst()) != null) {
+			if(System.currentTimeMillis() - pooled.returnedAt < this.validationInterval || isValid(pooled.connection)) {
+				return pooled;
+			}
+			this.validationFailures.incrementAndGet();
+			log.debug("Discarding invalid connection");
+			destroy(pooled);
+		}
+		pooled = new PooledConnection(this.delegate.getConnection());
+		this.created.incrementAndGet();
+		return pooled;
+	}
+
+	private boolean isValid(Connection connection) {
+		try {
+			return !connection.isClosed() && connection.isValid(this.validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Gives a connection back to the pool, called when its proxy is closed
+	 */
+	protected void giveBack(PooledConnection pooled) {
+		if(!this.borrowed.remove(pooled)) {
+			// already given back
+			return;
+		}
+		boolean reusable = !this.closed && pooled.reset();
+		if(reusable) {
+			pooled.returnedAt = System.currentTimeMillis();
+			this.idle.offerFirst(pooled);
+		} else {
+			destroy(pooled);
+		}
+		this.permits.release();
+	}
+
+	private void destroy(PooledConnection pooled) {
+		pooled.closeStatements();
+		try {
+			pooled.connection.close();
+		} catch (SQLException e) {
+			log.debug("Error closing connection", e);
+		}
+		this.destroyed.incrementAndGet();
+	}
+
+	protected void detectLeaks() {
+		long now = System.currentTimeMillis();
+		for (PooledConnection aConnection : this.borrowed) {
+			if(!aConnection.leakReported && now - aConnection.borrowedAt > this.leakThreshold) {
+				aConnection.leakReported = true;
+				this.leaks.incrementAndGet();
+				log.warn("Connection held for more than "+this.leakThreshold+" ms, possible connection leak. Borrowed by :", aConnection.borrowTrace);
+			}
+		}
+	}
+
+	/**
+	 * Closes the idle connections and stops the pool. Borrowed connections are closed when they are given back.
+	 */
+	public void close() {
+		this.closed = true;
+		if(this.leakDetector != null) {
+			this.leakDetector.shutdownNow();
+		}
+		PooledConnection pooled;
+		while((pooled = this.idle.pollFirst()) != null) {
+			destroy(pooled);
+		}
+		log.info("Closed connection pool, "+getMetrics());
+	}
+
+	/**
+	 * @return the current state and counters of the pool
+	 */
+	public Metrics getMetrics() {
+		Metrics m = new Metrics();
+		m.maxSize = this.maxSize;
+		m.active = this.borrowed.size();
+		m.idle = this.idle.size();
+		m.waiting = this.permits.getQueueLength();
+		m.created = this.created.get();
+		m.destroyed = this.destroyed.get();
+		m.borrowCount = this.borrowCount.get();
+		m.totalWaitMillis = TimeUnit.NANOSECONDS.toMillis(this.waitTime.get());
+		m.timeouts = this.timeouts.get();
+		m.validationFailures = this.validationFailures.get();
+		m.statementHits = this.statementHits.get();
+		m.statementMisses = this.statementMisses.get();
+		m.leaks = this.leaks.get();
+		return m;
+	}
+
+	public long getMaxWait() {
+		return maxWait;
+	}
+
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	public long getValidationInterval() {
+		return validationInterval;
+	}
+
+	public void setValidationInterval(long validationInterval) {
+		this.validationInterval = validationInterval;
+	}
+
+	public void setValidationTimeout(int validationTimeout) {
+		this.validationTimeout = validationTimeout;
+	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	public long getLeakThreshold() {
+		return leakThreshold;
+	}
+
+	/**
+	 * Sets the time after which a borrowed connection is reported as a possible leak, and starts the leak detection.
+	 * The stack trace of the code borrowing a connection is recorded only when leak detection is enabled.
+	 */
+	public synchronized void setLeakThreshold(long leakThreshold) {
+		this.leakThreshold = leakThreshold;
+		if(this.leakDetector != null) {
+			this.leakDetector.shutdownNow();
+			this.leakDetector = null;
+		}
+		if(leakThreshold > 0) {
+			this.leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "connection-leak-detector");
+				t.setDaemon(true);
+				return t;
+			});
+			long period = Math.max(1000, leakThreshold / 2);
+			this.leakDetector.scheduleWithFixedDelay(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * A physical connection of the pool, and the proxy given to the code borrowing it
+	 */
+	protected class PooledConnection implements InvocationHandler {
+
+		protected Connection connection;
+		protected Connection proxy;
+		protected long borrowedAt;
+		protected long returnedAt;
+		protected Throwable borrowTrace;
+		protected boolean leakReported;
+		// proxy of the current borrowing, so that a proxy kept after being closed cannot be used anymore
+		protected volatile boolean open;
+
+		// prepared statements by SQL, in access order
+		protected LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true);
+
+		public PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		protected void borrow() {
+			this.borrowedAt = System.currentTimeMillis();
+			this.borrowTrace = (leakThreshold > 0)?new Throwable("Connection borrowed here"):null;
+			this.leakReported = false;
+			this.open = true;
+			// a new proxy for each borrowing
+			this.proxy = (Connection)Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class },
+					this
+			);
+		}
+
+		/**
+		 * Rolls back uncommitted work and restores the default settings of the connection
+		 *
+		 * @return true if the connection can be reused
+		 */
+		protected boolean reset() {
+			try {
+				if(this.connection.isClosed()) {
+					return false;
+				}
+				if(!this.connection.getAutoCommit()) {
+					this.connection.rollback();
+					this.connection.setAutoCommit(true);
+				}
+				if(this.connection.isReadOnly()) {
+					this.connection.setReadOnly(false);
+				}
+				this.connection.clearWarnings();
+				for (CachedStatement aStatement : this.statements.values()) {
+					aStatement.checkIn();
+				}
+				return true;
+			} catch (SQLException e) {
+				log.debug("Cannot reset connection, discarding it", e);
+				return false;
+			}
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if(method.getDeclaringClass() == Object.class) {
+				return invokeObjectMethod(proxy, method, args);
+			}
+			String name = method.getName();
+			if(name.equals("close")) {
+				if(this.open && proxy == this.proxy) {
+					this.open = false;
+					giveBack(this);
+				}
+				return null;
+			}
+			if(name.equals("isClosed")) {
+				return !this.open || proxy != this.proxy || this.connection.isClosed();
+			}
+			if(!this.open || proxy != this.proxy) {
+				throw new SQLException("Connection is closed");
+			}
+			if(name.equals("prepareStatement") && args != null && args.length == 1 && statementCacheSize > 0) {
+				return prepareStatement((String)args[0]);
+			}
+			try {
+				return method.invoke(this.connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		private PreparedStatement prepareStatement(String sql) throws SQLException {
+			CachedStatement cached = this.statements.get(sql);
+			if(cached != null && !cached.inUse) {
+				statementHits.incrementAndGet();
+				return cached.checkOut(this.proxy);
+			}
+			statementMisses.incrementAndGet();
+			PreparedStatement statement = this.connection.prepareStatement(sql);
+			if(cached != null) {
+				// the cached statement is already used on this connection, this one is not cached
+				return statement;
+			}
+			cached = new CachedStatement(statement);
+			PreparedStatement result = cached.checkOut(this.proxy);
+			this.statements.put(sql, cached);
+			// evict least recently used statements
+			Iterator<Map.Entry<String, CachedStatement>> i = this.statements.entrySet().iterator();
+			while(this.statements.size() > statementCacheSize && i.hasNext()) {
+				CachedStatement evicted = i.next().getValue();
+				if(!evicted.inUse) {
+					i.remove();
+					evicted.closeQuietly();
+				}
+			}
+			return result;
+		}
+
+		protected void closeStatements() {
+			for (CachedStatement aStatement : this.statements.values()) {
+				aStatement.closeQuietly();
+			}
+			this.statements.clear();
+		}
+	}
+
+	/**
+	 * A prepared statement kept open on its connection : closing its proxy only makes it available again
+	 */
+	protected static class CachedStatement implements InvocationHandler {
+
+		protected PreparedStatement statement;
+		// proxy of the current use, so that a proxy kept after being closed cannot be used anymore
+		protected volatile PreparedStatement proxy;
+		// proxy of the connection the statement was prepared on, for the current use
+		protected volatile Connection connection;
+		protected volatile boolean inUse;
+
+		public CachedStatement(PreparedStatement statement) {
+			this.statement = statement;
+		}
+
+		/**
+		 * @return a new proxy of the statement, for a use on the given connection proxy
+		 */
+		protected PreparedStatement checkOut(Connection connection) {
+			this.connection = connection;
+			this.inUse = true;
+			this.proxy = (PreparedStatement)Proxy.newProxyInstance(
+					PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class },
+					this
+			);
+			return this.proxy;
+		}
+
+		/**
+		 * Ends the current use, called when the statement is closed or its connection given back
+		 */
+		protected void checkIn() {
+			this.inUse = false;
+			this.connection = null;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if(method.getDeclaringClass() == Object.class) {
+				return invokeObjectMethod(proxy, method, args);
+			}
+			String name = method.getName();
+			boolean current = this.inUse && proxy == this.proxy;
+			if(name.equals("close")) {
+				if(current) {
+					this.statement.clearParameters();
+					this.statement.clearBatch();
+					checkIn();
+				}
+				return null;
+			}
+			if(name.equals("isClosed")) {
+				return !current || this.statement.isClosed();
+			}
+			if(!current) {
+				throw new SQLException("Statement is closed");
+			}
+			if(name.equals("getConnection")) {
+				return this.connection;
+			}
+			try {
+				return method.invoke(this.statement, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		protected void closeQuietly() {
+			try {
+				this.statement.close();
+			} catch (SQLException ignore) {
+				// nothing
+			}
+		}
+	}
+
+	/**
+	 * equals, hashCode and toString of the proxies are based on the proxy identity
+	 */
+	private static Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+		switch(method.getName()) {
+		case "equals" :
+			return proxy == args[0];
+		case "hashCode" :
+			return System.identityHashCode(proxy);
+		default :
+			return "Pooled"+proxy.getClass().getInterfaces()[0].getSimpleName()+"@"+Integer.toHexString(System.identityHashCode(proxy));
+		}
+	}
+
+	/**
+	 * State and counters of a pool
+	 */
+	public static class Metrics {
+		protected int maxSize;
+		protected int active;
+		protected int idle;
+		protected int waiting;
+		protected long created;
+		protected long destroyed;
+		protected long borrowCount;
+		protected long totalWaitMillis;
+		protected long timeouts;
+		protected long validationFailures;
+		protected long statementHits;
+		protected long statementMisses;
+		protected long leaks;
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		public int getActive() {
+			return active;
+		}
+
+		public int getIdle() {
+			return idle;
+		}
+
+		/**
+		 * @return number of threads waiting for a connection
+		 */
+		public int getWaiting() {
+			return waiting;
+		}
+
+		public long getCreated() {
+			return created;
+		}
+
+		public long getDestroyed() {
+			return destroyed;
+		}
+
+		public long getBorrowCount() {
+			return borrowCount;
+		}
+
+		public long getTotalWaitMillis() {
+			return totalWaitMillis;
+		}
+
+		public long getTimeouts() {
+			return timeouts;
+		}
+
+		public long getValidationFailures() {
+			return validationFailures;
+		}
+
+		public long getStatementHits() {
+			return statementHits;
+		}
+
+		public long getStatementMisses() {
+			return statementMisses;
+		}
+
+		public long getLeaks() {
+			return leaks;
+		}
+
+		@Override
+		public String toString() {
+			return "Metrics [maxSize=" + maxSize + ", active=" + active + ", idle=" + idle + ", waiting=" + waiting
+					+ ", created=" + created + ", destroyed=" + destroyed + ", borrowCount=" + borrowCount
+					+ ", totalWaitMillis=" + totalWaitMillis + ", timeouts=" + timeouts + ", validationFailures="
+					+ validationFailures + ", statementHits=" + statementHits + ", statementMisses=" + statementMisses
+					+ ", leaks=" + leaks + "]";
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+package fr.sparna.commons.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledConnectionSourceTest {
+
+	private FakeConnectionSource delegate;
+	private PooledConnectionSource pool;
+
+	@Before
+	public void before() {
+		this.delegate = new FakeConnectionSource();
+		this.pool = new PooledConnectionSource(this.delegate, 2);
+		this.pool.setMaxWait(100);
+	}
+
+	@After
+	public void after() {
+		this.pool.close();
+	}
+
+	@Test
+	public void timeoutWhenAllConnectionsBorrowed() throws Exception {
+		Connection c1 = this.pool.getConnection();
+		Connection c2 = this.pool.getConnection();
+		Assert.assertEquals(2, this.pool.getMetrics().getActive());
+		try {
+			this.pool.getConnection();
+			Assert.fail("Expected a timeout");
+		} catch (ConnectionSourceException expected) {
+			// ok
+		}
+		Assert.assertEquals(1, this.pool.getMetrics().getTimeouts());
+		Assert.assertEquals(2, this.delegate.connections.size());
+
+		// a connection given back can be borrowed again
+		c1.close();
+		Connection c3 = this.pool.getConnection();
+		Assert.assertNotNull(c3);
+		c2.close();
+		c3.close();
+		Assert.assertEquals(2, this.delegate.connections.size());
+	}
+
+	@Test
+	public void closeGivesConnectionBack() throws Exception {
+		Connection c1 = this.pool.getConnection();
+		c1.setAutoCommit(false);
+		c1.close();
+		Assert.assertTrue(c1.isClosed());
+		FakeConnection physical = this.delegate.connections.get(0);
+		Assert.assertEquals(1, physical.rollbacks);
+		Assert.assertTrue(physical.autoCommit);
+		Assert.assertFalse(physical.closed);
+		Assert.assertEquals(0, this.pool.getMetrics().getActive());
+		Assert.assertEquals(1, this.pool.getMetrics().getIdle());
+
+		// closing twice does not give the connection back twice
+		c1.close();
+		Assert.assertEquals(1, this.pool.getMetrics().getIdle());
+
+		// the same physical connection is reused, the old proxy cannot be used anymore
+		Connection c2 = this.pool.getConnection();
+		Assert.assertNotSame(c1, c2);
+		c2.setReadOnly(true);
+		Assert.assertEquals(1, this.delegate.connections.size());
+		try {
+			c1.setReadOnly(true);
+			Assert.fail("Expected the old proxy to be closed");
+		} catch (java.sql.SQLException expected) {
+			// ok
+		}
+		c2.close();
+		Assert.assertFalse(physical.readOnly);
+		Assert.assertEquals(2, this.pool.getMetrics().getBorrowCount());
+		Assert.assertEquals(1, this.pool.getMetrics().getCreated());
+
+		// closing the pool closes the idle connections
+		this.pool.close();
+		Assert.assertTrue(physical.closed);
+		Assert.assertEquals(1, this.pool.getMetrics().getDestroyed());
+	}
+
+	@Test
+	public void preparedStatementsReused() throws Exception {
+		String sql = "SELECT * FROM statistique WHERE id = ?";
+		Connection c1 = this.pool.getConnection();
+		PreparedStatement s1 = c1.prepareStatement(sql);
+		s1.setInt(1, 42);
+		s1.close();
+		FakeConnection physical = this.delegate.connections.get(0);
+		FakeStatement statement = physical.statements.get(0);
+		Assert.assertEquals(1, statement.clearParameters);
+		Assert.assertFalse(statement.closed);
+		c1.close();
+
+		Connection c2 = this.pool.getConnection();
+		PreparedStatement s2 = c2.prepareStatement(sql);
+		Assert.assertEquals(1, physical.statements.size());
+		Assert.assertEquals(1, this.pool.getMetrics().getStatementHits());
+		Assert.assertEquals(1, this.pool.getMetrics().getStatementMisses());
+
+		// the cached statement is in use, the same SQL gets a statement that is not cached
+		PreparedStatement s3 = c2.prepareStatement(sql);
+		Assert.assertEquals(2, physical.statements.size());
+		s3.close();
+		Assert.assertTrue(physical.statements.get(1).closed);
+		s2.close();
+		c2.close();
+		Assert.assertFalse(statement.closed);
+	}
+
+	@Test
+	public void staleStatementsClosed() throws Exception {
+		String sql = "SELECT * FROM statistique WHERE id = ?";
+		Connection c1 = this.pool.getConnection();
+		PreparedStatement s1 = c1.prepareStatement(sql);
+		Assert.assertSame(c1, s1.getConnection());
+		s1.close();
+		Assert.assertTrue(s1.isClosed());
+		try {
+			s1.setInt(1, 42);
+			Assert.fail("Expected the closed statement to be unusable");
+		} catch (java.sql.SQLException expected) {
+			// ok
+		}
+
+		// the same cached statement, through a new proxy
+		PreparedStatement s2 = c1.prepareStatement(sql);
+		Assert.assertNotSame(s1, s2);
+		Assert.assertEquals(1, this.delegate.connections.get(0).statements.size());
+		Assert.assertTrue(s1.isClosed());
+		Assert.assertFalse(s2.isClosed());
+		s2.setInt(1, 42);
+
+		// giving the connection back closes the statements still open
+		c1.close();
+		Assert.assertTrue(s2.isClosed());
+		try {
+			s2.setInt(1, 43);
+			Assert.fail("Expected the statement of a given back connection to be unusable");
+		} catch (java.sql.SQLException expected) {
+			// ok
+		}
+		Connection c2 = this.pool.getConnection();
+		Assert.assertSame(c2, c2.prepareStatement(sql).getConnection());
+		c2.close();
+	}
+
+	private static class FakeConnectionSource implements ConnectionSource {
+
+		private List<FakeConnection> connections = new ArrayList<FakeConnection>();
+
+		@Override
+		public synchronized Connection getConnection() throws ConnectionSourceException {
+			FakeConnection c = new FakeConnection();
+			this.connections.add(c);
+			return (Connection)Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class },
+					c
+			);
+		}
+	}
+
+	/**
+	 * Records the calls made on the connection by the pool
+	 */
+	private static class FakeConnection implements InvocationHandler {
+
+		private boolean closed = false;
+		private boolean autoCommit = true;
+		private boolean readOnly = false;
+		private int rollbacks = 0;
+		private List<FakeStatement> statements = new ArrayList<FakeStatement>();
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.equals("close")) {
+				this.closed = true;
+			} else if(name.equals("isClosed")) {
+				return this.closed;
+			} else if(name.equals("isValid")) {
+				return !this.closed;
+			} else if(name.equals("getAutoCommit")) {
+				return this.autoCommit;
+			} else if(name.equals("setAutoCommit")) {
+				this.autoCommit = (Boolean)args[0];
+			} else if(name.equals("isReadOnly")) {
+				return this.readOnly;
+			} else if(name.equals("setReadOnly")) {
+				this.readOnly = (Boolean)args[0];
+			} else if(name.equals("rollback")) {
+				this.rollbacks++;
+			} else if(name.equals("prepareStatement")) {
+				FakeStatement s = new FakeStatement();
+				this.statements.add(s);
+				return Proxy.newProxyInstance(
+						PreparedStatement.class.getClassLoader(),
+						new Class<?>[] { PreparedStatement.class },
+						s
+				);
+			} else if(name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if(name.equals("equals")) {
+				return proxy == args[0];
+			}
+			return null;
+		}
+	}
+
+	private static class FakeStatement implements InvocationHandler {
+
+		private boolean closed = false;
+		private int clearParameters = 0;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.equals("close")) {
+				this.closed = true;
+			} else if(name.equals("isClosed")) {
+				return this.closed;
+			} else if(name.equals("clearParameters")) {
+				this.clearParameters++;
+			} else if(name.equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if(name.equals("equals")) {
+				return proxy == args[0];
+			}
+			return null;
+		}
+	}
+
+}
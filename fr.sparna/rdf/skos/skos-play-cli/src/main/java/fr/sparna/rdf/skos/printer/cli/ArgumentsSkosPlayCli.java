@@ -57,6 +57,12 @@ public class ArgumentsSkosPlayCli {
 			converter = FileConverter.class
 	)
 	private File fopConfig;
+	
+	@Parameter(
+			names = { "-opt", "--optimizePdf" },
+			description = "Optimized PDF output : fonts embedded once and subset, compressed streams, no tagged PDF"
+	)
+	private boolean optimizePdf = false;
 
 	public List<String> getInput() {
 		return input;
@@ -110,6 +116,14 @@ public class ArgumentsSkosPlayCli {
 		return (getFopConfig() != null)?getFopConfig().getAbsolutePath():null;
 	}
 
+	public boolean isOptimizePdf() {
+		return optimizePdf;
+	}
+
+	public void setOptimizePdf(boolean optimizePdf) {
+		this.optimizePdf = optimizePdf;
+	}
+
 	public DisplayPrinter.Style getStyle() {
 		return style;
 	}
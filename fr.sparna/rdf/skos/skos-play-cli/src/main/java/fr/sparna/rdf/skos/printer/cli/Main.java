@@ -16,6 +16,8 @@ import fr.sparna.rdf.skos.printer.cli.hierarchical.ArgumentsHierarchical;
 import fr.sparna.rdf.skos.printer.cli.hierarchical.Hierarchical;
 import fr.sparna.rdf.skos.printer.cli.index.ArgumentsIndex;
 import fr.sparna.rdf.skos.printer.cli.index.Index;
+import fr.sparna.rdf.skos.printer.cli.labels.ArgumentsLabels;
+import fr.sparna.rdf.skos.printer.cli.labels.Labels;
 import fr.sparna.rdf.skos.printer.cli.normalize.ArgumentsNormalizeLabels;
 import fr.sparna.rdf.skos.printer.cli.normalize.NormalizeLabels;
 import fr.sparna.rdf.skos.printer.cli.reconcile.ArgumentsBatchReconcile;
@@ -41,7 +43,8 @@ public class Main {
 		INDEX(new ArgumentsIndex(), new Index()),
 		SKOS2SKOSXL(new ArgumentsSkos2SkosXl(), new Skos2SkosXl()),
 		SKOSXL2SKOS(new ArgumentsSkosXl2Skos(), new SkosXl2Skos()),
-		BATCH_RECONCILE(new ArgumentsBatchReconcile(), new BatchReconcile())
+		BATCH_RECONCILE(new ArgumentsBatchReconcile(), new BatchReconcile()),
+		LABELS(new ArgumentsLabels(), new Labels())
 		;
 		
 		private SkosPlayCliCommandIfc command;
@@ -1,5 +1,7 @@
 package fr.sparna.rdf.skos.printer.cli.alignment;
 
+import java.util.List;
+
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
@@ -11,11 +13,13 @@ import fr.sparna.commons.xml.fop.FopProvider;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.ApplyUpdates;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.cli.SkosPlayCliCommandIfc;
 import fr.sparna.rdf.skos.printer.reader.AlignmentDataHarvesterCachedLoader;
 import fr.sparna.rdf.skos.printer.reader.AlignmentDisplayGenerator;
 import fr.sparna.rdf.skos.printer.reader.BodyReader;
 import fr.sparna.rdf.skos.printer.reader.ConceptBlockReader;
+import fr.sparna.rdf.skos.printer.reader.LabelBundle;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
 import fr.sparna.rdf.skos.toolkit.SKOSRules;
 
@@ -40,14 +44,20 @@ public class Alignment implements SkosPlayCliCommandIfc {
 			
 			// build result document
 			KosDocument document = new KosDocument();
+			// trace of the rendering stages, printed at the end
+			RenderTrace trace = new RenderTrace("alignment");
 			
 			ConceptBlockReader cbr = new ConceptBlockReader();
 			cbr.setLinkDestinationIdPrefix("alignId");
+			List<LabelBundle> labelBundles = LabelBundle.open(args.getLabelBundles());
+			AlignmentDataHarvesterCachedLoader harvester = new AlignmentDataHarvesterCachedLoader(args.getCacheDir().getAbsolutePath(), RDFFormat.RDFXML);
+			harvester.setLabelBundles(labelBundles);
 			AlignmentDisplayGenerator reader = new AlignmentDisplayGenerator(
 					connection,
 					cbr,
 					"alignId",
-					new AlignmentDataHarvesterCachedLoader(args.getCacheDir().getAbsolutePath(), RDFFormat.RDFXML));
+					harvester);
+			reader.setLabelBundles(labelBundles);
 			
 			
 			reader.setSeparateByTargetScheme(true);
@@ -56,6 +66,7 @@ public class Alignment implements SkosPlayCliCommandIfc {
 			}
 			
 			BodyReader bodyReader = new BodyReader(reader);
+			bodyReader.setTrace(trace);
 			document.setBody(bodyReader.readBody(args.getLang(), (args.getConceptScheme() != null)?SimpleValueFactory.getInstance().createIRI(args.getConceptScheme()):null));
 	
 			// if debug needed
@@ -67,9 +78,11 @@ public class Alignment implements SkosPlayCliCommandIfc {
 			if(args.getFopConfigPath() != null) {
 				log.info("Will use FOP config file path : "+args.getFopConfigPath());
 			}
-			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath()));
+			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath(), args.isOptimizePdf()));
 			printer.setStyle(args.getStyle());
+			printer.setTrace(trace);
 			printer.print(document, args.getOutput(), args.getLang(), args.getFormat());
+			System.out.println(trace.toSummary());
 		}
 		
 		// shutdown repos
@@ -1,6 +1,7 @@
 package fr.sparna.rdf.skos.printer.cli.alignment;
 
 import java.io.File;
+import java.util.List;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
@@ -17,6 +18,14 @@ public class ArgumentsAlignment extends ArgumentsSkosPlayCli {
 			converter = FileConverter.class
 	)
 	private File cacheDir = new File("alignment-cache");
+
+	@Parameter(
+			names = { "-lb", "--labelBundle" },
+			description = "Label bundle files of aligned vocabularies, built with the 'labels' command, to read labels from instead of fetching them.",
+			converter = FileConverter.class,
+			variableArity = true
+	)
+	private List<File> labelBundles;
 	
 	@Parameter(
 			names = { "-bsc", "--bySourceConcept" },
@@ -39,5 +48,13 @@ public class ArgumentsAlignment extends ArgumentsSkosPlayCli {
 	public void setBySourceConcept(boolean bySourceConcept) {
 		this.bySourceConcept = bySourceConcept;
 	}
-	
+
+	public List<File> getLabelBundles() {
+		return labelBundles;
+	}
+
+	public void setLabelBundles(List<File> labelBundles) {
+		this.labelBundles = labelBundles;
+	}
+
 }
@@ -1,9 +1,12 @@
 package fr.sparna.rdf.skos.printer.cli.alphabetical;
 
-import java.net.URI;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
@@ -17,12 +20,16 @@ import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.ApplyUpdates;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.cli.SkosPlayCliCommandIfc;
+import fr.sparna.rdf.skos.printer.reader.AbstractKosDisplayGenerator;
 import fr.sparna.rdf.skos.printer.reader.AlphaIndexDisplayGenerator;
 import fr.sparna.rdf.skos.printer.reader.BodyReader;
 import fr.sparna.rdf.skos.printer.reader.ConceptBlockReader;
 import fr.sparna.rdf.skos.printer.reader.HeaderAndFooterReader;
+import fr.sparna.rdf.skos.printer.reader.MultiSchemeBodyReader;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
+import fr.sparna.rdf.skos.printer.schema.KosDocumentBody;
 import fr.sparna.rdf.skos.toolkit.GetLanguagesHelper;
 import fr.sparna.rdf.skos.toolkit.SKOSRules;
 
@@ -45,33 +52,13 @@ public class Alphabetical implements SkosPlayCliCommandIfc {
 			// SKOS-XL
 			ApplyUpdates.fromQueryReaders(SKOSRules.getSkosXl2SkosRuleset()).accept(connection);
 			
-			// build result document
-			KosDocument document = new KosDocument();
-			
-			// build and set header
-			HeaderAndFooterReader headerReader = new HeaderAndFooterReader(connection);
-			headerReader.setApplicationString("Generated by SKOS Play!, sparna.fr");
-			// on désactive complètement le header pour les PDF
-			if(args.getFormat() != DisplayPrinter.Format.PDF) {
-				// build and set header
-				document.setHeader(headerReader.readHeader(
-						args.getLang(),
-						(args.getConceptScheme() != null)?SimpleValueFactory.getInstance().createIRI(args.getConceptScheme()):null
-				));
-			}
-			// all the time, set footer
-			document.setFooter(headerReader.readFooter(
-					args.getLang(),
-					(args.getConceptScheme() != null)?SimpleValueFactory.getInstance().createIRI(args.getConceptScheme()):null
-			));		
-			
-			ConceptBlockReader cbReader = new ConceptBlockReader();
-			cbReader.setSkosPropertiesToRead(AlphaIndexDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
-			cbReader.setStyleAttributes(false);
+			// trace of the rendering stages, printed at the end
+			RenderTrace trace = new RenderTrace("alphabetical");
+
 			// includes multilingual languages if needed
+			final List<String> additionalLangs = new ArrayList<String>();
 			if(args.isMultilingual()) {
 				final String mainLang = args.getLang();
-				final List<String> additionalLangs = new ArrayList<String>();
 				Perform.on(connection).select(new GetLanguagesHelper() {			
 					@Override
 					protected void handleLang(Literal lang) throws TupleQueryResultHandlerException {
@@ -80,31 +67,91 @@ public class Alphabetical implements SkosPlayCliCommandIfc {
 						}
 					}
 				});
-				cbReader.setAdditionalLabelLanguagesToInclude(additionalLangs);
 			}
 			
-			AlphaIndexDisplayGenerator reader = new AlphaIndexDisplayGenerator(connection, cbReader);
-			BodyReader bodyReader = new BodyReader(reader);		
-			document.setBody(bodyReader.readBody(args.getLang(), (args.getConceptScheme() != null)?SimpleValueFactory.getInstance().createIRI(args.getConceptScheme()):null));
-	
-			// if debug needed
-			// Marshaller m = JAXBContext.newInstance("fr.sparna.rdf.skos.printer.schema").createMarshaller();
-			// m.setProperty("jaxb.formatted.output", true);
-			// m.marshal(display, System.out);
-			// m.marshal(document, new File("src/main/resources/alpha-index-output-test.xml"));
-			
 			if(args.getFopConfigPath() != null) {
 				log.info("Will use FOP config file path : "+args.getFopConfigPath());
 			}
 	
-			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath()));
+			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath(), args.isOptimizePdf()));
 			printer.setStyle(args.getStyle());
-			printer.print(document, args.getOutput(), args.getLang(), args.getFormat());
+			printer.setTrace(trace);
+			
+			if(args.isAllSchemes()) {
+				// read labels and concepts of all schemes once, then print each scheme
+				MultiSchemeBodyReader bodyReader = new MultiSchemeBodyReader(
+						connection,
+						(c, scheme) -> Collections.<AbstractKosDisplayGenerator>singletonList(new AlphaIndexDisplayGenerator(c, createConceptBlockReader(args, additionalLangs)))
+				);
+				bodyReader.setTrace(trace);
+				int i = 1;
+				for (Map.Entry<IRI, KosDocumentBody> anEntry : bodyReader.readBodies(args.getLang()).entrySet()) {
+					KosDocument document = createDocument(connection, args, anEntry.getKey());
+					document.setBody(anEntry.getValue());
+					File output = outputFile(args.getOutput(), i++);
+					log.info("Printing scheme "+anEntry.getKey()+" to "+output);
+					printer.print(document, output, args.getLang(), args.getFormat());
+				}
+			} else {
+				IRI conceptScheme = (args.getConceptScheme() != null)?SimpleValueFactory.getInstance().createIRI(args.getConceptScheme()):null;
+				KosDocument document = createDocument(connection, args, conceptScheme);
+				
+				AlphaIndexDisplayGenerator reader = new AlphaIndexDisplayGenerator(connection, createConceptBlockReader(args, additionalLangs));
+				BodyReader bodyReader = new BodyReader(reader);		
+				bodyReader.setTrace(trace);
+				document.setBody(bodyReader.readBody(args.getLang(), conceptScheme));
+		
+				// if debug needed
+				// Marshaller m = JAXBContext.newInstance("fr.sparna.rdf.skos.printer.schema").createMarshaller();
+				// m.setProperty("jaxb.formatted.output", true);
+				// m.marshal(display, System.out);
+				// m.marshal(document, new File("src/main/resources/alpha-index-output-test.xml"));
+				
+				printer.print(document, args.getOutput(), args.getLang(), args.getFormat());
+			}
+			System.out.println(trace.toSummary());
 		}
 		
 		// shutdown repos
 		inputRepository.shutDown();
 
 	}
+	
+	/**
+	 * Creates a document with the header and footer of the given scheme
+	 */
+	private KosDocument createDocument(RepositoryConnection connection, ArgumentsAlphabetical args, IRI conceptScheme) {
+		KosDocument document = new KosDocument();
+		HeaderAndFooterReader headerReader = new HeaderAndFooterReader(connection);
+		headerReader.setApplicationString("Generated by SKOS Play!, sparna.fr");
+		// on désactive complètement le header pour les PDF
+		if(args.getFormat() != DisplayPrinter.Format.PDF) {
+			// build and set header
+			document.setHeader(headerReader.readHeader(args.getLang(), conceptScheme));
+		}
+		// all the time, set footer
+		document.setFooter(headerReader.readFooter(args.getLang(), conceptScheme));
+		return document;
+	}
+	
+	private ConceptBlockReader createConceptBlockReader(ArgumentsAlphabetical args, List<String> additionalLangs) {
+		ConceptBlockReader cbReader = new ConceptBlockReader();
+		cbReader.setSkosPropertiesToRead(AlphaIndexDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
+		cbReader.setStyleAttributes(false);
+		if(args.isMultilingual()) {
+			cbReader.setAdditionalLabelLanguagesToInclude(additionalLangs);
+		}
+		return cbReader;
+	}
+	
+	/**
+	 * @return the output file of the scheme at the given index : "thesaurus.pdf" gives "thesaurus-1.pdf", "thesaurus-2.pdf", etc.
+	 */
+	private static File outputFile(File output, int index) {
+		String name = output.getName();
+		int dot = name.lastIndexOf('.');
+		String numbered = (dot > 0)?name.substring(0, dot)+"-"+index+name.substring(dot):name+"-"+index;
+		return new File(output.getParentFile(), numbered);
+	}
 
 }
@@ -13,6 +13,12 @@ public class ArgumentsAlphabetical extends ArgumentsSkosPlayCli {
 			description = "Also includes translations in other languages and translation tables. Defaults to false."
 	)
 	private boolean multilingual = false;
+	
+	@Parameter(
+			names = { "-as", "--allSchemes" },
+			description = "Prints each concept scheme in a separate file, reading the dataset once for all schemes. Output files are named after the output file, followed by the number of the scheme."
+	)
+	private boolean allSchemes = false;
 
 	public boolean isMultilingual() {
 		return multilingual;
@@ -21,5 +27,13 @@ public class ArgumentsAlphabetical extends ArgumentsSkosPlayCli {
 	public void setMultilingual(boolean multilingual) {
 		this.multilingual = multilingual;
 	}
+
+	public boolean isAllSchemes() {
+		return allSchemes;
+	}
+
+	public void setAllSchemes(boolean allSchemes) {
+		this.allSchemes = allSchemes;
+	}
 	
 }
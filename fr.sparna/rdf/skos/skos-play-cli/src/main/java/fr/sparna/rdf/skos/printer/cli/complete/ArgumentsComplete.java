@@ -1,6 +1,7 @@
 package fr.sparna.rdf.skos.printer.cli.complete;
 
 import java.io.File;
+import java.util.List;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
@@ -24,6 +25,14 @@ public class ArgumentsComplete extends ArgumentsSkosPlayCli {
 	)
 	private File cacheDir = new File("alignment-cache");
 
+	@Parameter(
+			names = { "-lb", "--labelBundle" },
+			description = "Label bundle files of aligned vocabularies, built with the 'labels' command, to read labels from instead of fetching them.",
+			converter = FileConverter.class,
+			variableArity = true
+	)
+	private List<File> labelBundles;
+
 	public boolean isMultilingual() {
 		return multilingual;
 	}
@@ -39,5 +48,13 @@ public class ArgumentsComplete extends ArgumentsSkosPlayCli {
 	public void setCacheDir(File cacheDir) {
 		this.cacheDir = cacheDir;
 	}
-	
+
+	public List<File> getLabelBundles() {
+		return labelBundles;
+	}
+
+	public void setLabelBundles(List<File> labelBundles) {
+		this.labelBundles = labelBundles;
+	}
+
 }
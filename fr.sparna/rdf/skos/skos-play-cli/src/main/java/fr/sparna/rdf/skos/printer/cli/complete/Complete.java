@@ -16,6 +16,7 @@ import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.ApplyUpdates;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.cli.SkosPlayCliCommandIfc;
 import fr.sparna.rdf.skos.printer.reader.AbstractKosDisplayGenerator;
 import fr.sparna.rdf.skos.printer.reader.AlignmentDataHarvesterCachedLoader;
@@ -25,6 +26,7 @@ import fr.sparna.rdf.skos.printer.reader.BodyReader;
 import fr.sparna.rdf.skos.printer.reader.ConceptBlockReader;
 import fr.sparna.rdf.skos.printer.reader.HeaderAndFooterReader;
 import fr.sparna.rdf.skos.printer.reader.HierarchicalDisplayGenerator;
+import fr.sparna.rdf.skos.printer.reader.LabelBundle;
 import fr.sparna.rdf.skos.printer.reader.TranslationTableReverseDisplayGenerator;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
 import fr.sparna.rdf.skos.toolkit.GetLanguagesHelper;
@@ -50,6 +52,8 @@ public class Complete implements SkosPlayCliCommandIfc {
 			
 			// build result document
 			KosDocument document = new KosDocument();
+			// trace of the rendering stages, printed at the end
+			RenderTrace trace = new RenderTrace("complete");
 			
 			// build and set header
 			HeaderAndFooterReader headerReader = new HeaderAndFooterReader(connection);
@@ -127,16 +131,21 @@ public class Complete implements SkosPlayCliCommandIfc {
 			// add alignement reader
 			ConceptBlockReader alignCbReader = new ConceptBlockReader();
 			alignCbReader.setLinkDestinationIdPrefix("alpha");
+			List<LabelBundle> labelBundles = LabelBundle.open(args.getLabelBundles());
+			AlignmentDataHarvesterCachedLoader harvester = new AlignmentDataHarvesterCachedLoader(args.getCacheDir().getAbsolutePath());
+			harvester.setLabelBundles(labelBundles);
 			AlignmentDisplayGenerator alignmentGen = new AlignmentDisplayGenerator(
 					connection,
 					alignCbReader,
 					"alignId",
-					new AlignmentDataHarvesterCachedLoader(args.getCacheDir().getAbsolutePath())
+					harvester
 			);
+			alignmentGen.setLabelBundles(labelBundles);
 			alignmentGen.setSeparateByTargetScheme(false);
 			generators.add(alignmentGen);
 			
 			BodyReader bodyReader = new BodyReader(generators);
+			bodyReader.setTrace(trace);
 			document.setBody(bodyReader.readBody(args.getLang(), (args.getConceptScheme() != null)?SimpleValueFactory.getInstance().createIRI(args.getConceptScheme()):null));
 	
 			// if debug needed
@@ -149,9 +158,11 @@ public class Complete implements SkosPlayCliCommandIfc {
 				log.info("Will use FOP config file path : "+args.getFopConfigPath());
 			}
 			
-			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath()));
+			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath(), args.isOptimizePdf()));
 			printer.setStyle(args.getStyle());
+			printer.setTrace(trace);
 			printer.print(document, args.getOutput(), args.getLang(), args.getFormat());
+			System.out.println(trace.toSummary());
 		}
 		
 		// shutdown repos
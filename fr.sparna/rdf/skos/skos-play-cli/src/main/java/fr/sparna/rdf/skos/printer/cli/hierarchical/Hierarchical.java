@@ -10,6 +10,7 @@ import fr.sparna.commons.xml.fop.FopProvider;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.ApplyUpdates;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.cli.SkosPlayCliCommandIfc;
 import fr.sparna.rdf.skos.printer.reader.BodyReader;
 import fr.sparna.rdf.skos.printer.reader.ConceptBlockReader;
@@ -39,6 +40,8 @@ public class Hierarchical implements SkosPlayCliCommandIfc {
 			
 			// build result document
 			KosDocument document = new KosDocument();
+			// trace of the rendering stages, printed at the end
+			RenderTrace trace = new RenderTrace("hierarchical");
 			
 			// build and set header
 			HeaderAndFooterReader headerReader = new HeaderAndFooterReader(connection);
@@ -61,6 +64,7 @@ public class Hierarchical implements SkosPlayCliCommandIfc {
 			cbReader.setSkosPropertiesToRead(HierarchicalDisplayGenerator.EXPANDED_SKOS_PROPERTIES);
 			HierarchicalDisplayGenerator reader = new HierarchicalDisplayGenerator(connection, cbReader);
 			BodyReader bodyReader = new BodyReader(reader);
+			bodyReader.setTrace(trace);
 			document.setBody(bodyReader.readBody(args.getLang(), (args.getConceptScheme() != null)?SimpleValueFactory.getInstance().createIRI(args.getConceptScheme()):null));
 	
 			// if debug needed
@@ -73,9 +77,11 @@ public class Hierarchical implements SkosPlayCliCommandIfc {
 				log.info("Will use FOP config file path : "+args.getFopConfigPath());
 			}
 	
-			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath()));
+			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath(), args.isOptimizePdf()));
 			printer.setStyle(args.getStyle());
+			printer.setTrace(trace);
 			printer.print(document, args.getOutput(), args.getLang(), args.getFormat());
+			System.out.println(trace.toSummary());
 		}
 		
 		// shutdown repos
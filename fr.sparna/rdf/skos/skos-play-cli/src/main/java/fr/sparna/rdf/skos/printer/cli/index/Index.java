@@ -10,6 +10,7 @@ import fr.sparna.commons.xml.fop.FopProvider;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.ApplyUpdates;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.cli.SkosPlayCliCommandIfc;
 import fr.sparna.rdf.skos.printer.reader.BodyReader;
 import fr.sparna.rdf.skos.printer.reader.HeaderAndFooterReader;
@@ -38,6 +39,8 @@ public class Index implements SkosPlayCliCommandIfc {
 			
 			// build result document
 			KosDocument document = new KosDocument();
+			// trace of the rendering stages, printed at the end
+			RenderTrace trace = new RenderTrace("index");
 			
 			// build and set header
 			HeaderAndFooterReader headerReader = new HeaderAndFooterReader(connection);
@@ -58,15 +61,18 @@ public class Index implements SkosPlayCliCommandIfc {
 			
 			IndexGenerator reader = new IndexGenerator(connection, args.getIndexType());
 			BodyReader bodyReader = new BodyReader(reader);
+			bodyReader.setTrace(trace);
 			document.setBody(bodyReader.readBody(args.getLang(), (args.getConceptScheme() != null)?SimpleValueFactory.getInstance().createIRI(args.getConceptScheme()):null));
 			
 			if(args.getFopConfigPath() != null) {
 				log.info("Will use FOP config file path : "+args.getFopConfigPath());
 			}
 	
-			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath()));
+			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath(), args.isOptimizePdf()));
 			printer.setStyle(args.getStyle());
+			printer.setTrace(trace);
 			printer.print(document, args.getOutput(), args.getLang(), args.getFormat());
+			System.out.println(trace.toSummary());
 		}
 		
 		// shutdown repos
@@ -0,0 +1,46 @@
+package fr.sparna.rdf.skos.printer.cli.labels;
+
+import java.io.File;
+import java.util.List;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.converters.FileConverter;
+
+@Parameters(commandDescription = "Builds a label bundle from dumps of a vocabulary, to be used when generating alignment reports.")
+public class ArgumentsLabels {
+
+	@Parameter(
+			names = { "-i", "--input" },
+			description = "RDF dump files of the vocabulary, possibly gzipped",
+			converter = FileConverter.class,
+			required = true,
+			variableArity = true
+	)
+	private List<File> input;
+	
+	@Parameter(
+			names = { "-o", "--output" },
+			description = "Output label bundle file",
+			converter = FileConverter.class,
+			required = true
+	)
+	private File output;
+
+	public List<File> getInput() {
+		return input;
+	}
+
+	public void setInput(List<File> input) {
+		this.input = input;
+	}
+
+	public File getOutput() {
+		return output;
+	}
+
+	public void setOutput(File output) {
+		this.output = output;
+	}
+	
+}
@@ -0,0 +1,31 @@
+package fr.sparna.rdf.skos.printer.cli.labels;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.skos.printer.cli.SkosPlayCliCommandIfc;
+import fr.sparna.rdf.skos.printer.reader.LabelBundle;
+import fr.sparna.rdf.skos.printer.reader.LabelBundleWriter;
+
+public class Labels implements SkosPlayCliCommandIfc {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	@Override
+	public void execute(Object o) throws Exception {
+		// retrieve arguments
+		ArgumentsLabels args = (ArgumentsLabels)o;
+
+		LabelBundleWriter writer = new LabelBundleWriter();
+		for (File aDump : args.getInput()) {
+			log.info("Reading labels from "+aDump+"...");
+			writer.read(aDump);
+		}
+		writer.write(args.getOutput());
+		
+		log.info("Label bundle written in "+args.getOutput()+" : "+LabelBundle.open(args.getOutput()).size()+" IRIs");
+	}
+
+}
@@ -61,14 +61,14 @@ public class NormalizeLabels implements SkosPlayCliCommandIfc {
 			List<Statement> statements = new ArrayList<Statement>();
 			for (Map.Entry<Resource, List<Literal>> anEntry : labels.entrySet()) {
 				for (Literal aLabel : anEntry.getValue()) {
-					String withoutAccents = fr.sparna.commons.lang.StringUtil.withoutAccents(aLabel.getLabel());
+					String withoutAccents = fr.sparna.commons.lang.AccentFolder.fold(aLabel.getLabel());
 					// only add the unaccented variant if different from the original label
 					if(!withoutAccents.equals(aLabel.getLabel())) {
 						statements.add(outputRepository.getValueFactory().createStatement(
 								anEntry.getKey(),
 								outputRepository.getValueFactory().createIRI(SKOS.HIDDEN_LABEL),
 								outputRepository.getValueFactory().createLiteral(
-										fr.sparna.commons.lang.StringUtil.withoutAccents(withoutAccents), 
+										withoutAccents,
 										aLabel.getLanguage().get()
 								)
 						));
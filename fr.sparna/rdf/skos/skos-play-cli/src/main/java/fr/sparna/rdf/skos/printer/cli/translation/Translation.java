@@ -16,6 +16,7 @@ import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.ApplyUpdates;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.cli.SkosPlayCliCommandIfc;
 import fr.sparna.rdf.skos.printer.reader.AbstractKosDisplayGenerator;
 import fr.sparna.rdf.skos.printer.reader.BodyReader;
@@ -45,6 +46,8 @@ public class Translation implements SkosPlayCliCommandIfc {
 			
 			// build result document
 			KosDocument document = new KosDocument();
+			// trace of the rendering stages, printed at the end
+			RenderTrace trace = new RenderTrace("translation");
 			
 			// prepare a list of generators
 			List<AbstractKosDisplayGenerator> generators = new ArrayList<AbstractKosDisplayGenerator>();
@@ -75,6 +78,7 @@ public class Translation implements SkosPlayCliCommandIfc {
 			}
 			
 			BodyReader bodyReader = new BodyReader(generators);
+			bodyReader.setTrace(trace);
 			document.setBody(bodyReader.readBody(args.getLang(), (args.getConceptScheme() != null)?SimpleValueFactory.getInstance().createIRI(args.getConceptScheme()):null));
 	
 			// if debug needed
@@ -86,9 +90,11 @@ public class Translation implements SkosPlayCliCommandIfc {
 			if(args.getFopConfigPath() != null) {
 				log.info("Will use FOP config file path : "+args.getFopConfigPath());
 			}
-			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath()));
+			DisplayPrinter printer = new DisplayPrinter(new FopProvider(args.getFopConfigPath(), args.isOptimizePdf()));
 			printer.setStyle(args.getStyle());
+			printer.setTrace(trace);
 			printer.print(document, args.getOutput(), args.getLang(), args.getFormat());
+			System.out.println(trace.toSummary());
 		}
 		
 		// shutdown repos
@@ -4,13 +4,9 @@ import java.io.File;
 import java.util.Map;
 import java.util.TreeMap;
 
-import org.eclipse.rdf4j.repository.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilder;
-import fr.sparna.rdf.rdf4j.toolkit.repository.init.LoadFromFileOrDirectory;
-
 
 /**
  * Everything that needs to be loaded at an application-wide level
@@ -23,10 +19,14 @@ public class ApplicationData {
 	
 	public static final String DEFAULT_THESAURUS_LABELS_BUNDLE = "thesaurus-labels";
 	
-	protected Map<String, Repository> exampleDatas;
+	// example datasets, compiled and loaded on first use
+	protected Map<String, ExampleDataset> exampleDatas;
 
 	protected String thesaurusDirectory;
 	
+	// where the snapshots of the example datasets are kept
+	protected File snapshotDirectory = new File(System.getProperty("java.io.tmpdir"), "skosplay-examples");
+	
 	protected String buildVersion;	
 	protected String buildTimestamp;
 	
@@ -38,24 +38,21 @@ public class ApplicationData {
 	}
 	
 	protected void init() {
-		// load example thesaurii included in the war
-        Map<String, Repository> exampleDataMap = new TreeMap<String, Repository>();
+		// list example thesaurii included in the war; they are parsed only when first selected
+        Map<String, ExampleDataset> exampleDataMap = new TreeMap<String, ExampleDataset>();
 		
-		// try to load example files included in SkosPlayProperties.PROP_THESAURUS_DIRECTORY
+		// try to find example files included in SkosPlayProperties.PROP_THESAURUS_DIRECTORY
 		if(thesaurusDirectory != null) {
-			log.debug("Pre-loading data from "+thesaurusDirectory);
+			log.debug("Listing example data in "+thesaurusDirectory);
 			File thesaurusDirectoryDir = new File(thesaurusDirectory);
 			if(thesaurusDirectoryDir.exists() && thesaurusDirectoryDir.list() != null) {
 				String[] dataFiles = thesaurusDirectoryDir.list();
 				for (String aFileName : dataFiles) {
 					if(!aFileName.endsWith(".properties")) {
-						log.debug("Pre-loading data from file/dir "+aFileName);
+						log.debug("Found example data file/dir "+aFileName);
 						File aFile = new File(thesaurusDirectoryDir, aFileName);
-						
-						RepositoryBuilder builder = new RepositoryBuilder();
-						builder.addOperation(new LoadFromFileOrDirectory(aFile.getAbsolutePath()));
 						// use the file name as a key
-						exampleDataMap.put(aFile.getName(), builder.get());
+						exampleDataMap.put(aFile.getName(), new ExampleDataset(aFile.getName(), aFile, this.snapshotDirectory));
 					}
 				}
 			}
@@ -74,14 +71,31 @@ public class ApplicationData {
 		return SkosPlayConfig.getInstance();
 	}
 
-	public Map<String, Repository> getExampleDatas() {
+	public Map<String, ExampleDataset> getExampleDatas() {
 		return exampleDatas;
 	}
 
-	public void setExampleDatas(Map<String, Repository> exampleDatas) {
+	public void setExampleDatas(Map<String, ExampleDataset> exampleDatas) {
 		this.exampleDatas = exampleDatas;
 	}
 
+	public File getSnapshotDirectory() {
+		return snapshotDirectory;
+	}
+
+	/**
+	 * Sets the directory where the snapshots of the example datasets are kept; ignored if empty
+	 */
+	public void setSnapshotDirectory(String snapshotDirectory) {
+		if(snapshotDirectory != null && !snapshotDirectory.trim().isEmpty()) {
+			this.snapshotDirectory = new File(snapshotDirectory.trim());
+			// examples were listed in the constructor with the default directory
+			for (ExampleDataset anExample : this.exampleDatas.values()) {
+				anExample.snapshotDirectory = this.snapshotDirectory;
+			}
+		}
+	}
+
 	public String getBuildVersion() {
 		return buildVersion;
 	}
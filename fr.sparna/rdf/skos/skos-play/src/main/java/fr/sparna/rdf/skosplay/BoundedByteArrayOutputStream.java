@@ -0,0 +1,67 @@
+package fr.sparna.rdf.skosplay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * An in-memory output stream refusing to hold more than a maximum number of bytes, so that reading an input in memory
+ * stops as soon as it is too large instead of exhausting the heap.
+ *
+ * @author Thomas Francart
+ */
+public class BoundedByteArrayOutputStream extends OutputStream {
+
+	// max number of bytes, 0 for no limit
+	protected long maxSize;
+
+	protected ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	public BoundedByteArrayOutputStream(long maxSize) {
+		super();
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Reads the given stream entirely in memory
+	 *
+	 * @param in		the stream to read, not closed
+	 * @param maxSize	max number of bytes to read, 0 for no limit
+	 * @throws InputTooLargeException if the stream holds more than maxSize bytes
+	 */
+	public static byte[] read(InputStream in, long maxSize) throws IOException {
+		BoundedByteArrayOutputStream out = new BoundedByteArrayOutputStream(maxSize);
+		IOUtils.copy(in, out);
+		return out.toByteArray();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		check(1);
+		this.bytes.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		check(len);
+		this.bytes.write(b, off, len);
+	}
+
+	public byte[] toByteArray() {
+		return this.bytes.toByteArray();
+	}
+
+	public int size() {
+		return this.bytes.size();
+	}
+
+	private void check(int len) throws InputTooLargeException {
+		if(this.maxSize > 0 && this.bytes.size() + (long)len > this.maxSize) {
+			throw new InputTooLargeException(this.maxSize);
+		}
+	}
+
+}
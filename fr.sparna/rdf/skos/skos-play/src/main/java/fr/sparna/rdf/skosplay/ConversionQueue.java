@@ -0,0 +1,530 @@
+package fr.sparna.rdf.skosplay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.skos.toolkit.Digests;
+import fr.sparna.rdf.xls2rdf.Xls2RdfConverter;
+import fr.sparna.rdf.xls2rdf.Xls2RdfPostProcessorIfc;
+import fr.sparna.rdf.xls2rdf.postprocess.SkosPostProcessor;
+import fr.sparna.rdf.xls2rdf.postprocess.SkosXlPostProcessor;
+import fr.sparna.rdf.xls2rdf.write.ModelWriterFactory;
+
+/**
+ * Runs the spreadsheet conversions on a bounded pool of threads rather than on the request threads.
+ * <p>At most <code>concurrency</code> conversions run at the same time, and at most <code>queueSize</code> wait for a
+ * thread; beyond that, {@link #submit(byte[], Options)} throws a {@link ConversionRejectedException} telling
+ * the client when to retry. Each submitted conversion is a {@link Job} that can be polled by its id until it expires;
+ * at most <code>maxJobs</code> jobs are kept, the oldest finished ones are forgotten first.
+ * <p>Results are kept in a bounded in-memory cache keyed by a digest of the input bytes and of the conversion options :
+ * converting the same spreadsheet again with the same options returns the cached output without queuing, and identical
+ * conversions submitted while one is running share its job.
+ *
+ * @author Thomas Francart
+ */
+public class ConversionQueue {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	public enum Status {
+		QUEUED,
+		RUNNING,
+		DONE,
+		FAILED
+	}
+
+	protected int concurrency;
+	protected ThreadPoolExecutor executor;
+
+	// max total size of the cached outputs, in bytes
+	protected long cacheMaxSize;
+	protected long cacheSize = 0;
+	// access-ordered, least recently used first
+	protected LinkedHashMap<String, Result> results = new LinkedHashMap<String, Result>(16, 0.75f, true);
+
+	// conversions queued or running, by key
+	protected Map<String, Job> inFlight = new HashMap<String, Job>();
+	// all jobs, by id, kept until they expire
+	protected Map<String, Job> jobs = new LinkedHashMap<String, Job>();
+	// time during which a finished job can be polled, in ms
+	protected long jobRetention;
+	// max number of jobs kept, finished or not
+	protected int maxJobs = 1000;
+
+	// average duration of a conversion, in ms, to estimate when a rejected client should retry
+	protected volatile long averageDuration = 5000;
+
+	protected long hits = 0;
+	protected long joined = 0;
+	protected long rejected = 0;
+
+	/**
+	 * @param concurrency	max number of conversions running at the same time
+	 * @param queueSize		max number of conversions waiting for a thread
+	 * @param cacheMaxSize	max total size of the cached outputs, in bytes, 0 to disable the cache
+	 * @param jobRetention	time during which a finished job can be polled, in ms
+	 */
+	public ConversionQueue(int concurrency, int queueSize, long cacheMaxSize, long jobRetention) {
+		super();
+		this.concurrency = concurrency;
+		this.cacheMaxSize = cacheMaxSize;
+		this.jobRetention = jobRetention;
+
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(
+				concurrency,
+				concurrency,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+				r -> {
+					Thread t = new Thread(r, "conversion-"+threadCount.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+		);
+	}
+
+	/**
+	 * Submits a conversion, or returns the job of an identical conversion already cached or running. Since jobs can be
+	 * shared between requests, what is specific to a request, like the name of the result file, is not kept in the job.
+	 *
+	 * @param input		the spreadsheet
+	 * @param options	the conversion options
+	 * @throws ConversionRejectedException if too many conversions are already waiting
+	 */
+	public Job submit(byte[] input, Options options) throws ConversionRejectedException {
+		String key = key(input, options);
+		synchronized (this) {
+			expireJobs();
+
+			Result cached = this.results.get(key);
+			if(cached != null) {
+				this.hits++;
+				Job job = new Job(key, options);
+				job.complete(cached);
+				addJob(job);
+				return job;
+			}
+
+			Job running = this.inFlight.get(key);
+			if(running != null) {
+				this.joined++;
+				return running;
+			}
+
+			Job job = new Job(key, options);
+			try {
+				this.executor.execute(() -> run(job, input));
+			} catch (RejectedExecutionException e) {
+				this.rejected++;
+				throw new ConversionRejectedException("Too many conversions in progress, retry later", getRetryAfter());
+			}
+			this.inFlight.put(key, job);
+			addJob(job);
+			return job;
+		}
+	}
+
+	protected void run(Job job, byte[] input) {
+		job.status = Status.RUNNING;
+		long start = System.currentTimeMillis();
+		try {
+			Result result = convert(input, job.getOptions());
+
+			long duration = System.currentTimeMillis() - start;
+			this.averageDuration = (this.averageDuration * 4 + duration) / 5;
+			log.debug("Converted "+input.length+" bytes in "+duration+" ms");
+			synchronized (this) {
+				this.inFlight.remove(job.getKey());
+				put(job.getKey(), result);
+			}
+			job.complete(result);
+		} catch (Throwable t) {
+			// errors too, so that the job does not stay in flight forever and the clients waiting for it are released
+			synchronized (this) {
+				this.inFlight.remove(job.getKey());
+			}
+			job.fail(t);
+			if(t instanceof Error) {
+				log.error("Conversion failed", t);
+				throw (Error)t;
+			}
+			log.warn("Conversion failed : "+t.getMessage());
+		}
+	}
+
+	/**
+	 * Converts a spreadsheet
+	 */
+	protected Result convert(byte[] input, Options options) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Xls2RdfConverter converter;
+		if(options.getLanguage() == null) {
+			converter = new Xls2RdfConverter(new ModelWriterFactory(options.isUseZip(), options.getFormat(), options.isUseGraph()).buildNewModelWriter(out));
+		} else {
+			converter = new Xls2RdfConverter(new ModelWriterFactory(options.isUseZip(), options.getFormat(), options.isUseGraph()).buildNewModelWriter(out), options.getLanguage());
+		}
+		converter.setFailIfNoReconcile(options.isFailIfNoReconcile());
+
+		List<Xls2RdfPostProcessorIfc> postProcessors = new ArrayList<>();
+		if(!options.isIgnorePostProc()) {
+			postProcessors.add((options.getBroaderTransitive() != null)?new SkosPostProcessor(options.getBroaderTransitive()):new SkosPostProcessor());
+			if(options.isUseSkosXl()) {
+				postProcessors.add(new SkosXlPostProcessor(true, true));
+			}
+		}
+		converter.setPostProcessors(postProcessors);
+		converter.processInputStream(new ByteArrayInputStream(input));
+
+		// sort to garantee order
+		List<String> identifiers = new ArrayList<String>(converter.getConvertedVocabularyIdentifiers());
+		Collections.sort(identifiers);
+		return new Result(out.toByteArray(), identifiers);
+	}
+
+	private void put(String key, Result result) {
+		if(result.getBytes().length > this.cacheMaxSize) {
+			return;
+		}
+		Result previous = this.results.put(key, result);
+		if(previous != null) {
+			this.cacheSize -= previous.getBytes().length;
+		}
+		this.cacheSize += result.getBytes().length;
+
+		Iterator<Map.Entry<String, Result>> it = this.results.entrySet().iterator();
+		while(this.cacheSize > this.cacheMaxSize && it.hasNext()) {
+			this.cacheSize -= it.next().getValue().getBytes().length;
+			it.remove();
+		}
+	}
+
+	private void expireJobs() {
+		long now = System.currentTimeMillis();
+		Iterator<Job> it = this.jobs.values().iterator();
+		while(it.hasNext()) {
+			Job aJob = it.next();
+			if(aJob.finished > 0 && now - aJob.finished > this.jobRetention) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Keeps a new job, forgetting the oldest finished jobs beyond the max number of jobs. Jobs that are not finished
+	 * are kept : there are at most as many as the threads and the queue can hold.
+	 */
+	private void addJob(Job job) {
+		this.jobs.put(job.getId(), job);
+		Iterator<Job> it = this.jobs.values().iterator();
+		while(this.jobs.size() > this.maxJobs && it.hasNext()) {
+			if(it.next().finished > 0) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the job with the given id, or null if it is unknown or expired
+	 */
+	public synchronized Job getJob(String id) {
+		expireJobs();
+		return this.jobs.get(id);
+	}
+
+	/**
+	 * @return the number of seconds after which a rejected client should retry, estimated from the average duration of
+	 * a conversion and the number of conversions waiting
+	 */
+	public int getRetryAfter() {
+		long waiting = this.executor.getQueue().size() + 1;
+		long estimate = (this.averageDuration * waiting) / Math.max(1, this.concurrency) / 1000;
+		return (int)Math.max(1, Math.min(estimate, 300));
+	}
+
+	public void close() {
+		this.executor.shutdownNow();
+	}
+
+	public synchronized int getMaxJobs() {
+		return maxJobs;
+	}
+
+	/**
+	 * @param maxJobs	max number of jobs kept, the oldest finished ones are forgotten first
+	 */
+	public synchronized void setMaxJobs(int maxJobs) {
+		this.maxJobs = maxJobs;
+	}
+
+	public synchronized int getJobCount() {
+		return this.jobs.size();
+	}
+
+	/**
+	 * Builds the cache key of a conversion from a digest of the input and the options
+	 */
+	public static String key(byte[] input, Options options) {
+		return Digests.sha256(input, options.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	public int getRunning() {
+		return this.executor.getActiveCount();
+	}
+
+	public int getQueued() {
+		return this.executor.getQueue().size();
+	}
+
+	public synchronized int getCacheCount() {
+		return this.results.size();
+	}
+
+	/**
+	 * @return the total size of the cached outputs, in bytes
+	 */
+	public synchronized long getCacheSize() {
+		return cacheSize;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getJoined() {
+		return joined;
+	}
+
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ConversionQueue [running=" + executor.getActiveCount() + ", queued=" + executor.getQueue().size() + ", cached=" + results.size() + ", cacheSize=" + cacheSize + ", hits=" + hits + ", joined=" + joined + ", rejected=" + rejected + ", averageDuration=" + averageDuration + "]";
+	}
+
+	/**
+	 * A conversion, submitted to the queue
+	 */
+	public static class Job {
+
+		protected String id = UUID.randomUUID().toString();
+		protected String key;
+		protected Options options;
+
+		protected volatile Status status = Status.QUEUED;
+		protected volatile String error;
+		protected volatile long finished = 0;
+		protected CompletableFuture<Result> future = new CompletableFuture<Result>();
+
+		public Job(String key, Options options) {
+			super();
+			this.key = key;
+			this.options = options;
+		}
+
+		protected void complete(Result result) {
+			this.status = Status.DONE;
+			this.finished = System.currentTimeMillis();
+			this.future.complete(result);
+		}
+
+		protected void fail(Throwable t) {
+			this.error = (t.getMessage() != null)?t.getMessage():t.toString();
+			this.status = Status.FAILED;
+			this.finished = System.currentTimeMillis();
+			this.future.completeExceptionally(t);
+		}
+
+		/**
+		 * Registers an action to run with the result when the conversion succeeds, immediately if it already did. The
+		 * action runs on the thread completing the job; each request sharing the job can register its own.
+		 */
+		public void onSuccess(Consumer<Result> action) {
+			this.future.thenAccept(result -> {
+				try {
+					action.accept(result);
+				} catch (RuntimeException e) {
+					LoggerFactory.getLogger(ConversionQueue.class.getName()).warn("Error after conversion "+this.id, e);
+				}
+			});
+		}
+
+		/**
+		 * Waits for the end of the conversion
+		 *
+		 * @throws TimeoutException if the conversion is not finished after the given time, in ms
+		 * @throws ExecutionException wrapping the exception that made the conversion fail
+		 */
+		public Result await(long timeout) throws InterruptedException, ExecutionException, TimeoutException {
+			return this.future.get(timeout, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * @return the result of the conversion, or null if it is not finished or failed
+		 */
+		public Result getResult() {
+			return (this.status == Status.DONE)?this.future.getNow(null):null;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public Options getOptions() {
+			return options;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public String getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * The output of a conversion, and the identifiers of the converted vocabularies
+	 */
+	public static class Result {
+
+		protected byte[] bytes;
+		protected List<String> identifiers;
+
+		public Result(byte[] bytes, List<String> identifiers) {
+			super();
+			this.bytes = bytes;
+			this.identifiers = identifiers;
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		public List<String> getIdentifiers() {
+			return identifiers;
+		}
+	}
+
+	/**
+	 * The options of a conversion; they are part of the cache key
+	 */
+	public static class Options {
+
+		protected String language;
+		protected RDFFormat format;
+		protected boolean useZip;
+		protected boolean useGraph;
+		protected boolean useSkosXl;
+		// null to use the default of the post processor
+		protected Boolean broaderTransitive;
+		protected boolean ignorePostProc;
+		protected boolean failIfNoReconcile;
+
+		public Options(String language, RDFFormat format, boolean useZip, boolean useGraph) {
+			super();
+			this.language = (language == null || language.trim().equals(""))?null:language;
+			this.format = format;
+			this.useZip = useZip;
+			this.useGraph = useGraph;
+		}
+
+		/**
+		 * @return the content type of the result
+		 */
+		public String getContentType() {
+			// toujours "application/zip" si on nous a demandé un zip, sinon il dépend du format de retour demandé
+			return (useZip)?"application/zip":format.getDefaultMIMEType();
+		}
+
+		/**
+		 * @return the extension of the result file
+		 */
+		public String getExtension() {
+			return (useZip)?"zip":format.getDefaultFileExtension();
+		}
+
+		public String getLanguage() {
+			return language;
+		}
+
+		public RDFFormat getFormat() {
+			return format;
+		}
+
+		public boolean isUseZip() {
+			return useZip;
+		}
+
+		public boolean isUseGraph() {
+			return useGraph;
+		}
+
+		public boolean isUseSkosXl() {
+			return useSkosXl;
+		}
+
+		public void setUseSkosXl(boolean useSkosXl) {
+			this.useSkosXl = useSkosXl;
+		}
+
+		public Boolean getBroaderTransitive() {
+			return broaderTransitive;
+		}
+
+		public void setBroaderTransitive(Boolean broaderTransitive) {
+			this.broaderTransitive = broaderTransitive;
+		}
+
+		public boolean isIgnorePostProc() {
+			return ignorePostProc;
+		}
+
+		public void setIgnorePostProc(boolean ignorePostProc) {
+			this.ignorePostProc = ignorePostProc;
+		}
+
+		public boolean isFailIfNoReconcile() {
+			return failIfNoReconcile;
+		}
+
+		public void setFailIfNoReconcile(boolean failIfNoReconcile) {
+			this.failIfNoReconcile = failIfNoReconcile;
+		}
+
+		@Override
+		public String toString() {
+			return "Options [language=" + language + ", format=" + format.getName() + ", useZip=" + useZip + ", useGraph=" + useGraph + ", useSkosXl=" + useSkosXl + ", broaderTransitive=" + broaderTransitive + ", ignorePostProc=" + ignorePostProc + ", failIfNoReconcile=" + failIfNoReconcile + "]";
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package fr.sparna.rdf.skosplay;
+
+/**
+ * Thrown by the {@link ConversionQueue} when too many conversions are already waiting.
+ *
+ * @author Thomas Francart
+ */
+public class ConversionRejectedException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	// number of seconds after which the client should retry
+	protected int retryAfter;
+
+	public ConversionRejectedException(String message, int retryAfter) {
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+}
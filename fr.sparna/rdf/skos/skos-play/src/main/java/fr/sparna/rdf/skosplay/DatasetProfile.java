@@ -0,0 +1,111 @@
+package fr.sparna.rdf.skosplay;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * What the upload page needs to know about a dataset (number of concepts, hierarchy, translations, alignments, license
+ * and languages), computed once and saved along with the snapshot of an example dataset, so that selecting an example
+ * does not run these queries again.
+ *
+ * @author Thomas Francart
+ */
+public class DatasetProfile {
+
+	protected int conceptCount;
+	protected boolean hierarchical;
+	protected boolean multilingual;
+	protected boolean aligned;
+	protected String license;
+	protected Set<String> languages = new TreeSet<String>();
+
+	public DatasetProfile() {
+		super();
+	}
+
+	/**
+	 * Computes the profile of the data in the given model
+	 */
+	public static DatasetProfile compute(SkosPlayModel model) {
+		DatasetProfile profile = new DatasetProfile();
+		profile.conceptCount = model.getConceptCount();
+		profile.hierarchical = model.isHierarchical();
+		profile.multilingual = model.isMultilingual();
+		profile.aligned = model.isAligned();
+		profile.license = model.getLicense();
+		profile.languages.addAll(model.getLanguages());
+		return profile;
+	}
+
+	public static DatasetProfile read(File file) throws IOException {
+		Properties p = new Properties();
+		try(InputStream in = new FileInputStream(file)) {
+			p.load(in);
+		}
+		DatasetProfile profile = new DatasetProfile();
+		profile.conceptCount = Integer.parseInt(p.getProperty("conceptCount"));
+		profile.hierarchical = Boolean.parseBoolean(p.getProperty("hierarchical"));
+		profile.multilingual = Boolean.parseBoolean(p.getProperty("multilingual"));
+		profile.aligned = Boolean.parseBoolean(p.getProperty("aligned"));
+		profile.license = p.getProperty("license");
+		String languages = p.getProperty("languages", "");
+		if(!languages.isEmpty()) {
+			profile.languages.addAll(Arrays.asList(languages.split(",")));
+		}
+		return profile;
+	}
+
+	public void write(File file) throws IOException {
+		Properties p = new Properties();
+		p.setProperty("conceptCount", Integer.toString(this.conceptCount));
+		p.setProperty("hierarchical", Boolean.toString(this.hierarchical));
+		p.setProperty("multilingual", Boolean.toString(this.multilingual));
+		p.setProperty("aligned", Boolean.toString(this.aligned));
+		if(this.license != null) {
+			p.setProperty("license", this.license);
+		}
+		p.setProperty("languages", String.join(",", this.languages));
+		try(OutputStream out = new FileOutputStream(file)) {
+			p.store(out, "SKOS Play dataset profile");
+		}
+	}
+
+	public int getConceptCount() {
+		return conceptCount;
+	}
+
+	public boolean isHierarchical() {
+		return hierarchical;
+	}
+
+	public boolean isMultilingual() {
+		return multilingual;
+	}
+
+	public boolean isAligned() {
+		return aligned;
+	}
+
+	public String getLicense() {
+		return license;
+	}
+
+	public Set<String> getLanguages() {
+		return languages;
+	}
+
+	@Override
+	public String toString() {
+		return "DatasetProfile [conceptCount=" + conceptCount + ", hierarchical=" + hierarchical + ", multilingual="
+				+ multilingual + ", aligned=" + aligned + ", languages=" + languages + "]";
+	}
+
+}
@@ -0,0 +1,610 @@
+package fr.sparna.rdf.skosplay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilder;
+
+/**
+ * Shares the repositories of identical datasets between the sessions that load them, so that memory grows with the
+ * number of distinct datasets rather than with the number of sessions.
+ * <p>Datasets are identified by a key computed from their content : a hash of the uploaded bytes, or the fingerprint
+ * of the loaded triples, along with the options used to load them. Each session holding a dataset owns a reference on
+ * it : {@link #acquire(String, Supplier)} registers the dataset, loading it if needed, {@link #get(String)} returns its
+ * repository, and {@link #release(String)} gives the reference back; a dataset is unloaded when its last reference is
+ * released.
+ * <p>Shared repositories must be considered read-only : a session that needs to modify its data (OWL to SKOS or
+ * SKOS-XL to SKOS rules) works on a copy, which is itself registered under a key derived from the original one, see
+ * <code>SkosPlayModel</code>.
+ * <p>Datasets that have not been accessed for the configured idle time are spilled to a binary RDF snapshot in the
+ * spill directory, and their repository is dropped from memory; the next call to {@link #get(String)} reloads the snapshot
+ * in a new repository. Datasets are also spilled, least recently used first, when the estimated memory of the datasets in
+ * memory exceeds the configured heap budget. Since shared repositories are never modified, the snapshot of a dataset is
+ * written once and reused if it is spilled again. The snapshot contains the inferred statements, so that datasets loaded
+ * with RDFS inference are reloaded in a plain memory store.
+ * <p>Datasets that already have a snapshot on disk, like the examples of the application, can be registered with
+ * {@link #acquire(String, File)} : they are loaded from the snapshot on first access only, and their snapshot is kept
+ * when they are released.
+ * <p>A repository dropped from memory, either spilled or released, is not shut down, so that a request still using it
+ * can finish; it is garbage collected once that request completes.
+ * <p>The memory used by each dataset is estimated when it is registered, and reported by {@link #getDatasets()}.
+ * The registry can be used by multiple threads.
+ *
+ * @author Thomas Francart
+ */
+public class DatasetRegistry {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	// estimated cost of a statement in a memory store : statement object, and its entries in the indexes of its values
+	private static final int BYTES_PER_STATEMENT = 160;
+	// estimated cost of a literal value, in addition to 2 bytes per character
+	private static final int BYTES_PER_LITERAL = 64;
+
+	protected Map<String, Dataset> datasets = new HashMap<String, Dataset>();
+
+	// time after which a dataset that was not accessed is spilled to disk, in ms; 0 to never spill idle datasets
+	protected long idleTime = 0;
+	// max estimated memory of the datasets in memory, in bytes; 0 for no limit
+	protected long heapBudget = 0;
+	// directory where snapshots are written
+	protected File spillDirectory = new File(System.getProperty("java.io.tmpdir"), "skosplay-datasets");
+
+	// checks idle datasets periodically, started when an idle time is set
+	protected ScheduledExecutorService spillScheduler;
+
+	/**
+	 * Registers the dataset with the given key, loading it with the given loader if it is not registered yet, and adds a
+	 * reference to it. Concurrent calls with the same key load the repository only once.
+	 *
+	 * @param key		the key of the dataset
+	 * @param loader	loads the repository, called only if no dataset is registered under this key
+	 * @return the repository of the dataset; the reference is to be released with {@link #release(String)}
+	 */
+	public Repository acquire(String key, Supplier<Repository> loader) {
+		Dataset dataset;
+		synchronized (this) {
+			dataset = this.datasets.get(key);
+			if(dataset == null) {
+				dataset = new Dataset(key);
+				this.datasets.put(key, dataset);
+			}
+			dataset.references++;
+			dataset.lastAccess = System.currentTimeMillis();
+		}
+
+		Repository repository;
+		// load outside of the registry lock, so that loading a dataset does not block the others
+		synchronized (dataset) {
+			if(!dataset.isLoaded()) {
+				try {
+					long start = System.currentTimeMillis();
+					dataset.repository = loader.get();
+					dataset.estimate();
+					log.info("Registered dataset "+key+" ("+dataset.statements+" statements, ~"+(dataset.estimatedSize / 1024)+" KB) in "+(System.currentTimeMillis() - start)+" ms, "+this);
+				} catch (RuntimeException e) {
+					synchronized (this) {
+						dataset.references--;
+						if(dataset.references == 0 && this.datasets.get(key) == dataset) {
+							this.datasets.remove(key);
+						}
+					}
+					throw e;
+				}
+			} else {
+				log.debug("Sharing dataset "+key+" ("+dataset.references+" references)");
+			}
+			repository = dataset.getRepository();
+		}
+
+		enforceHeapBudget(dataset);
+		return repository;
+	}
+
+	/**
+	 * Registers a repository that was already loaded. If a dataset is already registered under the same key, the given
+	 * repository is shut down and the registered one is returned instead.
+	 *
+	 * @return the repository of the dataset; the reference is to be released with {@link #release(String)}
+	 */
+	public Repository acquire(String key, Repository loaded) {
+		Repository shared = acquire(key, () -> loaded);
+		if(shared != loaded) {
+			loaded.shutDown();
+		}
+		return shared;
+	}
+
+	/**
+	 * Registers the dataset with the given key, to be loaded from the given snapshot on first access, and adds a
+	 * reference to it. The snapshot is not deleted when the dataset is released, and is never rewritten.
+	 *
+	 * @param key		the key of the dataset
+	 * @param snapshot	a binary RDF file containing the dataset
+	 */
+	public void acquire(String key, File snapshot) {
+		synchronized (this) {
+			Dataset dataset = this.datasets.get(key);
+			if(dataset == null) {
+				dataset = new Dataset(key);
+				dataset.snapshot = snapshot;
+				dataset.deleteSnapshot = false;
+				this.datasets.put(key, dataset);
+				log.info("Registered dataset "+key+" from snapshot "+snapshot+", "+this);
+			}
+			dataset.references++;
+			dataset.lastAccess = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Adds a reference to a dataset that is already registered, without loading it.
+	 *
+	 * @return true if the dataset is registered, false if it is not, in which case no reference was added
+	 */
+	public synchronized boolean retain(String key) {
+		Dataset dataset = this.datasets.get(key);
+		if(dataset == null) {
+			return false;
+		}
+		dataset.references++;
+		dataset.lastAccess = System.currentTimeMillis();
+		return true;
+	}
+
+	/**
+	 * Returns the repository of a registered dataset, reloading it from its snapshot if it was spilled to disk.
+	 * Callers should not keep the returned repository longer than a request.
+	 * <p>A reference is held on the dataset while it is read, so that a concurrent release of its last reference
+	 * cannot drop it between the lookup and the read.
+	 *
+	 * @return the repository, or null if no dataset is registered with this key
+	 */
+	public Repository get(String key) {
+		Dataset dataset;
+		synchronized (this) {
+			dataset = this.datasets.get(key);
+			if(dataset == null) {
+				return null;
+			}
+			dataset.references++;
+			dataset.lastAccess = System.currentTimeMillis();
+		}
+
+		boolean reloaded;
+		Repository repository;
+		try {
+			synchronized (dataset) {
+				reloaded = (dataset.repository == null);
+				repository = dataset.getRepository();
+			}
+		} finally {
+			release(dataset);
+		}
+		if(reloaded) {
+			enforceHeapBudget(dataset);
+		}
+		return repository;
+	}
+
+	/**
+	 * Releases a reference on a dataset, unloading it and deleting its snapshot if it was the last one. The repository
+	 * is dropped, not shut down : a request that obtained it before the release, like a print running while its session
+	 * expires, can still read it, and it is garbage collected once that request completes.
+	 */
+	public void release(String key) {
+		Dataset dataset;
+		synchronized (this) {
+			dataset = this.datasets.get(key);
+		}
+		if(dataset != null) {
+			release(dataset);
+		}
+	}
+
+	protected void release(Dataset dataset) {
+		synchronized (this) {
+			dataset.references--;
+			if(dataset.references > 0) {
+				return;
+			}
+			if(this.datasets.get(dataset.key) == dataset) {
+				this.datasets.remove(dataset.key);
+			}
+		}
+		log.info("Releasing dataset "+dataset.key+", no more references, "+this);
+		synchronized (dataset) {
+			dataset.repository = null;
+			if(dataset.snapshot != null && dataset.deleteSnapshot) {
+				dataset.snapshot.delete();
+			}
+			dataset.snapshot = null;
+		}
+	}
+
+	/**
+	 * Spills to disk the datasets that were not accessed during the idle time
+	 */
+	public void spillIdleDatasets() {
+		if(this.idleTime <= 0) {
+			return;
+		}
+		long limit = System.currentTimeMillis() - this.idleTime;
+		for (Dataset aDataset : snapshotOfDatasets()) {
+			if(aDataset.lastAccess < limit) {
+				spill(aDataset);
+			}
+		}
+	}
+
+	/**
+	 * Spills the least recently used datasets until the datasets in memory fit in the heap budget. The given dataset,
+	 * which was just accessed, is never spilled.
+	 */
+	protected void enforceHeapBudget(Dataset justAccessed) {
+		if(this.heapBudget <= 0) {
+			return;
+		}
+		List<Dataset> datasets = snapshotOfDatasets();
+		long inMemory = 0;
+		for (Dataset aDataset : datasets) {
+			if(aDataset.repository != null) {
+				inMemory += aDataset.estimatedSize;
+			}
+		}
+		if(inMemory <= this.heapBudget) {
+			return;
+		}
+
+		datasets.sort(Comparator.comparingLong((Dataset d) -> d.lastAccess));
+		for (Dataset aDataset : datasets) {
+			if(inMemory <= this.heapBudget) {
+				break;
+			}
+			if(aDataset != justAccessed && aDataset.repository != null && spill(aDataset)) {
+				inMemory -= aDataset.estimatedSize;
+			}
+		}
+		if(inMemory > this.heapBudget) {
+			log.warn("Datasets in memory use ~"+(inMemory / 1024 / 1024)+" MB, above the heap budget of "+(this.heapBudget / 1024 / 1024)+" MB");
+		}
+	}
+
+	/**
+	 * Writes the snapshot of the dataset if needed, and drops its repository from memory
+	 *
+	 * @return true if the dataset was spilled
+	 */
+	protected boolean spill(Dataset dataset) {
+		synchronized (dataset) {
+			if(dataset.repository == null) {
+				return false;
+			}
+			if(dataset.snapshot == null) {
+				long start = System.currentTimeMillis();
+				try {
+					dataset.snapshot = writeSnapshot(dataset.repository);
+				} catch (Exception e) {
+					log.error("Cannot write snapshot of dataset "+dataset.key+", keeping it in memory", e);
+					return false;
+				}
+				log.info("Wrote snapshot of dataset "+dataset.key+" to "+dataset.snapshot+" ("+dataset.snapshot.length()+" bytes) in "+(System.currentTimeMillis() - start)+" ms");
+			}
+			// the repository is not shut down, a request may still be reading it
+			dataset.repository = null;
+			log.debug("Spilled dataset "+dataset.key);
+			return true;
+		}
+	}
+
+	protected File writeSnapshot(Repository repository) throws IOException {
+		this.spillDirectory.mkdirs();
+		File snapshot = File.createTempFile("dataset-", ".brf", this.spillDirectory);
+		snapshot.deleteOnExit();
+		try(
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(snapshot), 64 * 1024);
+				RepositoryConnection connection = repository.getConnection()
+		) {
+			// include inferred statements, since the snapshot is reloaded in a store without inference
+			connection.exportStatements(null, null, null, true, Rio.createWriter(RDFFormat.BINARY, out));
+		} catch (IOException | RuntimeException e) {
+			snapshot.delete();
+			throw e;
+		}
+		return snapshot;
+	}
+
+	protected static Repository readSnapshot(File snapshot) {
+		Repository repository = new RepositoryBuilder().get();
+		try(
+				InputStream in = new BufferedInputStream(new FileInputStream(snapshot), 64 * 1024);
+				RepositoryConnection connection = repository.getConnection()
+		) {
+			connection.add(in, "", RDFFormat.BINARY);
+		} catch (IOException e) {
+			repository.shutDown();
+			throw new RuntimeException("Cannot read dataset snapshot "+snapshot, e);
+		}
+		return repository;
+	}
+
+	/**
+	 * Stops checking idle datasets, shuts down the repositories in memory and deletes the snapshots written by the
+	 * registry. To be called when the application stops; the registry cannot be used afterwards.
+	 */
+	public void close() {
+		List<Dataset> datasets;
+		synchronized (this) {
+			if(this.spillScheduler != null) {
+				this.spillScheduler.shutdownNow();
+				this.spillScheduler = null;
+			}
+			datasets = new ArrayList<Dataset>(this.datasets.values());
+			this.datasets.clear();
+		}
+		log.info("Closing "+datasets.size()+" datasets");
+		for (Dataset aDataset : datasets) {
+			synchronized (aDataset) {
+				if(aDataset.repository != null) {
+					try {
+						aDataset.repository.shutDown();
+					} catch (Exception e) {
+						log.warn("Cannot shut down repository of dataset "+aDataset.key, e);
+					}
+					aDataset.repository = null;
+				}
+				if(aDataset.snapshot != null && aDataset.deleteSnapshot) {
+					aDataset.snapshot.delete();
+				}
+				aDataset.snapshot = null;
+			}
+		}
+	}
+
+	private synchronized List<Dataset> snapshotOfDatasets() {
+		return new ArrayList<Dataset>(this.datasets.values());
+	}
+
+	/**
+	 * @return a snapshot of the registered datasets
+	 */
+	public synchronized List<DatasetInfo> getDatasets() {
+		List<DatasetInfo> result = new ArrayList<DatasetInfo>();
+		for (Dataset aDataset : this.datasets.values()) {
+			result.add(new DatasetInfo(aDataset.key, aDataset.references, aDataset.statements, aDataset.estimatedSize, aDataset.loadedAt, aDataset.repository == null));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the estimated memory used by the datasets currently in memory, in bytes
+	 */
+	public synchronized long getEstimatedSize() {
+		long size = 0;
+		for (Dataset aDataset : this.datasets.values()) {
+			if(aDataset.repository != null) {
+				size += aDataset.estimatedSize;
+			}
+		}
+		return size;
+	}
+
+	public long getIdleTime() {
+		return idleTime;
+	}
+
+	/**
+	 * Sets the time after which a dataset that was not accessed is spilled to disk, and starts checking idle datasets
+	 * periodically.
+	 *
+	 * @param idleTime	idle time in ms, 0 to never spill idle datasets
+	 */
+	public synchronized void setIdleTime(long idleTime) {
+		this.idleTime = idleTime;
+		if(this.spillScheduler != null) {
+			this.spillScheduler.shutdownNow();
+			this.spillScheduler = null;
+		}
+		if(idleTime > 0) {
+			this.spillScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "dataset-spill");
+				t.setDaemon(true);
+				return t;
+			});
+			long period = Math.max(1000, idleTime / 4);
+			this.spillScheduler.scheduleWithFixedDelay(() -> {
+				try {
+					spillIdleDatasets();
+				} catch (Exception e) {
+					log.error("Error while spilling idle datasets", e);
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public long getHeapBudget() {
+		return heapBudget;
+	}
+
+	/**
+	 * @param heapBudget	max estimated memory of the datasets in memory, in bytes; 0 for no limit
+	 */
+	public void setHeapBudget(long heapBudget) {
+		this.heapBudget = heapBudget;
+	}
+
+	public File getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	@Override
+	public synchronized String toString() {
+		int references = 0;
+		int spilled = 0;
+		for (Dataset aDataset : this.datasets.values()) {
+			references += aDataset.references;
+			if(aDataset.repository == null) {
+				spilled++;
+			}
+		}
+		return "DatasetRegistry [datasets=" + this.datasets.size() + ", spilled=" + spilled + ", references=" + references + ", estimatedSize=" + getEstimatedSize() + "]";
+	}
+
+	/**
+	 * A registered dataset. The repository and the snapshot are guarded by the dataset itself; the references and the
+	 * last access time by the registry.
+	 */
+	protected static class Dataset {
+		protected String key;
+		// null if the dataset is not loaded yet, or spilled to disk
+		protected volatile Repository repository;
+		// snapshot of the dataset, written the first time it is spilled
+		protected File snapshot;
+		// false if the snapshot was not written by the registry and must be kept
+		protected boolean deleteSnapshot = true;
+		protected int references = 0;
+		protected volatile long lastAccess;
+		protected long statements;
+		protected long estimatedSize;
+		protected long loadedAt;
+
+		public Dataset(String key) {
+			this.key = key;
+		}
+
+		protected boolean isLoaded() {
+			return this.repository != null || this.snapshot != null;
+		}
+
+		/**
+		 * @return the repository, reloaded from the snapshot if needed
+		 */
+		protected Repository getRepository() {
+			if(this.repository == null && this.snapshot != null) {
+				long start = System.currentTimeMillis();
+				this.repository = readSnapshot(this.snapshot);
+				if(this.loadedAt == 0) {
+					// registered from an existing snapshot, never estimated
+					estimate();
+				}
+				LoggerFactory.getLogger(DatasetRegistry.class.getName()).debug("Reloaded dataset "+this.key+" from "+this.snapshot+" in "+(System.currentTimeMillis() - start)+" ms");
+			}
+			return this.repository;
+		}
+
+		/**
+		 * Estimates the memory used by the repository from its number of statements and the size of its literals.
+		 * IRIs are not counted since they are mostly shared between statements.
+		 */
+		protected void estimate() {
+			long count = 0;
+			long size = 0;
+			try(
+					RepositoryConnection connection = this.repository.getConnection();
+					RepositoryResult<Statement> statements = connection.getStatements(null, null, null, true)
+			) {
+				while(statements.hasNext()) {
+					Value object = statements.next().getObject();
+					count++;
+					size += BYTES_PER_STATEMENT;
+					if(object instanceof Literal) {
+						size += BYTES_PER_LITERAL + 2 * ((Literal)object).getLabel().length();
+					}
+				}
+			}
+			this.statements = count;
+			this.estimatedSize = size;
+			this.loadedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Description of a registered dataset, for reporting
+	 */
+	public static class DatasetInfo {
+		protected String key;
+		protected int references;
+		protected long statements;
+		protected long estimatedSize;
+		protected long loadedAt;
+		protected boolean spilled;
+
+		public DatasetInfo(String key, int references, long statements, long estimatedSize, long loadedAt, boolean spilled) {
+			this.key = key;
+			this.references = references;
+			this.statements = statements;
+			this.estimatedSize = estimatedSize;
+			this.loadedAt = loadedAt;
+			this.spilled = spilled;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the number of sessions (or requests) holding this dataset
+		 */
+		public int getReferences() {
+			return references;
+		}
+
+		public long getStatements() {
+			return statements;
+		}
+
+		/**
+		 * @return the estimated memory used by this dataset when it is in memory, in bytes
+		 */
+		public long getEstimatedSize() {
+			return estimatedSize;
+		}
+
+		public long getLoadedAt() {
+			return loadedAt;
+		}
+
+		/**
+		 * @return true if the dataset is currently spilled to disk
+		 */
+		public boolean isSpilled() {
+			return spilled;
+		}
+
+		@Override
+		public String toString() {
+			return "DatasetInfo [key=" + key + ", references=" + references + ", statements=" + statements + ", estimatedSize=" + estimatedSize + ", spilled=" + spilled + "]";
+		}
+	}
+
+}
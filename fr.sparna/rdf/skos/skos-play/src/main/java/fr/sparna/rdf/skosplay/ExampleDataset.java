@@ -0,0 +1,150 @@
+package fr.sparna.rdf.skosplay;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilder;
+import fr.sparna.rdf.rdf4j.toolkit.repository.init.LoadFromFileOrDirectory;
+
+/**
+ * An example dataset included in the application, compiled on first use into a binary RDF snapshot along with its
+ * {@link DatasetProfile}. The snapshot and the profile are kept in the snapshot directory and reused after a restart,
+ * as long as they are more recent than the example file.
+ * <p>The example is not kept in memory here : sessions selecting it register its snapshot in the
+ * {@link DatasetRegistry}, which loads it once for all these sessions and unloads it when it is not used anymore.
+ *
+ * @author Thomas Francart
+ */
+public class ExampleDataset {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	protected String name;
+	// the example file, or directory of files
+	protected File source;
+	protected File snapshotDirectory;
+
+	// null until compiled
+	protected File snapshot;
+	protected DatasetProfile profile;
+
+	public ExampleDataset(String name, File source, File snapshotDirectory) {
+		super();
+		this.name = name;
+		this.source = source;
+		this.snapshotDirectory = snapshotDirectory;
+	}
+
+	/**
+	 * @return the binary RDF snapshot of the example, compiled if needed
+	 */
+	public synchronized File getSnapshot() throws IOException {
+		compile();
+		return snapshot;
+	}
+
+	/**
+	 * @return the profile of the example, compiled if needed
+	 */
+	public synchronized DatasetProfile getProfile() throws IOException {
+		compile();
+		return profile;
+	}
+
+	protected void compile() throws IOException {
+		if(this.snapshot != null) {
+			return;
+		}
+
+		File snapshotFile = new File(this.snapshotDirectory, this.name+".brf");
+		File profileFile = new File(this.snapshotDirectory, this.name+".profile.properties");
+
+		// reuse the snapshot of a previous run if the example did not change since
+		if(snapshotFile.exists() && profileFile.exists() && snapshotFile.lastModified() >= lastModified(this.source)) {
+			try {
+				this.profile = DatasetProfile.read(profileFile);
+				this.snapshot = snapshotFile;
+				log.debug("Reusing snapshot "+snapshotFile+" of example "+this.name);
+				return;
+			} catch (Exception e) {
+				log.warn("Cannot read profile "+profileFile+" of example "+this.name+", compiling it again", e);
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		RepositoryBuilder builder = new RepositoryBuilder();
+		builder.addOperation(new LoadFromFileOrDirectory(this.source.getAbsolutePath()));
+		Repository repository = builder.get();
+		try {
+			SkosPlayModel model = new SkosPlayModel();
+			model.setRepository(repository);
+			DatasetProfile computedProfile = DatasetProfile.compute(model);
+
+			this.snapshotDirectory.mkdirs();
+			// write in a temporary file first, so that an interrupted compilation does not leave a truncated snapshot
+			File tmp = File.createTempFile(this.name+"-", ".tmp", this.snapshotDirectory);
+			try {
+				try(
+						OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024);
+						RepositoryConnection connection = repository.getConnection()
+				) {
+					connection.exportStatements(null, null, null, true, Rio.createWriter(RDFFormat.BINARY, out));
+				}
+				Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				tmp.delete();
+			}
+			computedProfile.write(profileFile);
+
+			this.profile = computedProfile;
+			this.snapshot = snapshotFile;
+			log.info("Compiled example "+this.name+" to "+snapshotFile+" ("+snapshotFile.length()+" bytes, "+computedProfile+") in "+(System.currentTimeMillis() - start)+" ms");
+		} finally {
+			repository.shutDown();
+		}
+	}
+
+	private static long lastModified(File f) {
+		long result = f.lastModified();
+		File[] children = f.listFiles();
+		if(children != null) {
+			for (File aChild : children) {
+				result = Math.max(result, lastModified(aChild));
+			}
+		}
+		return result;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public File getSource() {
+		return source;
+	}
+
+	/**
+	 * @return true if the example was already compiled
+	 */
+	public synchronized boolean isCompiled() {
+		return snapshot != null;
+	}
+
+	@Override
+	public String toString() {
+		return "ExampleDataset [name=" + name + ", source=" + source + ", compiled=" + (snapshot != null) + "]";
+	}
+
+}
@@ -0,0 +1,25 @@
+package fr.sparna.rdf.skosplay;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a spreadsheet to convert is larger than the maximum input size.
+ *
+ * @author Thomas Francart
+ */
+public class InputTooLargeException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	protected long maxSize;
+
+	public InputTooLargeException(long maxSize) {
+		super("Input is larger than the maximum allowed size of "+maxSize+" bytes");
+		this.maxSize = maxSize;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+}
@@ -79,6 +79,10 @@ public class SessionData implements Serializable {
 	}
 
 	public void setSkosPlayModel(SkosPlayModel skosPlayModel) {
+		// give back the previous data, possibly shared with other sessions
+		if(this.skosPlayModel != null && this.skosPlayModel != skosPlayModel) {
+			this.skosPlayModel.release();
+		}
 		this.skosPlayModel = skosPlayModel;
 	}
 
@@ -0,0 +1,32 @@
+package fr.sparna.rdf.skosplay;
+
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gives back the data loaded by a session to the {@link DatasetRegistry} when the session expires, so that datasets
+ * that are not used by any session anymore are unloaded.
+ * 
+ * @author Thomas Francart
+ */
+public class SessionDatasetReleaseListener implements HttpSessionListener {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+	
+	@Override
+	public void sessionCreated(HttpSessionEvent event) {
+	}
+
+	@Override
+	public void sessionDestroyed(HttpSessionEvent event) {
+		SessionData sessionData = SessionData.get(event.getSession());
+		if(sessionData != null && sessionData.getSkosPlayModel() != null) {
+			log.debug("Session "+event.getSession().getId()+" destroyed, releasing its data");
+			sessionData.getSkosPlayModel().release();
+		}
+	}
+
+}
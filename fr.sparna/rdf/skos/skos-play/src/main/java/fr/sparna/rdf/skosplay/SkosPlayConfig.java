@@ -1,14 +1,27 @@
 package fr.sparna.rdf.skosplay;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.rdf4j.rio.RDFFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
+import fr.sparna.commons.xml.fop.FopProvider;
+import fr.sparna.rdf.skos.printer.KosDocumentCache;
+import fr.sparna.rdf.skos.printer.reader.AlignmentDataHarvesterCachedLoader;
+import fr.sparna.rdf.skos.printer.reader.ConceptBlockCache;
+import fr.sparna.rdf.skos.printer.reader.LabelBundle;
+import fr.sparna.rdf.skos.toolkit.cache.QueryResultCache;
 import fr.sparna.rdf.skosplay.log.DBConnectionManager;
 import fr.sparna.rdf.skosplay.log.SQLLogDao;
 import fr.sparna.rdf.skosplay.log.SQLQueryRegistry;
@@ -41,6 +54,56 @@ public class SkosPlayConfig {
 	// application title to be inserted in HTML pages
 	protected String applicationTitle;
 	
+	// labels of well-known vocabularies, used when generating alignment displays
+	protected List<LabelBundle> labelBundles = new ArrayList<LabelBundle>();
+	
+	// harvests the aligned concepts for the alignment displays, created on first use so that all the requests share
+	// its disk cache, its per-host connection limits and its circuit breaker
+	protected AlignmentDataHarvesterCachedLoader alignmentHarvester;
+	protected String alignmentCacheDirectory;
+	
+	// generated documents, reused when printing the same display in another format or user language
+	protected KosDocumentCache documentCache = new KosDocumentCache(64 * 1024 * 1024);
+	
+	// gzipped JSON payloads of the visualizations
+	protected VizPayloadCache vizPayloadCache = new VizPayloadCache(32 * 1024 * 1024);
+	
+	// concept blocks attributes, reused when the same dataset is printed again in another display or format
+	protected ConceptBlockCache conceptBlockCache = new ConceptBlockCache(100000);
+	
+	// reads the displays and the concept blocks of the printed documents concurrently, shared by all the requests so
+	// that the number of threads does not grow with the number of requests; started on first use
+	protected ExecutorService printExecutor;
+	protected int printThreads = Runtime.getRuntime().availableProcessors();
+	
+	// shared by all PDF renderings, so that fonts are loaded only once
+	protected FopProvider fopProvider = new FopProvider();
+	
+	// repositories of the datasets loaded by the sessions, shared between sessions loading the same data
+	protected DatasetRegistry datasetRegistry = new DatasetRegistry();
+	
+	// datasets loaded from URLs, revalidated with conditional requests
+	protected UrlDatasetCache urlDatasetCache = new UrlDatasetCache(datasetRegistry);
+	
+	// results of the queries sent to SPARQL endpoints, opened on first use
+	protected QueryResultCache endpointCache;
+	protected String endpointCacheDirectory;
+	protected int endpointCacheTtlMinutes = 60;
+	protected int endpointCacheMaxSize = 256;
+	protected int endpointCacheMaxRows = 100000;
+	
+	// conversions of spreadsheets, started on first use
+	protected ConversionQueue conversionQueue;
+	protected int conversionConcurrency = 2;
+	protected int conversionQueueSize = 10;
+	protected int conversionCacheMaxSize = 64;
+	protected int conversionJobRetentionMinutes = 10;
+	protected int conversionMaxJobs = 1000;
+	// time during which a request waits for its conversion before being answered that it is still running, in s
+	protected int conversionWaitSeconds = 120;
+	// max size of a spreadsheet to convert, in MB, 0 for no limit
+	protected int conversionMaxInputSize = 20;
+	
 
 	protected SQLQueryRegistry sqlQueryRegistry;
 
@@ -158,6 +221,296 @@ public class SkosPlayConfig {
 		this.applicationTitle = applicationTitle;
 	}
 
+	public List<LabelBundle> getLabelBundles() {
+		return labelBundles;
+	}
+
+	@Value("#{T(java.util.Arrays).asList('${skosplay.alignment.labelBundles:}')}")
+	public void setLabelBundlePaths(List<String> labelBundlePaths) {
+		for (String aPath : labelBundlePaths) {
+			if(aPath.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				LabelBundle bundle = LabelBundle.open(new File(aPath.trim()));
+				log.info("Opened label bundle "+bundle);
+				this.labelBundles.add(bundle);
+			} catch (IOException e) {
+				log.error("Cannot open label bundle "+aPath, e);
+			}
+		}
+	}
+
+	/**
+	 * @return the harvester of the aligned concepts, shared by all the alignment displays, created on first use
+	 */
+	public synchronized AlignmentDataHarvesterCachedLoader getAlignmentHarvester() {
+		if(this.alignmentHarvester == null) {
+			log.info("Creating alignment data harvester, caching in "+this.alignmentCacheDirectory);
+			this.alignmentHarvester = new AlignmentDataHarvesterCachedLoader(this.alignmentCacheDirectory, RDFFormat.RDFXML);
+			this.alignmentHarvester.setLabelBundles(this.labelBundles);
+			// dereference URIs on the print threads, instead of threads started for each load
+			this.alignmentHarvester.setExecutor(getPrintExecutor());
+		}
+		return alignmentHarvester;
+	}
+
+	// directory where the data of the aligned concepts is kept
+	@Value("${skosplay.alignment.cacheDirectory:#{systemProperties['java.io.tmpdir']}/skosplay-alignment}")
+	public void setAlignmentCacheDirectory(String alignmentCacheDirectory) {
+		this.alignmentCacheDirectory = alignmentCacheDirectory;
+	}
+
+	public VizPayloadCache getVizPayloadCache() {
+		return vizPayloadCache;
+	}
+
+	// max size of the visualization payloads cache, in MB, 0 to disable the cache
+	@Value("${skosplay.vizCache.maxSize:32}")
+	public void setVizCacheMaxSize(int vizCacheMaxSize) {
+		log.info("Set visualization payloads cache size : "+vizCacheMaxSize+" MB");
+		this.vizPayloadCache = new VizPayloadCache(vizCacheMaxSize * 1024L * 1024L);
+	}
+
+	public KosDocumentCache getDocumentCache() {
+		return documentCache;
+	}
+
+	// max size of the generated documents cache, in MB, 0 to disable the cache
+	@Value("${skosplay.documentCache.maxSize:64}")
+	public void setDocumentCacheMaxSize(int documentCacheMaxSize) {
+		log.info("Set generated documents cache size : "+documentCacheMaxSize+" MB");
+		this.documentCache = new KosDocumentCache(documentCacheMaxSize * 1024L * 1024L);
+	}
+
+	public ConceptBlockCache getConceptBlockCache() {
+		return conceptBlockCache;
+	}
+
+	// max number of concept blocks in the cache, 0 to disable the cache
+	@Value("${skosplay.conceptBlockCache.maxEntries:100000}")
+	public void setConceptBlockCacheMaxEntries(int conceptBlockCacheMaxEntries) {
+		log.info("Set concept blocks cache size : "+conceptBlockCacheMaxEntries);
+		this.conceptBlockCache = (conceptBlockCacheMaxEntries > 0)?new ConceptBlockCache(conceptBlockCacheMaxEntries):null;
+	}
+
+	public FopProvider getFopProvider() {
+		return fopProvider;
+	}
+
+	// optimized PDF output : fonts embedded once and subset, compressed streams, no tagged PDF
+	@Value("${skosplay.pdf.optimized:false}")
+	public void setPdfOptimized(boolean pdfOptimized) {
+		log.info("Set optimized PDF output : "+pdfOptimized);
+		this.fopProvider.setOptimized(pdfOptimized);
+	}
+
+	/**
+	 * @return the executor on which documents are read concurrently, started on first use; null if disabled
+	 */
+	public synchronized ExecutorService getPrintExecutor() {
+		if(this.printExecutor == null && this.printThreads > 0) {
+			log.info("Starting print executor : "+this.printThreads+" threads");
+			final AtomicInteger count = new AtomicInteger();
+			// the tasks are only help for the requests threads, which do the work themselves when the queue is full
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(
+					this.printThreads,
+					this.printThreads,
+					60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(this.printThreads * 16),
+					r -> {
+						Thread t = new Thread(r, "print-"+count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+			);
+			executor.allowCoreThreadTimeOut(true);
+			this.printExecutor = executor;
+		}
+		return printExecutor;
+	}
+
+	// number of threads reading the printed documents, shared by all requests, 0 to read documents in the request threads
+	@Value("${skosplay.print.threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+	public void setPrintThreads(int printThreads) {
+		this.printThreads = printThreads;
+	}
+
+	public DatasetRegistry getDatasetRegistry() {
+		return datasetRegistry;
+	}
+
+	public UrlDatasetCache getUrlDatasetCache() {
+		return urlDatasetCache;
+	}
+
+	// max number of URLs whose dataset is kept, 0 to download URLs each time they are loaded
+	@Value("${skosplay.urlCache.maxEntries:100}")
+	public void setUrlCacheMaxEntries(int urlCacheMaxEntries) {
+		log.info("Set URL datasets cache size : "+urlCacheMaxEntries);
+		this.urlDatasetCache.setMaxEntries(urlCacheMaxEntries);
+	}
+
+	// time during which the dataset of a URL is reused without checking if the URL changed
+	@Value("${skosplay.urlCache.freshnessSeconds:300}")
+	public void setUrlCacheFreshnessSeconds(int urlCacheFreshnessSeconds) {
+		log.info("Set URL datasets freshness : "+urlCacheFreshnessSeconds+" seconds");
+		this.urlDatasetCache.setFreshness(urlCacheFreshnessSeconds * 1000L);
+	}
+
+	// max size of a file downloaded from a URL, in MB; 0 for no limit
+	@Value("${skosplay.urlCache.maxInputSize:100}")
+	public void setUrlCacheMaxInputSize(int urlCacheMaxInputSize) {
+		log.info("Set URL datasets max input size : "+urlCacheMaxInputSize+" MB");
+		this.urlDatasetCache.setMaxInputSize(urlCacheMaxInputSize * 1024L * 1024L);
+	}
+
+	/**
+	 * @return the cache of the results of the queries sent to SPARQL endpoints, opened on first use; null if disabled
+	 */
+	public synchronized QueryResultCache getEndpointCache() {
+		if(this.endpointCache == null && this.endpointCacheDirectory != null && this.endpointCacheTtlMinutes > 0 && this.endpointCacheMaxSize > 0) {
+			log.info("Opening endpoint queries cache : "+this.endpointCacheDirectory+", "+this.endpointCacheTtlMinutes+" minutes, "+this.endpointCacheMaxSize+" MB");
+			this.endpointCache = new QueryResultCache(
+					new File(this.endpointCacheDirectory),
+					this.endpointCacheTtlMinutes * 60L * 1000L,
+					this.endpointCacheMaxSize * 1024L * 1024L
+			);
+			this.endpointCache.setMaxRows(this.endpointCacheMaxRows);
+		}
+		return endpointCache;
+	}
+
+	// directory where the results of the queries sent to SPARQL endpoints are kept
+	@Value("${skosplay.endpointCache.directory:#{systemProperties['java.io.tmpdir']}/skosplay-endpoints}")
+	public void setEndpointCacheDirectory(String endpointCacheDirectory) {
+		this.endpointCacheDirectory = endpointCacheDirectory;
+	}
+
+	// time during which the result of a query sent to a SPARQL endpoint is reused, 0 to disable the cache
+	@Value("${skosplay.endpointCache.ttlMinutes:60}")
+	public void setEndpointCacheTtlMinutes(int endpointCacheTtlMinutes) {
+		this.endpointCacheTtlMinutes = endpointCacheTtlMinutes;
+	}
+
+	// max size of the results of the queries sent to SPARQL endpoints, in MB, 0 to disable the cache
+	@Value("${skosplay.endpointCache.maxSize:256}")
+	public void setEndpointCacheMaxSize(int endpointCacheMaxSize) {
+		this.endpointCacheMaxSize = endpointCacheMaxSize;
+	}
+
+	// max number of rows of a query result kept in the cache, larger results are streamed from the endpoint
+	@Value("${skosplay.endpointCache.maxRows:100000}")
+	public void setEndpointCacheMaxRows(int endpointCacheMaxRows) {
+		this.endpointCacheMaxRows = endpointCacheMaxRows;
+	}
+
+	/**
+	 * @return the queue running the spreadsheet conversions, started on first use
+	 */
+	public synchronized ConversionQueue getConversionQueue() {
+		if(this.conversionQueue == null) {
+			log.info("Starting conversion queue : "+this.conversionConcurrency+" running, "+this.conversionQueueSize+" waiting, cache of "+this.conversionCacheMaxSize+" MB");
+			this.conversionQueue = new ConversionQueue(
+					this.conversionConcurrency,
+					this.conversionQueueSize,
+					this.conversionCacheMaxSize * 1024L * 1024L,
+					this.conversionJobRetentionMinutes * 60L * 1000L
+			);
+			this.conversionQueue.setMaxJobs(this.conversionMaxJobs);
+		}
+		return conversionQueue;
+	}
+
+	/**
+	 * Stops the conversions and the print threads, and unloads the datasets, when the application stops
+	 */
+	public synchronized void close() {
+		if(this.conversionQueue != null) {
+			this.conversionQueue.close();
+			this.conversionQueue = null;
+		}
+		if(this.printExecutor != null) {
+			this.printExecutor.shutdownNow();
+			this.printExecutor = null;
+		}
+		this.datasetRegistry.close();
+	}
+
+	// max number of conversions running at the same time
+	@Value("${skosplay.convert.concurrency:2}")
+	public void setConversionConcurrency(int conversionConcurrency) {
+		this.conversionConcurrency = conversionConcurrency;
+	}
+
+	// max number of conversions waiting to run, beyond that conversions are rejected with a Retry-After header
+	@Value("${skosplay.convert.queueSize:10}")
+	public void setConversionQueueSize(int conversionQueueSize) {
+		this.conversionQueueSize = conversionQueueSize;
+	}
+
+	// max size of the cached conversion results, in MB, 0 to disable the cache
+	@Value("${skosplay.convert.cacheMaxSize:64}")
+	public void setConversionCacheMaxSize(int conversionCacheMaxSize) {
+		this.conversionCacheMaxSize = conversionCacheMaxSize;
+	}
+
+	// time during which the status and result of a finished conversion can be polled
+	@Value("${skosplay.convert.jobRetentionMinutes:10}")
+	public void setConversionJobRetentionMinutes(int conversionJobRetentionMinutes) {
+		this.conversionJobRetentionMinutes = conversionJobRetentionMinutes;
+	}
+
+	// max number of conversion jobs that can be polled, the oldest finished ones are forgotten first
+	@Value("${skosplay.convert.maxJobs:1000}")
+	public void setConversionMaxJobs(int conversionMaxJobs) {
+		this.conversionMaxJobs = conversionMaxJobs;
+	}
+
+	public int getConversionWaitSeconds() {
+		return conversionWaitSeconds;
+	}
+
+	@Value("${skosplay.convert.waitSeconds:120}")
+	public void setConversionWaitSeconds(int conversionWaitSeconds) {
+		this.conversionWaitSeconds = conversionWaitSeconds;
+	}
+
+	/**
+	 * @return the max size of a spreadsheet to convert, in bytes, 0 for no limit
+	 */
+	public long getConversionMaxInputSize() {
+		return conversionMaxInputSize * 1024L * 1024L;
+	}
+
+	// max size of a spreadsheet to convert, in MB, 0 for no limit
+	@Value("${skosplay.convert.maxInputSize:20}")
+	public void setConversionMaxInputSize(int conversionMaxInputSize) {
+		this.conversionMaxInputSize = conversionMaxInputSize;
+	}
+
+	// time after which a dataset that was not accessed is written to disk and removed from memory, 0 to never spill
+	@Value("${skosplay.datasets.idleMinutes:30}")
+	public void setDatasetIdleMinutes(int datasetIdleMinutes) {
+		log.info("Set datasets idle time : "+datasetIdleMinutes+" minutes");
+		this.datasetRegistry.setIdleTime(datasetIdleMinutes * 60L * 1000L);
+	}
+
+	// max estimated memory of the datasets, in MB, least recently used datasets are spilled beyond that ; 0 for no limit
+	@Value("${skosplay.datasets.heapBudget:0}")
+	public void setDatasetHeapBudget(int datasetHeapBudget) {
+		log.info("Set datasets heap budget : "+datasetHeapBudget+" MB");
+		this.datasetRegistry.setHeapBudget(datasetHeapBudget * 1024L * 1024L);
+	}
+
+	// directory where idle datasets are written, defaults to a directory in the temp directory
+	@Value("${skosplay.datasets.spillDirectory:}")
+	public void setDatasetSpillDirectory(String datasetSpillDirectory) {
+		if(datasetSpillDirectory != null && !datasetSpillDirectory.trim().isEmpty()) {
+			log.info("Set datasets spill directory : "+datasetSpillDirectory);
+			this.datasetRegistry.setSpillDirectory(new File(datasetSpillDirectory.trim()));
+		}
+	}
 
 	public SQLQueryRegistry getSqlQueryRegistry() {
 		return sqlQueryRegistry;
@@ -4,12 +4,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.net.URLEncoder;
 import java.security.InvalidParameterException;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Set;
@@ -50,13 +51,12 @@ import fr.sparna.rdf.rdf4j.toolkit.query.SimpleQueryReader;
 import fr.sparna.rdf.rdf4j.toolkit.reader.TypeReader;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.rdf4j.toolkit.util.LabelReader;
-import fr.sparna.rdf.rdf4j.toolkit.util.PreferredPropertyReader;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.KosDocumentCache;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.autocomplete.Items;
 import fr.sparna.rdf.skos.printer.autocomplete.JSONWriter;
 import fr.sparna.rdf.skos.printer.reader.AbstractKosDisplayGenerator;
-import fr.sparna.rdf.skos.printer.reader.AlignmentDataHarvesterCachedLoader;
-import fr.sparna.rdf.skos.printer.reader.AlignmentDataHarvesterIfc;
 import fr.sparna.rdf.skos.printer.reader.AlignmentDisplayGenerator;
 import fr.sparna.rdf.skos.printer.reader.AlphaIndexDisplayGenerator;
 import fr.sparna.rdf.skos.printer.reader.AutocompleteItemsReader;
@@ -70,13 +70,16 @@ import fr.sparna.rdf.skos.printer.reader.IndexGenerator.IndexType;
 import fr.sparna.rdf.skos.printer.reader.TranslationTableDisplayGenerator;
 import fr.sparna.rdf.skos.printer.reader.TranslationTableReverseDisplayGenerator;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
+import fr.sparna.rdf.skos.toolkit.DatasetFingerprint;
 import fr.sparna.rdf.skos.toolkit.JsonSKOSTreePrinter;
-import fr.sparna.rdf.skos.toolkit.SKOS;
-import fr.sparna.rdf.skos.toolkit.SKOSNodeSortCriteriaPreferredPropertyReader;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
+import fr.sparna.rdf.skos.toolkit.SKOSNodeSortCriteriaLabelTableReader;
 import fr.sparna.rdf.skos.toolkit.SKOSNodeTypeReader;
 import fr.sparna.rdf.skos.toolkit.SKOSTreeBuilder;
 import fr.sparna.rdf.skos.toolkit.SKOSTreeNode;
 import fr.sparna.rdf.skos.toolkit.SKOSTreeNode.NodeType;
+import fr.sparna.rdf.skos.toolkit.cache.QueryResultCache;
+import fr.sparna.rdf.skosplay.log.DBConnectionManager;
 import fr.sparna.rdf.skosplay.log.LogEntry;
 
 
@@ -99,6 +102,9 @@ public class SkosPlayController {
 	@Autowired
 	protected ServletContext servletContext;
 
+	// visualizations whose data can be generated by visualizeData
+	private static final Set<VizType> VIZ_DATA_TYPES = EnumSet.of(VizType.PARTITION, VizType.TREELAYOUT, VizType.SUNBURST, VizType.AUTOCOMPLETE);
+
 	private enum SOURCE_TYPE {
 		FILE,
 		URL,
@@ -236,6 +242,7 @@ public class SkosPlayController {
 						skosPlayModel.performSkosXl2Skos();
 					}
 				} catch (Exception e1) {
+					skosPlayModel.release();
 					return doError(request, e1.getMessage());
 				}
 
@@ -259,6 +266,7 @@ public class SkosPlayController {
 						skosPlayModel.performSkosXl2Skos();
 					}
 				} catch (Exception e1) {
+					skosPlayModel.release();
 					return doError(request, e1.getMessage());
 				}
 
@@ -286,6 +294,7 @@ public class SkosPlayController {
 							skosPlayModel.performSkosXl2Skos();
 						}
 					} catch (Exception e1) {
+						skosPlayModel.release();
 						return doError(request, e1.getMessage());
 					}
 				}
@@ -295,6 +304,7 @@ public class SkosPlayController {
 
 			}
 		} catch (Exception e) {
+			skosPlayModel.release();
 			return doError(request, e);
 		}
 
@@ -443,11 +453,64 @@ public class SkosPlayController {
 		try(RepositoryConnection connectionTemporaire = r.getConnection()) {
 			connectionTemporaire.export(writer);
 		}
-		
+
 		// flush response
 		response.flushBuffer();
 	}
 
+	/**
+	 * Reports the state of the URL datasets cache, of the endpoint queries cache and of the datasets registry, for operators
+	 */
+	@RequestMapping(value = "/cacheStats", method = RequestMethod.GET)
+	protected void cacheStats(
+			HttpServletRequest request,
+			HttpServletResponse response
+			) throws IOException {
+		response.setContentType("text/plain");
+		response.setCharacterEncoding("UTF-8");
+		UrlDatasetCache urlCache = SkosPlayConfig.getInstance().getUrlDatasetCache();
+		DatasetRegistry registry = SkosPlayConfig.getInstance().getDatasetRegistry();
+
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("URL datasets cache\n");
+		buffer.append("  entries : "+urlCache.size()+" / "+urlCache.getMaxEntries()+"\n");
+		buffer.append("  freshness : "+(urlCache.getFreshness() / 1000)+" s\n");
+		buffer.append("  hits : "+urlCache.getHits()+"\n");
+		buffer.append("  revalidations : "+urlCache.getRevalidations()+" (not modified : "+urlCache.getNotModified()+")\n");
+		buffer.append("  downloads : "+urlCache.getDownloads()+"\n");
+		QueryResultCache endpointCache = SkosPlayConfig.getInstance().getEndpointCache();
+		if(endpointCache != null) {
+			buffer.append("Endpoint queries cache\n");
+			buffer.append("  size : "+(endpointCache.getSize() / 1024)+" KB\n");
+			buffer.append("  hits : "+endpointCache.getHits()+"\n");
+			buffer.append("  misses : "+endpointCache.getMisses()+" (joined in-flight : "+endpointCache.getJoined()+")\n");
+		}
+		buffer.append("Alignment data cache\n");
+		buffer.append("  "+SkosPlayConfig.getInstance().getAlignmentHarvester().getHttpCache()+"\n");
+		VizPayloadCache vizCache = SkosPlayConfig.getInstance().getVizPayloadCache();
+		buffer.append("Visualization payloads cache\n");
+		buffer.append("  entries : "+vizCache.getCount()+", "+(vizCache.getSize() / 1024)+" KB / "+(vizCache.getMaxSize() / 1024)+" KB\n");
+		buffer.append("  hits : "+vizCache.getHits()+" (not modified : "+vizCache.getNotModified()+")\n");
+		buffer.append("  misses : "+vizCache.getMisses()+"\n");
+		buffer.append("Datasets registry\n");
+		buffer.append("  "+registry+"\n");
+		for (DatasetRegistry.DatasetInfo aDataset : registry.getDatasets()) {
+			buffer.append("  "+aDataset+"\n");
+		}
+		ConversionQueue conversionQueue = SkosPlayConfig.getInstance().getConversionQueue();
+		buffer.append("Conversions\n");
+		buffer.append("  running : "+conversionQueue.getRunning()+" (waiting : "+conversionQueue.getQueued()+", rejected : "+conversionQueue.getRejected()+")\n");
+		buffer.append("  cached results : "+conversionQueue.getCacheCount()+", "+(conversionQueue.getCacheSize() / 1024)+" KB\n");
+		buffer.append("  hits : "+conversionQueue.getHits()+" (joined running : "+conversionQueue.getJoined()+")\n");
+		DBConnectionManager sqlDb = SkosPlayConfig.getInstance().getSqlDb();
+		if(sqlDb != null && sqlDb.getMetrics() != null) {
+			buffer.append("Database connection pool\n");
+			buffer.append("  "+sqlDb.getMetrics()+"\n");
+		}
+		response.getWriter().write(buffer.toString());
+		response.flushBuffer();
+	}
+
 
 	@RequestMapping(
 			value = "/visualize",
@@ -490,32 +553,31 @@ public class SkosPlayController {
 			);
 	
 			
+			// the data is loaded by the page from visualize/data, so that it can be cached by the browser
+			request.setAttribute("dataUrl", "visualize/data"
+					+"?display="+URLEncoder.encode(displayParam, "UTF-8")
+					+"&language="+URLEncoder.encode((language != null)?language:"no-language", "UTF-8")
+					+"&scheme="+URLEncoder.encode(schemeParam, "UTF-8")
+			);
+			
 			switch(displayType) {
 			case PARTITION : {		
-				request.setAttribute("dataset", generateJSON(connection, language, scheme));
 				// forward to the JSP
 				return new ModelAndView("viz-partition");
 			}
 			case TREELAYOUT : {
-				request.setAttribute("dataset", generateJSON(connection, language, scheme));
 				// forward to the JSP
 				return new ModelAndView("viz-treelayout");
 			}
 			case SUNBURST : {
-				request.setAttribute("dataset", generateJSON(connection, language, scheme));
 				// forward to the JSP
 				return new ModelAndView("viz-sunburst");
 			}
 			/*case TREEMAP : {
-				request.setAttribute("dataset", generateJSON(r, language, scheme));
 				// forward to the JSP
 				return new ModelAndView("viz-treemap");
 			}*/
 			case AUTOCOMPLETE : {
-				AutocompleteItemsReader autocompleteReader = new AutocompleteItemsReader();
-				Items items = autocompleteReader.readItems(r, language, scheme);
-				JSONWriter writer = new JSONWriter();
-				request.setAttribute("items", writer.write(items));
 				// forward to the JSP
 				return new ModelAndView("viz-autocomplete");
 			}
@@ -529,6 +591,141 @@ public class SkosPlayController {
 		
 	}
 
+	/**
+	 * JSON data of a visualization. The payload is identified by a strong ETag built from the fingerprint of the dataset
+	 * and the visualization options : conditional requests are answered with a 304, and the payloads are kept gzipped
+	 * in the {@link VizPayloadCache}. Payloads of SPARQL endpoints have no fingerprint and are generated on every request.
+	 */
+	@RequestMapping(
+			value = "/visualize/data",
+			method = RequestMethod.GET
+			)
+	public void visualizeData(
+			@RequestParam(value="display", required=true) String displayParam,
+			@RequestParam(value="language", defaultValue="no-language") String language,
+			@RequestParam(value="scheme", defaultValue="no-scheme") String schemeParam,
+			HttpServletRequest request,
+			HttpServletResponse response
+			) throws Exception {
+
+		VizType displayType;
+		try {
+			displayType = VizType.valueOf(displayParam.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			displayType = null;
+		}
+		if(displayType == null || !VIZ_DATA_TYPES.contains(displayType)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown display type "+displayParam);
+			return;
+		}
+		IRI scheme;
+		try {
+			scheme = (schemeParam.equals("no-scheme"))?null:SimpleValueFactory.getInstance().createIRI(schemeParam);
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid scheme IRI "+schemeParam);
+			return;
+		}
+		language = (language.equals("no-language"))?null:language;
+
+		SkosPlayModel skosPlayModel = SessionData.get(request.getSession()).getSkosPlayModel();
+		if(skosPlayModel == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No dataset loaded");
+			return;
+		}
+
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		boolean gzip = (acceptEncoding != null && acceptEncoding.contains("gzip"));
+		VizPayloadCache cache = SkosPlayConfig.getInstance().getVizPayloadCache();
+
+		// the payload is cached once for both representations, keyed by the dataset and the visualization options
+		String fingerprint = skosPlayModel.getFingerprint();
+		String cacheKey = (fingerprint != null)?KosDocumentCache.key(fingerprint, displayType, scheme, language):null;
+		// the gzipped and plain payloads are different representations, with different ETags; the payload also depends on
+		// the version of the application, so a new build invalidates the copies kept by the browsers
+		String etag = (cacheKey != null)?"\""+cacheKey+"-"+buildToken()+(gzip?"-gzip":"")+"\"":null;
+
+		response.setHeader("Vary", "Accept-Encoding");
+		if(etag != null) {
+			response.setHeader("ETag", etag);
+			// the payload depends on the dataset of the session
+			response.setHeader("Cache-Control", "private, no-cache");
+			if(matches(request.getHeader("If-None-Match"), etag)) {
+				cache.notModified();
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+		} else {
+			response.setHeader("Cache-Control", "no-store");
+		}
+
+		byte[] gzipped = (cacheKey != null)?cache.get(cacheKey):null;
+		if(gzipped == null) {
+			gzipped = VizPayloadCache.gzip(generatePayload(skosPlayModel, displayType, language, scheme));
+			if(cacheKey != null) {
+				cache.put(cacheKey, gzipped);
+			}
+		}
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		byte[] body;
+		if(gzip) {
+			response.setHeader("Content-Encoding", "gzip");
+			body = gzipped;
+		} else {
+			body = VizPayloadCache.gunzip(gzipped);
+		}
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+		response.flushBuffer();
+	}
+
+	private String generatePayload(SkosPlayModel skosPlayModel, VizType displayType, String language, IRI scheme) throws Exception {
+		Repository r = skosPlayModel.getRepository();
+		switch(displayType) {
+		case PARTITION :
+		case TREELAYOUT :
+		case SUNBURST : {
+			try(RepositoryConnection connection = r.getConnection()) {
+				return generateJSON(connection, language, scheme);
+			}
+		}
+		case AUTOCOMPLETE : {
+			AutocompleteItemsReader autocompleteReader = new AutocompleteItemsReader();
+			Items items = autocompleteReader.readItems(r, language, scheme);
+			return new JSONWriter().write(items);
+		}
+		default : {
+			throw new InvalidParameterException("Unknown display type "+displayType);
+		}
+		}
+	}
+
+	/**
+	 * @return a short token identifying the build of the application, from its version and build timestamp
+	 */
+	private static String buildToken() {
+		ApplicationData applicationData = SkosPlayConfig.getInstance().getApplicationData();
+		String build = (applicationData != null)?applicationData.getBuildVersion()+" "+applicationData.getBuildTimestamp():"";
+		return Integer.toHexString(build.hashCode());
+	}
+
+	/**
+	 * @return true if the If-None-Match header contains the given ETag
+	 */
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if(ifNoneMatch == null) {
+			return false;
+		}
+		for (String aTag : ifNoneMatch.split(",")) {
+			aTag = aTag.trim();
+			if(aTag.equals("*") || aTag.equals(etag) || aTag.equals("W/"+etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Print API that takes directy a URL as an input
 	 * 
@@ -559,69 +756,72 @@ public class SkosPlayController {
 		// rdfsInference : false
 		skosPlayModel.load(url, false);
 		skosPlayModel.setInputUrl(url);
-		// handle SKOS-XL by default
-		skosPlayModel.performSkosXl2Skos();
-		// get repository back
-		Repository r = skosPlayModel.getRepository();
+		try {
+			// handle SKOS-XL by default
+			skosPlayModel.performSkosXl2Skos();
+			// get repository back
+			Repository r = skosPlayModel.getRepository();
 
-		// read all languages
-		Set<String> languages = skosPlayModel.getLanguages();
+			// read all languages
+			Set<String> languages = skosPlayModel.getLanguages();
 		
-		// get output type param
-		OutputType outputType = (outputParam != null)?OutputType.valueOf(outputParam.toUpperCase()):OutputType.HTML;
+			// get output type param
+			OutputType outputType = (outputParam != null)?OutputType.valueOf(outputParam.toUpperCase()):OutputType.HTML;
 
-		// get display type param
-		DisplayType displayType = (displayParam != null)?DisplayType.valueOf(displayParam.toUpperCase()):DisplayType.ALPHABETICAL_EXPANDED;
+			// get display type param
+			DisplayType displayType = (displayParam != null)?DisplayType.valueOf(displayParam.toUpperCase()):DisplayType.ALPHABETICAL_EXPANDED;
 
-		// get scheme param
-		IRI scheme = (schemeParam.equals("no-scheme"))?null:SimpleValueFactory.getInstance().createIRI(schemeParam);
+			// get scheme param
+			IRI scheme = (schemeParam.equals("no-scheme"))?null:SimpleValueFactory.getInstance().createIRI(schemeParam);
 
-		// update source language param - only for translations
-		String language = (languageParam == null || languageParam.equals("no-language"))?null:languageParam;
-		if(language == null) {
-			// try to determine language
-			if(languages.size() == 1) {
-				language = languages.iterator().next();
-			} else {
-				throw new Exception("Please set language param, found "+languages.size()+" different languages, don't know which one to use : "+languages+"");
+			// update source language param - only for translations
+			String language = (languageParam == null || languageParam.equals("no-language"))?null:languageParam;
+			if(language == null) {
+				// try to determine language
+				if(languages.size() == 1) {
+					language = languages.iterator().next();
+				} else {
+					throw new Exception("Please set language param, found "+languages.size()+" different languages, don't know which one to use : "+languages+"");
+				}
 			}
-		}
 
-		// get target language param - only for translations
-		String targetLanguage = (targetLanguageParam != null)?(targetLanguageParam.equals("no-language")?null:targetLanguageParam):null;
+			// get target language param - only for translations
+			String targetLanguage = (targetLanguageParam != null)?(targetLanguageParam.equals("no-language")?null:targetLanguageParam):null;
 		
-		SkosPlayConfig.getInstance().getSqlLogDao().insertLog(new LogEntry(
-				language,
-				outputParam,
-				displayParam,
-				skosPlayModel.getInputUrl(),
-				"print",
-				schemeParam
-		));
+			SkosPlayConfig.getInstance().getSqlLogDao().insertLog(new LogEntry(
+					language,
+					outputParam,
+					displayParam,
+					skosPlayModel.getInputUrl(),
+					"print",
+					schemeParam
+			));
 		
-		// read all potential languages and exclude the main one
-		final List<String> additionalLanguages = new ArrayList<String>();
-		for (String aLang : languages) {
-			if(!aLang.equals(language)) {
-				additionalLanguages.add(aLang);
+			// read all potential languages and exclude the main one
+			final List<String> additionalLanguages = new ArrayList<String>();
+			for (String aLang : languages) {
+				if(!aLang.equals(language)) {
+					additionalLanguages.add(aLang);
+				}
 			}
-		}
 		
-		doPrint(
-			r,
-			outputType,
-			displayType,
-			language,
-			SessionData.get(request.getSession()).getUserLocale().getLanguage(),
-			additionalLanguages,
-			scheme,
-			targetLanguage,
-			response			
-		);
-
-
-
-		response.flushBuffer();
+			doPrint(
+				r,
+				skosPlayModel.getDatasetFingerprint(),
+				outputType,
+				displayType,
+				language,
+				SessionData.get(request.getSession()).getUserLocale().getLanguage(),
+				additionalLanguages,
+				scheme,
+				targetLanguage,
+				response			
+			);
+			response.flushBuffer();
+		} finally {
+			// give back the data, possibly shared with other requests
+			skosPlayModel.release();
+		}
 	}
 	
 
@@ -675,6 +875,7 @@ public class SkosPlayController {
 		
 		doPrint(
 			r,
+			sessionData.getSkosPlayModel().getDatasetFingerprint(),
 			outputType,
 			displayType,
 			language,
@@ -694,6 +895,8 @@ public class SkosPlayController {
 	
 	protected void doPrint(	
 			Repository r,
+			// fingerprint of the data, null if the generated document should not be cached
+			DatasetFingerprint datasetFingerprint,
 			// output type, PDF or HTML
 			OutputType outputType,
 			DisplayType displayType,
@@ -706,204 +909,234 @@ public class SkosPlayController {
 	) throws Exception {
 
 		
-		// build display result
-		KosDocument document = new KosDocument();
+		// trace of the rendering stages, logged once the document is printed
+		RenderTrace trace = new RenderTrace(displayType+"/"+outputType);
+		
+		// the generated document does not depend on the output type nor on the user language : look if the same
+		// display was already generated for this data
+		KosDocumentCache documentCache = SkosPlayConfig.getInstance().getDocumentCache();
+		String documentKey = null;
+		KosDocument document = null;
+		if(datasetFingerprint != null) {
+			documentKey = KosDocumentCache.key(datasetFingerprint.getValue(), displayType, scheme, language, targetLanguage, additionalLanguages);
+			document = documentCache.get(documentKey);
+		}
 		
 		try(RepositoryConnection connection = r.getConnection()) {
 			// make a log to trace usage
 			String aRandomConcept = Perform.on(connection).read(new SimpleQueryReader(this, "ReadRandomConcept.rq").get()).stringValue();
 			log.info("PRINT,"+SimpleDateFormat.getDateTimeInstance().format(new Date())+","+scheme+","+aRandomConcept+","+language+","+displayType+","+outputType);
+			
+			if(document != null) {
+				log.debug("Reusing generated document from cache : "+documentCache);
+			} else {
+				// build display result
+				document = new KosDocument();
 	
-			HeaderAndFooterReader headerReader = new HeaderAndFooterReader(connection);
-			headerReader.setApplicationString("Generated by SKOS Play!, sparna.fr");
-			// on désactive complètement le header pour les PDF
-			if(outputType != OutputType.PDF) {
-				// build and set header
-				document.setHeader(headerReader.readHeader(language, scheme));
-			}
-			// all the time, set footer
-			document.setFooter(headerReader.readFooter(language, scheme));
+				try(RenderTrace.Timer timer = trace.start("assembly")) {
+					HeaderAndFooterReader headerReader = new HeaderAndFooterReader(connection);
+					headerReader.setApplicationString("Generated by SKOS Play!, sparna.fr");
+					// build and set header, it is removed afterwards for PDF so that the cached document can be used for both
+					document.setHeader(headerReader.readHeader(language, scheme));
+					// all the time, set footer
+					document.setFooter(headerReader.readFooter(language, scheme));
+				}
 	
-			// pass on Repository to skos-printer level
-			BodyReader bodyReader;
+				// pass on Repository to skos-printer level
+				BodyReader bodyReader;
 			
 			
-			switch(displayType) {
-			case ALPHABETICAL : {			
-				ConceptBlockReader cbr = new ConceptBlockReader();
-				bodyReader = new BodyReader(new AlphaIndexDisplayGenerator(connection, cbr));			
-				break;
-			}
-			case ALPHABETICAL_EXPANDED : {			
-				ConceptBlockReader cbr = new ConceptBlockReader();
-				cbr.setSkosPropertiesToRead(AlphaIndexDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
-				bodyReader = new BodyReader(new AlphaIndexDisplayGenerator(connection, cbr));
-				break;
-			}
-			case HIERARCHICAL : {
-				bodyReader = new BodyReader(new HierarchicalDisplayGenerator(connection, new ConceptBlockReader()));
-				break;
-			}
-			case HIERARCHICAL_TREE : {
-				bodyReader = new BodyReader(new HierarchicalDisplayGenerator(connection, new ConceptBlockReader()));
-				break;
-			}
-			//			case HIERARCHICAL_EXPANDED : {
-			//				displayGenerator = new HierarchicalDisplayGenerator(r, new ConceptBlockReader(r, HierarchicalDisplayGenerator.EXPANDED_SKOS_PROPERTIES));
-			//				break;
-			//			}
-			case CONCEPT_LISTING : {
-				ConceptBlockReader cbr = new ConceptBlockReader();
-				cbr.setSkosPropertiesToRead(ConceptListDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
-				cbr.setAdditionalLabelLanguagesToInclude(additionalLanguages);
-	
-				bodyReader = new BodyReader(new ConceptListDisplayGenerator(connection, cbr));
-				break;
-			}
-			case TRANSLATION_TABLE : {
-				bodyReader = new BodyReader(new TranslationTableDisplayGenerator(connection, new ConceptBlockReader(), targetLanguage));
-				break;
-			}
-			case PERMUTED_INDEX : {
-				bodyReader = new BodyReader(new IndexGenerator(connection, IndexType.KWAC));
-				break;
-			}
-			case KWIC_INDEX : {
-				bodyReader = new BodyReader(new IndexGenerator(connection, IndexType.KWIC));
-				break;
-			}
-			case COMPLETE_MONOLINGUAL : {
+				switch(displayType) {
+				case ALPHABETICAL : {			
+					ConceptBlockReader cbr = new ConceptBlockReader();
+					bodyReader = new BodyReader(new AlphaIndexDisplayGenerator(connection, cbr));			
+					break;
+				}
+				case ALPHABETICAL_EXPANDED : {			
+					ConceptBlockReader cbr = new ConceptBlockReader();
+					cbr.setSkosPropertiesToRead(AlphaIndexDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
+					bodyReader = new BodyReader(new AlphaIndexDisplayGenerator(connection, cbr));
+					break;
+				}
+				case HIERARCHICAL : {
+					bodyReader = new BodyReader(new HierarchicalDisplayGenerator(connection, new ConceptBlockReader()));
+					break;
+				}
+				case HIERARCHICAL_TREE : {
+					bodyReader = new BodyReader(new HierarchicalDisplayGenerator(connection, new ConceptBlockReader()));
+					break;
+				}
+				//			case HIERARCHICAL_EXPANDED : {
+				//				displayGenerator = new HierarchicalDisplayGenerator(r, new ConceptBlockReader(r, HierarchicalDisplayGenerator.EXPANDED_SKOS_PROPERTIES));
+				//				break;
+				//			}
+				case CONCEPT_LISTING : {
+					ConceptBlockReader cbr = new ConceptBlockReader();
+					cbr.setSkosPropertiesToRead(ConceptListDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
+					cbr.setAdditionalLabelLanguagesToInclude(additionalLanguages);
 	
-				// prepare a list of generators
-				List<AbstractKosDisplayGenerator> generators = new ArrayList<AbstractKosDisplayGenerator>();
+					bodyReader = new BodyReader(new ConceptListDisplayGenerator(connection, cbr));
+					break;
+				}
+				case TRANSLATION_TABLE : {
+					bodyReader = new BodyReader(new TranslationTableDisplayGenerator(connection, new ConceptBlockReader(), targetLanguage));
+					break;
+				}
+				case PERMUTED_INDEX : {
+					bodyReader = new BodyReader(new IndexGenerator(connection, IndexType.KWAC));
+					break;
+				}
+				case KWIC_INDEX : {
+					bodyReader = new BodyReader(new IndexGenerator(connection, IndexType.KWIC));
+					break;
+				}
+				case COMPLETE_MONOLINGUAL : {
 	
-				// alphabetical display
-				ConceptBlockReader alphaCbReader = new ConceptBlockReader();
-				alphaCbReader.setStyleAttributes(true);
-				alphaCbReader.setSkosPropertiesToRead(AlphaIndexDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
-				alphaCbReader.setLinkDestinationIdPrefix("hier");
-				AlphaIndexDisplayGenerator alphaGen = new AlphaIndexDisplayGenerator(
-						connection,
-						alphaCbReader,
-						"alpha"
-						);
-				generators.add(alphaGen);
+					// prepare a list of generators
+					List<AbstractKosDisplayGenerator> generators = new ArrayList<AbstractKosDisplayGenerator>();
 	
-				// hierarchical display
-				ConceptBlockReader hierCbReader = new ConceptBlockReader();
-				hierCbReader.setLinkDestinationIdPrefix("alpha");
-				HierarchicalDisplayGenerator hierarchyGen = new HierarchicalDisplayGenerator(
-						connection,
-						hierCbReader,
-						"hier"
-						);
-				generators.add(hierarchyGen);
+					// alphabetical display
+					ConceptBlockReader alphaCbReader = new ConceptBlockReader();
+					alphaCbReader.setStyleAttributes(true);
+					alphaCbReader.setSkosPropertiesToRead(AlphaIndexDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
+					alphaCbReader.setLinkDestinationIdPrefix("hier");
+					AlphaIndexDisplayGenerator alphaGen = new AlphaIndexDisplayGenerator(
+							connection,
+							alphaCbReader,
+							"alpha"
+							);
+					generators.add(alphaGen);
 	
-				bodyReader = new BodyReader(generators);				
+					// hierarchical display
+					ConceptBlockReader hierCbReader = new ConceptBlockReader();
+					hierCbReader.setLinkDestinationIdPrefix("alpha");
+					HierarchicalDisplayGenerator hierarchyGen = new HierarchicalDisplayGenerator(
+							connection,
+							hierCbReader,
+							"hier"
+							);
+					generators.add(hierarchyGen);
 	
-				break;
-			}
-			case COMPLETE_MULTILINGUAL : {
+					bodyReader = new BodyReader(generators);				
 	
-				// prepare a list of generators
-				List<AbstractKosDisplayGenerator> generators = new ArrayList<AbstractKosDisplayGenerator>();
+					break;
+				}
+				case COMPLETE_MULTILINGUAL : {
 	
-				// alphabetical display
-				ConceptBlockReader alphaCbReader = new ConceptBlockReader();
-				alphaCbReader.setStyleAttributes(true);
-				alphaCbReader.setSkosPropertiesToRead(AlphaIndexDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
-				alphaCbReader.setAdditionalLabelLanguagesToInclude(additionalLanguages);
-				alphaCbReader.setLinkDestinationIdPrefix("hier");
-				AlphaIndexDisplayGenerator alphaGen = new AlphaIndexDisplayGenerator(
-						connection,
-						alphaCbReader,
-						"alpha"
-						);
-				generators.add(alphaGen);
+					// prepare a list of generators
+					List<AbstractKosDisplayGenerator> generators = new ArrayList<AbstractKosDisplayGenerator>();
 	
-				// hierarchical display
-				ConceptBlockReader hierCbReader = new ConceptBlockReader();
-				hierCbReader.setLinkDestinationIdPrefix("alpha");
-				HierarchicalDisplayGenerator hierarchyGen = new HierarchicalDisplayGenerator(
-						connection,
-						hierCbReader,
-						"hier"
-						);
-				generators.add(hierarchyGen);
+					// alphabetical display
+					ConceptBlockReader alphaCbReader = new ConceptBlockReader();
+					alphaCbReader.setStyleAttributes(true);
+					alphaCbReader.setSkosPropertiesToRead(AlphaIndexDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
+					alphaCbReader.setAdditionalLabelLanguagesToInclude(additionalLanguages);
+					alphaCbReader.setLinkDestinationIdPrefix("hier");
+					AlphaIndexDisplayGenerator alphaGen = new AlphaIndexDisplayGenerator(
+							connection,
+							alphaCbReader,
+							"alpha"
+							);
+					generators.add(alphaGen);
 	
-				// add translation tables for each additional languages
-				for (int i=0;i<additionalLanguages.size(); i++) {
-					String anAdditionalLang = additionalLanguages.get(i);
-					ConceptBlockReader aCbReader = new ConceptBlockReader();
-					aCbReader.setLinkDestinationIdPrefix("alpha");
-					TranslationTableReverseDisplayGenerator ttGen = new TranslationTableReverseDisplayGenerator(
+					// hierarchical display
+					ConceptBlockReader hierCbReader = new ConceptBlockReader();
+					hierCbReader.setLinkDestinationIdPrefix("alpha");
+					HierarchicalDisplayGenerator hierarchyGen = new HierarchicalDisplayGenerator(
 							connection,
-							aCbReader,
-							anAdditionalLang,
-							"trans"+i);
-					generators.add(ttGen);
-				}
+							hierCbReader,
+							"hier"
+							);
+					generators.add(hierarchyGen);
 	
-				bodyReader = new BodyReader(generators);
+					// add translation tables for each additional languages
+					for (int i=0;i<additionalLanguages.size(); i++) {
+						String anAdditionalLang = additionalLanguages.get(i);
+						ConceptBlockReader aCbReader = new ConceptBlockReader();
+						aCbReader.setLinkDestinationIdPrefix("alpha");
+						TranslationTableReverseDisplayGenerator ttGen = new TranslationTableReverseDisplayGenerator(
+								connection,
+								aCbReader,
+								anAdditionalLang,
+								"trans"+i);
+						generators.add(ttGen);
+					}
 	
-				break;
-			}
-			case ALIGNMENT_ALPHA : {
-				AlignmentDataHarvesterIfc harvester = new AlignmentDataHarvesterCachedLoader(null, RDFFormat.RDFXML);
-				AlignmentDisplayGenerator adg = new AlignmentDisplayGenerator(connection, new ConceptBlockReader(), harvester);
-				// this is the difference with other alignment display
-				adg.setSeparateByTargetScheme(false);
-				bodyReader = new BodyReader(adg);
-				break;
-			}
-			case ALIGNMENT_BY_SCHEME : {
-				AlignmentDataHarvesterIfc harvester = new AlignmentDataHarvesterCachedLoader(null, RDFFormat.RDFXML);
-				AlignmentDisplayGenerator adg = new AlignmentDisplayGenerator(connection, new ConceptBlockReader(), harvester);
-				// this is the difference with other alignment display
-				adg.setSeparateByTargetScheme(true);
-				bodyReader = new BodyReader(adg);
-				break;
-			}
-			default :
-				throw new InvalidParameterException("Unknown display type "+displayType);
-			}	
-			// read the body
-			document.setBody(bodyReader.readBody(language, scheme));
-			}
-			
-			DisplayPrinter printer = new DisplayPrinter();
-			// TODO : use Spring for configuration for easier debugging config
-			// for the moment we desactivate debugging completely
-			printer.setDebug(false);
-			
+					bodyReader = new BodyReader(generators);
+	
+					break;
+				}
+				case ALIGNMENT_ALPHA : {
+					AlignmentDisplayGenerator adg = new AlignmentDisplayGenerator(connection, new ConceptBlockReader(), SkosPlayConfig.getInstance().getAlignmentHarvester());
+					adg.setLabelBundles(SkosPlayConfig.getInstance().getLabelBundles());
+					// this is the difference with other alignment display
+					adg.setSeparateByTargetScheme(false);
+					bodyReader = new BodyReader(adg);
+					break;
+				}
+				case ALIGNMENT_BY_SCHEME : {
+					AlignmentDisplayGenerator adg = new AlignmentDisplayGenerator(connection, new ConceptBlockReader(), SkosPlayConfig.getInstance().getAlignmentHarvester());
+					adg.setLabelBundles(SkosPlayConfig.getInstance().getLabelBundles());
+					// this is the difference with other alignment display
+					adg.setSeparateByTargetScheme(true);
+					bodyReader = new BodyReader(adg);
+					break;
+				}
+				default :
+					throw new InvalidParameterException("Unknown display type "+displayType);
+				}	
+				// read the body
+				bodyReader.setTrace(trace);
+				bodyReader.setConceptBlockCache(SkosPlayConfig.getInstance().getConceptBlockCache());
+				bodyReader.setDatasetFingerprint(datasetFingerprint);
+				bodyReader.setExecutor(SkosPlayConfig.getInstance().getPrintExecutor());
+				document.setBody(bodyReader.readBody(language, scheme));
 			
-			switch(outputType) {
-			case HTML : {
-				if(displayType==DisplayType.HIERARCHICAL_TREE) {
-					printer.printToHtmlTree(document, response.getOutputStream(), userLanguage);
-				} else {
-					printer.printToHtml(document, response.getOutputStream(), userLanguage);
+				if(documentKey != null) {
+					documentCache.put(documentKey, document);
 				}
-				break;
 			}
-			case PDF : {
-				response.setContentType("application/pdf");
-				// if alphabetical or concept listing display, set 2-columns layout
-				if(
-						displayType == DisplayType.ALPHABETICAL
-						||
-						displayType == DisplayType.CONCEPT_LISTING
-						||
-						displayType == DisplayType.ALPHABETICAL_EXPANDED
-						) {
-					printer.getTransformerParams().put("column-count", 2);
-				}
-				printer.printToPdf(document, response.getOutputStream(), userLanguage);
-				break;
+		}
+		
+		// on désactive complètement le header pour les PDF
+		if(outputType == OutputType.PDF) {
+			document.setHeader(null);
+		}
+		
+		DisplayPrinter printer = new DisplayPrinter(SkosPlayConfig.getInstance().getFopProvider());
+		// TODO : use Spring for configuration for easier debugging config
+		// for the moment we desactivate debugging completely
+		printer.setDebug(false);
+		printer.setTrace(trace);
+		
+		switch(outputType) {
+		case HTML : {
+			if(displayType==DisplayType.HIERARCHICAL_TREE) {
+				printer.printToHtmlTree(document, response.getOutputStream(), userLanguage);
+			} else {
+				printer.printToHtml(document, response.getOutputStream(), userLanguage);
+			}
+			break;
+		}
+		case PDF : {
+			response.setContentType("application/pdf");
+			// if alphabetical or concept listing display, set 2-columns layout
+			if(
+					displayType == DisplayType.ALPHABETICAL
+					||
+					displayType == DisplayType.CONCEPT_LISTING
+					||
+					displayType == DisplayType.ALPHABETICAL_EXPANDED
+					) {
+				printer.getTransformerParams().put("column-count", 2);
 			}
+			printer.printToPdf(document, response.getOutputStream(), userLanguage);
+			break;
+		}
 		}
 
-		response.flushBuffer();	
+		response.flushBuffer();
+		log.info(trace.toLogLine());
 	}
 	
 
@@ -913,31 +1146,26 @@ public class SkosPlayController {
 			IRI scheme
 	) throws Exception {
 
-		// Careful : we need to use the same init code here than in the hierarhical display generator to get a consistent output
-		PreferredPropertyReader ppr = new PreferredPropertyReader(
-				connection,
-				Arrays.asList(new IRI[] { SimpleValueFactory.getInstance().createIRI(SKOS.NOTATION), SimpleValueFactory.getInstance().createIRI(SKOS.PREF_LABEL) }),
-				language
-				);
-		ppr.setCaching(true);
+		// read all labels once, for sorting and for the JSON output
+		LabelTable labelTable = LabelTable.load(connection, scheme);
 
 		TypeReader typeReader = new TypeReader();
 		typeReader.setPreLoad(false);
 		SKOSNodeTypeReader nodeTypeReader = new SKOSNodeTypeReader(typeReader, connection);
 
-		SKOSTreeBuilder builder = new SKOSTreeBuilder(connection, new SKOSNodeSortCriteriaPreferredPropertyReader(ppr), nodeTypeReader);
+		// Careful : we need to use the same init code here than in the hierarhical display generator to get a consistent output
+		SKOSTreeBuilder builder = new SKOSTreeBuilder(connection, new SKOSNodeSortCriteriaLabelTableReader(labelTable, language), nodeTypeReader);
 
 		builder.setUseConceptSchemesAsFirstLevelNodes(false);
 
 		GenericTree<SKOSTreeNode> tree = buildTree(builder, scheme);			
 
 		// writes json output
-		LabelReader labelReader = new LabelReader(connection, language);
-		JsonSKOSTreePrinter printer = new JsonSKOSTreePrinter(labelReader);
+		JsonSKOSTreePrinter printer = new JsonSKOSTreePrinter(labelTable, language);
 		printer.setPrettyPrinting(false);
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		printer.print(tree, baos);
-		return baos.toString("UTF-8").replaceAll("'", "\\\\'");
+		return baos.toString("UTF-8");
 	}
 
 	public GenericTree<SKOSTreeNode> buildTree(SKOSTreeBuilder builder, IRI root) {
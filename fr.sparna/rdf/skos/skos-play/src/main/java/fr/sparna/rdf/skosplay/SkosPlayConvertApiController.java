@@ -1,42 +1,33 @@
 package fr.sparna.rdf.skosplay;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.io.IOUtils;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFWriterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 
+import com.google.gson.Gson;
+
 import fr.sparna.rdf.skosplay.log.LogEntry;
-import fr.sparna.rdf.xls2rdf.ModelWriterIfc;
-import fr.sparna.rdf.xls2rdf.Xls2RdfConverter;
 import fr.sparna.rdf.xls2rdf.Xls2RdfException;
-import fr.sparna.rdf.xls2rdf.Xls2RdfPostProcessorIfc;
-import fr.sparna.rdf.xls2rdf.postprocess.SkosPostProcessor;
-import fr.sparna.rdf.xls2rdf.postprocess.SkosXlPostProcessor;
-import fr.sparna.rdf.xls2rdf.write.ModelWriterFactory;
 
 
 
@@ -50,6 +41,9 @@ import fr.sparna.rdf.xls2rdf.write.ModelWriterFactory;
 @RequestMapping(value = "/api")
 public class SkosPlayConvertApiController {
 
+	// name of the result files of the API, without extension
+	private static final String RESULT_FILE_NAME = "skos-play-convert";
+
 	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
 
 	@Autowired
@@ -58,14 +52,14 @@ public class SkosPlayConvertApiController {
 	@RequestMapping(value = "/convert",method = RequestMethod.GET)
 	public ModelAndView convertRDF(
 			@RequestParam(value="input", required=true) String input,
+			// true to answer immediately with the URL of the job, instead of waiting for the result
+			@RequestParam(value="async", required=false) boolean async,
 			// the request
 			HttpServletRequest request,
 			// the response
 			HttpServletResponse response			
 	) throws Exception {
 		
-		final SessionData sessionData = SessionData.get(request.getSession());
-		
 		String format = "text/turtle";
 		String language = "fr";
 		boolean useskosxl = false;
@@ -77,17 +71,7 @@ public class SkosPlayConvertApiController {
 		// format
 		RDFFormat theFormat = RDFWriterRegistry.getInstance().getFileFormatForMIMEType(format).orElse(RDFFormat.RDFXML);		
 
-		URL baseURL = new URL("http://"+request.getServerName()+((request.getServerPort() != 80)?":"+request.getServerPort():"")+request.getContextPath());
-		log.debug("Base URL is "+baseURL.toString());
-		ConvertFormData data = new ConvertFormData();
-		data.setBaseUrl(baseURL.toString());
-		
-		
 		/**************************CONVERSION RDF**************************/
-		InputStream in = null;
-		String resultFileName = "skos-play-convert";
-		
-
 		log.debug("*Conversion à partir d'une Google Spreadsheet : "+input);
 		
 		// String googleSpreadsheetUrlString = input+"/export?format=xlsx";
@@ -95,80 +79,125 @@ public class SkosPlayConvertApiController {
 		log.debug("Google spreadsheet URL "+googleSpreadsheetUrlString);
 		URL googleSpreadsheetUrl = new URL(googleSpreadsheetUrlString);
 		
-		InputStream urlInputStream = googleSpreadsheetUrl.openStream(); // throws an IOException
-		urlInputStream = new DataInputStream(new BufferedInputStream(urlInputStream));
-
-		final java.io.File tempFile = java.io.File.createTempFile("skosplay", ".xlsx");
-        tempFile.deleteOnExit();
-        try (FileOutputStream out = new FileOutputStream(tempFile)) {
-            IOUtils.copy(urlInputStream, out);
-        }
-        
-        in = new FileInputStream(tempFile);
+		// the spreadsheet is read in memory : its digest is part of the key of the conversion result in the cache
+		byte[] spreadsheet;
+		try(InputStream urlInputStream = googleSpreadsheetUrl.openStream()) { // throws an IOException
+			spreadsheet = BoundedByteArrayOutputStream.read(urlInputStream, SkosPlayConfig.getInstance().getConversionMaxInputSize());
+		} catch (InputTooLargeException e) {
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
+			return null;
+		}
+		
+		log.debug("*Lancement de la conversion avec lang="+language+" et usexl="+useskosxl);
+		ConversionQueue.Options options = new ConversionQueue.Options(language, theFormat, useZip, useGraph);
+		options.setUseSkosXl(useskosxl);
+		options.setIgnorePostProc(ignorePostProc);
 		
+		ConversionQueue.Job job;
 		try {
-			log.debug("*Lancement de la conversion avec lang="+language+" et usexl="+useskosxl);
-			// le content type est toujours positionné à "application/zip" si on nous a demandé un zip, sinon il dépend du format de retour demandé
-			response.setContentType((useZip)?"application/zip":theFormat.getDefaultMIMEType());	
-			// le nom du fichier de retour
-			// strip extension, if any
-			resultFileName = (resultFileName.contains("."))?resultFileName.substring(0, resultFileName.lastIndexOf('.')):resultFileName;
-			String extension = (useZip)?"zip":theFormat.getDefaultFileExtension();
-			
-			// add the date in the filename
-			String dateString = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
-			
-			response.setHeader("Content-Disposition", "inline; filename=\""+resultFileName+"-"+dateString+"."+extension+"\"");
-			
-			List<String> identifiant = runConversion(
-					new ModelWriterFactory(useZip, theFormat, useGraph).buildNewModelWriter(response.getOutputStream()),
-					in,
-					language.equals("")?null:language,
-					useskosxl,
-					ignorePostProc
-			);
-			
-			// sort to garantee order
-			List<String> uri=new ArrayList<String>(identifiant);
-			Collections.sort(uri);
-			
-			// insert a log
-			SkosPlayConfig.getInstance().getSqlLogDao().insertLog(new LogEntry(
-					language,
-					null,
-					null,
-					url,
-					"convert",
-					uri.toString()
-			));
-
-		} catch (Xls2RdfException e) {
-			response.reset();
-			e.printStackTrace();
-			return doErrorConvert(request, e.getMessage()); 
-		} finally {
-			try {
-				if(in != null) {
-					in.close();
-				}
-			} catch (IOException ioe) { }
+			job = SkosPlayConfig.getInstance().getConversionQueue().submit(spreadsheet, options);
+		} catch (ConversionRejectedException e) {
+			response.setHeader("Retry-After", Integer.toString(e.getRetryAfter()));
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+			return null;
 		}
-
+		
+		// insert a log when the conversion succeeds, also when the client polls the job for its result
+		job.onSuccess(r -> SkosPlayConfig.getInstance().getSqlLogDao().insertLog(new LogEntry(
+				language,
+				null,
+				null,
+				url,
+				"convert",
+				r.getIdentifiers().toString()
+		)));
+		
+		if(async) {
+			writeStatus(request, response, job, HttpServletResponse.SC_ACCEPTED);
+			return null;
+		}
+		
+		ConversionQueue.Result result;
+		try {
+			result = job.await(SkosPlayConfig.getInstance().getConversionWaitSeconds() * 1000L);
+		} catch (TimeoutException e) {
+			writeStatus(request, response, job, HttpServletResponse.SC_ACCEPTED);
+			return null;
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof Xls2RdfException) {
+				e.getCause().printStackTrace();
+				return doErrorConvert(request, e.getCause().getMessage());
+			}
+			throw e;
+		}
+		
+		SkosPlayConvertController.writeResult(response, job, RESULT_FILE_NAME, result);
 		return null;
 	}
-
-	private List<String> runConversion(ModelWriterIfc Writer, InputStream filefrom, String lang, boolean generatexl, boolean ignorePostProc) {
-		Xls2RdfConverter converter = new Xls2RdfConverter(Writer, lang);
-		List<Xls2RdfPostProcessorIfc> postProcessors = new ArrayList<>();
-		if(!ignorePostProc) {
-			postProcessors.add(new SkosPostProcessor());
+	
+	/**
+	 * Status of a conversion job, as JSON
+	 */
+	@RequestMapping(value = "/convert/jobs/{id}",method = RequestMethod.GET)
+	public void jobStatus(
+			@PathVariable("id") String id,
+			HttpServletRequest request,
+			HttpServletResponse response
+	) throws IOException {
+		ConversionQueue.Job job = SkosPlayConfig.getInstance().getConversionQueue().getJob(id);
+		if(job == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown or expired conversion job "+id);
+			return;
 		}
-		if(!ignorePostProc && generatexl) {
-			postProcessors.add(new SkosXlPostProcessor(generatexl, generatexl));
+		writeStatus(request, response, job, HttpServletResponse.SC_OK);
+	}
+	
+	/**
+	 * Result of a conversion job; answers 202 with the status of the job while it is not finished
+	 */
+	@RequestMapping(value = "/convert/jobs/{id}/result",method = RequestMethod.GET)
+	public void jobResult(
+			@PathVariable("id") String id,
+			HttpServletRequest request,
+			HttpServletResponse response
+	) throws IOException {
+		ConversionQueue.Job job = SkosPlayConfig.getInstance().getConversionQueue().getJob(id);
+		if(job == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown or expired conversion job "+id);
+			return;
+		}
+		switch(job.getStatus()) {
+		case DONE:
+			SkosPlayConvertController.writeResult(response, job, RESULT_FILE_NAME, job.getResult());
+			break;
+		case FAILED:
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, job.getError());
+			break;
+		default:
+			writeStatus(request, response, job, HttpServletResponse.SC_ACCEPTED);
+			break;
+		}
+	}
+	
+	private void writeStatus(HttpServletRequest request, HttpServletResponse response, ConversionQueue.Job job, int httpStatus) throws IOException {
+		String jobUrl = request.getContextPath()+"/api/convert/jobs/"+job.getId();
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("id", job.getId());
+		status.put("status", job.getStatus().name());
+		if(job.getError() != null) {
+			status.put("error", job.getError());
+		}
+		status.put("result", jobUrl+"/result");
+		
+		response.setStatus(httpStatus);
+		if(httpStatus == HttpServletResponse.SC_ACCEPTED) {
+			response.setHeader("Location", jobUrl);
+			response.setHeader("Retry-After", Integer.toString(SkosPlayConfig.getInstance().getConversionQueue().getRetryAfter()));
 		}
-		converter.setPostProcessors(postProcessors);
-		converter.processInputStream(filefrom);
-		return converter.getConvertedVocabularyIdentifiers();
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.getWriter().write(new Gson().toJson(status));
+		response.flushBuffer();
 	}
 
 
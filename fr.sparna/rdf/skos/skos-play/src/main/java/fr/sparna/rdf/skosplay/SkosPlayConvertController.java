@@ -7,14 +7,7 @@ import fr.sparna.google.GoogleConnector;
 import fr.sparna.google.GoogleUser;
 import fr.sparna.rdf.skosplay.log.LogEntry;
 
-import fr.sparna.rdf.xls2rdf.ModelWriterIfc;
-
-import fr.sparna.rdf.xls2rdf.Xls2RdfConverter;
 import fr.sparna.rdf.xls2rdf.Xls2RdfException;
-import fr.sparna.rdf.xls2rdf.Xls2RdfPostProcessorIfc;
-import fr.sparna.rdf.xls2rdf.postprocess.SkosPostProcessor;
-import fr.sparna.rdf.xls2rdf.postprocess.SkosXlPostProcessor;
-import fr.sparna.rdf.xls2rdf.write.ModelWriterFactory;
 
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFWriterRegistry;
@@ -31,20 +24,16 @@ import org.springframework.web.servlet.ModelAndView;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 
 
@@ -170,7 +159,9 @@ public class SkosPlayConvertController {
 
 
 		/**************************CONVERSION RDF**************************/
-		InputStream in = null;
+		// the spreadsheet is read entirely : its digest is part of the key of the conversion result in the cache
+		byte[] input = null;
+		long maxInputSize = SkosPlayConfig.getInstance().getConversionMaxInputSize();
 		String resultFileName = "skos-play-convert";
 
 		switch(source) {
@@ -183,9 +174,11 @@ public class SkosPlayConvertController {
 			}
 
 			try {
-				ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+				BoundedByteArrayOutputStream outputStream = new BoundedByteArrayOutputStream(maxInputSize);
 				new DriveHelper(sessionData.getGoogleConnector().getDriveService()).readSpreadsheet(googleId, outputStream);
-				in = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(outputStream.toByteArray())));
+				input = outputStream.toByteArray();
+			} catch (InputTooLargeException e) {
+				return doErrorConvert(request, e.getMessage());
 			} catch (Exception e1) {
 				String msg = e1.getMessage();
 				int indexOfBeginMessage = msg.lastIndexOf("\"message\":")+"\"message\":".length()+2;
@@ -200,8 +193,9 @@ public class SkosPlayConvertController {
 		case EXAMPLE : {
 			log.debug("*Conversion à partir d'un fichier d'exemple : "+example);
 			URL exampleUrl = new URL(example);
-			InputStream urlInputStream = exampleUrl.openStream(); // throws an IOException
-			in = new DataInputStream(new BufferedInputStream(urlInputStream));
+			try(InputStream urlInputStream = exampleUrl.openStream()) { // throws an IOException
+				input = BoundedByteArrayOutputStream.read(urlInputStream, maxInputSize);
+			}
 			// set the output file name to the name of the example
 			resultFileName = (!exampleUrl.getPath().equals(""))?exampleUrl.getPath():resultFileName;
 			// keep only latest file, after final /
@@ -213,8 +207,11 @@ public class SkosPlayConvertController {
 			if(file.isEmpty()) {
 				return doErrorConvert(request, "Uploaded file is empty");
 			}
+			if(maxInputSize > 0 && file.getSize() > maxInputSize) {
+				return doErrorConvert(request, new InputTooLargeException(maxInputSize).getMessage());
+			}
 
-			in = file.getInputStream();
+			input = file.getBytes();
 			// set the output file name to the name of the input file
 			resultFileName = (file.getOriginalFilename().contains("."))?file.getOriginalFilename().substring(0, file.getOriginalFilename().lastIndexOf('.')):file.getOriginalFilename();
 			break;
@@ -227,8 +224,9 @@ public class SkosPlayConvertController {
 
 			try {
 				URL urls = new URL(url);
-				InputStream urlInputStream = urls.openStream(); // throws an IOException
-				in = new DataInputStream(new BufferedInputStream(urlInputStream));
+				try(InputStream urlInputStream = urls.openStream()) { // throws an IOException
+					input = BoundedByteArrayOutputStream.read(urlInputStream, maxInputSize);
+				}
 
 				// set the output file name to the final part of the URL
 				resultFileName = (!urls.getPath().equals(""))?urls.getPath():resultFileName;
@@ -245,89 +243,81 @@ public class SkosPlayConvertController {
 			break;
 		}
 
+		if(input == null) {
+			return doErrorConvert(request, "No spreadsheet to convert");
+		}
 
+		// Always disable use of scientific annotation on numbers 
+		System.setProperty("org.eclipse.rdf4j.rio.turtle.abbreviate_numbers", "false");			
+
+		log.debug("*Lancement de la conversion avec lang="+language+" et usexl="+useskosxl);
+		ConversionQueue.Options options = new ConversionQueue.Options(language, theFormat, useZip, useGraph);
+		options.setUseSkosXl(useskosxl);
+		options.setBroaderTransitive(broaderTransitive);
+		options.setIgnorePostProc(ignorePostProc);
+		options.setFailIfNoReconcile(true);
+
+		ConversionQueue.Job job;
 		try {
-			
-			// Always disable use of scientific annotation on numbers 
-			System.setProperty("org.eclipse.rdf4j.rio.turtle.abbreviate_numbers", "false");			
-			
-			log.debug("*Lancement de la conversion avec lang="+language+" et usexl="+useskosxl);
-			// le content type est toujours positionné à "application/zip" si on nous a demandé un zip, sinon il dépend du format de retour demandé
-			response.setContentType((useZip)?"application/zip":theFormat.getDefaultMIMEType());
-			// set response charset corresponding to the format, if applicable
-			if(theFormat.hasCharset()) {
-				response.setCharacterEncoding(theFormat.getCharset().name());
-			}
-			// le nom du fichier de retour
-			// strip extension, if any
-			resultFileName = (resultFileName.contains("."))?resultFileName.substring(0, resultFileName.lastIndexOf('.')):resultFileName;
-			String extension = (useZip)?"zip":theFormat.getDefaultFileExtension();
-
-			// add the date in the filename
-			String dateString = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
-
-			response.setHeader("Content-Disposition", "inline; filename=\""+resultFileName+"-"+dateString+"."+extension+"\"");
-
-			List<String> identifiant = runConversion(
-					new ModelWriterFactory(useZip, theFormat, useGraph).buildNewModelWriter(response.getOutputStream()),
-					in,
-					language.equals("")?null:language,
-					useskosxl,
-					broaderTransitive,
-					ignorePostProc
-			);
-
-			// sort to garantee order
-			List<String> uri=new ArrayList<String>(identifiant);
-			Collections.sort(uri);
-
-			// insert a log
-			SkosPlayConfig.getInstance().getSqlLogDao().insertLog(new LogEntry(
-					language,
-					null,
-					null,
-					url,
-					"convert",
-					uri.toString()
-			));
-
-		} catch (Xls2RdfException e) {
-			e.printStackTrace();
-			response.reset();
+			job = SkosPlayConfig.getInstance().getConversionQueue().submit(input, options);
+		} catch (ConversionRejectedException e) {
+			response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			response.setHeader("Retry-After", Integer.toString(e.getRetryAfter()));
 			return doErrorConvert(request, e.getMessage());
-		} finally {
-			try {
-				if(in != null) {
-					in.close();
-				}
-			} catch (IOException ioe) { }
 		}
 
-		return null;
-	}
-
-	private List<String> runConversion(ModelWriterIfc writer, InputStream filefrom, String lang, boolean generatexl, boolean broaderTransitive, boolean ignorePostProc) {
-		Xls2RdfConverter converter;
-		if(lang == null || lang.trim().equals("")) {
-			converter = new Xls2RdfConverter(writer);
-		} else {
-			converter = new Xls2RdfConverter(writer, lang);
+		// insert a log when the conversion succeeds, even if it ends after this request stopped waiting
+		job.onSuccess(r -> SkosPlayConfig.getInstance().getSqlLogDao().insertLog(new LogEntry(
+				language,
+				null,
+				null,
+				url,
+				"convert",
+				r.getIdentifiers().toString()
+		)));
+
+		ConversionQueue.Result result;
+		try {
+			result = job.await(SkosPlayConfig.getInstance().getConversionWaitSeconds() * 1000L);
+		} catch (TimeoutException e) {
+			response.setStatus(HttpServletResponse.SC_ACCEPTED);
+			return doErrorConvert(request, "The conversion is still running, its result will be available at "+baseURL+"/api/convert/jobs/"+job.getId()+"/result");
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof Xls2RdfException) {
+				e.getCause().printStackTrace();
+				return doErrorConvert(request, e.getCause().getMessage());
+			}
+			throw e;
 		}
-		converter.setFailIfNoReconcile(true);
-		
-		List<Xls2RdfPostProcessorIfc> postProcessors = new ArrayList<>();
 
-		if(!ignorePostProc) {
-			postProcessors.add(new SkosPostProcessor(broaderTransitive));
+		writeResult(response, job, resultFileName, result);
+		return null;
+	}
 
-			if (generatexl) {
-				postProcessors.add(new SkosXlPostProcessor(generatexl, generatexl));
-			}
+	/**
+	 * Writes the result of a conversion in the response, with a file name including the date
+	 * 
+	 * @param fileName	the name of the result file requested by this request, the job may be shared with others
+	 */
+	static void writeResult(HttpServletResponse response, ConversionQueue.Job job, String fileName, ConversionQueue.Result result) throws IOException {
+		ConversionQueue.Options options = job.getOptions();
+		response.setContentType(options.getContentType());
+		// set response charset corresponding to the format, if applicable
+		if(!options.isUseZip() && options.getFormat().hasCharset()) {
+			response.setCharacterEncoding(options.getFormat().getCharset().name());
 		}
-		converter.setPostProcessors(postProcessors);
-
-		converter.processInputStream(filefrom);
-		return converter.getConvertedVocabularyIdentifiers();
+		// le nom du fichier de retour
+		// strip extension, if any
+		String resultFileName = fileName;
+		resultFileName = (resultFileName.contains("."))?resultFileName.substring(0, resultFileName.lastIndexOf('.')):resultFileName;
+
+		// add the date in the filename
+		String dateString = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+
+		response.setHeader("Content-Disposition", "inline; filename=\""+resultFileName+"-"+dateString+"."+options.getExtension()+"\"");
+		response.setContentLength(result.getBytes().length);
+		response.getOutputStream().write(result.getBytes());
+		response.flushBuffer();
 	}
 
 
@@ -1,13 +1,16 @@
 package fr.sparna.rdf.skosplay;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
+import org.apache.commons.io.IOUtils;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Value;
@@ -16,7 +19,10 @@ import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.util.RDFInserter;
 import org.eclipse.rdf4j.rio.RDFFormat;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import fr.sparna.rdf.rdf4j.toolkit.languages.Languages;
 import fr.sparna.rdf.rdf4j.toolkit.languages.Languages.Language;
@@ -31,59 +37,159 @@ import fr.sparna.rdf.rdf4j.toolkit.repository.init.LoadFromFileOrDirectory;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.LoadFromStream;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.LoadFromUrl;
 import fr.sparna.rdf.rdf4j.toolkit.util.LabelReader;
+import fr.sparna.rdf.skos.toolkit.DatasetFingerprint;
+import fr.sparna.rdf.skos.toolkit.Digests;
 import fr.sparna.rdf.skos.toolkit.SKOSRules;
+import fr.sparna.rdf.skos.toolkit.cache.CachingRepository;
+import fr.sparna.rdf.skos.toolkit.cache.QueryResultCache;
 
 public class SkosPlayModel {
 
+	// prefix of the request attribute holding the repository of a dataset once it is read from the registry
+	private static final String REPOSITORY_ATTRIBUTE = SkosPlayModel.class.getName()+".repository:";
+
+	// the repository, if it is not registered in the DatasetRegistry
 	protected Repository repository;
 	protected String inputFileName;
 	protected String inputUrl;
+	// true if the repository is a remote SPARQL endpoint
+	protected boolean endpoint = false;
+	// fingerprint of the repository content, computed on first use, reset each time the content changes
+	protected String fingerprint;
+	// the same fingerprint with the hash of each concept, computed on first print, reset with the fingerprint
+	protected DatasetFingerprint datasetFingerprint;
+	// true if the repository is shared with other sessions, and must be copied before being modified
+	protected boolean shared = false;
+	// true if the repository is registered in the DatasetRegistry under the dataset key, and is read from there
+	protected boolean registered = false;
+	// key of the content of a shared repository, used to derive the key of its modified copies
+	protected String datasetKey;
+	// whether the repository was loaded with RDFS inference, so that copies are created the same way
+	protected boolean rdfsInference = false;
+	// precomputed profile of the data, if known; reset each time the content changes
+	protected DatasetProfile profile;
 	
 	public SkosPlayModel() {
 		super();
 	}
 
-	public void load(InputStream file, RDFFormat format, boolean rdfsInference) {
-		
-		RepositoryBuilder localRepositoryBuilder = createRepositoryBuilder(rdfsInference);		
-		localRepositoryBuilder.addOperation(new LoadFromStream(file, format));
-		repository = localRepositoryBuilder.get();
+	public void load(InputStream file, RDFFormat format, boolean rdfsInference) throws IOException {
+		load(IOUtils.toByteArray(file), format, rdfsInference);
+	}
+	
+	/**
+	 * Loads the given content, sharing the repository with the other sessions that loaded the same bytes with the
+	 * same options.
+	 */
+	public void load(final byte[] content, final RDFFormat format, final boolean rdfsInference) {
+		String key = acquire(content, format, rdfsInference);
+		setSharedRepository(key, rdfsInference);
+	}
+	
+	/**
+	 * Registers the given content in the {@link DatasetRegistry}, loading it if no other session loaded the same bytes
+	 * with the same options
+	 * 
+	 * @return the key of the dataset, with a reference acquired on it
+	 */
+	private String acquire(final byte[] content, final RDFFormat format, final boolean rdfsInference) {
+		String key = "bytes:"+Digests.sha256(content)+":"+format.getName()+":"+rdfsInference;
+		getDatasetRegistry().acquire(key, () -> {
+			RepositoryBuilder localRepositoryBuilder = createRepositoryBuilder(rdfsInference);		
+			localRepositoryBuilder.addOperation(new LoadFromStream(new ByteArrayInputStream(content), format));
+			return localRepositoryBuilder.get();
+		});
+		return key;
 	}
 	
 	public void performOwl2Skos() {
-		try(RepositoryConnection connection = repository.getConnection()) {
-			// apply inference
-			ApplyUpdates au = ApplyUpdates.fromQueryReaders(SKOSRules.getOWL2SKOSRuleset());
-			au.accept(connection);
-		}
+		applyRules("owl2skos", SKOSRules.getOWL2SKOSRuleset());
 	}
 	
 	public void performSkosXl2Skos() {
-		try(RepositoryConnection connection = repository.getConnection()) {
-			// apply inference
-			ApplyUpdates au = ApplyUpdates.fromQueryReaders(SKOSRules.getSkosXl2SkosRuleset());
-			au.accept(connection);
-		}		
+		applyRules("skosxl2skos", SKOSRules.getSkosXl2SkosRuleset());
+	}
+	
+	/**
+	 * Applies the rules on the repository. A shared repository is not modified : the rules are applied on a copy,
+	 * itself shared with the other sessions that applied the same rules on the same data.
+	 */
+	protected void applyRules(String rulesName, final List<SimpleQueryReader> rules) {
+		if(!this.shared) {
+			apply(this.repository, rules);
+			this.fingerprint = null;
+			this.datasetFingerprint = null;
+			this.profile = null;
+			return;
+		}
+		
+		final Repository source = getRepository();
+		final boolean inference = this.rdfsInference;
+		String derivedKey = this.datasetKey+"+"+rulesName;
+		getDatasetRegistry().acquire(derivedKey, () -> {
+			Repository r = copy(source, inference);
+			apply(r, rules);
+			return r;
+		});
+		setSharedRepository(derivedKey, inference);
 	}
 	
+	/**
+	 * Loads one of the examples of the application, from its snapshot, compiled on first use. The example is shared
+	 * with all the sessions using it, and its profile is known without querying it.
+	 */
 	public void loadExample(String example) throws IOException {
-		repository = SkosPlayConfig.getInstance().getApplicationData().getExampleDatas().get(example);
+		ExampleDataset exampleDataset = SkosPlayConfig.getInstance().getApplicationData().getExampleDatas().get(example);
+		if(exampleDataset == null) {
+			throw new IOException("Unknown example "+example);
+		}
+		String key = "example:"+example;
+		File snapshot = exampleDataset.getSnapshot();
+		getDatasetRegistry().acquire(key, snapshot);
+		setSharedRepository(key, false);
+		this.profile = exampleDataset.getProfile();
 	}
 	
 	public void load(String url, boolean rdfsInference) throws IOException {
 		// we are loading an RDF file from the web, use the localRepositoryBuilder and apply inference if required
-		if(!RepositoryBuilderFactory.isEndpointURL(url)) {
+		if(!RepositoryBuilderFactory.isEndpointURL(url) && getUrlDatasetCache().isEnabled()) {
+			// reuse the dataset of a previous load of the same URL if it did not change
+			String key;
+			try {
+				key = getUrlDatasetCache().acquire(url, "inference="+rdfsInference, (content, format) -> acquire(content, format, rdfsInference));
+			} catch (Exception e) {
+				throw new IOException("Exception when trying to load URL "+url, e);
+			}
+			setSharedRepository(key, rdfsInference);
+		} else if(!RepositoryBuilderFactory.isEndpointURL(url)) {
+			Repository loaded;
 			try {
 				RepositoryBuilder localRepositoryBuilder = createRepositoryBuilder(rdfsInference);
 				localRepositoryBuilder.addOperation(new LoadFromUrl(new URL(url)));
-				repository = localRepositoryBuilder.get();
+				loaded = localRepositoryBuilder.get();
 			} catch (Exception e) {
 				throw new IOException("Exception when trying to load URL "+url, e);
-			}			
+			}
+			// the bytes are not available, identify the data by the triples
+			String contentFingerprint;
+			try(RepositoryConnection connection = loaded.getConnection()) {
+				contentFingerprint = DatasetFingerprint.compute(connection);
+			}
+			String key = "triples:"+contentFingerprint+":"+rdfsInference;
+			getDatasetRegistry().acquire(key, loaded);
+			setSharedRepository(key, rdfsInference);
+			this.fingerprint = contentFingerprint;
 		} else {
 			try {
 				// this is a endpoint
-				repository = RepositoryBuilderFactory.fromString(url).get();
+				Repository endpointRepository = RepositoryBuilderFactory.fromString(url).get();
+				// answer the queries already sent to this endpoint from the local cache
+				QueryResultCache endpointCache = SkosPlayConfig.getInstance().getEndpointCache();
+				if(endpointCache != null) {
+					endpointRepository = new CachingRepository(endpointRepository, url, endpointCache);
+				}
+				setRepository(endpointRepository);
+				this.endpoint = true;
 			} catch (Exception e) {
 				throw new IOException("Exception when trying to connect to endpoint "+url, e);
 			}
@@ -91,39 +197,162 @@ public class SkosPlayModel {
 	}
 	
 	public void setRepository(Repository repository) {
+		release();
 		this.repository = repository;
+		this.endpoint = false;
+		this.fingerprint = null;
+		this.datasetFingerprint = null;
+		this.shared = false;
+		this.registered = false;
+		this.datasetKey = null;
+		this.profile = null;
+	}
+	
+	/**
+	 * Sets a repository acquired from the {@link DatasetRegistry} under the given key, releasing the previous one. The
+	 * repository is not kept in this model, but read from the registry on each access, so that it can be spilled to disk
+	 * while the session is idle.
+	 */
+	protected void setSharedRepository(String datasetKey, boolean rdfsInference) {
+		setRepository(null);
+		this.shared = true;
+		this.registered = true;
+		this.datasetKey = datasetKey;
+		this.rdfsInference = rdfsInference;
+	}
+	
+	/**
+	 * Gives back the repository to the {@link DatasetRegistry} if it is registered there. To be called when the model is
+	 * not used anymore (session expired, or new data loaded in the session); the model cannot be used afterwards.
+	 */
+	public void release() {
+		if(this.registered) {
+			getDatasetRegistry().release(this.datasetKey);
+			this.registered = false;
+			this.shared = false;
+		}
+	}
+	
+	public boolean isShared() {
+		return shared;
+	}
+	
+	/**
+	 * Returns a fingerprint of the content of the repository, to be used in cache keys of everything derived from it.
+	 * The fingerprint is computed the first time it is requested after the content has changed.
+	 * 
+	 * @return the fingerprint of the data, or null if the data is read from a SPARQL endpoint and can change at any time
+	 */
+	public synchronized String getFingerprint() {
+		Repository r = getRepository();
+		if(this.endpoint || r == null) {
+			return null;
+		}
+		if(this.fingerprint == null) {
+			try(RepositoryConnection connection = r.getConnection()) {
+				this.fingerprint = DatasetFingerprint.compute(connection);
+			}
+		}
+		return this.fingerprint;
 	}
 	
+	/**
+	 * Returns the fingerprint of the content of the repository along with the hash of each concept, used to cache the
+	 * blocks of the concepts that did not change from one version of the data to the next.
+	 * 
+	 * @return the fingerprint of the data, or null if the data is read from a SPARQL endpoint
+	 */
+	public synchronized DatasetFingerprint getDatasetFingerprint() {
+		Repository r = getRepository();
+		if(this.endpoint || r == null) {
+			return null;
+		}
+		if(this.datasetFingerprint == null) {
+			try(RepositoryConnection connection = r.getConnection()) {
+				this.datasetFingerprint = DatasetFingerprint.read(connection);
+			}
+			this.fingerprint = this.datasetFingerprint.getValue();
+		}
+		return this.datasetFingerprint;
+	}
+	
+	public boolean isEndpoint() {
+		return endpoint;
+	}
+	
+	/**
+	 * @return the repository, reloaded from disk if it was spilled while the session was idle. Callers should not keep it
+	 * longer than a request. A registered repository is read from the registry once per request, and kept in the
+	 * request attributes for the next calls of the same request.
+	 */
 	public Repository getRepository() {
-		return repository;
+		if(!this.registered) {
+			return repository;
+		}
+		RequestAttributes request = RequestContextHolder.getRequestAttributes();
+		if(request == null) {
+			// not called from a request, e.g. on a thread of an executor
+			return getDatasetRegistry().get(this.datasetKey);
+		}
+		String attribute = REPOSITORY_ATTRIBUTE+this.datasetKey;
+		Repository r = (Repository)request.getAttribute(attribute, RequestAttributes.SCOPE_REQUEST);
+		if(r == null) {
+			r = getDatasetRegistry().get(this.datasetKey);
+			if(r != null) {
+				request.setAttribute(attribute, r, RequestAttributes.SCOPE_REQUEST);
+			}
+		}
+		return r;
+	}
+	
+	/**
+	 * @return the precomputed profile of the data, or null if it is not known; the methods below use it when it is set
+	 */
+	public DatasetProfile getProfile() {
+		return profile;
 	}
 	
 	public boolean isHierarchical() {
-		try(RepositoryConnection connection = repository.getConnection()) {
+		if(this.profile != null) {
+			return this.profile.isHierarchical();
+		}
+		try(RepositoryConnection connection = getRepository().getConnection()) {
 			return Perform.on(connection).ask(new SimpleQueryReader(this, "AskBroadersOrNarrowers.rq").get());
 		} 
 	}
 	
 	public boolean isMultilingual() {
-		try(RepositoryConnection connection = repository.getConnection()) {
+		if(this.profile != null) {
+			return this.profile.isMultilingual();
+		}
+		try(RepositoryConnection connection = getRepository().getConnection()) {
 			return Perform.on(connection).ask(new SimpleQueryReader(this, "AskTranslatedConcepts.rq").get());
 		} 
 	}
 	
 	public boolean isAligned() {
-		try(RepositoryConnection connection = repository.getConnection()) {
+		if(this.profile != null) {
+			return this.profile.isAligned();
+		}
+		try(RepositoryConnection connection = getRepository().getConnection()) {
 			return Perform.on(connection).ask(new SimpleQueryReader(this, "AskMappings.rq").get());
 		}
 	}
 	
 	public int getConceptCount() {
-		try(RepositoryConnection connection = repository.getConnection()) {
+		if(this.profile != null) {
+			return this.profile.getConceptCount();
+		}
+		try(RepositoryConnection connection = getRepository().getConnection()) {
 			return Perform.on(connection).count(new SimpleQueryReader(this, "CountConcepts.rq").get());
 		}
 	}
 	
 	public String getLicense() {
-		try(RepositoryConnection connection = repository.getConnection()) {
+		if(this.profile != null) {
+			return this.profile.getLicense();
+		}
+		try(RepositoryConnection connection = getRepository().getConnection()) {
 			Value license = Perform.on(connection).read(new SimpleQueryReader(this, "ReadLicense.rq").get());
 			if(license != null && license instanceof Literal) {
 				return ((Literal)license).stringValue();
@@ -140,7 +369,14 @@ public class SkosPlayModel {
 		// use a TreeMap to guarantee order on keys
 		final Map<String, String> result = new TreeMap<String, String>();
 		
-		try(RepositoryConnection connection = repository.getConnection()) {
+		if(this.profile != null) {
+			for (String rdfLanguage : this.profile.getLanguages()) {
+				result.put(rdfLanguage, languageName(rdfLanguage, locale));
+			}
+			return result;
+		}
+		
+		try(RepositoryConnection connection = getRepository().getConnection()) {
 			// retrieve list of declared languages in the data
 			Perform.on(connection).select(
 					new SimpleQueryReader(this, "ListOfSkosLanguages.rq").get(),
@@ -150,11 +386,9 @@ public class SkosPlayModel {
 						public void handleSolution(BindingSet bindingSet)
 						throws TupleQueryResultHandlerException {
 							String rdfLanguage = bindingSet.getValue("language").stringValue();
-							Language l = Languages.getInstance().withIso639P1(rdfLanguage);
-							String languageName = (l != null)?l.displayIn(locale):rdfLanguage;
 							result.put(
-									bindingSet.getValue("language").stringValue(),
-									languageName									
+									rdfLanguage,
+									languageName(rdfLanguage, locale)
 							);
 						}
 						
@@ -165,11 +399,16 @@ public class SkosPlayModel {
 		return result;
 	}
 	
+	private static String languageName(String rdfLanguage, String locale) {
+		Language l = Languages.getInstance().withIso639P1(rdfLanguage);
+		return (l != null)?l.displayIn(locale):rdfLanguage;
+	}
+	
 	public Map<LabeledResource, Integer> getConceptCountByConceptScheme(final LabelReader labelReader) {
 		
 		final Map<LabeledResource, Integer> conceptCountByConceptSchemes = new TreeMap<LabeledResource, Integer>();
 		
-		try(RepositoryConnection connection = repository.getConnection()) {
+		try(RepositoryConnection connection = getRepository().getConnection()) {
 			// retrieve number of concepts per concept schemes
 			Perform.on(connection).select(
 					new SimpleQueryReader(this, "ConceptCountByConceptSchemes.rq").get(),
@@ -217,6 +456,36 @@ public class SkosPlayModel {
 		this.inputUrl = inputUrl;
 	}
 
+	private static void apply(Repository repository, List<SimpleQueryReader> rules) {
+		try(RepositoryConnection connection = repository.getConnection()) {
+			// apply inference
+			ApplyUpdates au = ApplyUpdates.fromQueryReaders(rules);
+			au.accept(connection);
+		}
+	}
+	
+	/**
+	 * @return a new, private repository with the explicit statements of the given one
+	 */
+	private Repository copy(Repository source, boolean rdfsInference) {
+		Repository copy = createRepositoryBuilder(rdfsInference).get();
+		try(
+				RepositoryConnection from = source.getConnection();
+				RepositoryConnection to = copy.getConnection()
+		) {
+			from.export(new RDFInserter(to));
+		}
+		return copy;
+	}
+	
+	private static DatasetRegistry getDatasetRegistry() {
+		return SkosPlayConfig.getInstance().getDatasetRegistry();
+	}
+	
+	private static UrlDatasetCache getUrlDatasetCache() {
+		return SkosPlayConfig.getInstance().getUrlDatasetCache();
+	}
+
 	private RepositoryBuilder createRepositoryBuilder(boolean rdfsInference) {
 		RepositoryBuilder localRepositoryBuilder;
 		
@@ -0,0 +1,365 @@
+package fr.sparna.rdf.skosplay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers which dataset was loaded from each URL, so that loading the same URL again does not download and parse
+ * the file again.
+ * <p>Within the freshness window after a URL was downloaded or revalidated, the dataset is reused as is. After that,
+ * the URL is revalidated with a conditional GET, using the ETag and Last-Modified headers of the previous response : if
+ * the server answers 304 Not Modified, the dataset is reused; otherwise the new content is loaded. Redirects are
+ * followed, up to 5 hops, and responses other than 2xx fail the load.
+ * <p>The datasets are held in the {@link DatasetRegistry}, under the key given by the {@link ContentLoader}; the cache
+ * holds a reference on the dataset of each URL, so that it stays registered (and is spilled to disk by the registry
+ * when it is not used) until the URL is evicted from the cache or its content changes. The least recently used URLs
+ * are evicted beyond the max number of entries. Downloads larger than the max input size fail the load.
+ * <p>Concurrent loads of the same URL download it only once. The cache can be used by multiple threads.
+ *
+ * @author Thomas Francart
+ */
+public class UrlDatasetCache {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	private static final int MAX_REDIRECTS = 5;
+
+	private static final String ACCEPT = "text/turtle, application/rdf+xml;q=0.9, application/n-triples;q=0.8, application/ld+json;q=0.8, application/trig;q=0.7, */*;q=0.1";
+
+	protected DatasetRegistry registry;
+
+	// max number of URLs in the cache; 0 disables the cache
+	protected int maxEntries = 100;
+	// time during which a dataset is reused without revalidating its URL, in ms
+	protected long freshness = 5 * 60 * 1000;
+
+	// max number of bytes downloaded from a URL, 0 for no limit
+	protected long maxInputSize = 100 * 1024 * 1024;
+
+	protected int connectTimeout = 10000;
+	protected int readTimeout = 60000;
+
+	// entries in access order, for LRU eviction
+	protected LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	protected AtomicLong hits = new AtomicLong();
+	protected AtomicLong revalidations = new AtomicLong();
+	protected AtomicLong notModified = new AtomicLong();
+	protected AtomicLong downloads = new AtomicLong();
+
+	public UrlDatasetCache(DatasetRegistry registry) {
+		super();
+		this.registry = registry;
+	}
+
+	/**
+	 * Registers the content downloaded from a URL in the {@link DatasetRegistry}
+	 */
+	public interface ContentLoader {
+		/**
+		 * @return the key of the dataset in the registry, with a reference acquired for the caller
+		 */
+		public String load(byte[] content, RDFFormat format) throws IOException;
+	}
+
+	/**
+	 * Returns the dataset loaded from the given URL, downloading it only if it is not in the cache or if it changed.
+	 *
+	 * @param url		the URL of an RDF file
+	 * @param options	options used to load the content, part of the cache key (e.g. RDFS inference)
+	 * @param loader	loads the content downloaded from the URL
+	 * @return the key of the dataset in the registry, with a reference acquired for the caller
+	 */
+	public String acquire(String url, String options, ContentLoader loader) throws IOException {
+		String cacheKey = url+" "+options;
+		Entry entry;
+		List<Entry> evicted = null;
+		synchronized (this) {
+			entry = this.entries.get(cacheKey);
+			if(entry == null) {
+				entry = new Entry(url);
+				this.entries.put(cacheKey, entry);
+				evicted = evict();
+			}
+		}
+		release(evicted);
+
+		// one load or revalidation at a time for a given URL
+		synchronized (entry) {
+			if(entry.datasetKey != null && System.currentTimeMillis() - entry.validatedAt < this.freshness && this.registry.retain(entry.datasetKey)) {
+				this.hits.incrementAndGet();
+				log.debug("Reusing dataset of "+url);
+				return entry.datasetKey;
+			}
+			return fetch(entry, loader);
+		}
+	}
+
+	protected String fetch(Entry entry, ContentLoader loader) throws IOException {
+		boolean conditional = (entry.datasetKey != null && (entry.etag != null || entry.lastModified != null));
+		if(conditional) {
+			this.revalidations.incrementAndGet();
+		}
+
+		String currentUrl = entry.url;
+		int redirects = 0;
+		while(true) {
+			URLConnection connection = new URL(currentUrl).openConnection();
+			connection.setConnectTimeout(this.connectTimeout);
+			connection.setReadTimeout(this.readTimeout);
+			connection.setRequestProperty("Accept", ACCEPT);
+			if(conditional && entry.etag != null) {
+				connection.setRequestProperty("If-None-Match", entry.etag);
+			}
+			if(conditional && entry.lastModified != null) {
+				connection.setRequestProperty("If-Modified-Since", entry.lastModified);
+			}
+
+			try {
+				if(connection instanceof HttpURLConnection) {
+					HttpURLConnection http = (HttpURLConnection)connection;
+					// redirects are followed manually, since HttpURLConnection does not follow redirects from http to https
+					http.setInstanceFollowRedirects(false);
+					int code = http.getResponseCode();
+					if(code >= 300 && code < 400 && code != HttpURLConnection.HTTP_NOT_MODIFIED && http.getHeaderField("Location") != null) {
+						if(++redirects > MAX_REDIRECTS) {
+							throw new IOException("Too many redirects for "+entry.url);
+						}
+						currentUrl = new URL(new URL(currentUrl), http.getHeaderField("Location")).toString();
+						continue;
+					}
+
+					if(code == HttpURLConnection.HTTP_NOT_MODIFIED && conditional) {
+						if(this.registry.retain(entry.datasetKey)) {
+							this.notModified.incrementAndGet();
+							entry.validatedAt = System.currentTimeMillis();
+							log.debug("Dataset of "+entry.url+" not modified");
+							return entry.datasetKey;
+						}
+						// the dataset was unloaded from the registry in the meantime, ask again for the full content
+						log.debug("Dataset of "+entry.url+" not modified but no longer registered, downloading it again");
+						conditional = false;
+						currentUrl = entry.url;
+						redirects = 0;
+						continue;
+					}
+
+					if(code < 200 || code >= 300) {
+						throw new IOException("Cannot download "+entry.url+" : server answered "+code+" for "+currentUrl);
+					}
+				}
+
+				byte[] content;
+				try(InputStream in = connection.getInputStream()) {
+					content = BoundedByteArrayOutputStream.read(in, this.maxInputSize);
+				}
+				this.downloads.incrementAndGet();
+				RDFFormat format = guessFormat(connection.getContentType(), currentUrl);
+				String datasetKey = loader.load(content, format);
+
+				if(entry.evicted) {
+					// the entry was evicted during the download, the cache keeps no reference on the dataset
+					log.debug("Downloaded "+entry.url+" after its eviction from the cache");
+					return datasetKey;
+				}
+
+				// the cache keeps its own reference on the new dataset, and gives back the one on the previous dataset
+				this.registry.retain(datasetKey);
+				if(entry.datasetKey != null) {
+					this.registry.release(entry.datasetKey);
+				}
+				entry.datasetKey = datasetKey;
+				entry.etag = connection.getHeaderField("ETag");
+				entry.lastModified = connection.getHeaderField("Last-Modified");
+				entry.validatedAt = System.currentTimeMillis();
+				log.info("Downloaded "+entry.url+" ("+content.length+" bytes, "+format.getName()+"), "+this);
+				return datasetKey;
+			} finally {
+				if(connection instanceof HttpURLConnection) {
+					((HttpURLConnection)connection).disconnect();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Guesses the RDF format of the content from the content type of the response, or from the extension of the URL,
+	 * defaulting to RDF/XML. The extension comes first when the content type is a generic one, since many servers send
+	 * Turtle files as text/plain.
+	 */
+	protected static RDFFormat guessFormat(String contentType, String url) {
+		String mimeType = (contentType != null)?contentType.split(";")[0].trim().toLowerCase():"";
+		boolean generic = mimeType.isEmpty() || mimeType.equals("text/plain") || mimeType.equals("application/octet-stream");
+
+		String path = url;
+		int query = path.indexOf('?');
+		if(query > 0) {
+			path = path.substring(0, query);
+		}
+		RDFFormat fromExtension = Rio.getParserFormatForFileName(path).orElse(null);
+		if(generic && fromExtension != null) {
+			return fromExtension;
+		}
+		RDFFormat fromMimeType = Rio.getParserFormatForMIMEType(mimeType).orElse(null);
+		if(fromMimeType != null) {
+			return fromMimeType;
+		}
+		return (fromExtension != null)?fromExtension:RDFFormat.RDFXML;
+	}
+
+	/**
+	 * Removes the least recently used entries beyond the max number of entries. To be called with the lock of the cache;
+	 * the returned entries are to be released after that lock is released, since they may be being loaded.
+	 */
+	private List<Entry> evict() {
+		List<Entry> evicted = new ArrayList<Entry>();
+		Iterator<Map.Entry<String, Entry>> i = this.entries.entrySet().iterator();
+		while(this.entries.size() > this.maxEntries && i.hasNext()) {
+			evicted.add(i.next().getValue());
+			i.remove();
+		}
+		return evicted;
+	}
+
+	private void release(List<Entry> evicted) {
+		if(evicted == null) {
+			return;
+		}
+		for (Entry anEntry : evicted) {
+			synchronized (anEntry) {
+				// an entry being downloaded does not keep a reference once it is evicted
+				anEntry.evicted = true;
+				if(anEntry.datasetKey != null) {
+					this.registry.release(anEntry.datasetKey);
+					anEntry.datasetKey = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes all the URLs from the cache
+	 */
+	public void clear() {
+		List<Entry> all;
+		synchronized (this) {
+			all = new ArrayList<Entry>(this.entries.values());
+			this.entries.clear();
+		}
+		release(all);
+	}
+
+	public boolean isEnabled() {
+		return this.maxEntries > 0;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries) {
+		List<Entry> evicted;
+		synchronized (this) {
+			this.maxEntries = maxEntries;
+			evicted = evict();
+		}
+		release(evicted);
+	}
+
+	public long getFreshness() {
+		return freshness;
+	}
+
+	/**
+	 * @param freshness	time during which a dataset is reused without revalidating its URL, in ms
+	 */
+	public void setFreshness(long freshness) {
+		this.freshness = freshness;
+	}
+
+	public long getMaxInputSize() {
+		return maxInputSize;
+	}
+
+	/**
+	 * @param maxInputSize	max number of bytes downloaded from a URL, 0 for no limit
+	 */
+	public void setMaxInputSize(long maxInputSize) {
+		this.maxInputSize = maxInputSize;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * @return number of loads served without contacting the server
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of conditional requests sent to revalidate a dataset
+	 */
+	public long getRevalidations() {
+		return revalidations.get();
+	}
+
+	/**
+	 * @return number of conditional requests answered with 304 Not Modified
+	 */
+	public long getNotModified() {
+		return notModified.get();
+	}
+
+	/**
+	 * @return number of full downloads
+	 */
+	public long getDownloads() {
+		return downloads.get();
+	}
+
+	@Override
+	public String toString() {
+		return "UrlDatasetCache [entries=" + size() + ", hits=" + hits + ", revalidations=" + revalidations + ", notModified=" + notModified + ", downloads=" + downloads + "]";
+	}
+
+	protected static class Entry {
+		protected String url;
+		// key of the dataset in the registry, null if not loaded yet
+		protected String datasetKey;
+		protected String etag;
+		protected String lastModified;
+		protected long validatedAt;
+		// true once the entry is removed from the cache, guarded by the entry
+		protected boolean evicted = false;
+
+		public Entry(String url) {
+			this.url = url;
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package fr.sparna.rdf.skosplay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A bounded, in-memory cache of the JSON payloads of the visualizations, stored gzipped so that they can be sent as is
+ * to the browsers accepting gzip. The least recently used payloads are evicted when the total size of the cache exceeds
+ * its maximum size.
+ * <p>Keys are built from the fingerprint of the dataset and the visualization options, and do not depend on the
+ * representation sent (gzipped or not). The cache can be used by multiple threads.
+ *
+ * @author Thomas Francart
+ */
+public class VizPayloadCache {
+
+	// max total size of the gzipped payloads, in bytes
+	protected long maxSize;
+	protected long size = 0;
+
+	// access-ordered, least recently used first
+	protected LinkedHashMap<String, byte[]> payloads = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+	protected long hits = 0;
+	protected long misses = 0;
+	protected long notModified = 0;
+
+	/**
+	 * @param maxSize maximum total size of the gzipped payloads, in bytes
+	 */
+	public VizPayloadCache(long maxSize) {
+		super();
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return the gzipped payload, or null if it is not in the cache
+	 */
+	public synchronized byte[] get(String key) {
+		byte[] payload = this.payloads.get(key);
+		if(payload == null) {
+			this.misses++;
+		} else {
+			this.hits++;
+		}
+		return payload;
+	}
+
+	/**
+	 * Stores a gzipped payload in the cache. Payloads larger than the cache are not stored.
+	 */
+	public synchronized void put(String key, byte[] gzipped) {
+		if(gzipped.length > this.maxSize) {
+			return;
+		}
+
+		byte[] previous = this.payloads.put(key, gzipped);
+		if(previous != null) {
+			this.size -= previous.length;
+		}
+		this.size += gzipped.length;
+
+		Iterator<Map.Entry<String, byte[]>> it = this.payloads.entrySet().iterator();
+		while(this.size > this.maxSize && it.hasNext()) {
+			this.size -= it.next().getValue().length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Counts a conditional request answered without sending the payload
+	 */
+	public synchronized void notModified() {
+		this.notModified++;
+	}
+
+	public static byte[] gzip(String json) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(OutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(json.getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	public static byte[] gunzip(byte[] gzipped) throws IOException {
+		try(InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			return IOUtils.toByteArray(in);
+		}
+	}
+
+	public synchronized int getCount() {
+		return this.payloads.size();
+	}
+
+	/**
+	 * @return the total size of the gzipped payloads in the cache, in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getNotModified() {
+		return notModified;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "VizPayloadCache [count=" + payloads.size() + ", size=" + size + ", maxSize=" + maxSize + ", hits=" + hits + ", misses=" + misses + ", notModified=" + notModified + "]";
+	}
+
+}
@@ -0,0 +1,196 @@
+package fr.sparna.rdf.skosplay.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Écrit les logs en tâche de fond : les requêtes se contentent de déposer leur entrée dans une file de taille bornée,
+ * et un thread dédié les insère dans la base par lots, dès qu'un lot est plein ou que le délai d'écriture est écoulé.
+ * <p>Quand la file est pleine (base lente ou indisponible), la politique de débordement indique si les nouvelles
+ * entrées sont abandonnées ({@link OverflowPolicy#DROP}) ou si la requête attend qu'une place se libère
+ * ({@link OverflowPolicy#BLOCK}).
+ * <p>Un lot en erreur est abandonné, pour ne pas bloquer les suivants.
+ *
+ * @author Thomas Francart
+ */
+public class AsyncLogWriter {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	public enum OverflowPolicy {
+		DROP,
+		BLOCK
+	}
+
+	/**
+	 * Insère un lot d'entrées dans la base
+	 */
+	public interface BatchWriter {
+		public void write(List<LogEntry> batch) throws Exception;
+	}
+
+	protected BatchWriter batchWriter;
+	protected BlockingQueue<LogEntry> queue;
+	protected int batchSize;
+	// délai maximum avant l'écriture d'une entrée, en ms
+	protected long flushInterval;
+	protected OverflowPolicy overflowPolicy;
+
+	protected Thread thread;
+	protected volatile boolean running = true;
+
+	protected AtomicLong written = new AtomicLong();
+	protected AtomicLong dropped = new AtomicLong();
+	protected AtomicLong failed = new AtomicLong();
+
+	/**
+	 * @param batchWriter		insère les lots dans la base
+	 * @param queueCapacity		nombre maximum d'entrées en attente
+	 * @param batchSize			nombre maximum d'entrées par lot
+	 * @param flushInterval		délai maximum avant l'écriture d'une entrée, en ms
+	 * @param overflowPolicy	ce qu'il faut faire quand la file est pleine
+	 */
+	public AsyncLogWriter(BatchWriter batchWriter, int queueCapacity, int batchSize, long flushInterval, OverflowPolicy overflowPolicy) {
+		super();
+		this.batchWriter = batchWriter;
+		this.queue = new ArrayBlockingQueue<LogEntry>(queueCapacity);
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.overflowPolicy = overflowPolicy;
+
+		this.thread = new Thread(this::run, "log-writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Dépose une entrée dans la file. Une fois le writer fermé, les entrées sont abandonnées, sans jamais bloquer.
+	 *
+	 * @return false si l'entrée a été abandonnée parce que la file est pleine ou que le writer est fermé
+	 */
+	public boolean submit(LogEntry entry) {
+		if(!this.running) {
+			return drop("Log writer is closed");
+		}
+		boolean queued = false;
+		if(this.overflowPolicy == OverflowPolicy.BLOCK) {
+			try {
+				// on attend par intervalles, pour ne pas rester bloqué si le writer est fermé pendant l'attente
+				while(!queued && this.running) {
+					queued = this.queue.offer(entry, this.flushInterval, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		} else {
+			queued = this.queue.offer(entry);
+		}
+
+		if(queued && !this.running && this.queue.remove(entry)) {
+			// fermé pendant le dépôt, et l'entrée n'a pas été reprise par l'écriture finale
+			queued = false;
+		}
+		if(queued) {
+			return true;
+		}
+		return drop((this.running)?"Log queue is full":"Log writer is closed");
+	}
+
+	private boolean drop(String reason) {
+		// on ne trace que la première entrée abandonnée puis une sur mille, pour ne pas inonder les logs
+		if(this.dropped.incrementAndGet() % 1000 == 1) {
+			log.warn(reason+", dropped "+this.dropped.get()+" entries so far");
+		}
+		return false;
+	}
+
+	protected void run() {
+		List<LogEntry> batch = new ArrayList<LogEntry>(this.batchSize);
+		while(this.running || !this.queue.isEmpty()) {
+			try {
+				LogEntry first = this.queue.poll(this.flushInterval, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				batch.add(first);
+				// on complète le lot avec les entrées qui arrivent pendant le délai d'écriture
+				long deadline = System.currentTimeMillis() + this.flushInterval;
+				while(batch.size() < this.batchSize) {
+					long remaining = deadline - System.currentTimeMillis();
+					LogEntry next = (remaining > 0 && this.running)?this.queue.poll(remaining, TimeUnit.MILLISECONDS):this.queue.poll();
+					if(next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+			} catch (InterruptedException e) {
+				// on écrit ce qui reste avant de s'arrêter
+				this.running = false;
+			}
+			flush(batch);
+		}
+	}
+
+	private void flush(List<LogEntry> batch) {
+		if(batch.isEmpty()) {
+			return;
+		}
+		try {
+			this.batchWriter.write(batch);
+			this.written.addAndGet(batch.size());
+		} catch (Exception e) {
+			this.failed.addAndGet(batch.size());
+			log.error("Cannot write "+batch.size()+" log entries", e);
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Arrête le thread d'écriture, après avoir écrit les entrées en attente
+	 */
+	public void close() {
+		// le thread n'est pas interrompu pendant une écriture : il s'arrête au plus tard après le délai d'écriture
+		this.running = false;
+		try {
+			this.thread.join(this.flushInterval + 10000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(!this.thread.isAlive()) {
+			// entrées déposées pendant que le thread s'arrêtait
+			List<LogEntry> rest = new ArrayList<LogEntry>();
+			this.queue.drainTo(rest);
+			flush(rest);
+		}
+		log.info("Closed log writer, "+this);
+	}
+
+	public int getQueueSize() {
+		return this.queue.size();
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	@Override
+	public String toString() {
+		return "AsyncLogWriter [queued=" + queue.size() + ", written=" + written + ", dropped=" + dropped + ", failed=" + failed + ", overflowPolicy=" + overflowPolicy + "]";
+	}
+
+}
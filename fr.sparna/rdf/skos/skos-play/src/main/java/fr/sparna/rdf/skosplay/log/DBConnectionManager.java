@@ -1,62 +1,190 @@
 package fr.sparna.rdf.skosplay.log;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.commons.sql.ConnectionSourceException;
+import fr.sparna.commons.sql.JDBCConnectionSource;
+import fr.sparna.commons.sql.PooledConnectionSource;
 /**
  * Classe permettant d'établir la connexion avec la base
+ * <p>Les connexions sont prises dans un pool : fermer la connexion la rend au pool. Les tables sont créées une seule
+ * fois, à la première connexion.
  * @author clarvie
  *
  */
 
 public class DBConnectionManager {
-   
+
+   private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
    private static final String DB_DRIVER = "org.h2.Driver";
-   
+
+   private static final String[] INIT_SQL = new String[] {
+		   "CREATE TABLE IF NOT EXISTS user ("
+				+ "id INT AUTO_INCREMENT, "
+				+ "nom VARCHAR(255), "
+				+ "email VARCHAR(255), "
+				+ "PRIMARY KEY (id)"
+			+ ")",
+		   "CREATE TABLE IF NOT EXISTS statistique ("
+				+ "id INT AUTO_INCREMENT, "
+				+ "type VARCHAR(255), "
+				+ "output VARCHAR(255), "
+				+ "rendu VARCHAR(255), "
+				+ "langue VARCHAR(20), "
+				+ "url VARCHAR(1024), "
+				+ "jour DATE, "
+				// on utilise un champ VARCHAR sans contrainte de taille
+				// la taille max est implicitement 2147483647 (voir http://h2-database.66688.n3.nabble.com/VARCHAR-type-with-or-without-length-td2425668.html)
+				// dans ce champ sont stockées les URIs concaténées des ConceptScheme convertis, donc la valeur peut être très longue
+				+ "uri VARCHAR, "
+				+ "iduser INT, "
+				+ "PRIMARY KEY (id), FOREIGN KEY (iduser) REFERENCES user(id)"
+			+ ")",
+		   // index des listings, parcourus du plus récent au plus ancien par (jour, id), voir SQLLogComptageDao.getLogEntries
+		   "CREATE INDEX IF NOT EXISTS idx_statistique_jour_id ON statistique(jour, id)",
+		   "CREATE INDEX IF NOT EXISTS idx_statistique_type_jour_id ON statistique(type, jour, id)"
+   };
+
+   /**
+    * Table de comptages pré-agrégés, lue par les tableaux de bord à la place de la table statistique : un nombre
+    * d'actions par jour, type, format, rendu et langue, mis à jour à chaque écriture de logs (voir {@link SQLLogDao}).
+    * Une même combinaison peut apparaître sur plusieurs lignes, les lectures font donc toujours la somme des totaux.
+    */
+   public static final String ROLLUP_TABLE = "statistique_jour";
+
+   private static final String ROLLUP_SQL = "CREATE TABLE IF NOT EXISTS "+ROLLUP_TABLE+" ("
+				+ "jour DATE, "
+				+ "type VARCHAR(255), "
+				+ "output VARCHAR(255), "
+				+ "rendu VARCHAR(255), "
+				+ "langue VARCHAR(20), "
+				+ "total BIGINT"
+			+ ")";
+
+   private static final String ROLLUP_INDEX_SQL = "CREATE INDEX IF NOT EXISTS "+ROLLUP_TABLE+"_jour ON "+ROLLUP_TABLE+"(jour)";
+
+   // alimente la table de comptages à partir de l'historique, quand elle vient d'être créée
+   private static final String ROLLUP_BACKFILL_SQL = "INSERT INTO "+ROLLUP_TABLE+"(jour, type, output, rendu, langue, total) "
+				+ "SELECT jour, type, output, rendu, langue, count(id) FROM statistique GROUP BY jour, type, output, rendu, langue";
+
    private String dataPath;
    private String jdbcUser = "";
    private String jdbcPassword = "";
 
+   private int poolSize = 10;
+   // durée au-delà de laquelle une connexion non rendue au pool est signalée, en ms (0 pour ne rien signaler)
+   private long leakThreshold = 0;
+
+   // créé à la première connexion
+   private PooledConnectionSource pool;
+   private boolean initialized = false;
+
    public DBConnectionManager(String dataPath) {
 	   this.dataPath = dataPath;
    }
-   
+
    public Connection getDBConnection() {
 	   try {
-		   Class.forName(DB_DRIVER);
-	   } catch (ClassNotFoundException e) {
-		   e.printStackTrace();
+		   PooledConnectionSource source = getPool();
+		   initSchema(source);
+		   return source.getConnection();
+	   } catch (ConnectionSourceException | SQLException e) {
+		  e.printStackTrace();
+	   }
+
+	   return null;
+   }
+
+   private synchronized PooledConnectionSource getPool() {
+	   if(pool == null) {
+		   pool = new PooledConnectionSource(new JDBCConnectionSource(DB_DRIVER, "jdbc:h2:"+dataPath, jdbcUser, jdbcPassword), poolSize);
+		   pool.setLeakThreshold(leakThreshold);
+		   log.info("Created pool of "+poolSize+" connections to "+dataPath);
+	   }
+	   return pool;
+   }
+
+   /**
+    * Crée les tables si elles n'existent pas, une seule fois
+    */
+   private synchronized void initSchema(PooledConnectionSource source) throws ConnectionSourceException, SQLException {
+	   if(initialized) {
+		   return;
+	   }
+	   try(Connection connection = source.getConnection()) {
+		   try(Statement stmt = connection.createStatement()) {
+			   for (String aSql : INIT_SQL) {
+				   stmt.execute(aSql);
+			   }
+			   initRollup(connection, stmt);
+		   }
+	   }
+	   initialized = true;
+   }
+
+   private void initRollup(Connection connection, Statement stmt) throws SQLException {
+	   boolean exists;
+	   try(ResultSet rs = connection.getMetaData().getTables(null, null, ROLLUP_TABLE.toUpperCase(), null)) {
+		   exists = rs.next();
+	   }
+	   if(exists) {
+		   return;
 	   }
+	   connection.setAutoCommit(false);
 	   try {
-		   String INIT_SQL = "CREATE TABLE IF NOT EXISTS user ("
-		   						+ "id INT AUTO_INCREMENT, "
-		   						+ "nom VARCHAR(255), "
-		   						+ "email VARCHAR(255), "
-		   						+ "PRIMARY KEY (id)"
-		   					+ ")\\;"
-		   					+ "CREATE TABLE IF NOT EXISTS statistique ("
-		   						+ "id INT AUTO_INCREMENT, "
-		   						+ "type VARCHAR(255), "
-		   						+ "output VARCHAR(255), "
-		   						+ "rendu VARCHAR(255), "
-		   						+ "langue VARCHAR(20), "
-		   						+ "url VARCHAR(1024), "
-		   						+ "jour DATE, "
-		   						// on utilise un champ VARCHAR sans contrainte de taille
-		   						// la taille max est implicitement 2147483647 (voir http://h2-database.66688.n3.nabble.com/VARCHAR-type-with-or-without-length-td2425668.html)
-		   						// dans ce champ sont stockées les URIs concaténées des ConceptScheme convertis, donc la valeur peut être très longue
-		   						+ "uri VARCHAR, "
-		   						+ "iduser INT, "
-		   						+ "PRIMARY KEY (id), FOREIGN KEY (iduser) REFERENCES user(id)"
-		   						+ ") ";
-		   String fullJdbcUrl = "jdbc:h2:"+dataPath+";INIT="+INIT_SQL;
-		   return DriverManager.getConnection(fullJdbcUrl, jdbcUser, jdbcPassword);
-		   
+		   stmt.execute(ROLLUP_SQL);
+		   stmt.execute(ROLLUP_INDEX_SQL);
+		   int rows = stmt.executeUpdate(ROLLUP_BACKFILL_SQL);
+		   connection.commit();
+		   log.info("Created table "+ROLLUP_TABLE+" from the existing logs ("+rows+" rows)");
 	   } catch (SQLException e) {
-		  e.printStackTrace();
+		   connection.rollback();
+		   // la création de la table n'est pas annulée par le rollback : on la supprime pour recommencer au prochain démarrage
+		   stmt.execute("DROP TABLE IF EXISTS "+ROLLUP_TABLE);
+		   throw e;
 	   }
-	   
-	   return null;
+   }
+
+   /**
+    * Ferme les connexions du pool
+    */
+   public synchronized void close() {
+	   if(pool != null) {
+		   log.info("Closing connection pool, "+pool.getMetrics());
+		   pool.close();
+		   pool = null;
+	   }
+   }
+
+   public PooledConnectionSource.Metrics getMetrics() {
+	   PooledConnectionSource source = pool;
+	   return (source != null)?source.getMetrics():null;
+   }
+
+   public int getPoolSize() {
+	   return poolSize;
+   }
+
+   public void setPoolSize(int poolSize) {
+	   this.poolSize = poolSize;
+   }
+
+   public long getLeakThreshold() {
+	   return leakThreshold;
+   }
+
+   /**
+    * @param leakThreshold durée au-delà de laquelle une connexion non rendue au pool est signalée, en ms (0 pour ne rien signaler)
+    */
+   public void setLeakThreshold(long leakThreshold) {
+	   this.leakThreshold = leakThreshold;
    }
 
 }
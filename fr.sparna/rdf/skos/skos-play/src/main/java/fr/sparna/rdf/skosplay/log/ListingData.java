@@ -1,5 +1,6 @@
 package fr.sparna.rdf.skosplay.log;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,6 +22,12 @@ public class ListingData {
 	
 	protected boolean disableNext;
 	
+	// listing des logs, page par page
+	protected List<LogEntry> entries;
+	
+	// position de la page suivante, null s'il n'y en a pas
+	protected String nextCursor;
+	
 	
 
 	public Map<String, Integer> getData() {
@@ -55,6 +62,22 @@ public class ListingData {
 		this.disableNext = disableNext;
 	}
 
+	public List<LogEntry> getEntries() {
+		return entries;
+	}
+
+	public void setEntries(List<LogEntry> entries) {
+		this.entries = entries;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
 	public Map<String, Integer> getIdlist() {
 		return idlist;
 	}
@@ -1,6 +1,8 @@
 package fr.sparna.rdf.skosplay.log;
 
 
+import java.io.PrintWriter;
+
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -21,6 +23,11 @@ import fr.sparna.rdf.skosplay.log.SQLLogComptageDao.Range;
 @Controller
 public class LogController {
 
+	// nombre de logs par page du listing
+	private static final int PAGE_SIZE = 50;
+	// nombre de logs lus à la fois pendant un export
+	private static final int EXPORT_PAGE_SIZE = 1000;
+	
 	@Autowired
 	protected ServletContext servletContext;
 	
@@ -150,6 +157,94 @@ public class LogController {
 		return new ModelAndView("listingprint", LogData.KEY, data);
 	}
 	
+	@RequestMapping(value = "/logentries")
+	public ModelAndView logEntries(
+			@RequestParam(value="type", required=false, defaultValue="all") String type,
+			@RequestParam(value="dateDebut", required=false) String dateDebut,
+			@RequestParam(value="dateFin", required=false) String dateFin,
+			@RequestParam(value="cursor", required=false) String cursor,
+			// the request
+			HttpServletRequest request,
+			// the response
+			HttpServletResponse response			
+			) throws Exception {
+		
+		SQLLogComptageDao dao=new SQLLogComptageDao(SkosPlayConfig.getInstance().getSqlDb(),SkosPlayConfig.getInstance().getSqlQueryRegistry());
+		ListingData listing;
+		try {
+			listing = dao.getLogEntries(typeParam(type), emptyToNull(dateDebut), emptyToNull(dateFin), emptyToNull(cursor), PAGE_SIZE);
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return null;
+		}
+		
+		LogData data = new LogData();
+		data.setListe(listing);
+		data.setType(type);
+		data.setDateDebut(emptyToNull(dateDebut));
+		data.setDateFin(emptyToNull(dateFin));
+		return new ModelAndView("logentries", LogData.KEY, data);
+	}
+	
+	/**
+	 * Exporte en CSV les logs d'une période, du plus récent au plus ancien. Les logs sont lus et écrits par pages, sans
+	 * jamais garder toute la période en mémoire.
+	 */
+	@RequestMapping(value = "/logentries.csv")
+	public void exportLogEntries(
+			@RequestParam(value="type", required=false, defaultValue="all") String type,
+			@RequestParam(value="dateDebut", required=false) String dateDebut,
+			@RequestParam(value="dateFin", required=false) String dateFin,
+			// the request
+			HttpServletRequest request,
+			// the response
+			HttpServletResponse response			
+			) throws Exception {
+		
+		SQLLogComptageDao dao=new SQLLogComptageDao(SkosPlayConfig.getInstance().getSqlDb(),SkosPlayConfig.getInstance().getSqlQueryRegistry());
+		ListingData listing;
+		try {
+			listing = dao.getLogEntries(typeParam(type), emptyToNull(dateDebut), emptyToNull(dateFin), null, EXPORT_PAGE_SIZE);
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		
+		response.setContentType("text/csv");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Content-Disposition", "attachment; filename=\"skos-play-logs.csv\"");
+		PrintWriter writer = response.getWriter();
+		writer.write("id,jour,type,output,rendu,langue,url,uri\r\n");
+		while(true) {
+			for (LogEntry anEntry : listing.getEntries()) {
+				writer.write(anEntry.getId()+","+csv(anEntry.getActiondate())+","+csv(anEntry.getDisplayType())+","+csv(anEntry.getOutput())+","+csv(anEntry.getRendu())+","+csv(anEntry.getLangue())+","+csv(anEntry.getUrl())+","+csv(anEntry.getUri())+"\r\n");
+			}
+			writer.flush();
+			if(listing.getNextCursor() == null) {
+				break;
+			}
+			listing = dao.getLogEntries(typeParam(type), emptyToNull(dateDebut), emptyToNull(dateFin), listing.getNextCursor(), EXPORT_PAGE_SIZE);
+		}
+	}
+	
+	private static String typeParam(String type) {
+		return (type == null || type.equals("all"))?null:type;
+	}
+	
+	private static String emptyToNull(String s) {
+		return (s == null || s.trim().isEmpty())?null:s.trim();
+	}
+	
+	private static String csv(String value) {
+		if(value == null) {
+			return "";
+		}
+		if(value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+			return "\""+value.replace("\"", "\"\"")+"\"";
+		}
+		return value;
+	}
+	
 	/**
 	 * retourne le listing des conversion ou print pour une periode donnée
 	 * @param listing
@@ -53,6 +53,13 @@ public class LogData {
 	protected ListingData idliste;
 	
 	protected String jour;
+	
+	// filtres du listing des logs
+	protected String type;
+	
+	protected String dateDebut;
+	
+	protected String dateFin;
 
 	
 	public String getJsonHistogrammeData() {
@@ -232,4 +239,28 @@ public class LogData {
 	
 	
 	
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getDateDebut() {
+		return dateDebut;
+	}
+
+	public void setDateDebut(String dateDebut) {
+		this.dateDebut = dateDebut;
+	}
+
+	public String getDateFin() {
+		return dateFin;
+	}
+
+	public void setDateFin(String dateFin) {
+		this.dateFin = dateFin;
+	}
+
 }
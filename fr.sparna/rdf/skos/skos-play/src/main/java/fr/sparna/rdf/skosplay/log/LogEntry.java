@@ -8,6 +8,7 @@ package fr.sparna.rdf.skosplay.log;
  */
 
 public class LogEntry {
+	public Integer id;
 	public String name;
 	public String output;
 	public String  actiondate;
@@ -36,6 +37,14 @@ public class LogEntry {
 	}
 
 
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
 	public String getUrl() {
 		return url;
 	}
@@ -1,6 +1,7 @@
 package fr.sparna.rdf.skosplay.log;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -18,6 +19,8 @@ import fr.sparna.rdf.skosplay.SkosPlayConfig;
 /**
  * Cette classe regroupe tous les comptages pour les conversions et les prints.
  * Elle est utilisée dans le LogController.java
+ * Les comptages des tableaux de bord sont lus dans la table pré-agrégée {@link DBConnectionManager#ROLLUP_TABLE},
+ * les listings d'URLs et d'URIs dans la table statistique.
  * 
  * * @author clarvie
  *
@@ -40,6 +43,10 @@ public class SQLLogComptageDao implements LogDaoIfc {
 	}
 	 
 	
+	// les logs sans jour, que l'application n'écrit pas, ne peuvent pas être positionnés par (jour, id) et sont ignorés
+	private static final String LOG_ENTRIES_SQL = "SELECT id, type, output, rendu, langue, url, jour, uri FROM statistique WHERE jour IS NOT NULL";
+	private static final String LOG_ENTRIES_ORDER = " ORDER BY jour DESC, id DESC LIMIT ?";
+	
 	public SQLLogComptageDao(DBConnectionManager connectionManager, SQLQueryRegistry queryRegistry) {
 		super();
 		
@@ -442,4 +449,89 @@ public class SQLLogComptageDao implements LogDaoIfc {
 		return resultat;
 	}
 	
+
+	/**
+	 * Retourne une page de logs, du plus récent au plus ancien. Les pages sont parcourues par position (jour, id) et non par
+	 * décalage : la requête part directement de la position de la page précédente dans l'index, quelle que soit la
+	 * profondeur de la page.
+	 * 
+	 * @param type		convert ou print, null pour tous les logs
+	 * @param dateDebut	premier jour inclus, au format yyyy-MM-dd, null pour ne pas limiter
+	 * @param dateFin	dernier jour inclus, au format yyyy-MM-dd, null pour ne pas limiter
+	 * @param cursor	position retournée avec la page précédente ({@link ListingData#getNextCursor()}), null pour la première page
+	 * @param limit		nombre maximum de logs dans la page
+	 * @throws SQLException si la lecture échoue : l'erreur est remontée, pour ne pas retourner une page incomplète
+	 */
+	public ListingData getLogEntries(String type, String dateDebut, String dateFin, String cursor, int limit) throws SQLException {
+		
+		List<Object> params = new ArrayList<Object>();
+		StringBuffer sql = new StringBuffer(LOG_ENTRIES_SQL);
+		if(type != null) {
+			sql.append(" AND type = ?");
+			params.add(type);
+		}
+		if(dateDebut != null) {
+			sql.append(" AND jour >= ?");
+			params.add(java.sql.Date.valueOf(dateDebut));
+		}
+		if(dateFin != null) {
+			sql.append(" AND jour <= ?");
+			params.add(java.sql.Date.valueOf(dateFin));
+		}
+		if(cursor != null) {
+			int i = cursor.indexOf(':');
+			if(i < 0) {
+				throw new IllegalArgumentException("Invalid cursor : "+cursor);
+			}
+			java.sql.Date jour = java.sql.Date.valueOf(cursor.substring(0, i));
+			Integer id = Integer.valueOf(cursor.substring(i+1));
+			// la borne "jour <= ?" donne à l'optimiseur un intervalle sur l'index (jour, id), qu'il ne déduit pas du OR
+			sql.append(" AND jour <= ? AND (jour < ? OR (jour = ? AND id < ?))");
+			params.add(jour);
+			params.add(jour);
+			params.add(jour);
+			params.add(id);
+		}
+		sql.append(LOG_ENTRIES_ORDER);
+		// une ligne de plus pour savoir s'il y a une page suivante
+		params.add(limit + 1);
+		log.trace(sql.toString());
+
+		List<LogEntry> entries = new ArrayList<LogEntry>();
+		ListingData listing = new ListingData();
+		try(Connection connection = connections.getDBConnection()){
+			if(connection == null) {
+				throw new SQLException("No connection to the log database");
+			}
+			try(PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+				for (int i = 0; i < params.size(); i++) {
+					stmt.setObject(i+1, params.get(i));
+				}
+				try(ResultSet rs = stmt.executeQuery()) {
+					while (rs.next()) {
+						LogEntry entry = new LogEntry();
+						entry.setId(rs.getInt("id"));
+						entry.setDisplayType(rs.getString("type"));
+						entry.setOutput(rs.getString("output"));
+						entry.setRendu(rs.getString("rendu"));
+						entry.setLangue(rs.getString("langue"));
+						entry.setUrl(rs.getString("url"));
+						entry.setActiondate((rs.getDate("jour") != null)?rs.getDate("jour").toString():null);
+						entry.setUri(rs.getString("uri"));
+						entries.add(entry);
+					}
+				}
+			}
+		}
+
+		if(entries.size() > limit) {
+			entries.remove(limit);
+			LogEntry last = entries.get(limit - 1);
+			listing.setNextCursor(last.getActiondate()+":"+last.getId());
+		}
+		listing.setEntries(entries);
+		listing.setDisableNext(listing.getNextCursor() == null);
+		return listing;
+	}
+	
 }
\ No newline at end of file
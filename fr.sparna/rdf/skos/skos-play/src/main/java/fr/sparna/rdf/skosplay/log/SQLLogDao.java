@@ -1,20 +1,54 @@
 package fr.sparna.rdf.skosplay.log;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.skosplay.log.AsyncLogWriter.OverflowPolicy;
 
 /**
  * Cette classe permet d'insérer les logs dans la base. Elle est utilisée dans SkosPlayController
- * 
+ * <p>Par défaut les logs sont écrits en tâche de fond par un {@link AsyncLogWriter}, par lots, avec une requête préparée :
+ * le coût pour la requête se limite au dépôt de l'entrée dans la file. Sans écriture asynchrone, chaque entrée est
+ * insérée immédiatement.
+ * <p>Les comptages lus par les tableaux de bord sont mis à jour dans la même transaction que l'insertion des logs.
+ *
  * @author clarvie
  *
  */
 
 public class SQLLogDao implements LogDaoIfc {
 
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	private static final String INSERT_SQL = "INSERT INTO statistique(output, type, rendu, langue, url, jour, uri) VALUES(?, ?, ?, ?, ?, ?, ?)";
+
+	// mise à jour de la table de comptages, voir DBConnectionManager.ROLLUP_TABLE
+	private static final String ROLLUP_UPDATE_SQL = "UPDATE "+DBConnectionManager.ROLLUP_TABLE+" SET total = total + ? "
+			+ "WHERE jour = ? AND "+nullSafeEquals("type")+" AND "+nullSafeEquals("output")+" AND "+nullSafeEquals("rendu")+" AND "+nullSafeEquals("langue")
+			+ " LIMIT 1";
+	private static final String ROLLUP_INSERT_SQL = "INSERT INTO "+DBConnectionManager.ROLLUP_TABLE+"(total, jour, type, output, rendu, langue) VALUES(?, ?, ?, ?, ?, ?)";
+
 	protected DBConnectionManager connectionManager;
-	protected boolean doLog = false;    
+	protected boolean doLog = false;
+
+	// écriture asynchrone des logs
+	protected boolean asynchronous = true;
+	protected int queueCapacity = 10000;
+	protected int batchSize = 100;
+	protected long flushInterval = 2000;
+	protected OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+	// créé à la première entrée, si l'écriture est asynchrone
+	protected AsyncLogWriter writer;
 
 	public SQLLogDao(boolean doLog, DBConnectionManager connectionManager) {
 		super();
@@ -23,7 +57,7 @@ public class SQLLogDao implements LogDaoIfc {
 	}
 
 	/**
-	 * Insertion de log dans la base 
+	 * Insertion de log dans la base
 	 */
 	@Override
 	public void insertLog(LogEntry entry) {
@@ -31,30 +65,104 @@ public class SQLLogDao implements LogDaoIfc {
 		if(!doLog) {
 			return;
 		}
-		
-		entry.setActiondate("NOW()");
-		String requete="INSERT INTO statistique(output, type, rendu, langue, url, jour, uri) VALUES('"
-
-				+entry.getOutput()+"','"
-				+entry.getDisplayType()+"','"
-				+entry.getRendu()+"','"
-				+entry.getLangue()+"','"
-				+entry.getUrl()+"',"
-				+entry.getActiondate()+",'"
-				+entry.getUri()+"')";
+
+		// la date est celle de la requête, pas celle de l'écriture
+		entry.setActiondate(new java.sql.Date(System.currentTimeMillis()).toString());
+
+		if(asynchronous) {
+			getWriter().submit(entry);
+		} else {
+			try {
+				writeBatch(Collections.singletonList(entry));
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Insère un lot d'entrées, dans une seule transaction
+	 */
+	protected void writeBatch(List<LogEntry> batch) throws SQLException {
 		try (Connection connection = connectionManager.getDBConnection()) {
 			connection.setAutoCommit(false);
-			try(Statement stmt = connection.createStatement()) {
-				stmt.execute(requete);
+			try(PreparedStatement stmt = connection.prepareStatement(INSERT_SQL)) {
+				for (LogEntry anEntry : batch) {
+					stmt.setString(1, anEntry.getOutput());
+					stmt.setString(2, anEntry.getDisplayType());
+					stmt.setString(3, anEntry.getRendu());
+					stmt.setString(4, anEntry.getLangue());
+					stmt.setString(5, anEntry.getUrl());
+					stmt.setDate(6, java.sql.Date.valueOf(anEntry.getActiondate()));
+					stmt.setString(7, anEntry.getUri());
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+				updateRollup(connection, batch);
 				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Ajoute les entrées du lot aux comptages par jour, type, format, rendu et langue
+	 */
+	protected void updateRollup(Connection connection, List<LogEntry> batch) throws SQLException {
+		// on regroupe d'abord les entrées du lot, pour ne mettre à jour chaque comptage qu'une fois
+		Map<List<String>, Integer> counts = new LinkedHashMap<List<String>, Integer>();
+		for (LogEntry anEntry : batch) {
+			List<String> key = Arrays.asList(anEntry.getActiondate(), anEntry.getDisplayType(), anEntry.getOutput(), anEntry.getRendu(), anEntry.getLangue());
+			counts.merge(key, 1, Integer::sum);
+		}
+
+		try(
+				PreparedStatement update = connection.prepareStatement(ROLLUP_UPDATE_SQL);
+				PreparedStatement insert = connection.prepareStatement(ROLLUP_INSERT_SQL)
+		) {
+			for (Map.Entry<List<String>, Integer> aCount : counts.entrySet()) {
+				List<String> key = aCount.getKey();
+				update.setLong(1, aCount.getValue());
+				update.setDate(2, java.sql.Date.valueOf(key.get(0)));
+				for (int i = 1; i < key.size(); i++) {
+					update.setString(1 + 2*i, key.get(i));
+					update.setString(2 + 2*i, key.get(i));
+				}
+				if(update.executeUpdate() == 0) {
+					insert.setLong(1, aCount.getValue());
+					insert.setDate(2, java.sql.Date.valueOf(key.get(0)));
+					for (int i = 1; i < key.size(); i++) {
+						insert.setString(2 + i, key.get(i));
+					}
+					insert.executeUpdate();
+				}
 			}
-		} catch (SQLException e) {
-			e.printStackTrace();
 		}
 	}
 
-    
-    
+	private static String nullSafeEquals(String column) {
+		return "("+column+" = ? OR ("+column+" IS NULL AND CAST(? AS VARCHAR) IS NULL))";
+	}
+
+	protected synchronized AsyncLogWriter getWriter() {
+		if(writer == null) {
+			writer = new AsyncLogWriter(this::writeBatch, queueCapacity, batchSize, flushInterval, overflowPolicy);
+			log.info("Started asynchronous log writer (queue "+queueCapacity+", batches of "+batchSize+", every "+flushInterval+" ms, "+overflowPolicy+" when full)");
+		}
+		return writer;
+	}
+
+	/**
+	 * Écrit les entrées en attente et arrête l'écriture asynchrone
+	 */
+	public synchronized void close() {
+		if(writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
 
 	public boolean isDoLog() {
 		return doLog;
@@ -64,4 +172,35 @@ public class SQLLogDao implements LogDaoIfc {
 		this.doLog = doLog;
 	}
 
+	public boolean isAsynchronous() {
+		return asynchronous;
+	}
+
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param flushInterval délai maximum avant l'écriture d'une entrée, en ms
+	 */
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public AsyncLogWriter getAsyncLogWriter() {
+		return writer;
+	}
+
 }
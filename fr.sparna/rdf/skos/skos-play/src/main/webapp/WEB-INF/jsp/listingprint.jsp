@@ -30,7 +30,8 @@
 		 	<jsp:include page="header.jsp"/>
 		 	<a href="log"> Résumé des logs</a>|
 					 	<a href="listingconvert">Listing des conversions </a>| 
-						<a href="listingprint"> Listing des prints</a>
+						<a href="listingprint"> Listing des prints</a>|
+						<a href="logentries"> Journal des logs</a>
 		 	
 		 	
 			 <table  style="margin:auto;" class="table table-condensed">
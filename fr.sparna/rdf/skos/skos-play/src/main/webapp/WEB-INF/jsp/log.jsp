@@ -146,7 +146,7 @@
 			<jsp:include page="header.jsp"/>
 					 
 				<div class="col-sm-7 navbar-fixed-left" style="margin-top:10px;" >
-					<a href="log"> Résumé des logs</a>|<a href="listingconvert">Listing des conversions </a>|<a href="listingprint"> Listing des prints</a><br/><br/>
+					<a href="log"> Résumé des logs</a>|<a href="listingconvert">Listing des conversions </a>|<a href="listingprint"> Listing des prints</a>|<a href="logentries"> Journal des logs</a><br/><br/>
 					<form method="post" action="log" name="formulaire">
 						 <label for="satistique">Choix de la période</label>	
 						 <select style=" width:20%;" name="statistique" class="fixed-left" id="statistique">
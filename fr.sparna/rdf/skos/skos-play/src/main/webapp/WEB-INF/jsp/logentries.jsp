@@ -0,0 +1,106 @@
+<!DOCTYPE html>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8" %>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" 	prefix="fmt" 	%>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" 	prefix="c" 		%>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/functions" prefix="fn"%>
+
+<!-- setup the locale for the messages based on the language in the session -->
+<fmt:setLocale value="${sessionScope['fr.sparna.rdf.skosplay.SessionData'].userLocale.language}"/>
+<fmt:setBundle basename="fr.sparna.rdf.skosplay.i18n.Bundle"/>
+<c:set var="data" value="${requestScope['fr.sparna.rdf.skosplay.log.LogData']}" />
+<c:set var="sessiondata" value="${sessionScope['fr.sparna.rdf.skosplay.SessionData']}" />
+<c:set var="applicationData" value="${applicationScope.applicationData}" />
+<html>
+<head>
+		<title><c:out value="${applicationData.skosPlayConfig.applicationTitle}" /></title>
+		<meta http-equiv="content-type" content="text/html; charset=UTF-8">
+		<link href="bootstrap/css/bootstrap.min.css" rel="stylesheet" />
+		<link href="bootstrap-fileupload/jasny-bootstrap.min.css" rel="stylesheet" />
+		<link href="css/skos-play.css" rel="stylesheet" />
+		<link href="style/custom.css" rel="stylesheet" />
+		<script src="js/jquery.min.js"></script>
+		<script src="bootstrap/js/bootstrap.min.js"></script>
+		<script src="bootstrap-fileupload/jasny-bootstrap.min.js"></script>
+</head>
+<body>
+         
+		 <div class="container">
+		 	<jsp:include page="header.jsp"/>
+		 	<a href="log"> Résumé des logs</a>|
+					 	<a href="listingconvert">Listing des conversions </a>| 
+						<a href="listingprint"> Listing des prints</a>|
+						<a href="logentries"> Journal des logs</a>
+			 
+			 <h1><a>Journal des logs</a></h1>
+			 
+			 <form class="form-inline" method="get" action="logentries">
+			 	<select name="type" class="form-control">
+			 		<option value="all" <c:if test="${data.type == 'all'}">selected="selected"</c:if>>tous</option>
+			 		<option value="convert" <c:if test="${data.type == 'convert'}">selected="selected"</c:if>>conversions</option>
+			 		<option value="print" <c:if test="${data.type == 'print'}">selected="selected"</c:if>>prints</option>
+			 	</select>
+			 	du <input type="date" name="dateDebut" class="form-control" value="${fn:escapeXml(data.dateDebut)}" placeholder="aaaa-mm-jj" />
+			 	au <input type="date" name="dateFin" class="form-control" value="${fn:escapeXml(data.dateFin)}" placeholder="aaaa-mm-jj" />
+			 	<button type="submit" class="btn btn-primary">Filtrer</button>
+			 	<c:url var="exportUrl" value="logentries.csv">
+			 		<c:param name="type" value="${data.type}" />
+			 		<c:param name="dateDebut" value="${data.dateDebut}" />
+			 		<c:param name="dateFin" value="${data.dateFin}" />
+			 	</c:url>
+			 	<a href="${exportUrl}" class="btn btn-default">Export CSV</a>
+			 </form>
+			 <br/>
+			 
+			<table class="table table-bordered table-condensed">
+			    <thead>
+			      <tr>
+			        <th>Jour</th>
+			        <th>Type</th>
+			        <th>Format</th>
+			        <th>Rendu</th>
+			        <th>Langue</th>
+			        <th>URL</th>
+			        <th>Identifiant du vocabulaire</th>
+			      </tr>
+			    </thead>
+			    <tbody>
+			    	  <c:forEach items="${data.liste.entries}" var="entry">
+			    	 		<tr>
+					      		<td>${entry.actiondate}</td>
+					      		<td><c:out value="${entry.displayType}" /></td>
+					      		<td><c:out value="${entry.output}" /></td>
+					      		<td><c:out value="${entry.rendu}" /></td>
+					      		<td><c:out value="${entry.langue}" /></td>
+					      		<td><c:out value="${entry.url}" /></td>
+					      		<td><c:out value="${entry.uri}" /></td>
+					      	</tr>
+			          </c:forEach>
+			    </tbody>
+		    </table>
+		    
+		    <table style="margin:auto;">
+			 <tr>
+			 	<td>
+			 		<c:url var="firstUrl" value="logentries">
+			 			<c:param name="type" value="${data.type}" />
+			 			<c:param name="dateDebut" value="${data.dateDebut}" />
+			 			<c:param name="dateFin" value="${data.dateFin}" />
+			 		</c:url>
+				 	<a href="${firstUrl}"><button class="btn btn-primary">Plus récents</button></a>
+			 	</td>
+			  	<td>
+			  		<c:url var="nextUrl" value="logentries">
+			 			<c:param name="type" value="${data.type}" />
+			 			<c:param name="dateDebut" value="${data.dateDebut}" />
+			 			<c:param name="dateFin" value="${data.dateFin}" />
+			 			<c:param name="cursor" value="${data.liste.nextCursor}" />
+			 		</c:url>
+			  		<a style="margin-left:10px;" href="${nextUrl}">
+			  			<button class="btn btn-primary" <c:if test="${data.liste.disableNext}">disabled="disabled"</c:if>>Suivant</button>
+			  		</a>
+			  	</td>
+			 </tr>
+		    </table>
+		</div>
+</body>
+</html>
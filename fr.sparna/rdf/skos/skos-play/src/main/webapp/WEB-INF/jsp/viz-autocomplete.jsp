@@ -62,7 +62,8 @@
 	</style>
 
 	<script>
-		var params = ${items};
+		// filled once the items are loaded
+		var params = { items: [] };
 	
 		var normalize = function(term) {
 		    var r = term.toLowerCase();
@@ -196,6 +197,10 @@
 	
 	<script>
 	$(document).ready(function() {
+	  // the items are loaded separately, so that the browser can cache them
+	  $.getJSON("${dataUrl}", function(data) {
+		params = data;
+		
 		// set the placeholder on the field
 		var placeholder = "<fmt:message key="viz.autocomplete.placeholder.begin" /> "+params.items.length+" <fmt:message key="viz.autocomplete.placeholder.end" />";
 		if(params.thesaurusName && params.thesaurusName != '') {
@@ -204,6 +209,7 @@
 			placeholder += "...";
 		}
 		$('#thesaurus-autocomplete').attr("placeholder", placeholder);
+	  });
 		
 		// focus on search field		
 	    $('#thesaurus-autocomplete').focus();
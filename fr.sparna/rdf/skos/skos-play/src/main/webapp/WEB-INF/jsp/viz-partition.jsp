@@ -70,10 +70,9 @@ var vis = d3.select("#body").append("div")
 var partition = d3.layout.partition()
     .value(function(d) { return d.size; });
 
-var dataset = '${dataset}';
-var json = JSON.parse( dataset );
-
-// d3.json("json?language=${language}&root=${root}", function(root) {
+// the data is loaded separately, so that the browser can cache it
+d3.json("${dataUrl}", function(error, json) {
+  if (error) return console.warn(error);
   root = json;
   
   var g = vis.selectAll("g")
@@ -132,17 +131,18 @@ var json = JSON.parse( dataset );
   function transform(d) {
     return "translate(8," + d.dx * ky / 2 + ")";
   }
-// });
+});
 
     </script>
     
     <script>
         $(document).ready(function () {
           // add external link behavior to every external link
-          $('text').mouseover(function() {
+          // delegated, since the texts are created once the data is loaded
+          $('#body').on('mouseover', 'text', function() {
             $(this).attr("class", "ext-link");
           });
-          $('text').mouseout(function() {
+          $('#body').on('mouseout', 'text', function() {
             $(this).attr("class", "");
           });
           
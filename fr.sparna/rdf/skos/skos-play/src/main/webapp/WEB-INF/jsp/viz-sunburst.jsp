@@ -69,13 +69,13 @@
 	    .innerRadius(function(d) { return Math.max(0, y(d.y)); })
 	    .outerRadius(function(d) { return Math.max(0, y(d.y + d.dy)); });
 	
-	  var dataset = '${dataset}';
-	  var json = JSON.parse( dataset );
+	// the data is loaded separately, so that the browser can cache it
+	d3.json("${dataUrl}", function(error, json) {
+	  if (error) return console.warn(error);
 	  root = json;
 	  // necessary for switch
 	  currentRoot = root;
 	  
-	// d3.json("flare.json", function(error, root) {
 	  var g = svg.selectAll("g")
 	      .data(partition.nodes(root))
 	      .enter().append("g");
@@ -132,7 +132,7 @@
 	          }
 	      });
 	  }
-//	});
+	});
 	
 	d3.select(self.frameElement).style("height", height + "px");
 	
@@ -205,10 +205,11 @@
     <script>
         $(document).ready(function () {
           // add external link behavior to every external link
-          $('text').mouseover(function() {
+          // delegated, since the texts are created once the data is loaded
+          $('body').on('mouseover', 'text', function() {
             $(this).attr("class", "ext-link");
           });
-          $('text').mouseout(function() {
+          $('body').on('mouseout', 'text', function() {
             $(this).attr("class", "");
           });
           
@@ -67,11 +67,10 @@ var vis = d3.select("#body").append("svg:svg")
     .attr("transform", "translate(" + m[3] + "," + m[0] + ")");
 
 
-  var dataset =${dataset};
-  console.log(dataset.uri);
-  //var json = JSON.parse(dataset);
-// d3.json("json?language=${language}&root=${root}", function(json) {
-  root = dataset;
+// the data is loaded separately, so that the browser can cache it
+d3.json("${dataUrl}", function(error, json) {
+  if (error) return console.warn(error);
+  root = json;
   root.x0 = h / 2;
   root.y0 = 0;
 
@@ -85,7 +84,7 @@ var vis = d3.select("#body").append("svg:svg")
   // Initialize the display to show a few nodes.
   root.children.forEach(toggleAll);
   update(root);
-// });
+});
 
 function update(source) {
   var duration = d3.event && d3.event.altKey ? 5000 : 500;
@@ -198,10 +197,11 @@ function toggle(d) {
     <script>
         $(document).ready(function () {
           // add external link behavior to every external link
-          $('text').mouseover(function() {
+          // delegated, since the texts are created once the data is loaded
+          $('#body').on('mouseover', 'text', function() {
             $(this).attr("class", "ext-link");
           });
-          $('text').mouseout(function() {
+          $('#body').on('mouseout', 'text', function() {
             $(this).attr("class", "");
           });
           
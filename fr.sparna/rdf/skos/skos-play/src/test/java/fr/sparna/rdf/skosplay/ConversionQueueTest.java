@@ -0,0 +1,253 @@
+package fr.sparna.rdf.skosplay;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.sparna.rdf.skosplay.ConversionQueue.Job;
+import fr.sparna.rdf.skosplay.ConversionQueue.Options;
+import fr.sparna.rdf.skosplay.ConversionQueue.Result;
+import fr.sparna.rdf.skosplay.ConversionQueue.Status;
+
+public class ConversionQueueTest {
+
+	private static final Options TURTLE = new Options("fr", RDFFormat.TURTLE, false, false);
+
+	private TestQueue queue;
+
+	@After
+	public void after() {
+		if(this.queue != null) {
+			this.queue.close();
+		}
+	}
+
+	@Test
+	public void identicalConversionsShareJob() throws Exception {
+		this.queue = new TestQueue(2, 10, 1024);
+		this.queue.block();
+
+		Job first = this.queue.submit(bytes("sheet"), TURTLE);
+		Job second = this.queue.submit(bytes("sheet"), TURTLE);
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, this.queue.getJoined());
+
+		// other options are another conversion
+		Job other = this.queue.submit(bytes("sheet"), new Options("en", RDFFormat.TURTLE, false, false));
+		Assert.assertNotSame(first, other);
+
+		this.queue.release();
+		Assert.assertEquals("converted sheet", new String(first.await(5000).getBytes(), StandardCharsets.UTF_8));
+		other.await(5000);
+		Assert.assertEquals(2, this.queue.conversions.get());
+		Assert.assertEquals(Status.DONE, first.getStatus());
+		Assert.assertSame(first, this.queue.getJob(first.getId()));
+	}
+
+	@Test
+	public void cachedResultNotConvertedAgain() throws Exception {
+		this.queue = new TestQueue(1, 10, 1024);
+		Result result = this.queue.submit(bytes("sheet"), TURTLE).await(5000);
+
+		Job cached = this.queue.submit(bytes("sheet"), TURTLE);
+		Assert.assertEquals(Status.DONE, cached.getStatus());
+		Assert.assertSame(result, cached.getResult());
+		Assert.assertEquals(1, this.queue.getHits());
+		Assert.assertEquals(1, this.queue.conversions.get());
+	}
+
+	@Test
+	public void cacheBoundedLeastRecentlyUsedEvicted() throws Exception {
+		// room for two results of 11 bytes
+		this.queue = new TestQueue(1, 10, 25);
+		this.queue.submit(bytes("a"), TURTLE).await(5000);
+		this.queue.submit(bytes("b"), TURTLE).await(5000);
+		Assert.assertEquals(22, this.queue.getCacheSize());
+
+		// a is used again, b is evicted by c
+		this.queue.submit(bytes("a"), TURTLE);
+		this.queue.submit(bytes("c"), TURTLE).await(5000);
+		Assert.assertEquals(2, this.queue.getCacheCount());
+		Assert.assertEquals(22, this.queue.getCacheSize());
+		Assert.assertEquals(3, this.queue.conversions.get());
+
+		Assert.assertEquals(Status.DONE, this.queue.submit(bytes("a"), TURTLE).getStatus());
+		this.queue.submit(bytes("b"), TURTLE).await(5000);
+		Assert.assertEquals(4, this.queue.conversions.get());
+
+		// a result larger than the cache is not kept
+		this.queue.submit(bytes("a very large spreadsheet"), TURTLE).await(5000);
+		Assert.assertEquals(2, this.queue.getCacheCount());
+		Assert.assertTrue(this.queue.getCacheSize() <= 25);
+	}
+
+	@Test
+	public void failedConversionCompletesJob() throws Exception {
+		this.queue = new TestQueue(1, 10, 1024);
+		this.queue.failure = new IllegalArgumentException("Invalid spreadsheet");
+		Job job = this.queue.submit(bytes("sheet"), TURTLE);
+		try {
+			job.await(5000);
+			Assert.fail("Expected the conversion to fail");
+		} catch (ExecutionException expected) {
+			Assert.assertTrue(expected.getCause() instanceof IllegalArgumentException);
+		}
+		Assert.assertEquals(Status.FAILED, job.getStatus());
+		Assert.assertEquals("Invalid spreadsheet", job.getError());
+		Assert.assertNull(job.getResult());
+
+		// an error too, and the same conversion can be submitted again
+		this.queue.failure = new StackOverflowError();
+		Job again = this.queue.submit(bytes("sheet"), TURTLE);
+		Assert.assertNotSame(job, again);
+		try {
+			again.await(5000);
+			Assert.fail("Expected the conversion to fail");
+		} catch (ExecutionException expected) {
+			Assert.assertTrue(expected.getCause() instanceof StackOverflowError);
+		}
+		Assert.assertEquals(Status.FAILED, again.getStatus());
+		Assert.assertEquals(0, this.queue.getCacheCount());
+
+		this.queue.failure = null;
+		Assert.assertNotNull(this.queue.submit(bytes("sheet"), TURTLE).await(5000));
+	}
+
+	@Test
+	public void rejectedWhenQueueFull() throws Exception {
+		this.queue = new TestQueue(1, 1, 1024);
+		this.queue.block();
+		Job running = this.queue.submit(bytes("a"), TURTLE);
+		this.queue.started.await(5, TimeUnit.SECONDS);
+		Job queued = this.queue.submit(bytes("b"), TURTLE);
+		try {
+			this.queue.submit(bytes("c"), TURTLE);
+			Assert.fail("Expected the conversion to be rejected");
+		} catch (ConversionRejectedException expected) {
+			Assert.assertTrue(expected.getRetryAfter() >= 1);
+		}
+		Assert.assertEquals(1, this.queue.getRejected());
+		Assert.assertEquals(Status.QUEUED, queued.getStatus());
+
+		this.queue.release();
+		running.await(5000);
+		queued.await(5000);
+	}
+
+	@Test
+	public void successActionsRunForEachSubmitter() throws Exception {
+		this.queue = new TestQueue(1, 10, 1024);
+		this.queue.block();
+		AtomicInteger logs = new AtomicInteger();
+		CountDownLatch logged = new CountDownLatch(2);
+		Job first = this.queue.submit(bytes("sheet"), TURTLE);
+		first.onSuccess(r -> {
+			logs.incrementAndGet();
+			logged.countDown();
+		});
+		Job second = this.queue.submit(bytes("sheet"), TURTLE);
+		second.onSuccess(r -> {
+			logs.incrementAndGet();
+			logged.countDown();
+		});
+		Assert.assertEquals(0, logs.get());
+
+		// run when the conversion ends, even if nobody waits for it
+		this.queue.release();
+		Assert.assertTrue(logged.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(2, logs.get());
+
+		// run immediately on a cached result
+		this.queue.submit(bytes("sheet"), TURTLE).onSuccess(r -> logs.incrementAndGet());
+		Assert.assertEquals(3, logs.get());
+
+		// not run on a failure
+		this.queue.failure = new IllegalArgumentException("Invalid spreadsheet");
+		Job failed = this.queue.submit(bytes("other sheet"), TURTLE);
+		failed.onSuccess(r -> logs.incrementAndGet());
+		try {
+			failed.await(5000);
+			Assert.fail("Expected the conversion to fail");
+		} catch (ExecutionException expected) {
+			// ok
+		}
+		Assert.assertEquals(3, logs.get());
+	}
+
+	@Test
+	public void jobsBoundedByCount() throws Exception {
+		this.queue = new TestQueue(1, 10, 1024);
+		this.queue.setMaxJobs(3);
+		Job oldest = this.queue.submit(bytes("a"), TURTLE);
+		oldest.await(5000);
+		for (int i = 0; i < 5; i++) {
+			this.queue.submit(bytes("a"), TURTLE);
+		}
+		Assert.assertEquals(3, this.queue.getJobCount());
+		Assert.assertNull(this.queue.getJob(oldest.getId()));
+
+		// jobs that are not finished are kept
+		this.queue.block();
+		Job running = this.queue.submit(bytes("b"), TURTLE);
+		Job queued = this.queue.submit(bytes("c"), TURTLE);
+		Job other = this.queue.submit(bytes("d"), TURTLE);
+		Job last = this.queue.submit(bytes("e"), TURTLE);
+		Assert.assertEquals(4, this.queue.getJobCount());
+		Assert.assertSame(running, this.queue.getJob(running.getId()));
+		Assert.assertSame(last, this.queue.getJob(last.getId()));
+		this.queue.release();
+		queued.await(5000);
+		other.await(5000);
+		last.await(5000);
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Converts by prefixing the input, optionally waiting to be released or failing
+	 */
+	private static class TestQueue extends ConversionQueue {
+
+		private AtomicInteger conversions = new AtomicInteger();
+		private CountDownLatch started = new CountDownLatch(1);
+		private volatile CountDownLatch released = new CountDownLatch(0);
+		private volatile Throwable failure;
+
+		public TestQueue(int concurrency, int queueSize, long cacheMaxSize) {
+			super(concurrency, queueSize, cacheMaxSize, 60000);
+		}
+
+		public void block() {
+			this.released = new CountDownLatch(1);
+		}
+
+		public void release() {
+			this.released.countDown();
+		}
+
+		@Override
+		protected Result convert(byte[] input, Options options) throws Exception {
+			this.conversions.incrementAndGet();
+			this.started.countDown();
+			this.released.await();
+			if(this.failure instanceof Exception) {
+				throw (Exception)this.failure;
+			}
+			if(this.failure instanceof Error) {
+				throw (Error)this.failure;
+			}
+			return new Result(bytes("converted "+new String(input, StandardCharsets.UTF_8)), Collections.<String>emptyList());
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+package fr.sparna.rdf.skosplay;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.sparna.rdf.skosplay.DatasetRegistry.DatasetInfo;
+
+public class DatasetRegistryTest {
+
+	private File spillDirectory;
+	private DatasetRegistry registry;
+
+	@Before
+	public void before() throws Exception {
+		this.spillDirectory = Files.createTempDirectory("dataset-registry-test").toFile();
+		this.registry = new DatasetRegistry();
+		this.registry.setSpillDirectory(this.spillDirectory);
+	}
+
+	@After
+	public void after() {
+		File[] files = this.spillDirectory.listFiles();
+		if(files != null) {
+			for (File aFile : files) {
+				aFile.delete();
+			}
+		}
+		this.spillDirectory.delete();
+	}
+
+	@Test
+	public void referencesCounted() {
+		AtomicInteger loads = new AtomicInteger();
+		Repository first = this.registry.acquire("a", () -> {
+			loads.incrementAndGet();
+			return repository(3);
+		});
+		Repository second = this.registry.acquire("a", () -> {
+			loads.incrementAndGet();
+			return repository(3);
+		});
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, loads.get());
+		Assert.assertTrue(this.registry.retain("a"));
+		Assert.assertFalse(this.registry.retain("b"));
+		Assert.assertEquals(3, info("a").getReferences());
+		Assert.assertEquals(3, info("a").getStatements());
+
+		this.registry.release("a");
+		this.registry.release("a");
+		Assert.assertEquals(1, info("a").getReferences());
+		Assert.assertSame(first, this.registry.get("a"));
+
+		this.registry.release("a");
+		Assert.assertNull(this.registry.get("a"));
+		Assert.assertTrue(this.registry.getDatasets().isEmpty());
+		Assert.assertFalse(this.registry.retain("a"));
+		// releasing an unknown dataset does nothing
+		this.registry.release("a");
+	}
+
+	@Test
+	public void releasedRepositoryStillReadable() {
+		Repository repository = this.registry.acquire("a", () -> repository(2));
+		this.registry.release("a");
+		// a request that obtained the repository before the release can finish
+		try(RepositoryConnection connection = repository.getConnection()) {
+			Assert.assertEquals(2, connection.size());
+		}
+	}
+
+	@Test
+	public void duplicateLoadedRepositoryShutDown() {
+		Repository loaded = repository(2);
+		Assert.assertSame(loaded, this.registry.acquire("a", loaded));
+		Repository duplicate = repository(2);
+		Assert.assertSame(loaded, this.registry.acquire("a", duplicate));
+		Assert.assertFalse(duplicate.isInitialized());
+		Assert.assertTrue(loaded.isInitialized());
+		Assert.assertEquals(2, info("a").getReferences());
+	}
+
+	@Test
+	public void failedLoadNotRegistered() {
+		try {
+			this.registry.acquire("a", () -> {
+				throw new IllegalStateException("Cannot parse");
+			});
+			Assert.fail("Expected the load to fail");
+		} catch (IllegalStateException expected) {
+			// ok
+		}
+		Assert.assertTrue(this.registry.getDatasets().isEmpty());
+		Assert.assertNotNull(this.registry.acquire("a", () -> repository(1)));
+		Assert.assertEquals(1, info("a").getReferences());
+	}
+
+	@Test
+	public void spilledWhenOverHeapBudgetAndReloaded() {
+		this.registry.acquire("a", () -> repository(10));
+		long size = info("a").getEstimatedSize();
+		this.registry.setHeapBudget(size + size / 2);
+		this.registry.acquire("b", () -> repository(10));
+
+		// a is the least recently used, spilled to make room for b
+		Assert.assertTrue(info("a").isSpilled());
+		Assert.assertFalse(info("b").isSpilled());
+		Assert.assertEquals(size, this.registry.getEstimatedSize());
+		Assert.assertEquals(1, this.spillDirectory.listFiles().length);
+
+		// a is reloaded from its snapshot, and b is spilled
+		try(RepositoryConnection connection = this.registry.get("a").getConnection()) {
+			Assert.assertEquals(10, connection.size());
+		}
+		Assert.assertFalse(info("a").isSpilled());
+		Assert.assertTrue(info("b").isSpilled());
+
+		// snapshots are deleted with the last reference
+		this.registry.release("a");
+		this.registry.release("b");
+		Assert.assertEquals(0, this.spillDirectory.listFiles().length);
+	}
+
+	@Test
+	public void registeredSnapshotKept() throws Exception {
+		File example = this.registry.writeSnapshot(repository(4));
+		this.registry.acquire("example", example);
+		Assert.assertEquals(1, info("example").getReferences());
+		Assert.assertTrue(info("example").isSpilled());
+
+		// loaded on first access
+		try(RepositoryConnection connection = this.registry.get("example").getConnection()) {
+			Assert.assertEquals(4, connection.size());
+		}
+		Assert.assertEquals(4, info("example").getStatements());
+		this.registry.release("example");
+		Assert.assertTrue(example.exists());
+	}
+
+	@Test
+	public void closeUnloadsDatasets() {
+		this.registry.setIdleTime(60000);
+		Repository spilled = this.registry.acquire("a", () -> repository(2));
+		this.registry.setHeapBudget(info("a").getEstimatedSize());
+		Repository inMemory = this.registry.acquire("b", () -> repository(2));
+		// a is spilled to make room for b
+		Assert.assertEquals(1, this.spillDirectory.listFiles().length);
+
+		this.registry.close();
+		Assert.assertNull(this.registry.spillScheduler);
+		Assert.assertTrue(this.registry.getDatasets().isEmpty());
+		Assert.assertEquals(0, this.spillDirectory.listFiles().length);
+		Assert.assertFalse(inMemory.isInitialized());
+		// a repository already dropped from memory is left to the requests still using it
+		Assert.assertTrue(spilled.isInitialized());
+	}
+
+	private DatasetInfo info(String key) {
+		List<DatasetInfo> datasets = this.registry.getDatasets();
+		for (DatasetInfo aDataset : datasets) {
+			if(aDataset.getKey().equals(key)) {
+				return aDataset;
+			}
+		}
+		return null;
+	}
+
+	private static Repository repository(int statements) {
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.init();
+		ValueFactory factory = SimpleValueFactory.getInstance();
+		IRI label = factory.createIRI("http://www.w3.org/2004/02/skos/core#prefLabel");
+		try(RepositoryConnection connection = repository.getConnection()) {
+			for (int i = 0; i < statements; i++) {
+				connection.add(factory.createIRI("http://example.org/concept/"+i), label, factory.createLiteral("concept "+i));
+			}
+		}
+		return repository;
+	}
+
+}
@@ -0,0 +1,95 @@
+package fr.sparna.rdf.skosplay.log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.sparna.rdf.skosplay.log.AsyncLogWriter.OverflowPolicy;
+
+public class AsyncLogWriterTest {
+
+	@Test
+	public void entriesWrittenInBatches() {
+		List<Integer> batches = Collections.synchronizedList(new ArrayList<Integer>());
+		AsyncLogWriter writer = new AsyncLogWriter(batch -> batches.add(batch.size()), 100, 10, 200, OverflowPolicy.BLOCK);
+		for (int i = 0; i < 25; i++) {
+			Assert.assertTrue(writer.submit(entry(i)));
+		}
+		// pending entries are written on close
+		writer.close();
+
+		Assert.assertEquals(25, writer.getWritten());
+		Assert.assertEquals(0, writer.getQueueSize());
+		int total = 0;
+		for (Integer aSize : batches) {
+			Assert.assertTrue(aSize <= 10);
+			total += aSize;
+		}
+		Assert.assertEquals(25, total);
+	}
+
+	@Test
+	public void entriesDroppedWhenQueueFull() throws Exception {
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AsyncLogWriter writer = new AsyncLogWriter(batch -> {
+			writing.countDown();
+			release.await();
+		}, 2, 1, 10, OverflowPolicy.DROP);
+
+		// the first entry blocks the writer thread, the next two fill the queue
+		Assert.assertTrue(writer.submit(entry(0)));
+		Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(writer.submit(entry(1)));
+		Assert.assertTrue(writer.submit(entry(2)));
+		Assert.assertFalse(writer.submit(entry(3)));
+		Assert.assertEquals(1, writer.getDropped());
+
+		release.countDown();
+		writer.close();
+		Assert.assertEquals(3, writer.getWritten());
+	}
+
+	@Test
+	public void failedBatchDoesNotBlockNextOnes() throws Exception {
+		CountDownLatch secondBatch = new CountDownLatch(1);
+		AsyncLogWriter writer = new AsyncLogWriter(batch -> {
+			if(batch.get(0).getUrl().equals("http://example.org/0")) {
+				throw new IllegalStateException("Database unavailable");
+			}
+			secondBatch.countDown();
+		}, 10, 1, 10, OverflowPolicy.BLOCK);
+
+		writer.submit(entry(0));
+		writer.submit(entry(1));
+		Assert.assertTrue(secondBatch.await(5, TimeUnit.SECONDS));
+		writer.close();
+		Assert.assertEquals(1, writer.getFailed());
+		Assert.assertEquals(1, writer.getWritten());
+	}
+
+	@Test
+	public void entriesDroppedAfterClose() {
+		List<LogEntry> writtenEntries = Collections.synchronizedList(new ArrayList<LogEntry>());
+		AsyncLogWriter writer = new AsyncLogWriter(writtenEntries::addAll, 1, 1, 10, OverflowPolicy.BLOCK);
+		Assert.assertTrue(writer.submit(entry(0)));
+		writer.close();
+
+		// a closed writer never blocks, even with the BLOCK policy
+		Assert.assertFalse(writer.submit(entry(1)));
+		Assert.assertFalse(writer.submit(entry(2)));
+		Assert.assertEquals(2, writer.getDropped());
+		Assert.assertEquals(1, writer.getWritten());
+		Assert.assertEquals(1, writtenEntries.size());
+	}
+
+	private static LogEntry entry(int i) {
+		return new LogEntry("fr", "html", "alphabetical", "http://example.org/"+i, "print", null);
+	}
+
+}
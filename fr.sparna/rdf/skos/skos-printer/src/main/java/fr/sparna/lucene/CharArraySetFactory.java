@@ -3,7 +3,9 @@ package fr.sparna.lucene;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.analysis.util.CharArraySet;
 import org.slf4j.Logger;
@@ -15,6 +17,9 @@ public class CharArraySetFactory {
 
 	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
 	
+	// sets already read, keyed by resource name and case sensitivity; sets are read-only and shared
+	private static final Map<String, CharArraySet> CACHE = new ConcurrentHashMap<String, CharArraySet>();
+	
 	protected String resourceBase;
 	protected String filePrefix;
 	protected String fileSuffix;
@@ -39,19 +44,28 @@ public class CharArraySetFactory {
 		return new CharArraySetFactory("fr/sparna/lucene/contractions/", "contractions_", ".txt");
 	}
 
+	/**
+	 * Returns the set of words for the given language. Sets are read only once per language and
+	 * then cached; the returned set is unmodifiable and can be shared between threads.
+	 */
 	public CharArraySet createCharArraySet(String lang, boolean ignoreCase) {
+		// look for a resource with the appropriate language
+		final String soughtResource = this.resourceBase+this.filePrefix+lang+this.fileSuffix;
+		return CACHE.computeIfAbsent(soughtResource+"#"+ignoreCase, k -> CharArraySet.unmodifiableSet(read(soughtResource, ignoreCase)));
+	}
+	
+	protected CharArraySet read(String soughtResource, boolean ignoreCase) {
 		List<String> fileContents = new ArrayList<String>();
 		
-		// look for a resource with the appropriate language
-		String soughtResource = this.resourceBase+this.filePrefix+lang+this.fileSuffix;
 		log.debug("Looking for resource : "+soughtResource);
 		InputStream stream = this.getClass().getClassLoader().getResourceAsStream(soughtResource);
 		if(stream == null) {
 			log.warn("Cannot find resource "+soughtResource);
 		} else {
-			Scanner s = new Scanner(stream, "UTF-8");
-			while(s.hasNext()) {
-				fileContents.add(s.next());
+			try(Scanner s = new Scanner(stream, "UTF-8")) {
+				while(s.hasNext()) {
+					fileContents.add(s.next());
+				}
 			}
 		}
 		
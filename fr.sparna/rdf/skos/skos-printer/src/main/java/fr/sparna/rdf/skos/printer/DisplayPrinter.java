@@ -4,6 +4,7 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
@@ -24,6 +25,10 @@ import javax.xml.transform.stream.StreamSource;
 import org.apache.fop.apps.FOPException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
 
 import fr.sparna.commons.xml.ClasspathURIResolver;
 import fr.sparna.commons.xml.XSLProcessor;
@@ -91,6 +96,9 @@ public class DisplayPrinter {
 	
 	protected Map<String, Object> transformerParams = new HashMap<String, Object>();
 	
+	// optional trace of the marshalling, transformation and FOP stages
+	protected RenderTrace trace;
+	
 	/**
 	 * Default constructors that initializes a default FopProvider with no FOP config
 	 */
@@ -145,42 +153,13 @@ public class DisplayPrinter {
 			String lang
 	) throws FOPException, TransformerException, IOException, JAXBException {
 		
-		// sets writing mode depending on language
-		if(lang.startsWith("ar")) {
-			log.info("Setting writing mode on the KosDocument");
-			document.setWritingMode("rl-tb");
+		if(outputFile.getParentFile() != null) {
+			outputFile.getParentFile().mkdirs();
 		}
 		
-		Marshaller m = createMarshaller();
-		debugJAXBMarshalling(m, document);
-		
-		FopProcessor p = new FopProcessor();
-		p.setDebugFo(debug);
-		p.setDebugPath(this.debugPath);
-		StreamSource xslSource = new StreamSource(this.getClass().getClassLoader().getResourceAsStream(this.style.getPdfStylesheet()));
-
-		// set a classpath URI resolver so that the XSL can resolve the labels file in the "stylesheets" classpath folder
-		XSLProcessor xslProc = XSLProcessor.createDefaultProcessor();
-		xslProc.setUriResolver(new ClasspathURIResolver("stylesheets"));
-		
-		// Transformer t = XSLProcessor.createDefaultProcessor().createTransformer(xslSource);
-		Transformer t = xslProc.createTransformer(xslSource);
-		
-		if(this.transformerParams != null) {
-			for (String aKey : this.transformerParams.keySet()) {
-				t.setParameter(aKey, this.transformerParams.get(aKey));
-			}
+		try(OutputStream os = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+			printToPdf(document, os, lang);
 		}
-		// add the language as a parameter
-		log.debug("Setting "+LANG_PARAM+" param on the stylesheet to "+selectLanguage(lang));
-		t.setParameter(LANG_PARAM, selectLanguage(lang));
-		
-		p.processToFile(
-				new JAXBSource(m, document),
-				t,
-				fopProvider,
-				outputFile
-		);
 	}
 	
 	public void printToPdf(
@@ -214,13 +193,43 @@ public class DisplayPrinter {
 			}
 		}
 		// add the language as a parameter
+		log.debug("Setting "+LANG_PARAM+" param on the stylesheet to "+selectLanguage(lang));
 		t.setParameter(LANG_PARAM, selectLanguage(lang));
-				
-		p.process(
-				fopProvider.createFop(os),
-				new JAXBSource(m, document),
-				t
-		);
+		
+		// FOP writes the PDF in many small chunks, buffer them before they reach the output (typically a servlet response)
+		BufferedOutputStream buffered = new BufferedOutputStream(os, 64 * 1024);
+		
+		if(this.trace == null) {
+			p.process(
+					fopProvider.createFop(buffered),
+					new JAXBSource(m, document),
+					t
+			);
+		} else {
+			// marshalling, XSLT and FOP are streamed in a single pass : FOP time is measured in its SAX handler,
+			// and the rest is attributed to marshalling and transformation
+			long start = System.nanoTime();
+			long startAllocated = RenderTrace.currentThreadAllocatedBytes();
+			CountingOutputStream counting = new CountingOutputStream(buffered);
+			TimingContentHandler fopHandler = new TimingContentHandler(fopProvider.createFop(counting).getDefaultHandler());
+			p.process(
+					fopHandler,
+					new JAXBSource(m, document),
+					t
+			);
+			long allocated = RenderTrace.currentThreadAllocatedBytes();
+			
+			RenderTrace.Stage transformStage = new RenderTrace.Stage("marshal+transform", (System.nanoTime() - start - fopHandler.nanos) / 1000000);
+			RenderTrace.Stage fopStage = new RenderTrace.Stage("fop", fopHandler.nanos / 1000000);
+			if(allocated >= 0 && startAllocated >= 0) {
+				transformStage.setAllocatedBytes(allocated - startAllocated - fopHandler.allocatedBytes);
+				fopStage.setAllocatedBytes(fopHandler.allocatedBytes);
+			}
+			fopStage.setSize(counting.count);
+			this.trace.add(transformStage);
+			this.trace.add(fopStage);
+		}
+		buffered.flush();
 	}
 	
 	public void printToHtml(
@@ -337,7 +346,11 @@ public class DisplayPrinter {
 			// add the language as a parameter
 			t.setParameter(LANG_PARAM, selectLanguage(lang));
 			
-			t.transform(new JAXBSource(m, document), new StreamResult(os));
+			try(RenderTrace.Timer timer = RenderTrace.start(this.trace, "marshal+transform")) {
+				CountingOutputStream counting = new CountingOutputStream(os);
+				t.transform(new JAXBSource(m, document), new StreamResult(counting));
+				timer.setSize(counting.count);
+			}
 		} finally {
 			if(os != null) {
 				try {
@@ -399,6 +412,22 @@ public class DisplayPrinter {
 		this.debugPath = debugPath;
 	}
 
+	public RenderTrace getTrace() {
+		return trace;
+	}
+
+	public void setTrace(RenderTrace trace) {
+		this.trace = trace;
+	}
+
+	public FopProvider getFopProvider() {
+		return fopProvider;
+	}
+
+	public void setFopProvider(FopProvider fopProvider) {
+		this.fopProvider = fopProvider;
+	}
+
 	public Style getStyle() {
 		return style;
 	}
@@ -407,4 +436,117 @@ public class DisplayPrinter {
 		this.style = style;
 	}
 	
+	/**
+	 * Counts the bytes written to the output
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		
+		private long count = 0;
+		
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+	
+	/**
+	 * Measures the time and allocations spent in a SAX handler
+	 */
+	private static class TimingContentHandler implements ContentHandler {
+		
+		private ContentHandler delegate;
+		private long nanos = 0;
+		private long allocatedBytes = 0;
+		private long start;
+		private long startAllocated;
+		
+		public TimingContentHandler(ContentHandler delegate) {
+			this.delegate = delegate;
+		}
+		
+		private void enter() {
+			this.start = System.nanoTime();
+			this.startAllocated = RenderTrace.currentThreadAllocatedBytes();
+		}
+		
+		private void exit() {
+			this.nanos += System.nanoTime() - this.start;
+			if(this.startAllocated >= 0) {
+				this.allocatedBytes += RenderTrace.currentThreadAllocatedBytes() - this.startAllocated;
+			}
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			delegate.setDocumentLocator(locator);
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			enter();
+			try { delegate.startDocument(); } finally { exit(); }
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			// this is where FOP renders the last pages
+			enter();
+			try { delegate.endDocument(); } finally { exit(); }
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			delegate.startPrefixMapping(prefix, uri);
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) throws SAXException {
+			delegate.endPrefixMapping(prefix);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			enter();
+			try { delegate.startElement(uri, localName, qName, atts); } finally { exit(); }
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			enter();
+			try { delegate.endElement(uri, localName, qName); } finally { exit(); }
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			enter();
+			try { delegate.characters(ch, start, length); } finally { exit(); }
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+			delegate.ignorableWhitespace(ch, start, length);
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) throws SAXException {
+			delegate.processingInstruction(target, data);
+		}
+
+		@Override
+		public void skippedEntity(String name) throws SAXException {
+			delegate.skippedEntity(name);
+		}
+	}
+	
 }
@@ -0,0 +1,186 @@
+package fr.sparna.rdf.skos.printer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.skos.printer.schema.KosDocument;
+import fr.sparna.rdf.skos.toolkit.Digests;
+
+/**
+ * A bounded, in-memory cache of generated {@link KosDocument}, so that printing the same display in another output
+ * format or another user interface language only re-runs the final transformation in the {@link DisplayPrinter}.
+ * <p>Documents are stored marshalled and gzipped, which is typically 10 to 20 times smaller than the object tree,
+ * and each <code>get</code> returns a new copy that can be modified freely by the caller. The least recently used
+ * documents are evicted when the total size of the cache exceeds its maximum size.
+ * <p>Keys are built with {@link #key(Object...)} from everything the document depends on : a fingerprint of the
+ * dataset, the display type, the concept scheme, the content language and the display options. The cache can be
+ * used by multiple threads.
+ *
+ * @author Thomas Francart
+ */
+public class KosDocumentCache {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	private static JAXBContext JAXB_CONTEXT;
+
+	// max total size of the serialized documents, in bytes
+	protected long maxSize;
+	protected long size = 0;
+
+	// access-ordered, least recently used first
+	protected LinkedHashMap<String, byte[]> documents = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+	protected long hits = 0;
+	protected long misses = 0;
+	protected long evictions = 0;
+
+	/**
+	 * @param maxSize maximum total size of the serialized documents, in bytes
+	 */
+	public KosDocumentCache(long maxSize) {
+		super();
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Builds a cache key from the given parts; null parts are allowed.
+	 */
+	public static String key(Object... parts) {
+		StringBuilder sb = new StringBuilder();
+		for (Object aPart : parts) {
+			sb.append(aPart).append('\u0001');
+		}
+		return Digests.sha256(sb.toString());
+	}
+
+	/**
+	 * @return a new copy of the cached document, or null if it is not in the cache
+	 */
+	public KosDocument get(String key) {
+		byte[] serialized;
+		synchronized (this) {
+			serialized = this.documents.get(key);
+			if(serialized == null) {
+				this.misses++;
+				return null;
+			}
+			this.hits++;
+		}
+
+		try(InputStream in = new GZIPInputStream(new ByteArrayInputStream(serialized))) {
+			return (KosDocument)getJaxbContext().createUnmarshaller().unmarshal(in);
+		} catch (JAXBException | IOException e) {
+			log.error("Cannot read cached document "+key+", removing it from the cache", e);
+			remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a copy of the document in the cache. Documents larger than the cache are not stored.
+	 */
+	public void put(String key, KosDocument document) {
+		if(this.maxSize <= 0) {
+			return;
+		}
+
+		byte[] serialized;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(OutputStream out = new GZIPOutputStream(bytes)) {
+			getJaxbContext().createMarshaller().marshal(document, out);
+		} catch (JAXBException | IOException e) {
+			log.error("Cannot serialize document "+key+", it will not be cached", e);
+			return;
+		}
+		serialized = bytes.toByteArray();
+
+		if(serialized.length > this.maxSize) {
+			log.debug("Document "+key+" is too large to be cached ("+serialized.length+" bytes)");
+			return;
+		}
+
+		synchronized (this) {
+			byte[] previous = this.documents.put(key, serialized);
+			if(previous != null) {
+				this.size -= previous.length;
+			}
+			this.size += serialized.length;
+
+			Iterator<Map.Entry<String, byte[]>> it = this.documents.entrySet().iterator();
+			while(this.size > this.maxSize && it.hasNext()) {
+				Map.Entry<String, byte[]> eldest = it.next();
+				this.size -= eldest.getValue().length;
+				it.remove();
+				this.evictions++;
+			}
+		}
+	}
+
+	public synchronized void remove(String key) {
+		byte[] previous = this.documents.remove(key);
+		if(previous != null) {
+			this.size -= previous.length;
+		}
+	}
+
+	public synchronized void clear() {
+		this.documents.clear();
+		this.size = 0;
+	}
+
+	private static synchronized JAXBContext getJaxbContext() throws JAXBException {
+		// creating a context is costly, and a context can be shared by all threads
+		if(JAXB_CONTEXT == null) {
+			JAXB_CONTEXT = JAXBContext.newInstance("fr.sparna.rdf.skos.printer.schema");
+		}
+		return JAXB_CONTEXT;
+	}
+
+	public synchronized int getCount() {
+		return this.documents.size();
+	}
+
+	/**
+	 * @return the total size of the serialized documents in the cache, in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "KosDocumentCache [count=" + documents.size() + ", size=" + size + ", maxSize=" + maxSize + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+
+}
@@ -0,0 +1,161 @@
+package fr.sparna.rdf.skos.printer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+
+import fr.sparna.commons.xml.fop.FopProvider;
+import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
+import fr.sparna.rdf.rdf4j.toolkit.repository.init.ApplyUpdates;
+import fr.sparna.rdf.skos.printer.reader.AlphaIndexDisplayGenerator;
+import fr.sparna.rdf.skos.printer.reader.BodyReader;
+import fr.sparna.rdf.skos.printer.reader.ConceptBlockReader;
+import fr.sparna.rdf.skos.printer.reader.HeaderAndFooterReader;
+import fr.sparna.rdf.skos.printer.schema.KosDocument;
+import fr.sparna.rdf.skos.toolkit.SKOSRules;
+
+/**
+ * Measures the size and the writing time of the PDF of the alphabetical display of one or more thesauri, in the
+ * default and in the optimized PDF mode (see <code>FopProvider.setOptimized</code>), and reports the bytes saved.
+ * <p>The document of each thesaurus is generated once; each mode is then printed a few times and the best time is kept,
+ * so that the first run, which loads the fonts, does not count. PDFs are written to a stream that only counts bytes.
+ * <p>Usage : <code>PdfOptimizationReport &lt;lang&gt; &lt;thesaurus file or URL&gt; [&lt;thesaurus file or URL&gt; ...]</code>
+ *
+ * @author Thomas Francart
+ */
+public class PdfOptimizationReport {
+
+	private static final int RUNS = 3;
+
+	protected FopProvider defaultProvider = new FopProvider(null, false);
+	protected FopProvider optimizedProvider = new FopProvider(null, true);
+
+	public Result measure(KosDocument document, String lang) throws Exception {
+		Result result = new Result();
+		result.defaultSize = -1;
+		result.defaultTime = Long.MAX_VALUE;
+		result.optimizedTime = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long[] m = print(document, lang, this.defaultProvider);
+			result.defaultSize = m[0];
+			result.defaultTime = Math.min(result.defaultTime, m[1]);
+
+			m = print(document, lang, this.optimizedProvider);
+			result.optimizedSize = m[0];
+			result.optimizedTime = Math.min(result.optimizedTime, m[1]);
+		}
+		return result;
+	}
+
+	private long[] print(KosDocument document, String lang, FopProvider provider) throws Exception {
+		DisplayPrinter printer = new DisplayPrinter(provider);
+		printer.setDebug(false);
+		CountingSink sink = new CountingSink();
+		long start = System.currentTimeMillis();
+		printer.printToPdf(document, sink, lang);
+		return new long[] { sink.count, System.currentTimeMillis() - start };
+	}
+
+	public static KosDocument generate(String input, String lang, IRI scheme) {
+		Repository r = RepositoryBuilderFactory.fromString(input).get();
+		try(RepositoryConnection connection = r.getConnection()) {
+			ApplyUpdates.fromQueryReaders(SKOSRules.getSkosXl2SkosRuleset()).accept(connection);
+
+			KosDocument document = new KosDocument();
+			HeaderAndFooterReader headerReader = new HeaderAndFooterReader(connection);
+			document.setFooter(headerReader.readFooter(lang, scheme));
+
+			ConceptBlockReader cbReader = new ConceptBlockReader();
+			cbReader.setSkosPropertiesToRead(AlphaIndexDisplayGenerator.EXPANDED_SKOS_PROPERTIES_WITH_TOP_TERMS);
+			BodyReader bodyReader = new BodyReader(new AlphaIndexDisplayGenerator(connection, cbReader));
+			document.setBody(bodyReader.readBody(lang, scheme));
+			return document;
+		} finally {
+			r.shutDown();
+		}
+	}
+
+	public static class Result {
+		protected long defaultSize;
+		protected long defaultTime;
+		protected long optimizedSize;
+		protected long optimizedTime;
+
+		public long getSavedBytes() {
+			return defaultSize - optimizedSize;
+		}
+
+		public double getSavedPercent() {
+			return (defaultSize > 0)?(100.0 * getSavedBytes() / defaultSize):0;
+		}
+
+		public long getDefaultSize() {
+			return defaultSize;
+		}
+
+		public long getDefaultTime() {
+			return defaultTime;
+		}
+
+		public long getOptimizedSize() {
+			return optimizedSize;
+		}
+
+		public long getOptimizedTime() {
+			return optimizedTime;
+		}
+	}
+
+	/**
+	 * Discards the bytes written, only counting them
+	 */
+	private static class CountingSink extends OutputStream {
+		private long count = 0;
+
+		@Override
+		public void write(int b) throws IOException {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			count += len;
+		}
+	}
+
+	public static void main(String... args) throws Exception {
+		if(args.length < 2) {
+			System.out.println("Usage : PdfOptimizationReport <lang> <thesaurus file or URL> [<thesaurus file or URL> ...]");
+			return;
+		}
+		String lang = args[0];
+		List<String> inputs = new ArrayList<String>();
+		for (int i = 1; i < args.length; i++) {
+			inputs.add(args[i]);
+		}
+
+		PdfOptimizationReport report = new PdfOptimizationReport();
+		System.out.println(String.format("%-40s %14s %14s %14s %8s %12s %12s", "Thesaurus", "Default (B)", "Optimized (B)", "Saved (B)", "Saved", "Default (ms)", "Optim. (ms)"));
+		for (String anInput : inputs) {
+			KosDocument document = generate(anInput, lang, null);
+			Result r = report.measure(document, lang);
+			String name = (anInput.length() > 40)?"..."+anInput.substring(anInput.length() - 37):anInput;
+			System.out.println(String.format(
+					"%-40s %14d %14d %14d %7.1f%% %12d %12d",
+					name,
+					r.getDefaultSize(),
+					r.getOptimizedSize(),
+					r.getSavedBytes(),
+					r.getSavedPercent(),
+					r.getDefaultTime(),
+					r.getOptimizedTime()
+			));
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+package fr.sparna.rdf.skos.printer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records where the time of a rendering goes : reading the data of each display, sorting, assembling the document,
+ * marshalling and transforming it, and FOP layout.
+ * <p>Each stage records its wall time, the bytes allocated by the thread running it (when the JVM supports it),
+ * the number of queries sent to the repository, and the size of what it produced (number of entries of a display,
+ * bytes of the output). Values that were not measured are -1.
+ * <p>Stages are recorded with a {@link Timer} :
+ * <code><pre>
+ * try(RenderTrace.Timer t = RenderTrace.start(trace, "sort")) {
+ *   ...
+ *   t.setSize(rows.size());
+ * }
+ * </pre></code>
+ * The trace can be null, in which case nothing is recorded. A trace can be filled by multiple threads.
+ *
+ * @author Thomas Francart
+ */
+public class RenderTrace {
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	protected String name;
+	protected long startTime = System.currentTimeMillis();
+	protected List<Stage> stages = Collections.synchronizedList(new ArrayList<Stage>());
+
+	public RenderTrace(String name) {
+		super();
+		this.name = name;
+	}
+
+	/**
+	 * Starts timing a stage in the current thread.
+	 *
+	 * @param trace		the trace to record the stage in, can be null
+	 * @param stageName	name of the stage
+	 * @return a timer to close when the stage is finished
+	 */
+	public static Timer start(RenderTrace trace, String stageName) {
+		return new Timer(trace, stageName);
+	}
+
+	public Timer start(String stageName) {
+		return start(this, stageName);
+	}
+
+	public void add(Stage stage) {
+		this.stages.add(stage);
+	}
+
+	public List<Stage> getStages() {
+		synchronized (this.stages) {
+			return new ArrayList<Stage>(this.stages);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return time since the creation of this trace, in ms
+	 */
+	public long getTotalTime() {
+		return System.currentTimeMillis() - this.startTime;
+	}
+
+	/**
+	 * @return a single line summary of the trace, meant to be logged once per rendering
+	 */
+	public String toLogLine() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("render '").append(this.name).append("' total=").append(getTotalTime()).append("ms");
+		for (Stage aStage : getStages()) {
+			sb.append(" | ").append(aStage.getName()).append(" ").append(aStage.getWallTime()).append("ms");
+			if(aStage.getAllocatedBytes() >= 0) {
+				sb.append(" ").append(aStage.getAllocatedBytes() / (1024 * 1024)).append("MB");
+			}
+			if(aStage.getQueryCount() >= 0) {
+				sb.append(" ").append(aStage.getQueryCount()).append("q");
+			}
+			if(aStage.getSize() >= 0) {
+				sb.append(" size=").append(aStage.getSize());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return a multi-line table of the stages, meant to be printed at the end of a command line rendering
+	 */
+	public String toSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-32s %10s %12s %8s %12s%n", "Stage", "Time (ms)", "Alloc (MB)", "Queries", "Size"));
+		for (Stage aStage : getStages()) {
+			sb.append(String.format(
+					"%-32s %10d %12s %8s %12s%n",
+					aStage.getName(),
+					aStage.getWallTime(),
+					(aStage.getAllocatedBytes() >= 0)?String.format("%.1f", aStage.getAllocatedBytes() / (1024.0 * 1024.0)):"-",
+					(aStage.getQueryCount() >= 0)?Long.toString(aStage.getQueryCount()):"-",
+					(aStage.getSize() >= 0)?Long.toString(aStage.getSize()):"-"
+			));
+		}
+		sb.append(String.format("%-32s %10d%n", "Total", getTotalTime()));
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toLogLine();
+	}
+
+	/**
+	 * @return the bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+	 */
+	public static long currentThreadAllocatedBytes() {
+		if(THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)THREAD_MX_BEAN;
+			if(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+				return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * A measured stage of a rendering
+	 */
+	public static class Stage {
+
+		protected String name;
+		protected long wallTime;
+		protected long allocatedBytes = -1;
+		protected long queryCount = -1;
+		protected long size = -1;
+
+		public Stage(String name, long wallTime) {
+			super();
+			this.name = name;
+			this.wallTime = wallTime;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return wall time, in ms
+		 */
+		public long getWallTime() {
+			return wallTime;
+		}
+
+		/**
+		 * @return bytes allocated by the thread running the stage, -1 if unknown
+		 */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public void setAllocatedBytes(long allocatedBytes) {
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		/**
+		 * @return number of queries sent to the repository, -1 if not measured
+		 */
+		public long getQueryCount() {
+			return queryCount;
+		}
+
+		public void setQueryCount(long queryCount) {
+			this.queryCount = queryCount;
+		}
+
+		/**
+		 * @return size of the stage output (number of entries or bytes, depending on the stage), -1 if not measured
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		public void setSize(long size) {
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Measures a stage, from its creation until it is closed, and records it in the trace.
+	 */
+	public static class Timer implements AutoCloseable {
+
+		private RenderTrace trace;
+		private String stageName;
+		private long start;
+		private long startAllocated;
+		private long queryCount = -1;
+		private long size = -1;
+
+		private Timer(RenderTrace trace, String stageName) {
+			this.trace = trace;
+			this.stageName = stageName;
+			if(trace != null) {
+				this.start = System.nanoTime();
+				this.startAllocated = currentThreadAllocatedBytes();
+			}
+		}
+
+		public void setQueryCount(long queryCount) {
+			this.queryCount = queryCount;
+		}
+
+		public void setSize(long size) {
+			this.size = size;
+		}
+
+		@Override
+		public void close() {
+			if(this.trace == null) {
+				return;
+			}
+			Stage stage = new Stage(this.stageName, (System.nanoTime() - this.start) / 1000000);
+			long allocated = currentThreadAllocatedBytes();
+			if(allocated >= 0 && this.startAllocated >= 0) {
+				stage.setAllocatedBytes(allocated - this.startAllocated);
+			}
+			stage.setQueryCount(this.queryCount);
+			stage.setSize(this.size);
+			this.trace.add(stage);
+			// record only once
+			this.trace = null;
+		}
+	}
+
+}
@@ -1,12 +1,16 @@
 package fr.sparna.rdf.skos.printer.reader;
 
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.schema.KosDisplay;
+import fr.sparna.rdf.skos.toolkit.DatasetFingerprint;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
 
 /**
  * Responsible for generating the body of a Display.
@@ -19,6 +23,26 @@ public abstract class AbstractKosDisplayGenerator {
 	
 	protected String displayId;
 	
+	// labels shared with the other generators of the document, can be null
+	protected LabelTable labelTable;
+	
+	// concept block IDs allocator shared with the other generators of the document, can be null
+	protected ConceptBlockIdAllocator idAllocator;
+	
+	// number of threads to use to build concept blocks, for generators that support it
+	protected int conceptBlockThreads = Runtime.getRuntime().availableProcessors();
+	
+	// executor shared by the application, on which concept blocks are built; null to build them in the calling thread
+	protected ExecutorService executor;
+	
+	// records the stages of the generation (sorting...), can be null
+	protected RenderTrace trace;
+	
+	// cache of concept block attributes, shared between documents, can be null
+	protected ConceptBlockCache conceptBlockCache;
+	// fingerprint of the dataset, part of the keys of the concept block cache, can be null
+	protected DatasetFingerprint datasetFingerprint;
+	
 	public AbstractKosDisplayGenerator(RepositoryConnection connection, String displayId) {
 		super();
 		this.connection = connection;
@@ -53,6 +77,110 @@ public abstract class AbstractKosDisplayGenerator {
 
 	public void setDisplayId(String displayId) {
 		this.displayId = displayId;
-	}	
+	}
+
+	public RepositoryConnection getConnection() {
+		return connection;
+	}
+
+	public void setConnection(RepositoryConnection connection) {
+		this.connection = connection;
+	}
+	
+	/**
+	 * Whether this generator only reads the repository. Generators that only read the repository can be
+	 * run concurrently with other generators.
+	 * 
+	 * @return true by default
+	 */
+	public boolean isReadOnly() {
+		return true;
+	}
+
+	public LabelTable getLabelTable() {
+		return labelTable;
+	}
+
+	public void setLabelTable(LabelTable labelTable) {
+		this.labelTable = labelTable;
+	}
+	
+	public int getConceptBlockThreads() {
+		return conceptBlockThreads;
+	}
+
+	public void setConceptBlockThreads(int conceptBlockThreads) {
+		this.conceptBlockThreads = conceptBlockThreads;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public RenderTrace getTrace() {
+		return trace;
+	}
+
+	public void setTrace(RenderTrace trace) {
+		this.trace = trace;
+	}
+	
+	/**
+	 * Starts timing a stage of this generator, like "sort". The stage is recorded under the name of the stage
+	 * followed by the display ID, if a trace was set.
+	 */
+	protected RenderTrace.Timer startStage(String stageName) {
+		return RenderTrace.start(this.trace, stageName+":"+this.displayId);
+	}
+
+	public ConceptBlockIdAllocator getIdAllocator() {
+		return idAllocator;
+	}
+
+	public void setIdAllocator(ConceptBlockIdAllocator idAllocator) {
+		this.idAllocator = idAllocator;
+	}
+	
+	public ConceptBlockCache getConceptBlockCache() {
+		return conceptBlockCache;
+	}
+
+	public void setConceptBlockCache(ConceptBlockCache conceptBlockCache) {
+		this.conceptBlockCache = conceptBlockCache;
+	}
+
+	public DatasetFingerprint getDatasetFingerprint() {
+		return datasetFingerprint;
+	}
+
+	public void setDatasetFingerprint(DatasetFingerprint datasetFingerprint) {
+		this.datasetFingerprint = datasetFingerprint;
+	}
+	
+	/**
+	 * Inits the given ConceptBlockReader with the display ID of this generator as prefix, and the
+	 * label table, ID allocator and block cache shared with the other generators, if any.
+	 */
+	protected void initConceptBlockReader(ConceptBlockReader cbReader, String lang, IRI conceptScheme) {
+		if(this.idAllocator != null) {
+			cbReader.setIdAllocator(this.idAllocator);
+		}
+		if(this.conceptBlockCache != null) {
+			cbReader.setBlockCache(this.conceptBlockCache);
+			cbReader.setDatasetFingerprint(this.datasetFingerprint);
+		}
+		cbReader.initInternal(lang, conceptScheme, this.displayId, getLabelTable(conceptScheme));
+	}
+	
+	/**
+	 * @return the label table if it was loaded for the given concept scheme, null otherwise
+	 */
+	protected LabelTable getLabelTable(IRI conceptScheme) {
+		return (this.labelTable != null && this.labelTable.isLoadedFor(conceptScheme))?this.labelTable:null;
+	}
 	
 }
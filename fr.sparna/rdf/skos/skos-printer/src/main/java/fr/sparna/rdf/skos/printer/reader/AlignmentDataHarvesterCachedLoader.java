@@ -1,38 +1,73 @@
 package fr.sparna.rdf.skos.printer.reader;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.vocabulary.RDFS;
-import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.query.AbstractTupleQueryResultHandler;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import fr.sparna.rdf.rdf4j.toolkit.handler.LoadURIHandler;
 import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.LoadFromString;
-import fr.sparna.rdf.rdf4j.toolkit.repository.init.LoadFromUrl;
 import fr.sparna.rdf.skos.toolkit.SKOS;
 
+/**
+ * Harvests the data of the aligned concepts, and of their concept schemes, by dereferencing their URIs.
+ * <p>URIs are dereferenced concurrently by at most <code>threads</code> threads : the calling thread and threads of the
+ * executor shared by the application, or threads started for the load if no executor is set. They are fetched through
+ * an {@link HttpResourceCache} that keeps the responses on disk in <code>cacheDir</code>, limits the number of
+ * connections per host and stops calling hosts that keep failing. The data of each URI is loaded in a named graph with the URI of the concept.
+ * <p>URIs found in one of the <code>labelBundles</code> are not dereferenced : their labels and concept schemes are
+ * read from the bundle instead.
+ *
+ * @author Thomas Francart
+ */
 public class AlignmentDataHarvesterCachedLoader implements AlignmentDataHarvesterIfc {
 
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	private static final String DEFAULT_ACCEPT = "application/rdf+xml, text/turtle;q=0.9, application/ld+json;q=0.8, application/n-triples;q=0.7, */*;q=0.1";
+
 	protected String cacheDir;
 	protected RDFFormat contentType;
+	protected int threads = 8;
+	// executor shared by the application, null to start threads for each load
+	protected ExecutorService executor;
+	protected HttpResourceCache httpCache;
+	// labels of well-known vocabularies, looked up before dereferencing a URI
+	protected List<LabelBundle> labelBundles = new ArrayList<LabelBundle>();
 
 	public AlignmentDataHarvesterCachedLoader(String cacheDir, RDFFormat contentType) {
 		super();
 		this.cacheDir = cacheDir;
 		this.contentType = contentType;
+		this.httpCache = new HttpResourceCache((cacheDir != null)?new File(cacheDir):null);
 	}
-	
+
 	public AlignmentDataHarvesterCachedLoader(String cacheDir) {
 		this(cacheDir, null);
 	}
 
 	@Override
 	public void harvestData(RepositoryConnection connection, IRI conceptScheme) {
-		LoadFromUrl loader = new LoadFromUrl(null);
-		loader.setCacheDir(cacheDir);
-		loader.setAcceptContentType(this.contentType);
-		
+
 		// preload the data for all linked concepts
 		String uriSparql = "" +
 				"SELECT DISTINCT ?otherConcept "+"\n" +
@@ -45,25 +80,24 @@ public class AlignmentDataHarvesterCachedLoader implements AlignmentDataHarveste
 				" VALUES ?align { <"+SKOS.EXACT_MATCH+"> <"+SKOS.CLOSE_MATCH+"> <"+SKOS.RELATED_MATCH+"> <"+SKOS.BROAD_MATCH+"> <"+SKOS.NARROW_MATCH+"> }"+"\n" +
 				" } ORDER BY ?otherConcept"
 				;
-		
+
 		// trigger the load
-		Perform.on(connection).select(
-				uriSparql,
-				new LoadURIHandler(connection, loader)
-		);
-		
+		load(connection, readIris(connection, uriSparql));
+
 		// now preload the concept schemes.
 		// this would also preload the schemes from the original data, and we avoid this with a FILTER NOT EXISTS
-		Perform.on(connection).select(
+		load(connection, readIris(
+				connection,
 				"SELECT DISTINCT ?scheme "+"\n" +
 				"WHERE {"+"\n" +
 				"	?concept a <"+SKOS.CONCEPT+"> ."+"\n" +
 				"   ?concept <"+SKOS.IN_SCHEME+"> ?scheme . "+ "\n" +
 				"   FILTER NOT EXISTS { ?scheme ?p ?o } "+ "\n" +
-				"}",
-				new LoadURIHandler(connection, loader)
-		);
-		
+				"}"
+		));
+
+		log.debug("Harvested alignment data : "+this.httpCache);
+
 		// remove the data from Getty
 		connection.remove(
 				connection.getValueFactory().createIRI("http://vocab.getty.edu/aat/"),
@@ -71,7 +105,7 @@ public class AlignmentDataHarvesterCachedLoader implements AlignmentDataHarveste
 				null,
 				connection.getValueFactory().createIRI("http://vocab.getty.edu/aat/")
 		);
-		
+
 		// now add special data for some well-know thesaurus names
 		final String wellKnownThesauriNames = "@prefix skos:<http://www.w3.org/2004/02/skos/core#> . "
 				+ "<http://dbpedia.org/resource/> skos:prefLabel \"DBpedia (english)\"@en , \"DBpedia (anglophone)\"@fr ."
@@ -79,11 +113,150 @@ public class AlignmentDataHarvesterCachedLoader implements AlignmentDataHarveste
 				+ "<http://data.bnf.fr/ark:/12148/> skos:prefLabel \"DataBnF (Rameau)\"@en , \"DataBnF (Rameau)\"@fr ."
 				+ "<http://vocab.getty.edu/aat/> skos:prefLabel \"AAT Getty\"@en , \"AAT Getty\"@fr ."
 				;
-		
-		new LoadFromString(wellKnownThesauriNames, RDFFormat.TURTLE).accept(connection);	
-		
+
+		new LoadFromString(wellKnownThesauriNames, RDFFormat.TURTLE).accept(connection);
+
+	}
+
+	/**
+	 * Reads the http(s) IRIs returned in the first column of a SELECT query
+	 */
+	protected List<IRI> readIris(RepositoryConnection connection, String sparql) {
+		final Set<IRI> iris = new LinkedHashSet<IRI>();
+		Perform.on(connection).select(sparql, new AbstractTupleQueryResultHandler() {
+			@Override
+			public void handleSolution(BindingSet bindingSet) throws TupleQueryResultHandlerException {
+				Value v = bindingSet.getValue(bindingSet.getBindingNames().iterator().next());
+				if(v instanceof IRI && (v.stringValue().startsWith("http://") || v.stringValue().startsWith("https://"))) {
+					iris.add((IRI)v);
+				}
+			}
+		});
+		return new ArrayList<IRI>(iris);
+	}
+
+	/**
+	 * Fetches and parses the data of each IRI concurrently, then adds it to the repository, in a named graph with the
+	 * IRI, in the order of the IRIs. IRIs that cannot be fetched or parsed are skipped.
+	 */
+	protected void load(RepositoryConnection connection, List<IRI> allIris) {
+		// first read what we can from the label bundles
+		List<IRI> iris = new ArrayList<IRI>();
+		for (IRI anIri : allIris) {
+			LabelBundle.Entry entry = LabelBundle.lookup(this.labelBundles, anIri.stringValue());
+			if(entry != null) {
+				add(connection, anIri, entry);
+			} else {
+				iris.add(anIri);
+			}
+		}
+		if(allIris.size() != iris.size()) {
+			log.debug("Read "+(allIris.size() - iris.size())+" URIs from label bundles");
+		}
+
+		if(iris.isEmpty()) {
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		final Model[] models = new Model[iris.size()];
+		final Exception[] failures = new Exception[iris.size()];
+		final AtomicInteger next = new AtomicInteger(0);
+		Runnable worker = () -> {
+			int i;
+			while((i = next.getAndIncrement()) < iris.size()) {
+				try {
+					models[i] = fetch(iris.get(i));
+				} catch (Exception e) {
+					failures[i] = e;
+				}
+			}
+		};
+		int workers = Math.max(1, Math.min(this.threads, iris.size()));
+		if(this.executor != null) {
+			WorkSharing.run(this.executor, workers - 1, worker, worker);
+		} else {
+			// no shared executor (command line), use threads for this load only
+			ExecutorService loadExecutor = Executors.newFixedThreadPool(Math.max(1, workers - 1));
+			try {
+				WorkSharing.run(loadExecutor, workers - 1, worker, worker);
+			} finally {
+				loadExecutor.shutdownNow();
+			}
+		}
+
+		for (int i = 0; i < iris.size(); i++) {
+			if(failures[i] != null) {
+				log.warn("Cannot load data from "+iris.get(i)+" : "+failures[i].getMessage());
+				continue;
+			}
+			connection.add(models[i], iris.get(i));
+		}
+		log.debug("Loaded data of "+iris.size()+" URIs in "+(System.currentTimeMillis() - start)+" ms");
+	}
+
+	protected void add(RepositoryConnection connection, IRI iri, LabelBundle.Entry entry) {
+		ValueFactory vf = connection.getValueFactory();
+		for (Map.Entry<String, String> aLabel : entry.getLabels().entrySet()) {
+			connection.add(
+					iri,
+					vf.createIRI(SKOS.PREF_LABEL),
+					aLabel.getKey().isEmpty()?vf.createLiteral(aLabel.getValue()):vf.createLiteral(aLabel.getValue(), aLabel.getKey()),
+					iri
+			);
+		}
+		for (String aScheme : entry.getSchemes()) {
+			connection.add(iri, vf.createIRI(SKOS.IN_SCHEME), vf.createIRI(aScheme), iri);
+		}
+	}
+
+	protected Model fetch(IRI iri) throws Exception {
+		String accept = (this.contentType != null)?this.contentType.getDefaultMIMEType():DEFAULT_ACCEPT;
+		HttpResourceCache.Resource resource = this.httpCache.get(iri.stringValue(), accept);
+		return Rio.parse(resource.getInputStream(), resource.getUrl(), guessFormat(resource));
+	}
+
+	protected RDFFormat guessFormat(HttpResourceCache.Resource resource) {
+		if(resource.getContentType() != null) {
+			String mimeType = resource.getContentType().split(";")[0].trim();
+			RDFFormat format = Rio.getParserFormatForMIMEType(mimeType).orElse(null);
+			if(format != null) {
+				return format;
+			}
+		}
+		return Rio.getParserFormatForFileName(resource.getUrl()).orElse((this.contentType != null)?this.contentType:RDFFormat.RDFXML);
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
 	}
-	
-	
-	
+
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public List<LabelBundle> getLabelBundles() {
+		return labelBundles;
+	}
+
+	public void setLabelBundles(List<LabelBundle> labelBundles) {
+		this.labelBundles = labelBundles;
+	}
+
+	public HttpResourceCache getHttpCache() {
+		return httpCache;
+	}
+
+	public void setHttpCache(HttpResourceCache httpCache) {
+		this.httpCache = httpCache;
+	}
+
 }
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -32,13 +33,14 @@ import org.eclipse.rdf4j.rio.RDFFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import fr.sparna.commons.lang.StringUtil;
+import fr.sparna.commons.lang.AccentFolder;
 import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.rdf4j.toolkit.util.LabelReader;
 import fr.sparna.rdf.rdf4j.toolkit.util.Namespaces;
 import fr.sparna.rdf.rdf4j.toolkit.util.PreferredPropertyReader;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.schema.ConceptBlock;
 import fr.sparna.rdf.skos.printer.schema.KosDisplay;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
@@ -46,6 +48,7 @@ import fr.sparna.rdf.skos.printer.schema.Section;
 import fr.sparna.rdf.skos.printer.schema.StyledString;
 import fr.sparna.rdf.skos.printer.schema.Table;
 import fr.sparna.rdf.skos.toolkit.GetAlignmentsInSchemeHelper;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
 import fr.sparna.rdf.skos.toolkit.SKOS;
 
 public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
@@ -54,6 +57,8 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 	
 	protected ConceptBlockReader cbReader;
 	protected AlignmentDataHarvesterIfc alignmentHarvester;
+	// labels of well-known vocabularies, looked up before the harvested data
+	protected List<LabelBundle> labelBundles;
 	
 	// set whether we want to have a single table, sorted by source concept
 	// or multiple tables, one for each target scheme
@@ -84,7 +89,8 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 	public KosDisplay doGenerate(final String lang, final IRI conceptScheme) {
 
 		// init ConceptBlockReader
-		this.cbReader.initInternal(lang, conceptScheme, this.displayId);
+		LabelTable labelTable = getLabelTable(conceptScheme);
+		initConceptBlockReader(this.cbReader, lang, conceptScheme);
 
 		// prepare body
 		KosDisplay d = new KosDisplay();
@@ -117,16 +123,6 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 
 		log.debug("Found "+queryResultRows.size()+" alignment rows");
 		
-		// prepare a skos:prefLabel reader for concepts of our thesaurus
-		LabelReader conceptLabelReader = new LabelReader(
-				connection,
-				Arrays.asList(new IRI[] {
-						SimpleValueFactory.getInstance().createIRI(SKOS.PREF_LABEL)
-				}),
-				"",
-				lang
-		);
-		
 		// prepare a skos:prefLabel reader for concepts of our thesaurus
 		List<String> fallbackLanguages = new ArrayList<String>();
 		// if language variant, check it first
@@ -167,21 +163,60 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 		);
 		
 		// read source concept labels
-		Map<IRI, List<Value>> sourceLabels = conceptLabelReader.getValues(
-			// on évite les doublons !
-			queryResultRows.stream().map(row -> SimpleValueFactory.getInstance().createIRI(row.sourceConcept)).collect(Collectors.toSet())
-		);
+		// on évite les doublons !
+		Set<IRI> sourceConcepts = queryResultRows.stream().map(row -> SimpleValueFactory.getInstance().createIRI(row.sourceConcept)).collect(Collectors.toSet());
+		Map<IRI, String> sourceLabels = new HashMap<IRI, String>();
+		if(labelTable != null) {
+			// source concepts labels are already in the label table, target concepts labels are harvested after it was loaded
+			for (IRI aSourceConcept : sourceConcepts) {
+				String label = labelTable.getPrefLabel(aSourceConcept, lang);
+				// fallback on a label without language
+				label = (label != null)?label:labelTable.getPrefLabel(aSourceConcept, "");
+				sourceLabels.put(aSourceConcept, (label != null)?label:"");
+			}
+		} else {
+			// prepare a skos:prefLabel reader for concepts of our thesaurus
+			LabelReader conceptLabelReader = new LabelReader(
+					connection,
+					Arrays.asList(new IRI[] {
+							SimpleValueFactory.getInstance().createIRI(SKOS.PREF_LABEL)
+					}),
+					"",
+					lang
+			);
+			for (Map.Entry<IRI, List<Value>> e : conceptLabelReader.getValues(sourceConcepts).entrySet()) {
+				sourceLabels.put(e.getKey(), LabelReader.display(e.getValue()));
+			}
+		}
 		
 		// read target concepts labels
 		HashSet<IRI> targetConcepts = new HashSet<IRI>();
 		for (AlignmentRow aRow : queryResultRows) {
 			targetConcepts.add(SimpleValueFactory.getInstance().createIRI(aRow.targetConcept));
 		}
-		Map<IRI, List<Value>> targetLabels = alignedConceptLabelReader.getValues(targetConcepts);
+		// first look them up in the label bundles, then read the others from the harvested data
+		Map<IRI, String> bundleLabels = new HashMap<IRI, String>();
+		Map<IRI, List<String>> bundleSchemes = new HashMap<IRI, List<String>>();
+		Set<IRI> conceptsToRead = new HashSet<IRI>();
+		for (IRI aTargetConcept : targetConcepts) {
+			LabelBundle.Entry entry = LabelBundle.lookup(this.labelBundles, aTargetConcept.stringValue());
+			String label = (entry != null)?entry.getLabel(lang, fallbackLanguages):null;
+			if(label != null) {
+				bundleLabels.put(aTargetConcept, label);
+				bundleSchemes.put(aTargetConcept, entry.getSchemes());
+			} else {
+				conceptsToRead.add(aTargetConcept);
+			}
+		}
+		log.debug("Found "+bundleLabels.size()+" target concepts in label bundles, reading "+conceptsToRead.size()+" from harvested data");
+		Map<IRI, List<Value>> targetLabels = alignedConceptLabelReader.getValues(conceptsToRead);
 		
 		// read skos:inScheme values
 		PreferredPropertyReader inSchemeReader = new PreferredPropertyReader(connection, SimpleValueFactory.getInstance().createIRI(SKOS.IN_SCHEME));
-		Map<IRI, List<Value>> inSchemes = inSchemeReader.getValues(targetConcepts);
+		Map<IRI, List<Value>> inSchemes = inSchemeReader.getValues(conceptsToRead);
+		
+		// scheme labels, from the label bundles first
+		Map<String, String> schemeLabels = new HashMap<String, String>();
 		
 		// store the labels in data-structure
 		List<AlignmentRow> newAlignmentRows = new ArrayList<AlignmentRow>();
@@ -189,7 +224,10 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 			
 			// on récupère les schemes
 			Set<String> targetSchemes = new HashSet<String>();
-			if(inSchemes.get(SimpleValueFactory.getInstance().createIRI(row.targetConcept)) != null) {
+			IRI targetConcept = SimpleValueFactory.getInstance().createIRI(row.targetConcept);
+			if(bundleSchemes.containsKey(targetConcept)) {
+				targetSchemes.addAll(bundleSchemes.get(targetConcept));
+			} else if(inSchemes.get(SimpleValueFactory.getInstance().createIRI(row.targetConcept)) != null) {
 				for (Value aScheme : inSchemes.get(SimpleValueFactory.getInstance().createIRI(row.targetConcept))) {
 					targetSchemes.add(aScheme.stringValue());
 				}
@@ -206,10 +244,14 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 				newRow.sourceConcept = row.sourceConcept;
 				newRow.targetConcept = row.targetConcept;
 				newRow.alignmentType = row.alignmentType;
-				newRow.sourceConceptLabel = LabelReader.display(sourceLabels.get(SimpleValueFactory.getInstance().createIRI(row.sourceConcept)));
-				newRow.targetConceptLabel = LabelReader.display(targetLabels.get(SimpleValueFactory.getInstance().createIRI(row.targetConcept)));
+				newRow.sourceConceptLabel = sourceLabels.get(SimpleValueFactory.getInstance().createIRI(row.sourceConcept));
+				newRow.targetConceptLabel = bundleLabels.containsKey(targetConcept)?bundleLabels.get(targetConcept):LabelReader.display(targetLabels.get(targetConcept));
 				newRow.targetScheme = aScheme;
-				newRow.targetSchemeLabel = LabelReader.display(schemeLabelReader.getValues(SimpleValueFactory.getInstance().createIRI(aScheme))).intern();
+				newRow.targetSchemeLabel = schemeLabels.computeIfAbsent(aScheme, scheme -> {
+					LabelBundle.Entry entry = LabelBundle.lookup(this.labelBundles, scheme);
+					String label = (entry != null)?entry.getLabel(lang, fallbackLanguages):null;
+					return (label != null)?label:LabelReader.display(schemeLabelReader.getValues(SimpleValueFactory.getInstance().createIRI(scheme)));
+				}).intern();
 				newAlignmentRows.add(newRow);
 			}
 		}
@@ -227,6 +269,22 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 		return d;
 	}
 	
+	/**
+	 * Alignment data is harvested in the repository, so this generator should not run at the same time as others.
+	 */
+	@Override
+	public boolean isReadOnly() {
+		return false;
+	}
+	
+	public List<LabelBundle> getLabelBundles() {
+		return labelBundles;
+	}
+
+	public void setLabelBundles(List<LabelBundle> labelBundles) {
+		this.labelBundles = labelBundles;
+	}
+
 	public boolean isSeparateByTargetScheme() {
 		return separateByTargetScheme;
 	}
@@ -270,28 +328,31 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 			final Collator collator = Collator.getInstance(new Locale(lang));
 			collator.setStrength(Collator.SECONDARY);
 			// sort rows on target scheme first, and then on first row label
-			Collections.sort(data, new Comparator<AlignmentRow>() {
-				@Override
-				public int compare(AlignmentRow o1, AlignmentRow o2) {
-					// si les schemes sont différents, on tri d'abord sur le scheme
-					if(o1.targetScheme == null && o2.targetScheme != null) {
-						return -1;
-					} else if(o2.targetScheme == null && o1.targetScheme != null) {
-						return 1;
-					} else if(o1.targetScheme != null && o2.targetScheme != null && !o1.targetScheme.equals(o2.targetScheme)) {
-						return o1.targetScheme.compareTo(o2.targetScheme);
-					} else {
-						// les schemes sont égaux, on tri sur le libellé de la première colonne
-						if(o1 == null && o2 == null) return 0;
-						if(o1 == null || o1.sourceConceptLabel == null) return -1;
-						if(o2 == null || o2.sourceConceptLabel == null) return 1;
-						return collator.compare(
-								o1.sourceConceptLabel,
-								o2.sourceConceptLabel
-						);
+			try(RenderTrace.Timer timer = startStage("sort")) {
+				Collections.sort(data, new Comparator<AlignmentRow>() {
+					@Override
+					public int compare(AlignmentRow o1, AlignmentRow o2) {
+						// si les schemes sont différents, on tri d'abord sur le scheme
+						if(o1.targetScheme == null && o2.targetScheme != null) {
+							return -1;
+						} else if(o2.targetScheme == null && o1.targetScheme != null) {
+							return 1;
+						} else if(o1.targetScheme != null && o2.targetScheme != null && !o1.targetScheme.equals(o2.targetScheme)) {
+							return o1.targetScheme.compareTo(o2.targetScheme);
+						} else {
+							// les schemes sont égaux, on tri sur le libellé de la première colonne
+							if(o1 == null && o2 == null) return 0;
+							if(o1 == null || o1.sourceConceptLabel == null) return -1;
+							if(o2 == null || o2.sourceConceptLabel == null) return 1;
+							return collator.compare(
+									o1.sourceConceptLabel,
+									o2.sourceConceptLabel
+							);
+						}
 					}
-				}
-			});
+				});
+				timer.setSize(data.size());
+			}
 			
 			// if we have some data...
 			if(data.size() > 0) {
@@ -362,30 +423,33 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 			final Collator collator = Collator.getInstance(new Locale(lang));
 			collator.setStrength(Collator.SECONDARY);
 			// sort rows on target scheme first, and then on first row label
-			Collections.sort(data, new Comparator<AlignmentRow>() {
-				@Override
-				public int compare(AlignmentRow o1, AlignmentRow o2) {
-					// on tri sur le libellé de la première colonne
-					if(o1 == null && o2 == null) return 0;
-					if(o1 == null || o1.sourceConceptLabel == null) return -1;
-					if(o2 == null || o2.sourceConceptLabel == null) return 1;
-					int labelCompare = collator.compare(
-							o1.sourceConceptLabel,
-							o2.sourceConceptLabel
-					);
-					if(labelCompare == 0) {
-						// sort on target scheme label
-						if(o1.targetSchemeLabel == null) return -1;
-						if(o2.targetSchemeLabel == null) return 1;
-						return collator.compare(
-								o1.targetSchemeLabel,
-								o2.targetSchemeLabel
+			try(RenderTrace.Timer timer = startStage("sort")) {
+				Collections.sort(data, new Comparator<AlignmentRow>() {
+					@Override
+					public int compare(AlignmentRow o1, AlignmentRow o2) {
+						// on tri sur le libellé de la première colonne
+						if(o1 == null && o2 == null) return 0;
+						if(o1 == null || o1.sourceConceptLabel == null) return -1;
+						if(o2 == null || o2.sourceConceptLabel == null) return 1;
+						int labelCompare = collator.compare(
+								o1.sourceConceptLabel,
+								o2.sourceConceptLabel
 						);
-					} else {
-						return labelCompare;
+						if(labelCompare == 0) {
+							// sort on target scheme label
+							if(o1.targetSchemeLabel == null) return -1;
+							if(o2.targetSchemeLabel == null) return 1;
+							return collator.compare(
+									o1.targetSchemeLabel,
+									o2.targetSchemeLabel
+							);
+						} else {
+							return labelCompare;
+						}
 					}
-				}
-			});
+				});
+				timer.setSize(data.size());
+			}
 			
 			// if we have some data...
 			if(data.size() > 0) {
@@ -395,11 +459,11 @@ public class AlignmentDisplayGenerator extends AbstractKosDisplayGenerator {
 				for (AlignmentRow aRow : data) {
 					
 					// 1. either this is the first row (no existing section), or we are moving to a row in a new section
-					String currentFirstLetter = StringUtil.withoutAccents(aRow.sourceConceptLabel).toUpperCase().substring(0, 1);
+					String currentFirstLetter = AccentFolder.sectionLetter(aRow.sourceConceptLabel);
 					if(
 							previousRow == null
 							||
-							!currentFirstLetter.equals(StringUtil.withoutAccents(previousRow.sourceConceptLabel).toUpperCase().substring(0, 1))
+							!currentFirstLetter.equals(AccentFolder.sectionLetter(previousRow.sourceConceptLabel))
 					) {					
 						// if this is not the first row, we add the current section to the output
 						if(currentSection != null) {
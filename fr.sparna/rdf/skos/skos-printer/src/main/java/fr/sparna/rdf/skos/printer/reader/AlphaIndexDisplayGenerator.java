@@ -23,7 +23,7 @@ import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import fr.sparna.commons.lang.StringUtil;
+import fr.sparna.commons.lang.AccentFolder;
 import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.rdf4j.toolkit.repository.init.ApplyUpdates;
@@ -31,12 +31,15 @@ import fr.sparna.rdf.rdf4j.toolkit.util.LabelReader;
 import fr.sparna.rdf.rdf4j.toolkit.util.Namespaces;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
 import fr.sparna.rdf.skos.printer.DisplayPrinter.Style;
+import fr.sparna.rdf.skos.printer.RenderTrace;
+import fr.sparna.rdf.skos.printer.reader.ConceptBlockCache.CachedAtt;
 import fr.sparna.rdf.skos.printer.schema.ConceptBlock;
 import fr.sparna.rdf.skos.printer.schema.KosDisplay;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
 import fr.sparna.rdf.skos.printer.schema.KosDocumentHeader;
 import fr.sparna.rdf.skos.printer.schema.Section;
 import fr.sparna.rdf.skos.toolkit.GetLabelsInSchemeHelper;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
 import fr.sparna.rdf.skos.toolkit.SKOS;
 import fr.sparna.rdf.skos.toolkit.SKOSRules;
 
@@ -106,58 +109,88 @@ public class AlphaIndexDisplayGenerator extends AbstractKosDisplayGenerator {
 	public KosDisplay doGenerate(String lang, final IRI conceptScheme) {
 				
 		// init ConceptBlockReader
-		this.cbReader.initInternal(lang, conceptScheme, this.displayId);
+		initConceptBlockReader(this.cbReader, lang, conceptScheme);
 		
 		// init display
 		KosDisplay d = new KosDisplay();
 		
-		final List<QueryResultRow> queryResultRows = new ArrayList<QueryResultRow>();		
-		GetLabelsInSchemeHelper helper = new GetLabelsInSchemeHelper(
-				lang,
-				conceptScheme
-		) {
-			@Override
-			protected void handleLabel(
-					Literal label,
-					Literal prefLabel,
-					Resource concept
-			) throws TupleQueryResultHandlerException {
+		final List<QueryResultRow> queryResultRows = new ArrayList<QueryResultRow>();
+		LabelTable labelTable = getLabelTable(conceptScheme);
+		if(labelTable != null) {
+			labelTable.visitLabelsInScheme(lang, (label, prefLabel, concept) -> {
 				QueryResultRow es = new QueryResultRow();
 				es.conceptURI = concept.stringValue();
-				es.label = label.stringValue();
-				es.prefLabel = (prefLabel != null)?prefLabel.stringValue():null;	
+				es.label = label;
+				es.prefLabel = prefLabel;
 				queryResultRows.add(es);
-			}
-		};
-		
-		Perform.on(connection).select(helper);		
+			});
+		} else {
+			GetLabelsInSchemeHelper helper = new GetLabelsInSchemeHelper(
+					lang,
+					conceptScheme
+			) {
+				@Override
+				protected void handleLabel(
+						Literal label,
+						Literal prefLabel,
+						Resource concept
+				) throws TupleQueryResultHandlerException {
+					QueryResultRow es = new QueryResultRow();
+					es.conceptURI = concept.stringValue();
+					es.label = label.stringValue();
+					es.prefLabel = (prefLabel != null)?prefLabel.stringValue():null;	
+					queryResultRows.add(es);
+				}
+			};
+			
+			Perform.on(connection).select(helper);
+		}
 
 		// setup Collator
 		final Collator collator = Collator.getInstance(new Locale(lang));
 		collator.setStrength(Collator.SECONDARY);
-		Collections.sort(queryResultRows, new Comparator<QueryResultRow>() {
+		try(RenderTrace.Timer timer = startStage("sort")) {
+			Collections.sort(queryResultRows, new Comparator<QueryResultRow>() {
 
-			@Override
-			public int compare(QueryResultRow o1, QueryResultRow o2) {
-				if(o1 == null && o2 == null) return 0;
-				if(o1 == null) return -1;
-				if(o2 == null) return 1;
-				return collator.compare(o1.label, o2.label);
-			}
+				@Override
+				public int compare(QueryResultRow o1, QueryResultRow o2) {
+					if(o1 == null && o2 == null) return 0;
+					if(o1 == null) return -1;
+					if(o2 == null) return 1;
+					return collator.compare(o1.label, o2.label);
+				}
 			
-		});
+			});
+			timer.setSize(queryResultRows.size());
+		}
 		
 		
 		boolean addSections = queryResultRows.size() > 200;
 		log.debug("Processing "+queryResultRows.size()+" entries.");
 		Namespaces namespaces = Namespaces.getInstance().withRepository(this.connection.getRepository());
+		
+		// allocate block IDs in the order of the rows, then read the blocks in parallel, and assemble them in the same order
+		final String[] blockIds = new String[queryResultRows.size()];
+		for (int i = 0; i < queryResultRows.size(); i++) {
+			blockIds[i] = this.cbReader.computeConceptBlockId(queryResultRows.get(i).conceptURI, queryResultRows.get(i).label);
+		}
+		List<ConceptBlock> conceptBlocks = new ParallelConceptBlockBuilder(this.executor, this.conceptBlockThreads).build(
+				queryResultRows.size(),
+				this.cbReader,
+				this.connection,
+				// synonyms have no attributes to read
+				(reader, c, i) -> (queryResultRows.get(i).prefLabel != null)?null:reader.readConceptBlockAtts(c, queryResultRows.get(i).conceptURI),
+				(reader, atts, i) -> buildConceptBlock(reader, queryResultRows.get(i), blockIds[i], atts, namespaces)
+		);
+		
 		if(addSections) {
 			log.debug("Will add sections to the output");
 			Section currentSection = null;
-			for (QueryResultRow anEntry : queryResultRows) {
-				ConceptBlock cb = buildConceptBlock(connection, anEntry, namespaces);
+			for (int i = 0; i < queryResultRows.size(); i++) {
+				QueryResultRow anEntry = queryResultRows.get(i);
+				ConceptBlock cb = conceptBlocks.get(i);
 
-				String entrySectionTitle = StringUtil.withoutAccents(anEntry.label).toUpperCase().substring(0, Math.min(1, anEntry.label.length()));
+				String entrySectionTitle = AccentFolder.sectionLetter(anEntry.label);
 				if(currentSection == null || !entrySectionTitle.equals(currentSection.getTitle())) {
 					// on est passé à une nouvelle section
 					
@@ -180,8 +213,7 @@ public class AlphaIndexDisplayGenerator extends AbstractKosDisplayGenerator {
 			Section s = new Section();
 			fr.sparna.rdf.skos.printer.schema.List list = new fr.sparna.rdf.skos.printer.schema.List();
 			s.setList(list);
-			for (QueryResultRow aRow : queryResultRows) {
-				ConceptBlock cb = buildConceptBlock(connection, aRow, namespaces);
+			for (ConceptBlock cb : conceptBlocks) {
 				list.getListItem().add(SchemaFactory.createListItem(cb));
 			}
 			
@@ -199,19 +231,19 @@ public class AlphaIndexDisplayGenerator extends AbstractKosDisplayGenerator {
 		return d;
 	}
 
-	private ConceptBlock buildConceptBlock(RepositoryConnection connection, QueryResultRow aRow, Namespaces namespaces) {
+	private ConceptBlock buildConceptBlock(ConceptBlockReader reader, QueryResultRow aRow, String blockId, List<CachedAtt> atts, Namespaces namespaces) {
 		ConceptBlock cb;
 		// s'il y a un prefLabel, c'est que la valeur de "sourceConceptLabel" est un altLabel
 		if(aRow.prefLabel != null) {
-			cb = this.cbReader.readConceptBlockForSynonym(aRow.conceptURI, aRow.label, aRow.prefLabel);
+			cb = reader.readConceptBlockForSynonym(aRow.conceptURI, aRow.label, aRow.prefLabel, blockId);
 		// sinon, la valeur de "sourceConceptLabel" est un prefLabel ou l'URI du concept
 		} else {
 			if(aRow.label.equals(aRow.conceptURI)) {
 				// shorten the URI
 				// String shortURI = namespaces.shorten(aRow.label);
-				cb = this.cbReader.readConceptBlock(connection, aRow.conceptURI, aRow.label, true);
+				cb = reader.createConceptBlock(aRow.conceptURI, aRow.label, blockId, true, atts);
 			} else {
-				cb = this.cbReader.readConceptBlock(connection, aRow.conceptURI, aRow.label, true);
+				cb = reader.createConceptBlock(aRow.conceptURI, aRow.label, blockId, true, atts);
 			}
 			
 		}
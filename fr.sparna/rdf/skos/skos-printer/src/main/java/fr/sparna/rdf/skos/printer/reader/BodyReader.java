@@ -1,39 +1,308 @@
 package fr.sparna.rdf.skos.printer.reader;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.schema.KosDisplay;
 import fr.sparna.rdf.skos.printer.schema.KosDocumentBody;
+import fr.sparna.rdf.skos.printer.schema.Node;
+import fr.sparna.rdf.skos.printer.schema.Section;
+import fr.sparna.rdf.skos.toolkit.DatasetFingerprint;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
 
+/**
+ * Reads the body of a document by running each of its display generators.
+ * <p>Generators that only read the repository are run concurrently by at most <code>maxThreads</code> threads : the
+ * calling thread and threads of the executor shared by the application, each generator with its own connection to the
+ * repository. Without an executor, they are run one after the other. Generators that modify the repository
+ * (see <code>AbstractKosDisplayGenerator.isReadOnly</code>) are run afterwards, one after the other. Displays are
+ * always added to the body in the order of the generators.
+ *
+ * @author Thomas Francart
+ */
 public class BodyReader {
 
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
 	// generators for display contained in this body
 	protected List<AbstractKosDisplayGenerator> generators;
+
+	// labels shared by all the generators; loaded on first read if not set
+	protected LabelTable labelTable;
+
+	// maximum number of generators to run at the same time; 1 to run them sequentially
+	protected int maxThreads = Runtime.getRuntime().availableProcessors();
+
+	// executor shared by the application, also passed to the generators; null to run everything in the calling thread
+	protected ExecutorService executor;
+
+	// time taken by each generator during the last read, in ms, by display ID
+	protected Map<String, Long> generationTimes = new LinkedHashMap<String, Long>();
+	
+	// records the stages of the reading, can be null
+	protected RenderTrace trace;
 	
+	// cache of concept block attributes, kept between successive readings of the same dataset, can be null
+	protected ConceptBlockCache conceptBlockCache;
+	// fingerprint of the dataset, part of the keys of the concept block cache; blocks are not cached without it
+	protected DatasetFingerprint datasetFingerprint;
+
 	public BodyReader(List<AbstractKosDisplayGenerator> generators) {
 		super();
 		this.generators = generators;
 	}
-	
+
 	public BodyReader(AbstractKosDisplayGenerator generator) {
 		// the main display ID is automatically the ID of the single generator
 		this(Collections.singletonList(generator));
 	}
-	
+
 	public KosDocumentBody readBody(String mainLang, IRI conceptScheme) {
 		KosDocumentBody body = new KosDocumentBody();
-		
-		for (AbstractKosDisplayGenerator aGenerator : this.generators) {
-			KosDisplay display = aGenerator.generateDisplay(mainLang, conceptScheme);
+		this.generationTimes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+		// read the labels once for all generators
+		if(!this.generators.isEmpty() && (this.labelTable == null || !this.labelTable.isLoadedFor(conceptScheme))) {
+			RepositoryConnection connection = this.generators.get(0).getConnection();
+			// when tracing, count the queries sent to load the labels
+			QueryCountingConnection countingConnection = (this.trace != null)?new QueryCountingConnection(connection):null;
+			try(RenderTrace.Timer timer = RenderTrace.start(this.trace, "labels")) {
+				this.labelTable = LabelTable.load((countingConnection != null)?countingConnection:connection, conceptScheme);
+				if(countingConnection != null) {
+					timer.setQueryCount(countingConnection.getQueryCount());
+					timer.setSize(this.labelTable.size());
+				}
+			}
+		}
+
+		// share concept block IDs between all displays, so that references between displays are valid
+		// each generator allocates in its own partition, so that IDs do not depend on the order in which generators run
+		ConceptBlockIdAllocator idAllocator = reserveIds(mainLang, conceptScheme);
+
+		for (int i = 0; i < this.generators.size(); i++) {
+			AbstractKosDisplayGenerator aGenerator = this.generators.get(i);
+			aGenerator.setLabelTable(this.labelTable);
+			aGenerator.setIdAllocator(idAllocator.partition(i + 1));
+			aGenerator.setTrace(this.trace);
+			aGenerator.setExecutor(this.executor);
+			if(this.conceptBlockCache != null) {
+				aGenerator.setConceptBlockCache(this.conceptBlockCache);
+				aGenerator.setDatasetFingerprint(this.datasetFingerprint);
+			}
+		}
+
+		// displays, in the order of the generators
+		KosDisplay[] displays = new KosDisplay[this.generators.size()];
+
+		List<Integer> concurrentGenerators = new ArrayList<Integer>();
+		for (int i = 0; i < this.generators.size(); i++) {
+			if(this.generators.get(i).isReadOnly()) {
+				concurrentGenerators.add(i);
+			}
+		}
+
+		if(this.executor != null && this.maxThreads > 1 && concurrentGenerators.size() > 1) {
+			final AtomicInteger next = new AtomicInteger(0);
+			Runnable worker = () -> {
+				int n;
+				while((n = next.getAndIncrement()) < concurrentGenerators.size()) {
+					int i = concurrentGenerators.get(n);
+					displays[i] = generateWithOwnConnection(this.generators.get(i), mainLang, conceptScheme);
+				}
+			};
+			WorkSharing.run(this.executor, Math.min(this.maxThreads, concurrentGenerators.size()) - 1, worker, worker);
+		} else {
+			for (Integer i : concurrentGenerators) {
+				displays[i] = generate(this.generators.get(i), mainLang, conceptScheme);
+			}
+		}
+
+		// then generators that modify the repository
+		for (int i = 0; i < this.generators.size(); i++) {
+			if(displays[i] == null) {
+				displays[i] = generate(this.generators.get(i), mainLang, conceptScheme);
+			}
+		}
+
+		for (KosDisplay display : displays) {
 			if(display.getSection() != null && display.getSection().size() != 0) {
 				body.getKosDisplay().add(display);
 			}
 		}
-		
+
+		log.debug("Generated displays in "+this.generationTimes+" (ms)");
 		return body;
 	}
-	
+
+	/**
+	 * Creates the ID allocator shared by the generators, with a partition for each generator, and reserves the IDs that
+	 * can be referenced from one display to another : the short prefixes of the displays, and the codes of the concepts
+	 * with their prefLabel, in a fixed order.
+	 */
+	protected ConceptBlockIdAllocator reserveIds(String mainLang, IRI conceptScheme) {
+		ConceptBlockIdAllocator idAllocator = new ConceptBlockIdAllocator(this.generators.size() + 1);
+		for (AbstractKosDisplayGenerator aGenerator : this.generators) {
+			idAllocator.reservePrefix(aGenerator.getDisplayId());
+		}
+		if(this.labelTable != null && this.labelTable.isLoadedFor(conceptScheme)) {
+			// generators replace a null language with an empty one
+			String lang = (mainLang != null)?mainLang:"";
+			List<IRI> iris = new ArrayList<IRI>(this.labelTable.size());
+			for (int i = 0; i < this.labelTable.size(); i++) {
+				iris.add(this.labelTable.getIri(i));
+			}
+			iris.sort(Comparator.comparing(IRI::stringValue));
+			for (IRI anIri : iris) {
+				String prefLabel = this.labelTable.getPrefLabel(anIri, lang);
+				if(prefLabel != null) {
+					idAllocator.reserve(anIri.stringValue(), prefLabel);
+				}
+			}
+		}
+		return idAllocator;
+	}
+
+	protected KosDisplay generate(AbstractKosDisplayGenerator generator, String mainLang, IRI conceptScheme) {
+		long start = System.currentTimeMillis();
+		KosDisplay display;
+		// when tracing, count the queries sent by the generator
+		RepositoryConnection originalConnection = generator.getConnection();
+		QueryCountingConnection countingConnection = (this.trace != null)?new QueryCountingConnection(originalConnection):null;
+		try(RenderTrace.Timer timer = RenderTrace.start(this.trace, "read:"+generator.getDisplayId())) {
+			if(countingConnection != null) {
+				generator.setConnection(countingConnection);
+			}
+			display = generator.generateDisplay(mainLang, conceptScheme);
+			if(countingConnection != null) {
+				timer.setQueryCount(countingConnection.getQueryCount());
+				timer.setSize(countEntries(display));
+			}
+		} finally {
+			generator.setConnection(originalConnection);
+		}
+		long time = System.currentTimeMillis() - start;
+		this.generationTimes.put(generator.getDisplayId(), time);
+		log.info("Generated display '"+generator.getDisplayId()+"' ("+generator.getClass().getSimpleName()+") in "+time+" ms");
+		return display;
+	}
+
+	/**
+	 * Runs the generator with a new connection to its repository, since connections cannot be shared between threads,
+	 * then gives back its original connection to the generator.
+	 */
+	protected KosDisplay generateWithOwnConnection(AbstractKosDisplayGenerator generator, String mainLang, IRI conceptScheme) {
+		RepositoryConnection originalConnection = generator.getConnection();
+		try(RepositoryConnection connection = originalConnection.getRepository().getConnection()) {
+			generator.setConnection(connection);
+			return generate(generator, mainLang, conceptScheme);
+		} finally {
+			generator.setConnection(originalConnection);
+		}
+	}
+
+	/**
+	 * @return the number of entries of a display : list items, table rows, index entries and tree nodes
+	 */
+	public static int countEntries(KosDisplay display) {
+		int count = 0;
+		for (Section aSection : display.getSection()) {
+			if(aSection.getList() != null) {
+				count += aSection.getList().getListItem().size();
+			}
+			if(aSection.getTable() != null) {
+				count += aSection.getTable().getRow().size();
+			}
+			if(aSection.getIndex() != null) {
+				count += aSection.getIndex().getEntry().size();
+			}
+			if(aSection.getTree() != null && aSection.getTree().getNode() != null) {
+				count += countNodes(aSection.getTree().getNode());
+			}
+		}
+		return count;
+	}
+
+	private static int countNodes(Node node) {
+		int count = 1;
+		for (Node aChild : node.getNode()) {
+			count += countNodes(aChild);
+		}
+		return count;
+	}
+
+	public ConceptBlockCache getConceptBlockCache() {
+		return conceptBlockCache;
+	}
+
+	public void setConceptBlockCache(ConceptBlockCache conceptBlockCache) {
+		this.conceptBlockCache = conceptBlockCache;
+	}
+
+	public DatasetFingerprint getDatasetFingerprint() {
+		return datasetFingerprint;
+	}
+
+	public void setDatasetFingerprint(DatasetFingerprint datasetFingerprint) {
+		this.datasetFingerprint = datasetFingerprint;
+	}
+
+	public LabelTable getLabelTable() {
+		return labelTable;
+	}
+
+	public void setLabelTable(LabelTable labelTable) {
+		this.labelTable = labelTable;
+	}
+
+	public RenderTrace getTrace() {
+		return trace;
+	}
+
+	/**
+	 * Sets the trace in which to record the time, allocations and queries of each generator. Leave null
+	 * to disable tracing.
+	 */
+	public void setTrace(RenderTrace trace) {
+		this.trace = trace;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the executor shared by the application, on which the generators, and the concept blocks of each generator,
+	 * are read concurrently. Leave null to read everything in the calling thread.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @return the time taken by each generator during the last call to readBody, in ms, by display ID
+	 */
+	public Map<String, Long> getGenerationTimes() {
+		return generationTimes;
+	}
+
 }
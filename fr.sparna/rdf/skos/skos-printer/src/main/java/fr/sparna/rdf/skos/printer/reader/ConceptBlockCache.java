@@ -0,0 +1,140 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of the attributes of concept blocks (altLabels, definitions, broaders, narrowers, etc.), shared
+ * between the documents generated from the same dataset, so that generating another display or another format of a
+ * dataset does not read again the concepts already read.
+ * <p>Entries are keyed by a hash of the concept URI, of the hash of the concept in the dataset and of the configuration
+ * of the {@link ConceptBlockReader}; see <code>ConceptBlockReader.computeCacheKey</code>. The hash of a concept only
+ * changes with its own statements and the labels of the concepts it is linked to, so that blocks of the concepts that
+ * were not modified are reused when a modified version of a dataset is loaded. Cached
+ * attributes do not contain the IDs of the referenced blocks, which depend on the document and are recomputed each
+ * time a block is built from the cache.
+ * <p>The least recently used entries are evicted when the cache holds more than its maximum number of entries.
+ * The cache can be used by multiple threads.
+ *
+ * @author Thomas Francart
+ */
+public class ConceptBlockCache {
+
+	protected int maxEntries;
+
+	// access-ordered, least recently used first
+	protected LinkedHashMap<String, List<CachedAtt>> entries;
+
+	protected long hits = 0;
+	protected long misses = 0;
+
+	public ConceptBlockCache(final int maxEntries) {
+		super();
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, List<CachedAtt>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<CachedAtt>> eldest) {
+				return size() > ConceptBlockCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return the cached attributes of a concept block, or null
+	 */
+	public synchronized List<CachedAtt> get(String key) {
+		List<CachedAtt> atts = this.entries.get(key);
+		if(atts == null) {
+			this.misses++;
+		} else {
+			this.hits++;
+		}
+		return atts;
+	}
+
+	public synchronized void put(String key, List<CachedAtt> atts) {
+		this.entries.put(key, Collections.unmodifiableList(atts));
+	}
+
+	public synchronized void clear() {
+		this.entries.clear();
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ConceptBlockCache [size=" + entries.size() + ", maxEntries=" + maxEntries + ", hits=" + hits + ", misses=" + misses + "]";
+	}
+
+	/**
+	 * An attribute of a concept block : either a value, or a link to another concept
+	 */
+	public static class CachedAtt {
+
+		// value of a value attribute, or displayed label of a link
+		protected String value;
+		protected String type;
+		protected String style;
+		// for links : URI and label of the referenced concept, used to compute the ID of the referenced block
+		protected String refUri;
+		protected String refLabel;
+
+		private CachedAtt(String value, String type, String style, String refUri, String refLabel) {
+			this.value = value;
+			this.type = type;
+			this.style = style;
+			this.refUri = refUri;
+			this.refLabel = refLabel;
+		}
+
+		public static CachedAtt value(String value, String type, String style) {
+			return new CachedAtt(value, type, style, null, null);
+		}
+
+		public static CachedAtt link(String refUri, String refLabel, String displayedLabel, String type, String style) {
+			return new CachedAtt(displayedLabel, type, style, refUri, refLabel);
+		}
+
+		public boolean isLink() {
+			return this.refUri != null;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public String getStyle() {
+			return style;
+		}
+
+		public String getRefUri() {
+			return refUri;
+		}
+
+		public String getRefLabel() {
+			return refLabel;
+		}
+	}
+
+}
@@ -0,0 +1,187 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Allocates the IDs of the concept blocks of a document, and the IDs used to reference them.
+ * <p>An ID is made of the prefix of the display and of a short code computed from the concept URI and the label
+ * of the block : a hash of the URI and label, truncated and written in base 36. Hash collisions are resolved when
+ * a code is allocated, and the code of a given URI and label is then remembered, so that a reference built in one
+ * display gives the same ID as the block in the target display, as long as both share the same allocator.
+ * <p>Display prefixes longer than a few characters (like the random UUID of a generator without explicit
+ * display ID) are shortened the same way.
+ * <p>An allocator is shared by all the generators of a document, and can be used concurrently. Since collisions are
+ * resolved in the order of allocation, generators running at the same time should each use their own
+ * <code>partition</code> of the allocator : codes that can be referenced from other displays are first reserved in
+ * the shared allocator, in a fixed order, then each partition allocates the other codes in its own part of the code
+ * space, so that IDs do not depend on the order in which threads run.
+ *
+ * @author Thomas Francart
+ */
+public class ConceptBlockIdAllocator {
+
+	// 36^6 possible codes, so that codes are at most 6 characters long, and collisions are rare
+	private static final long CODE_SPACE = 2176782336L;
+
+	private static final int MAX_PREFIX_LENGTH = 8;
+
+	// URI and label -> code
+	protected Map<String, String> codes = new HashMap<String, String>();
+	// all codes already allocated
+	protected Set<String> allocatedCodes = new HashSet<String>();
+	// all block IDs already generated, to avoid duplicated IDs in the document
+	protected Set<String> generatedIds = new HashSet<String>();
+	// long display prefixes -> short prefixes
+	protected Map<String, String> prefixes = new HashMap<String, String>();
+
+	// codes and prefixes reserved before this partition was created, shared with the other partitions and not modified
+	protected Map<String, String> reservedCodes = Collections.emptyMap();
+	protected Map<String, String> reservedPrefixes = Collections.emptyMap();
+	// part of the code space used by this allocator : codes equal to partition, modulo partitions
+	protected int partition = 0;
+	protected int partitions = 1;
+
+	public ConceptBlockIdAllocator() {
+		super();
+	}
+
+	/**
+	 * Creates an allocator that will be split in the given number of partitions, partition 0 being this allocator.
+	 */
+	public ConceptBlockIdAllocator(int partitions) {
+		super();
+		this.partitions = partitions;
+		// shared with the partitions
+		this.generatedIds = Collections.synchronizedSet(new HashSet<String>());
+	}
+
+	/**
+	 * Reserves the code of the given concept and label, so that all partitions use the same code.
+	 * Reservations must be done before creating the partitions.
+	 */
+	public synchronized void reserve(String uri, String label) {
+		code(key(uri, label));
+	}
+
+	/**
+	 * Reserves the short prefix of the given display prefix, so that all partitions use the same short prefix.
+	 * Reservations must be done before creating the partitions.
+	 */
+	public synchronized void reservePrefix(String prefix) {
+		shortPrefix(prefix);
+	}
+
+	/**
+	 * Creates an allocator using the given part of the code space, and the codes and prefixes reserved in this allocator.
+	 * Block IDs remain unique across partitions.
+	 *
+	 * @param index	the index of the partition, between 1 and the number of partitions given to the constructor, excluded
+	 */
+	public synchronized ConceptBlockIdAllocator partition(int index) {
+		if(index <= 0 || index >= this.partitions) {
+			throw new IllegalArgumentException("Invalid partition "+index+", allocator has "+this.partitions+" partitions");
+		}
+		ConceptBlockIdAllocator result = new ConceptBlockIdAllocator(this.partitions);
+		result.partition = index;
+		result.reservedCodes = this.codes;
+		result.reservedPrefixes = this.prefixes;
+		// IDs can only be the same in displays with the same prefix
+		result.generatedIds = this.generatedIds;
+		return result;
+	}
+
+	/**
+	 * Generates a new, unique ID for a concept block.
+	 *
+	 * @param prefix	the prefix of the display containing the block, can be null
+	 * @param uri		the URI of the concept
+	 * @param label		the label of the block
+	 * @return a new ID, never returned before by this allocator
+	 */
+	public synchronized String blockId(String prefix, String uri, String label) {
+		String shortPrefix = shortPrefix(prefix);
+		String key = key(uri, label);
+		String id = shortPrefix+code(key);
+		// the same concept with the same label can be displayed more than once in the same display (KWIC index for example)
+		// in that case we generate another ID, references will point to the first block
+		int variant = 1;
+		while(!this.generatedIds.add(id)) {
+			id = shortPrefix+code(key+"#"+variant);
+			variant++;
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the ID to use to reference the block of the given concept and label, in the given display.
+	 *
+	 * @param prefix	the prefix of the display containing the referenced block, can be null
+	 * @param uri		the URI of the referenced concept
+	 * @param label		the label of the referenced block
+	 * @return the ID of the referenced block
+	 */
+	public synchronized String refId(String prefix, String uri, String label) {
+		return shortPrefix(prefix)+code(key(uri, label));
+	}
+
+	protected String shortPrefix(String prefix) {
+		if(prefix == null) {
+			return "";
+		}
+		if(prefix.length() <= MAX_PREFIX_LENGTH) {
+			return prefix;
+		}
+		String shortPrefix = this.reservedPrefixes.get(prefix);
+		if(shortPrefix == null) {
+			shortPrefix = this.prefixes.get(prefix);
+		}
+		if(shortPrefix == null) {
+			// make sure the prefix starts with a letter and is followed by a separator, since codes are variable-length
+			shortPrefix = "d"+code(prefix)+"-";
+			this.prefixes.put(prefix, shortPrefix);
+		}
+		return shortPrefix;
+	}
+
+	protected String code(String key) {
+		String code = this.reservedCodes.get(key);
+		if(code == null) {
+			code = this.codes.get(key);
+		}
+		if(code == null) {
+			// slots of this partition
+			long slots = CODE_SPACE / this.partitions;
+			long h = Math.floorMod(hash(key), slots);
+			code = Long.toString(h * this.partitions + this.partition, Character.MAX_RADIX);
+			while(this.allocatedCodes.contains(code)) {
+				h = (h + 1) % slots;
+				code = Long.toString(h * this.partitions + this.partition, Character.MAX_RADIX);
+			}
+			this.allocatedCodes.add(code);
+			this.codes.put(key, code);
+		}
+		return code;
+	}
+
+	private static String key(String uri, String label) {
+		// URIs cannot contain spaces, so this is not ambiguous
+		return uri+" "+label;
+	}
+
+	/**
+	 * 64-bits FNV-1a hash, stable across JVMs, and better distributed than String.hashCode
+	 */
+	private static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+}
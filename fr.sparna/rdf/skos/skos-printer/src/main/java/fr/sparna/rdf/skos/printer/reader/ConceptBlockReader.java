@@ -19,7 +19,11 @@ import fr.sparna.rdf.rdf4j.toolkit.reader.PropertyLangValueReader;
 import fr.sparna.rdf.rdf4j.toolkit.reader.PropertyValueReader;
 import fr.sparna.rdf.rdf4j.toolkit.reader.PropertyValueReader.GenericQuerySupplier;
 import fr.sparna.rdf.rdf4j.toolkit.util.LabelReader;
+import fr.sparna.rdf.skos.printer.reader.ConceptBlockCache.CachedAtt;
 import fr.sparna.rdf.skos.printer.schema.ConceptBlock;
+import fr.sparna.rdf.skos.toolkit.DatasetFingerprint;
+import fr.sparna.rdf.skos.toolkit.Digests;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
 import fr.sparna.rdf.skos.toolkit.SKOS;
 import fr.sparna.rdf.skos.toolkit.builders.CollectionsOfConceptReader;
 import fr.sparna.rdf.skos.toolkit.builders.TopConceptsOfConceptReader;
@@ -39,6 +43,13 @@ public class ConceptBlockReader {
 	// notationReader
 	protected KeyValueReader<IRI, Value> notationReader;
 	
+	// when set, prefLabels, altLabels and notations are read from this table instead of the readers
+	protected LabelTable labelTable;
+	// language of the labels to read
+	protected String lang;
+	// concept scheme to read values in
+	protected IRI conceptScheme;
+	
 	// should we include linguistic equivalents ?
 	protected List<String> additionalLabelLanguagesToInclude = null;
 	// use a TreeMap to garantee ordering by language code
@@ -51,8 +62,14 @@ public class ConceptBlockReader {
 	// whether or not to add a style ('pref', 'alt', etc.) to the attributes for each concept block
 	protected boolean styleAttributes = true;
 	
-	// already generated IDs, to avoid clashes
-	protected List<String> generatedIds = new ArrayList<String>();
+	// allocates IDs of concept blocks and references, to avoid clashes
+	// shared by all the generators of a document so that references between displays remain valid
+	protected ConceptBlockIdAllocator idAllocator = new ConceptBlockIdAllocator();
+	
+	// cache of the attributes of concept blocks, shared between documents, can be null
+	protected ConceptBlockCache blockCache;
+	// fingerprint of the dataset, with the hash of each concept used in the keys of the block cache; blocks are not cached without it
+	protected DatasetFingerprint datasetFingerprint;
 	
 	public ConceptBlockReader() {
 		super();
@@ -63,8 +80,21 @@ public class ConceptBlockReader {
 			String lang,
 			final IRI conceptScheme,
 			String conceptBlockIdPrefix
+	) {
+		this.initInternal(lang, conceptScheme, conceptBlockIdPrefix, null);
+	}
+	
+	// called by a DisplayGenerator that shares a LabelTable with the other generators
+	protected void initInternal(
+			String lang,
+			final IRI conceptScheme,
+			String conceptBlockIdPrefix,
+			LabelTable labelTable
 	) {
 		this.conceptBlockIdPrefix = conceptBlockIdPrefix;
+		this.lang = lang;
+		this.conceptScheme = conceptScheme;
+		this.labelTable = labelTable;
 		
 		// no concept scheme filtering here - we want to be able to read prefLabel independently from the conceptScheme
 		prefLabelReader = new PropertyLangValueReader(
@@ -131,8 +161,30 @@ public class ConceptBlockReader {
 		}
 	}
 	
+	/**
+	 * Creates a copy of this reader, with the same configuration, label table and ID allocator, initialized for the same
+	 * language and concept scheme. A ConceptBlockReader is not thread-safe since the underlying readers keep state, so each
+	 * thread building concept blocks needs its own copy.
+	 */
+	public ConceptBlockReader copy() {
+		ConceptBlockReader copy = new ConceptBlockReader();
+		copy.skosPropertiesToRead = this.skosPropertiesToRead;
+		copy.additionalLabelLanguagesToInclude = this.additionalLabelLanguagesToInclude;
+		copy.linkDestinationIdPrefix = this.linkDestinationIdPrefix;
+		copy.styleAttributes = this.styleAttributes;
+		copy.idAllocator = this.idAllocator;
+		copy.blockCache = this.blockCache;
+		copy.datasetFingerprint = this.datasetFingerprint;
+		copy.initInternal(this.lang, this.conceptScheme, this.conceptBlockIdPrefix, this.labelTable);
+		return copy;
+	}
+	
 	public ConceptBlock readConceptBlockForSynonym(final String uri, final String altLabel, final String prefLabel) {
-		ConceptBlock cb = SchemaFactory.createConceptBlock(computeConceptBlockId(uri, altLabel), uri, SchemaFactory.createLabel(altLabel, "alt"));
+		return readConceptBlockForSynonym(uri, altLabel, prefLabel, computeConceptBlockId(uri, altLabel));
+	}
+	
+	public ConceptBlock readConceptBlockForSynonym(final String uri, final String altLabel, final String prefLabel, String blockId) {
+		ConceptBlock cb = SchemaFactory.createConceptBlock(blockId, uri, SchemaFactory.createLabel(altLabel, "alt"));
 		cb.getAtt().add(SchemaFactory.createAttLink(
 				computeRefId(uri, prefLabel, true),
 				uri,
@@ -145,17 +197,26 @@ public class ConceptBlockReader {
 	
 	
 	public ConceptBlock readConceptBlock(RepositoryConnection connection, final String uri, boolean styleLabel, boolean prependNotation) {
+		return this.readConceptBlock(connection, uri, readLabel(connection, uri, prependNotation), styleLabel);
+	}
+	
+	/**
+	 * Reads the label to display for a concept block : the prefLabel, optionnaly prepended with the notation,
+	 * or the URI if none can be found.
+	 */
+	public String readLabel(RepositoryConnection connection, final String uri, boolean prependNotation) {
 		// set sourceConceptLabel (or URI if no sourceConceptLabel can be found)
-		String label = LabelReader.display(prefLabelReader.read(SimpleValueFactory.getInstance().createIRI(uri), connection));
+		IRI iri = SimpleValueFactory.getInstance().createIRI(uri);
+		String label = readPrefLabel(connection, iri);
+		label = (label != null)?label:"";
 		
 		if(prependNotation) {
-			List<Value> notations = notationReader.read(SimpleValueFactory.getInstance().createIRI(uri), connection);
-			label = ((notations.size() > 0)?notations.get(0).stringValue()+" ":"")+label;
+			String notation = readNotation(connection, iri);
+			label = ((notation != null)?notation+" ":"")+label;
 		}
 		
 		// defaults to displaying the URI if the generated label is empty, and display the short URI
-		label = (label.trim().equals(""))?uri:label;
-		return this.readConceptBlock(connection, uri, label, styleLabel);
+		return (label.trim().equals(""))?uri:label;
 	}
 	
 	public ConceptBlock readConceptBlock(RepositoryConnection connection, final String uri, String prefLabel, boolean styleLabel) {
@@ -172,6 +233,29 @@ public class ConceptBlockReader {
 	 * @throws SparqlPerformException
 	 */
 	public ConceptBlock readConceptBlock(RepositoryConnection connection, final String uri, String prefLabel, String blockId, boolean styleLabel) {
+		return createConceptBlock(uri, prefLabel, blockId, styleLabel, readConceptBlockAtts(connection, uri));
+	}
+	
+	/**
+	 * Reads the attributes of the block of a concept, or gets them from the cache if they were already read from the same
+	 * dataset. This does not allocate any ID, and can be called concurrently by copies of this reader.
+	 */
+	public List<CachedAtt> readConceptBlockAtts(RepositoryConnection connection, final String uri) {
+		String cacheKey = computeCacheKey(uri);
+		List<CachedAtt> atts = (cacheKey != null)?this.blockCache.get(cacheKey):null;
+		if(atts == null) {
+			atts = readAtts(connection, uri);
+			if(cacheKey != null) {
+				this.blockCache.put(cacheKey, atts);
+			}
+		}
+		return atts;
+	}
+	
+	/**
+	 * Creates the block of a concept from its attributes, computing the IDs of its references.
+	 */
+	public ConceptBlock createConceptBlock(final String uri, String prefLabel, String blockId, boolean styleLabel, List<CachedAtt> atts) {
 		
 		final ConceptBlock cb;
 		
@@ -191,16 +275,46 @@ public class ConceptBlockReader {
 					);
 		}
 		
+		for (CachedAtt anAtt : atts) {
+			if(anAtt.isLink()) {
+				// IDs of references depend on the document, they are never cached
+				cb.getAtt().add(
+						SchemaFactory.createAttLink(
+								computeRefId(anAtt.getRefUri(), anAtt.getRefLabel(), true),
+								anAtt.getRefUri(),
+								anAtt.getValue(),
+								anAtt.getType(),
+								anAtt.getStyle()
+								)
+						);
+			} else {
+				cb.getAtt().add(SchemaFactory.createAtt(anAtt.getValue(), anAtt.getType(), anAtt.getStyle()));
+			}
+		}
+		
+		return cb;
+	}
+	
+	/**
+	 * Reads the attributes of the concept block of the given concept : labels in additional languages, then the values
+	 * of each SKOS property to read.
+	 */
+	protected List<CachedAtt> readAtts(RepositoryConnection connection, final String uri) {
+		
+		List<CachedAtt> atts = new ArrayList<CachedAtt>();
+		
 		// add additional languages first
 		if(this.additionalLabelLanguagesToInclude != null) {			
 			for (Map.Entry<String, KeyValueReader<IriLang, Literal>> anEntry : this.additionalLabelLanguagesReaders.entrySet()) {
 				String lang = anEntry.getKey();
 				
-				String labelInOtherLanguage = LabelReader.display(anEntry.getValue().read(new IriLang(uri, lang), connection));
+				String labelInOtherLanguage = (this.labelTable != null)
+						?this.labelTable.getPrefLabel(SimpleValueFactory.getInstance().createIRI(uri), lang)
+						:LabelReader.display(anEntry.getValue().read(new IriLang(uri, lang), connection));
 				// don't display if there is no sourceConceptLabel for this language
 				if(labelInOtherLanguage != null && !labelInOtherLanguage.equals("")) {
-					cb.getAtt().add(
-							SchemaFactory.createAtt(
+					atts.add(
+							CachedAtt.value(
 									labelInOtherLanguage,
 									// set the language code as the attribute key
 									"lang:"+lang.toUpperCase(),
@@ -218,12 +332,33 @@ public class ConceptBlockReader {
 			if(o instanceof PropertyValueReader) {
 				PropertyValueReader predicateReader = (PropertyValueReader)o;
 			
+				// altLabels and notations are read from the label table if we have one
+				if(this.labelTable != null && (entry.getKey().equals(SKOS.ALT_LABEL) || entry.getKey().equals(SKOS.NOTATION))) {
+					IRI iri = SimpleValueFactory.getInstance().createIRI(uri);
+					List<String> values = new ArrayList<String>();
+					if(entry.getKey().equals(SKOS.ALT_LABEL)) {
+						values.addAll(this.labelTable.getAltLabels(iri, this.lang));
+					} else if(this.labelTable.getNotation(iri) != null) {
+						values.add(this.labelTable.getNotation(iri));
+					}
+					for (String value : values) {
+						atts.add(
+								CachedAtt.value(
+										value,
+										SKOSTags.getStringForURI(entry.getKey()),
+										(styleAttributes && entry.getKey().equals(SKOS.ALT_LABEL))?"alt-att":null
+										)
+								);
+					}
+					continue;
+				}
+				
 				List<Value> values = predicateReader.read(SimpleValueFactory.getInstance().createIRI(uri), connection);
 				for (Value value : values) {
 	
 					if(value instanceof Literal) {
-						cb.getAtt().add(
-								SchemaFactory.createAtt(
+						atts.add(
+								CachedAtt.value(
 										((Literal)value).stringValue(),
 										SKOSTags.getStringForURI(entry.getKey()),
 										(styleAttributes && entry.getKey().equals(SKOS.ALT_LABEL))?"alt-att":null
@@ -231,13 +366,13 @@ public class ConceptBlockReader {
 								);
 					} else {
 						IRI aRef = (IRI)value;
-						List<Literal> prefs = prefLabelReader.read(SimpleValueFactory.getInstance().createIRI(aRef.stringValue()), connection);
-						String refPrefLabel = (prefs.size() > 0)?prefs.get(0).stringValue():aRef.stringValue();
-						cb.getAtt().add(
-								SchemaFactory.createAttLink(
-										computeRefId(aRef.stringValue(), refPrefLabel, true),
+						String refPrefLabel = readPrefLabel(connection, aRef);
+						refPrefLabel = (refPrefLabel != null)?refPrefLabel:aRef.stringValue();
+						atts.add(
+								CachedAtt.link(
 										aRef.stringValue(),
 										refPrefLabel,
+										refPrefLabel,
 										SKOSTags.getStringForURI(entry.getKey()),
 										(styleAttributes)?"pref":null
 										)
@@ -251,20 +386,19 @@ public class ConceptBlockReader {
 				
 				// lookup the label of the values
 				for (IRI aValue : values) {
-					List<Literal> prefs = prefLabelReader.read(SimpleValueFactory.getInstance().createIRI(aValue.stringValue()), connection);
-					String refPrefLabel = (prefs.size() > 0)?prefs.get(0).stringValue():aValue.stringValue();
+					String refPrefLabel = readPrefLabel(connection, aValue);
+					refPrefLabel = (refPrefLabel != null)?refPrefLabel:aValue.stringValue();
 					
 					String refNotation = null;
 					if(entry.getKey().equals(SKOSPLAY.MEMBER_OF)) {
 						// in case we are referencing a collection / micro-thesaurus, attempt to fetch the notation (UNESCO thesaurus)
-						List<Value> notations = notationReader.read(SimpleValueFactory.getInstance().createIRI(aValue.stringValue()), connection);
-						refNotation = (notations.size() > 0)?notations.get(0).stringValue():null;
+						refNotation = readNotation(connection, aValue);
 					}
 					
-					cb.getAtt().add(
-						SchemaFactory.createAttLink(
-								computeRefId(aValue.stringValue(), refPrefLabel, true),
+					atts.add(
+						CachedAtt.link(
 								aValue.stringValue(),
+								refPrefLabel,
 								((refNotation != null)?refNotation+" ":"")+refPrefLabel,
 								SKOSTags.getString(entry.getKey()),
 								(styleAttributes)?"pref":null
@@ -274,28 +408,68 @@ public class ConceptBlockReader {
 			}
 		}
 		
-		return cb;
+		return atts;
+	}
+	
+	/**
+	 * Computes the key of the attributes of the block of a concept in the block cache. The key is a hash of the
+	 * configuration of this reader (language, scheme, properties to read, additional languages), of the concept URI and
+	 * of the hash of this URI in the dataset, that changes only when the statements of the concept or the labels of the
+	 * concepts it is linked to change : cached attributes of a concept are reused when other concepts are modified.
+	 * 
+	 * @return the cache key, or null if there is no cache, or no fingerprint of the dataset
+	 */
+	protected String computeCacheKey(final String uri) {
+		if(this.blockCache == null || this.datasetFingerprint == null) {
+			return null;
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append(Long.toHexString(this.datasetFingerprint.getIriHash(uri))).append('\n');
+		sb.append(this.lang).append('\n');
+		sb.append(this.conceptScheme).append('\n');
+		sb.append(this.skosPropertiesToRead).append('\n');
+		sb.append(this.additionalLabelLanguagesToInclude).append('\n');
+		sb.append(this.styleAttributes).append('\n');
+		sb.append(uri);
+		
+		return Digests.sha256(sb.toString());
+	}
+	
+	/**
+	 * Reads the prefLabel of the given IRI in the language of this reader, from the label table if available.
+	 * @return the prefLabel, or null if none can be found
+	 */
+	public String readPrefLabel(RepositoryConnection connection, IRI iri) {
+		if(this.labelTable != null) {
+			return this.labelTable.getPrefLabel(iri, this.lang);
+		}
+		List<Literal> prefs = prefLabelReader.read(iri, connection);
+		return (prefs.size() > 0)?prefs.get(0).stringValue():null;
+	}
+	
+	/**
+	 * Reads the first notation of the given IRI, from the label table if available.
+	 * @return the notation, or null if none can be found
+	 */
+	public String readNotation(RepositoryConnection connection, IRI iri) {
+		if(this.labelTable != null) {
+			return this.labelTable.getNotation(iri);
+		}
+		List<Value> notations = notationReader.read(iri, connection);
+		return (notations.size() > 0)?notations.get(0).stringValue():null;
 	}
 	
 	public String computeConceptBlockId(String uri, String label) {
 		// Generate an ID for this concept block, based on the URI and the prefLabel.
 		// We need to be able to regenerate the same ID when building a reference to this concept
-		
-		int hashCode = (uri+label).hashCode();
-		String generatedBlockId = ((this.conceptBlockIdPrefix != null)?this.conceptBlockIdPrefix:"")+Integer.toString(hashCode);
-		while(this.generatedIds.contains(generatedBlockId)) {
-			hashCode = hashCode + 1;
-			generatedBlockId = ((this.conceptBlockIdPrefix != null)?this.conceptBlockIdPrefix:"")+Integer.toString(hashCode);
-		}
-		this.generatedIds.add(generatedBlockId);
-		return generatedBlockId;
+		return this.idAllocator.blockId(this.conceptBlockIdPrefix, uri, label);
 	}
 	
 	public String computeRefId(String uri, String label, boolean isInternalToThisSection) {
 		// recreate the same ID for the concept we are referencing
-		String refPrefix = (isInternalToThisSection)?((this.conceptBlockIdPrefix != null)?this.conceptBlockIdPrefix:""):((this.linkDestinationIdPrefix != null)?this.linkDestinationIdPrefix:"");
-		String entryRefId = refPrefix+Integer.toString((uri+label).hashCode());	
-		return entryRefId;
+		String refPrefix = (isInternalToThisSection)?this.conceptBlockIdPrefix:this.linkDestinationIdPrefix;
+		return this.idAllocator.refId(refPrefix, uri, label);
 	}
 
 	public List<String> getSkosPropertiesToRead() {
@@ -306,6 +480,14 @@ public class ConceptBlockReader {
 		this.skosPropertiesToRead = skosPropertiesToRead;
 	}
 
+	public ConceptBlockIdAllocator getIdAllocator() {
+		return idAllocator;
+	}
+
+	public void setIdAllocator(ConceptBlockIdAllocator idAllocator) {
+		this.idAllocator = idAllocator;
+	}
+
 	public KeyValueReader<IRI, Literal> getPrefLabelReader() {
 		return prefLabelReader;
 	}
@@ -334,6 +516,25 @@ public class ConceptBlockReader {
 		this.linkDestinationIdPrefix = linkDestinationIdPrefix;
 	}
 
+	public ConceptBlockCache getBlockCache() {
+		return blockCache;
+	}
+
+	public void setBlockCache(ConceptBlockCache blockCache) {
+		this.blockCache = blockCache;
+	}
+
+	public DatasetFingerprint getDatasetFingerprint() {
+		return datasetFingerprint;
+	}
+
+	/**
+	 * @param datasetFingerprint	fingerprint of the dataset, read with <code>DatasetFingerprint.read</code>; concept blocks are cached only if it is set
+	 */
+	public void setDatasetFingerprint(DatasetFingerprint datasetFingerprint) {
+		this.datasetFingerprint = datasetFingerprint;
+	}
+
 	public boolean isStyleAttributes() {
 		return styleAttributes;
 	}
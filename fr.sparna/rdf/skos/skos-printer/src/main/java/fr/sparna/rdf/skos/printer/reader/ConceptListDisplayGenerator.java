@@ -20,10 +20,11 @@ import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import fr.sparna.commons.lang.StringUtil;
+import fr.sparna.commons.lang.AccentFolder;
 import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.schema.ConceptBlock;
 import fr.sparna.rdf.skos.printer.schema.KosDisplay;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
@@ -82,7 +83,7 @@ public class ConceptListDisplayGenerator extends AbstractKosDisplayGenerator {
 	public KosDisplay doGenerate(final String lang, final IRI conceptScheme) {
 
 		// init ConceptBlockReader
-		this.cbReader.initInternal(lang, conceptScheme, this.displayId);
+		initConceptBlockReader(this.cbReader, lang, conceptScheme);
 		
 		// build our display
 		KosDisplay d = new KosDisplay();
@@ -111,17 +112,20 @@ public class ConceptListDisplayGenerator extends AbstractKosDisplayGenerator {
 		// setup Collator
 		final Collator collator = Collator.getInstance(new Locale(lang));
 		collator.setStrength(Collator.SECONDARY);
-		Collections.sort(queryResultRows, new Comparator<QueryResultRow>() {
+		try(RenderTrace.Timer timer = startStage("sort")) {
+			Collections.sort(queryResultRows, new Comparator<QueryResultRow>() {
 
-			@Override
-			public int compare(QueryResultRow o1, QueryResultRow o2) {
-				if(o1 == null && o2 == null) return 0;
-				if(o1 == null) return -1;
-				if(o2 == null) return 1;
-				return collator.compare(o1.prefLabel, o2.prefLabel);
-			}
+				@Override
+				public int compare(QueryResultRow o1, QueryResultRow o2) {
+					if(o1 == null && o2 == null) return 0;
+					if(o1 == null) return -1;
+					if(o2 == null) return 1;
+					return collator.compare(o1.prefLabel, o2.prefLabel);
+				}
 			
-		});
+			});
+			timer.setSize(queryResultRows.size());
+		}
 		
 		boolean addSections = queryResultRows.size() > 200;
 		log.debug("Processing "+queryResultRows.size()+" entries.");
@@ -131,7 +135,7 @@ public class ConceptListDisplayGenerator extends AbstractKosDisplayGenerator {
 			for (QueryResultRow aRow : queryResultRows) {
 				ConceptBlock cb = this.cbReader.readConceptBlock(connection, aRow.conceptURI, aRow.prefLabel, true);
 
-				String entrySectionTitle = StringUtil.withoutAccents(aRow.prefLabel).toUpperCase().substring(0, 1);
+				String entrySectionTitle = AccentFolder.sectionLetter(aRow.prefLabel);
 				if(currentSection == null || !entrySectionTitle.equals(currentSection.getTitle())) {
 					// on est passé à une nouvelle section
 					
@@ -2,14 +2,16 @@ package fr.sparna.rdf.skos.printer.reader;
 
 import java.io.File;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Marshaller;
 
 import org.eclipse.rdf4j.model.IRI;
-import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
@@ -18,12 +20,11 @@ import org.slf4j.LoggerFactory;
 
 import fr.sparna.commons.tree.GenericTree;
 import fr.sparna.commons.tree.GenericTreeNode;
-import fr.sparna.rdf.rdf4j.toolkit.reader.PropertyValueReader;
 import fr.sparna.rdf.rdf4j.toolkit.reader.TypeReader;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
-import fr.sparna.rdf.rdf4j.toolkit.util.LabelReader;
 import fr.sparna.rdf.rdf4j.toolkit.util.PreferredPropertyReader;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.schema.ConceptBlock;
 import fr.sparna.rdf.skos.printer.schema.KosDisplay;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
@@ -32,8 +33,11 @@ import fr.sparna.rdf.skos.printer.schema.Node;
 import fr.sparna.rdf.skos.printer.schema.NodeData;
 import fr.sparna.rdf.skos.printer.schema.Section;
 import fr.sparna.rdf.skos.printer.schema.Tree;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
 import fr.sparna.rdf.skos.toolkit.SKOS;
+import fr.sparna.rdf.skos.toolkit.SKOSNodeSortCriteriaLabelTableReader;
 import fr.sparna.rdf.skos.toolkit.SKOSNodeSortCriteriaPreferredPropertyReader;
+import fr.sparna.rdf.skos.toolkit.SKOSNodeSortCriteriaReader;
 import fr.sparna.rdf.skos.toolkit.SKOSNodeTypeReader;
 import fr.sparna.rdf.skos.toolkit.SKOSTreeBuilder;
 import fr.sparna.rdf.skos.toolkit.SKOSTreeNode;
@@ -73,7 +77,8 @@ public class HierarchicalDisplayGenerator extends AbstractKosDisplayGenerator {
 		final KosDisplay d = new KosDisplay();
 			
 		// init ConceptBlockReader
-		this.cbReader.initInternal(lang, conceptScheme, this.displayId);
+		LabelTable labelTable = getLabelTable(conceptScheme);
+		initConceptBlockReader(this.cbReader, lang, conceptScheme);
 		
 		// read types - this could be preloaded
 		TypeReader typeReader = new TypeReader();
@@ -82,50 +87,83 @@ public class HierarchicalDisplayGenerator extends AbstractKosDisplayGenerator {
 		
 		// init the tree builder
 		// First sort on the notation, then the prefLabel if notation is not available
-		PreferredPropertyReader ppr = new PreferredPropertyReader(
-				connection,
-				Arrays.asList(new IRI[] { SimpleValueFactory.getInstance().createIRI(SKOS.NOTATION), SimpleValueFactory.getInstance().createIRI(SKOS.PREF_LABEL) }),
-				lang
-		);
-		ppr.setCaching(true);
-		SKOSTreeBuilder treeBuilder = new SKOSTreeBuilder(connection, new SKOSNodeSortCriteriaPreferredPropertyReader(ppr), nodeTypeReader);
+		SKOSNodeSortCriteriaReader sortCriteriaReader;
+		if(labelTable != null) {
+			sortCriteriaReader = new SKOSNodeSortCriteriaLabelTableReader(labelTable, lang);
+		} else {
+			PreferredPropertyReader ppr = new PreferredPropertyReader(
+					connection,
+					Arrays.asList(new IRI[] { SimpleValueFactory.getInstance().createIRI(SKOS.NOTATION), SimpleValueFactory.getInstance().createIRI(SKOS.PREF_LABEL) }),
+					lang
+			);
+			ppr.setCaching(true);
+			sortCriteriaReader = new SKOSNodeSortCriteriaPreferredPropertyReader(ppr);
+		}
+		SKOSTreeBuilder treeBuilder = new SKOSTreeBuilder(connection, sortCriteriaReader, nodeTypeReader);
 		treeBuilder.setUseConceptSchemesAsFirstLevelNodes(false);
 		
 		
 		List<GenericTree<SKOSTreeNode>> skosTrees;
-		if(conceptScheme != null) {
-			log.debug("Concept Scheme is not null, will read the tree for it.");
-			skosTrees = treeBuilder.buildTrees(conceptScheme);
-			log.debug("Finish reading "+skosTrees.size()+" trees");
-		} else {
-			log.debug("Concept Scheme is null, will read all the trees.");
-			skosTrees = treeBuilder.buildTrees();
-			log.debug("Finish reading "+skosTrees.size()+" trees");
+		try(RenderTrace.Timer timer = startStage("tree")) {
+			if(conceptScheme != null) {
+				log.debug("Concept Scheme is not null, will read the tree for it.");
+				skosTrees = treeBuilder.buildTrees(conceptScheme);
+				log.debug("Finish reading "+skosTrees.size()+" trees");
+			} else {
+				log.debug("Concept Scheme is null, will read all the trees.");
+				skosTrees = treeBuilder.buildTrees();
+				log.debug("Finish reading "+skosTrees.size()+" trees");
+			}
+			timer.setSize(skosTrees.size());
 		}
 		
-		PropertyValueReader notationReader = new PropertyValueReader(SimpleValueFactory.getInstance().createIRI(SKOS.NOTATION));
-		notationReader.setPreLoad(false);
-		
 		if(skosTrees.stream().allMatch(t -> t.getNumberOfNodes() == 1)) {
 			log.debug("Flat list of trees - no hierarchy - not outputting anything.");
 			return d;
 		}
 		
+		// list all the nodes of all the trees, and allocate their label and block ID in that order
+		final List<GenericTreeNode<SKOSTreeNode>> nodes = new ArrayList<GenericTreeNode<SKOSTreeNode>>();
+		for (GenericTree<SKOSTreeNode> genericTree : skosTrees) {
+			collectNodesRec(genericTree.getRoot(), nodes);
+		}
+		final String[] labels = new String[nodes.size()];
+		final String[] blockIds = new String[nodes.size()];
+		for (int i = 0; i < nodes.size(); i++) {
+			String uri = nodes.get(i).getData().getIri().toString();
+			// attempt to prepend a notation if node type is collection
+			labels[i] = this.cbReader.readLabel(connection, uri, (nodes.get(i).getData().getNodeType() == SKOSTreeNode.NodeType.COLLECTION));
+			blockIds[i] = this.cbReader.computeConceptBlockId(uri, labels[i]);
+		}
+		
+		// then read the concept blocks in parallel, and assemble them in the same order
+		List<ConceptBlock> conceptBlocks = new ParallelConceptBlockBuilder(this.executor, this.conceptBlockThreads).build(
+				nodes.size(),
+				this.cbReader,
+				this.connection,
+				(reader, c, i) -> reader.readConceptBlockAtts(c, nodes.get(i).getData().getIri().toString()),
+				(reader, atts, i) -> reader.createConceptBlock(nodes.get(i).getData().getIri().toString(), labels[i], blockIds[i], false, atts)
+		);
+		Map<GenericTreeNode<SKOSTreeNode>, ConceptBlock> blocksByNode = new IdentityHashMap<GenericTreeNode<SKOSTreeNode>, ConceptBlock>();
+		for (int i = 0; i < nodes.size(); i++) {
+			blocksByNode.put(nodes.get(i), conceptBlocks.get(i));
+		}
+		
 		for (GenericTree<SKOSTreeNode> genericTree : skosTrees) {
 			Section s = new Section();
 			// sets the name of the root node as section title
-			String title = LabelReader.display(this.cbReader.getPrefLabelReader().read(genericTree.getRoot().getData().getIri(), connection));
+			String title = this.cbReader.readPrefLabel(connection, genericTree.getRoot().getData().getIri());
+			title = (title != null)?title:"";
 			
 			// prepend notation
-			List<Value> notations = notationReader.read(genericTree.getRoot().getData().getIri(), connection);
-			String aNotation = (notations.size() > 0)?notations.get(0).stringValue():null;
+			String aNotation = this.cbReader.readNotation(connection, genericTree.getRoot().getData().getIri());
 			title = ((aNotation != null)?aNotation+" ":"")+title;
 			
 			s.setTitle(title);				
 			
 			Tree t = new Tree();
 			s.setTree(t);
-			t.setNode(buildNodeRec(genericTree.getRoot(), connection));
+			t.setNode(buildNodeRec(genericTree.getRoot(), blocksByNode));
 			d.getSection().add(s);
 		}
 		
@@ -135,27 +173,28 @@ public class HierarchicalDisplayGenerator extends AbstractKosDisplayGenerator {
 		return d;
 	}
 	
-	private Node buildNodeRec(GenericTreeNode<SKOSTreeNode> treeNode, RepositoryConnection connection) {
-		log.debug("Creating entry for "+treeNode.getData().getIri().toString()+"...");
+	private void collectNodesRec(GenericTreeNode<SKOSTreeNode> treeNode, List<GenericTreeNode<SKOSTreeNode>> nodes) {
+		nodes.add(treeNode);
+		if(treeNode.getChildren() != null) {
+			for (GenericTreeNode<SKOSTreeNode> aChild : treeNode.getChildren()) {
+				collectNodesRec(aChild, nodes);
+			}
+		}
+	}
+	
+	private Node buildNodeRec(GenericTreeNode<SKOSTreeNode> treeNode, Map<GenericTreeNode<SKOSTreeNode>, ConceptBlock> blocksByNode) {
+		log.trace("Creating entry for "+treeNode.getData().getIri().toString()+"...");
 		
-		// create node and conceptBlock
+		// create node and set its conceptBlock, already built
 		Node n = new Node();		
 		NodeData nd = new NodeData();
 		n.setNodeData(nd);
-		
-		ConceptBlock cb = this.cbReader.readConceptBlock(
-				connection,
-				treeNode.getData().getIri().toString(),
-				false,
-				// attempt to prepend a notation if node type is collection
-				(treeNode.getData().getNodeType() == SKOSTreeNode.NodeType.COLLECTION)
-		);
-		nd.setConceptBlock(cb);
+		nd.setConceptBlock(blocksByNode.get(treeNode));
 		
 		// recurse on children
 		if(treeNode.getChildren() != null) {
 			for (GenericTreeNode<SKOSTreeNode> aChild : treeNode.getChildren()) {
-				n.getNode().add(buildNodeRec(aChild, connection));
+				n.getNode().add(buildNodeRec(aChild, blocksByNode));
 			}
 		}
 		
@@ -0,0 +1,120 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of failures per host, and stops calling hosts that keep failing.
+ * <p>After <code>failureThreshold</code> consecutive failures (errors or timeouts), a host is considered down ("open")
+ * and no request is allowed to it during <code>openDuration</code> ms. After that delay a single trial request is
+ * allowed : if it succeeds the host is considered up again, otherwise it stays down for another delay.
+ *
+ * @author Thomas Francart
+ */
+public class HostCircuitBreaker {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	protected int failureThreshold = 3;
+	protected long openDuration = 5 * 60 * 1000;
+
+	private Map<String, HostState> states = new ConcurrentHashMap<String, HostState>();
+
+	public HostCircuitBreaker() {
+		super();
+	}
+
+	public HostCircuitBreaker(int failureThreshold, long openDuration) {
+		super();
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+	}
+
+	/**
+	 * @return true if a request can be sent to this host
+	 */
+	public boolean allowRequest(String host) {
+		HostState state = state(host);
+		synchronized (state) {
+			if(state.openedAt < 0) {
+				return true;
+			}
+			if(!state.trialInProgress && System.currentTimeMillis() - state.openedAt >= this.openDuration) {
+				// let a single request try the host again
+				state.trialInProgress = true;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	public void recordSuccess(String host) {
+		HostState state = state(host);
+		synchronized (state) {
+			if(state.openedAt >= 0) {
+				log.info("Host "+host+" is responding again");
+			}
+			state.consecutiveFailures = 0;
+			state.openedAt = -1;
+			state.trialInProgress = false;
+		}
+	}
+
+	public void recordFailure(String host) {
+		HostState state = state(host);
+		synchronized (state) {
+			state.consecutiveFailures++;
+			if(state.trialInProgress || (state.openedAt < 0 && state.consecutiveFailures >= this.failureThreshold)) {
+				if(state.openedAt < 0) {
+					log.warn("Host "+host+" failed "+state.consecutiveFailures+" times in a row, will not call it for "+this.openDuration+" ms");
+				}
+				state.openedAt = System.currentTimeMillis();
+				state.trialInProgress = false;
+			}
+		}
+	}
+
+	/**
+	 * @return true if requests to this host are currently not allowed
+	 */
+	public boolean isOpen(String host) {
+		HostState state = this.states.get(host);
+		if(state == null) {
+			return false;
+		}
+		synchronized (state) {
+			return state.openedAt >= 0;
+		}
+	}
+
+	private HostState state(String host) {
+		return this.states.computeIfAbsent(host, h -> new HostState());
+	}
+
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	public void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	public long getOpenDuration() {
+		return openDuration;
+	}
+
+	public void setOpenDuration(long openDuration) {
+		this.openDuration = openDuration;
+	}
+
+	private static class HostState {
+		int consecutiveFailures = 0;
+		// time at which the host was considered down, -1 if it is up
+		long openedAt = -1;
+		boolean trialInProgress = false;
+	}
+
+}
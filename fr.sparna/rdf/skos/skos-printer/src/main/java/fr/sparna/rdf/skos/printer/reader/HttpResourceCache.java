@@ -0,0 +1,421 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.skos.toolkit.Digests;
+
+/**
+ * Fetches HTTP resources and keeps them in a disk cache.
+ * <p>The cache directory contains an <code>index</code> directory with one small properties file per URL and
+ * accepted content type (ETag, Last-Modified, time of last fetch, hash of the content), and a <code>content</code>
+ * directory in which the content is stored under its own SHA-256 hash, so that identical responses are stored once.
+ * <p>An entry younger than <code>ttl</code> ms is served from the disk without any request. An older entry is
+ * revalidated with a conditional request (If-None-Match / If-Modified-Since) and is served from the disk if the server
+ * answers 304. If the server cannot be reached, stale content is served if available.
+ * <p>At most <code>maxConnectionsPerHost</code> requests are sent to the same host at the same time, and hosts that
+ * keep failing are not called anymore for a while (see {@link HostCircuitBreaker}).
+ * <p>If no cache directory is given, nothing is stored and every call triggers a request.
+ *
+ * @author Thomas Francart
+ */
+public class HttpResourceCache {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	private static final int MAX_REDIRECTS = 5;
+
+	protected File cacheDir;
+
+	protected long ttl = 7L * 24 * 60 * 60 * 1000;
+	protected int connectTimeout = 5000;
+	protected int readTimeout = 20000;
+	protected int maxConnectionsPerHost = 2;
+	protected HostCircuitBreaker circuitBreaker = new HostCircuitBreaker();
+
+	private Map<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+
+	// statistics
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong revalidated = new AtomicLong();
+	private AtomicLong fetched = new AtomicLong();
+	private AtomicLong staleServed = new AtomicLong();
+	private AtomicLong failures = new AtomicLong();
+	private AtomicLong skipped = new AtomicLong();
+
+	public HttpResourceCache(File cacheDir) {
+		super();
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Returns the content of a URL, from the cache if possible.
+	 *
+	 * @param url		the URL to fetch
+	 * @param accept	the value of the Accept header, can be null
+	 * @return the cached or fetched resource
+	 * @throws IOException if the resource cannot be fetched and is not in the cache
+	 */
+	public Resource get(String url, String accept) throws IOException {
+		String key = Digests.sha256(url+"\n"+((accept != null)?accept:""));
+		Properties entry = readEntry(key);
+		File content = (entry != null)?contentFile(entry.getProperty("contentHash")):null;
+		if(content != null && !content.exists()) {
+			entry = null;
+			content = null;
+		}
+
+		if(entry != null && System.currentTimeMillis() - Long.parseLong(entry.getProperty("fetchedAt", "0")) < this.ttl) {
+			this.hits.incrementAndGet();
+			return toResource(entry, content);
+		}
+
+		return fetch(url, accept, key, entry, content);
+	}
+
+	/**
+	 * Fetches the URL, following redirects. Each request goes through the circuit breaker and the connection limit
+	 * of its own host, including requests to the targets of redirects.
+	 */
+	protected Resource fetch(String url, String accept, String key, Properties entry, File content) throws IOException {
+		try {
+			String currentUrl = url;
+			int redirects = 0;
+			while(true) {
+				String host = new URL(currentUrl).getHost();
+				Semaphore permits = this.hostPermits.computeIfAbsent(host, h -> new Semaphore(this.maxConnectionsPerHost));
+				try {
+					permits.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				}
+				if(!this.circuitBreaker.allowRequest(host)) {
+					permits.release();
+					this.skipped.incrementAndGet();
+					throw new HostDownException("Host "+host+" is down, not fetching "+currentUrl);
+				}
+				HttpURLConnection c = null;
+				// whether the outcome of the request was given to the circuit breaker
+				boolean recorded = false;
+				try {
+					c = (HttpURLConnection)new URL(currentUrl).openConnection();
+					c.setConnectTimeout(this.connectTimeout);
+					c.setReadTimeout(this.readTimeout);
+					// redirects are followed manually, since HttpURLConnection does not follow redirects from http to https
+					c.setInstanceFollowRedirects(false);
+					if(accept != null) {
+						c.setRequestProperty("Accept", accept);
+					}
+					if(entry != null && entry.getProperty("etag") != null) {
+						c.setRequestProperty("If-None-Match", entry.getProperty("etag"));
+					}
+					if(entry != null && entry.getProperty("lastModified") != null) {
+						c.setRequestProperty("If-Modified-Since", entry.getProperty("lastModified"));
+					}
+
+					int code = c.getResponseCode();
+					if(code >= 500) {
+						throw new ServerException("Server error "+code+" for "+currentUrl);
+					}
+
+					// the host answered : whatever the answer, it is alive
+					this.circuitBreaker.recordSuccess(host);
+					recorded = true;
+
+					if(code >= 300 && code < 400 && code != HttpURLConnection.HTTP_NOT_MODIFIED && c.getHeaderField("Location") != null) {
+						if(++redirects > MAX_REDIRECTS) {
+							throw new ClientException("Too many redirects for "+url);
+						}
+						currentUrl = new URL(new URL(currentUrl), c.getHeaderField("Location")).toString();
+						continue;
+					}
+
+					if(code == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+						this.revalidated.incrementAndGet();
+						entry.setProperty("fetchedAt", Long.toString(System.currentTimeMillis()));
+						writeEntry(key, entry);
+						return toResource(entry, content);
+					}
+
+					if(code != HttpURLConnection.HTTP_OK) {
+						throw new ClientException("Unexpected response "+code+" for "+currentUrl);
+					}
+
+					byte[] bytes;
+					try(InputStream in = c.getInputStream()) {
+						bytes = readFully(in);
+					}
+					this.fetched.incrementAndGet();
+
+					Properties newEntry = new Properties();
+					newEntry.setProperty("url", url);
+					newEntry.setProperty("finalUrl", currentUrl);
+					newEntry.setProperty("fetchedAt", Long.toString(System.currentTimeMillis()));
+					if(c.getContentType() != null) {
+						newEntry.setProperty("contentType", c.getContentType());
+					}
+					if(c.getHeaderField("ETag") != null) {
+						newEntry.setProperty("etag", c.getHeaderField("ETag"));
+					}
+					if(c.getHeaderField("Last-Modified") != null) {
+						newEntry.setProperty("lastModified", c.getHeaderField("Last-Modified"));
+					}
+					String contentHash = Digests.sha256(bytes);
+					newEntry.setProperty("contentHash", contentHash);
+					store(key, newEntry, contentHash, bytes);
+
+					return new Resource(currentUrl, newEntry.getProperty("contentType"), bytes);
+				} finally {
+					// errors, timeouts, and any unexpected exception : this also ends a trial request to the host
+					if(!recorded) {
+						this.circuitBreaker.recordFailure(host);
+					}
+					if(c != null) {
+						c.disconnect();
+					}
+					permits.release();
+				}
+			}
+		} catch (IOException e) {
+			if(!(e instanceof HostDownException)) {
+				this.failures.incrementAndGet();
+			}
+			if(entry != null) {
+				log.debug("Failed to revalidate "+url+" ("+e.getMessage()+"), serving stale content");
+				this.staleServed.incrementAndGet();
+				return toResource(entry, content);
+			}
+			throw e;
+		}
+	}
+
+	protected void store(String key, Properties entry, String contentHash, byte[] bytes) throws IOException {
+		if(this.cacheDir == null) {
+			return;
+		}
+		File content = contentFile(contentHash);
+		if(!content.exists()) {
+			content.getParentFile().mkdirs();
+			File tmp = File.createTempFile("content", ".tmp", content.getParentFile());
+			try(OutputStream out = new FileOutputStream(tmp)) {
+				out.write(bytes);
+			}
+			Files.move(tmp.toPath(), content.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		writeEntry(key, entry);
+	}
+
+	protected Properties readEntry(String key) {
+		if(this.cacheDir == null) {
+			return null;
+		}
+		File f = indexFile(key);
+		if(!f.exists()) {
+			return null;
+		}
+		Properties p = new Properties();
+		try(InputStream in = new FileInputStream(f)) {
+			p.load(in);
+			return p;
+		} catch (IOException e) {
+			log.warn("Cannot read cache entry "+f+", ignoring it", e);
+			return null;
+		}
+	}
+
+	protected void writeEntry(String key, Properties entry) throws IOException {
+		if(this.cacheDir == null) {
+			return;
+		}
+		File f = indexFile(key);
+		f.getParentFile().mkdirs();
+		File tmp = File.createTempFile("entry", ".tmp", f.getParentFile());
+		try(OutputStream out = new FileOutputStream(tmp)) {
+			entry.store(out, null);
+		}
+		Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private File indexFile(String key) {
+		return new File(new File(this.cacheDir, "index"), key+".properties");
+	}
+
+	private File contentFile(String contentHash) {
+		if(this.cacheDir == null || contentHash == null) {
+			return null;
+		}
+		return new File(new File(new File(this.cacheDir, "content"), contentHash.substring(0, 2)), contentHash);
+	}
+
+	private static Resource toResource(Properties entry, File content) throws IOException {
+		return new Resource(
+				entry.getProperty("finalUrl", entry.getProperty("url")),
+				entry.getProperty("contentType"),
+				Files.readAllBytes(content.toPath())
+		);
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getRevalidated() {
+		return revalidated.get();
+	}
+
+	public long getFetched() {
+		return fetched.get();
+	}
+
+	public long getStaleServed() {
+		return staleServed.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	@Override
+	public String toString() {
+		return "HttpResourceCache [hits=" + hits + ", revalidated=" + revalidated + ", fetched=" + fetched
+				+ ", staleServed=" + staleServed + ", failures=" + failures + ", skipped=" + skipped + "]";
+	}
+
+	public File getCacheDir() {
+		return cacheDir;
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public HostCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public void setCircuitBreaker(HostCircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * A fetched or cached resource.
+	 */
+	public static class Resource {
+
+		protected String url;
+		protected String contentType;
+		protected byte[] content;
+
+		public Resource(String url, String contentType, byte[] content) {
+			super();
+			this.url = url;
+			this.contentType = contentType;
+			this.content = content;
+		}
+
+		/**
+		 * @return the URL the content was read from, after redirects
+		 */
+		public String getUrl() {
+			return url;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(content);
+		}
+	}
+
+	private static class ServerException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public ServerException(String message) {
+			super(message);
+		}
+	}
+
+	private static class HostDownException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public HostDownException(String message) {
+			super(message);
+		}
+	}
+
+	private static class ClientException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public ClientException(String message) {
+			super(message);
+		}
+	}
+
+}
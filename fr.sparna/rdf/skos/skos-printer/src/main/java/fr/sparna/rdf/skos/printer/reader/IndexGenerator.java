@@ -3,12 +3,19 @@ package fr.sparna.rdf.skos.printer.reader;
 import java.io.File;
 import java.math.BigInteger;
 import java.net.URI;
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Marshaller;
@@ -24,10 +31,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.Level;
-import fr.sparna.commons.lang.StringUtil;
+import fr.sparna.commons.lang.AccentFolder;
 import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.schema.Att;
 import fr.sparna.rdf.skos.printer.schema.Index;
 import fr.sparna.rdf.skos.printer.schema.IndexEntry;
@@ -37,6 +45,7 @@ import fr.sparna.rdf.skos.printer.schema.KosDocumentHeader;
 import fr.sparna.rdf.skos.printer.schema.Label;
 import fr.sparna.rdf.skos.printer.schema.Section;
 import fr.sparna.rdf.skos.toolkit.GetLabelsInSchemeHelper;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
 import fr.sparna.rdf.skos.toolkit.SKOS;
 
 public class IndexGenerator extends AbstractKosDisplayGenerator {
@@ -50,6 +59,11 @@ public class IndexGenerator extends AbstractKosDisplayGenerator {
 	}
 	
 	
+	// below this number of labels or entries, tokenizing and sorting are done in the calling thread
+	private static final int MIN_PARALLEL_SIZE = 2000;
+	// number of labels or entries a thread takes at once
+	private static final int BATCH_SIZE = 500;
+	
 	protected ConceptBlockReader conceptBlockReader;
 	protected IndexTokenizerIfc tokenizer;
 	protected IndexType indexType;
@@ -67,67 +81,74 @@ public class IndexGenerator extends AbstractKosDisplayGenerator {
 	@Override
 	protected KosDisplay doGenerate(String mainLang, IRI conceptScheme) {
 		
-		// init a tokenizer based on language (for stopwords)
-		this.tokenizer = new LuceneTokenizer(mainLang);
+		// get the tokenizer of the language (for stopwords)
+		this.tokenizer = LuceneTokenizer.forLanguage(mainLang);
 				
 		conceptBlockReader = new ConceptBlockReader();
-		conceptBlockReader.initInternal(mainLang, conceptScheme, this.displayId);
+		initConceptBlockReader(conceptBlockReader, mainLang, conceptScheme);
 		
 		final List<QueryResultRow> queryResultRows = new ArrayList<QueryResultRow>();
-		GetLabelsInSchemeHelper helper = new GetLabelsInSchemeHelper(
-				mainLang,
-				conceptScheme
-		) {
-			@Override
-			protected void handleLabel(
-					Literal label,
-					Literal prefLabel,
-					Resource concept
-			) throws TupleQueryResultHandlerException {
+		LabelTable labelTable = getLabelTable(conceptScheme);
+		if(labelTable != null) {
+			labelTable.visitLabelsInScheme(mainLang, (label, prefLabel, concept) -> {
 				QueryResultRow es = new QueryResultRow();
 				es.conceptURI = concept.stringValue();
-				es.label = label.stringValue();
-				es.prefLabel = (prefLabel != null)?prefLabel.stringValue():null;	
+				es.label = label;
+				es.prefLabel = prefLabel;
 				queryResultRows.add(es);
-			}
-		};
+			});
+		} else {
+			GetLabelsInSchemeHelper helper = new GetLabelsInSchemeHelper(
+					mainLang,
+					conceptScheme
+			) {
+				@Override
+				protected void handleLabel(
+						Literal label,
+						Literal prefLabel,
+						Resource concept
+				) throws TupleQueryResultHandlerException {
+					QueryResultRow es = new QueryResultRow();
+					es.conceptURI = concept.stringValue();
+					es.label = label.stringValue();
+					es.prefLabel = (prefLabel != null)?prefLabel.stringValue():null;	
+					queryResultRows.add(es);
+				}
+			};
+			
+			Perform.on(connection).select(helper);
+		}
 		
-		Perform.on(connection).select(helper);	
+		// tokenize labels in parallel, the tokenizer can be shared between threads
+		final IndexTokenizerIfc labelTokenizer = this.tokenizer;
+		List<String[]> tokens = mapInParallel(queryResultRows, () -> aRow -> labelTokenizer.tokenize(aRow.label));
 		
+		// build entries in the order of the labels, so that generated IDs do not depend on threads
+		// and remove duplicates based on the key, before and after texts
 		List<IndexEntry> entries = new ArrayList<IndexEntry>();
-		for (QueryResultRow aRow : queryResultRows) {
-			List<IndexEntry> local = buildIndexEntries(aRow, mainLang);
-			for (IndexEntry kwicEntry : local) {
-				boolean found = false;
-				for (IndexEntry existingEntry : entries) {
-					if(equals(kwicEntry, existingEntry)) {
-						found = true;
-						break;
-					}
-				}
-				
-				if(!found) {
-					entries.add(kwicEntry);
-				}
-			}
-			//entries.addAll(buildKwicEntries(aRow));
+		Set<String> entryKeys = new HashSet<String>();
+		for (int i = 0; i < queryResultRows.size(); i++) {
+			entries.addAll(buildIndexEntries(queryResultRows.get(i), tokens.get(i), entryKeys));
 		}
-		
+		log.debug("Built "+entries.size()+" index entries from "+queryResultRows.size()+" labels");
 		
 		// setup Collator
 		final Collator collator = Collator.getInstance(new Locale(mainLang));
 		collator.setStrength(Collator.SECONDARY);
 		
-		// sort entries according to the key
-		Collections.sort(entries, new Comparator<IndexEntry>() {
-			@Override
-			public int compare(IndexEntry o1, IndexEntry o2) {
-				if(o1 == null && o2 == null) return 0;
-				if(o1 == null) return -1;
-				if(o2 == null) return 1;
-				return collator.compare(o1.getKey(), o2.getKey());
-			}			
-		});
+		// precompute the collation key of each entry, instead of comparing the strings at each comparison
+		// Collator is not thread-safe, so each thread uses its own copy
+		try(RenderTrace.Timer timer = startStage("sort")) {
+			List<SortableEntry> sortableEntries = mapInParallel(entries, () -> {
+				Collator workerCollator = (Collator)collator.clone();
+				return e -> new SortableEntry(e, workerCollator.getCollationKey(e.getKey()));
+			});
+		
+			// sort entries according to the key
+			sortableEntries.sort(Comparator.comparing(e -> e.sortKey));
+			entries = sortableEntries.stream().map(e -> e.entry).collect(Collectors.toList());
+			timer.setSize(entries.size());
+		}
 		
 		// build our display	
 		KosDisplay d = new KosDisplay();
@@ -137,7 +158,7 @@ public class IndexGenerator extends AbstractKosDisplayGenerator {
 			String currentLetter = null;			
 			List<IndexEntry> currentList = new ArrayList<IndexEntry>();
 			for (IndexEntry anEntry : entries) {
-				String entrySectionTitle = StringUtil.withoutAccents(anEntry.getKey()).toUpperCase().substring(0, 1);
+				String entrySectionTitle = AccentFolder.sectionLetter(anEntry.getKey());
 				// first step only
 				if(currentLetter == null) {
 					currentLetter = entrySectionTitle;
@@ -171,6 +192,38 @@ public class IndexGenerator extends AbstractKosDisplayGenerator {
 		return d;	
 	}
 	
+	/**
+	 * Applies a function to each item, sharing the work between the calling thread and the executor of this generator
+	 * if there are enough items. Each thread gets its own function from the given factory.
+	 *
+	 * @return the results, in the order of the items
+	 */
+	protected <T, R> List<R> mapInParallel(final List<T> items, final Supplier<Function<T, R>> functionFactory) {
+		final int size = items.size();
+		final List<R> results = new ArrayList<R>(Collections.<R>nCopies(size, null));
+		if(this.executor == null || this.conceptBlockThreads <= 1 || size < MIN_PARALLEL_SIZE) {
+			Function<T, R> function = functionFactory.get();
+			for (int i = 0; i < size; i++) {
+				results.set(i, function.apply(items.get(i)));
+			}
+			return results;
+		}
+
+		final AtomicInteger next = new AtomicInteger(0);
+		Runnable worker = () -> {
+			Function<T, R> function = functionFactory.get();
+			int batchStart;
+			while((batchStart = next.getAndAdd(BATCH_SIZE)) < size) {
+				for (int i = batchStart; i < Math.min(batchStart + BATCH_SIZE, size); i++) {
+					results.set(i, function.apply(items.get(i)));
+				}
+			}
+		};
+		int workers = Math.min(this.conceptBlockThreads, (size + BATCH_SIZE - 1) / BATCH_SIZE);
+		WorkSharing.run(this.executor, workers - 1, worker, worker);
+		return results;
+	}
+	
 	protected Section createIndexSection(List<IndexEntry> entries, String title) {
 		Section s = new Section();
 		s.setTitle(title);
@@ -190,21 +243,26 @@ public class IndexGenerator extends AbstractKosDisplayGenerator {
 		String conceptURI;
 	}
 	
-	protected boolean equals(IndexEntry e1, IndexEntry e2) {
-		if(e1.getKey() != null && e2.getKey() != null && !e1.getKey().equals(e2.getKey())) {
-			return false;
-		}
-		if(e1.getBefore() != null && e2.getBefore() != null && !e1.getBefore().equals(e2.getBefore())) {
-			return false;
-		}
-		if(e1.getAfter() != null && e2.getAfter() != null && !e1.getAfter().equals(e2.getAfter())) {
-			return false;
-		}
+	class SortableEntry {
+		IndexEntry entry;
+		CollationKey sortKey;
 		
-		return true;
+		public SortableEntry(IndexEntry entry, CollationKey sortKey) {
+			this.entry = entry;
+			this.sortKey = sortKey;
+		}
 	}
 	
 	protected List<IndexEntry> buildIndexEntries(QueryResultRow r, String lang) {
+		return buildIndexEntries(r, tokenizer.tokenize(r.label), new HashSet<String>());
+	}
+	
+	/**
+	 * @param r				the label to build entries for
+	 * @param words			the tokens of the label
+	 * @param entryKeys		the keys of the entries already built; entries with the same key, before and after texts are skipped
+	 */
+	protected List<IndexEntry> buildIndexEntries(QueryResultRow r, String[] words, Set<String> entryKeys) {
 		List<IndexEntry> entries = new ArrayList<IndexEntry>();
 		String labelToProcess = r.label;
 		
@@ -213,21 +271,28 @@ public class IndexGenerator extends AbstractKosDisplayGenerator {
 		// create sourceConceptLabel and type
 		Label label = SchemaFactory.createLabel(labelToProcess, (r.prefLabel != null)?"alt":"pref");
 		
-		String[] words = tokenizer.tokenize(labelToProcess);	
-		
 		int currentOffset = 0;
 		for(int i=0; i<words.length; i++) {
 			String token = words[i];
 			if(token.length() > 1) {
 				String before = labelToProcess.substring(0, labelToProcess.indexOf(token, currentOffset));
 				String after = labelToProcess.substring(labelToProcess.indexOf(token, currentOffset) + token.length());
+				before = ((cutLabels && before.length() > 40)?"..."+before.substring(before.length()-37):before);
+				after = ((cutLabels && after.length() > 40)?after.substring(0, 37)+"...":after);
+				
+				if(!entryKeys.add(token+'\u0000'+before+'\u0000'+after)) {
+					// duplicate entry
+					currentOffset = labelToProcess.indexOf(token, currentOffset);
+					continue;
+				}
+				
 				IndexEntry entry = SchemaFactory.createIndexEntry(
 						this.conceptBlockReader.computeConceptBlockId(r.conceptURI, labelToProcess),
 						r.conceptURI,
 						label,
-						((cutLabels && before.length() > 40)?"..."+before.substring(before.length()-37):before),
+						before,
 						token,
-						((cutLabels && after.length() > 40)?after.substring(0, 37)+"...":after)
+						after
 				);
 				
 				// if the entry corresponds to an alt sourceConceptLabel, add a reference to its pref
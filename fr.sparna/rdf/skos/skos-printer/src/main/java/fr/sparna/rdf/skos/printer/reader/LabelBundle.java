@@ -0,0 +1,231 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only, memory-mapped bundle of the labels and concept schemes of the concepts of a vocabulary, used to
+ * display alignments to that vocabulary without dereferencing each aligned concept.
+ * <p>Bundles are built from a dump of the vocabulary with {@link LabelBundleWriter}. The file starts with a header
+ * (magic number, version, number of entries), followed by an index of entries sorted by the hash of their IRI, each
+ * entry of the index giving the hash and the offset of the entry data. Entries data contain the IRI, the labels by
+ * language, and the IRIs of the concept schemes. Lookups are done by binary search in the index, directly in the
+ * mapped file, so opening a bundle is immediate whatever its size.
+ * <p>A bundle can be used by multiple threads at the same time.
+ *
+ * @author Thomas Francart
+ */
+public class LabelBundle {
+
+	public static final int MAGIC = 0x534B4C42;
+	public static final int VERSION = 1;
+	// magic, version, count
+	public static final int HEADER_SIZE = 12;
+	// hash, offset
+	public static final int INDEX_ENTRY_SIZE = 16;
+
+	protected File file;
+	protected MappedByteBuffer buffer;
+	protected int size;
+
+	private LabelBundle(File file, MappedByteBuffer buffer) throws IOException {
+		this.file = file;
+		this.buffer = buffer;
+		if(buffer.getInt(0) != MAGIC) {
+			throw new IOException(file+" is not a label bundle");
+		}
+		if(buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported label bundle version "+buffer.getInt(4)+" in "+file);
+		}
+		this.size = buffer.getInt(8);
+	}
+
+	public static LabelBundle open(File file) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Label bundle "+file+" is too large ("+channel.size()+" bytes)");
+			}
+			// the mapping stays valid after the channel is closed
+			return new LabelBundle(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Opens each of the given bundle files
+	 */
+	public static List<LabelBundle> open(List<File> files) throws IOException {
+		List<LabelBundle> bundles = new ArrayList<LabelBundle>();
+		if(files != null) {
+			for (File aFile : files) {
+				bundles.add(open(aFile));
+			}
+		}
+		return bundles;
+	}
+
+	/**
+	 * Looks up an IRI in this bundle.
+	 *
+	 * @return the entry of the IRI, or null if the IRI is not in the bundle
+	 */
+	public Entry lookup(String iri) {
+		long hash = hash(iri);
+		// each lookup uses its own view of the buffer, since reading changes the position
+		ByteBuffer b = this.buffer.duplicate();
+
+		int low = 0;
+		int high = this.size - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			long midHash = b.getLong(HEADER_SIZE + mid * INDEX_ENTRY_SIZE);
+			if(midHash < hash) {
+				low = mid + 1;
+			} else if(midHash > hash) {
+				high = mid - 1;
+			} else {
+				// go back to the first entry with that hash, then check each entry with the same hash
+				while(mid > 0 && b.getLong(HEADER_SIZE + (mid - 1) * INDEX_ENTRY_SIZE) == hash) {
+					mid--;
+				}
+				for (int i = mid; i < this.size && b.getLong(HEADER_SIZE + i * INDEX_ENTRY_SIZE) == hash; i++) {
+					b.position((int)b.getLong(HEADER_SIZE + i * INDEX_ENTRY_SIZE + 8));
+					if(readString(b).equals(iri)) {
+						return readEntry(iri, b);
+					}
+				}
+				return null;
+			}
+		}
+		return null;
+	}
+
+	public boolean contains(String iri) {
+		return lookup(iri) != null;
+	}
+
+	/**
+	 * Looks up an IRI in multiple bundles
+	 *
+	 * @return the entry of the first bundle containing this IRI, or null
+	 */
+	public static Entry lookup(List<LabelBundle> bundles, String iri) {
+		if(bundles == null) {
+			return null;
+		}
+		for (LabelBundle aBundle : bundles) {
+			Entry e = aBundle.lookup(iri);
+			if(e != null) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of IRIs in this bundle
+	 */
+	public int size() {
+		return size;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	private static Entry readEntry(String iri, ByteBuffer b) {
+		Map<String, String> labels = new LinkedHashMap<String, String>();
+		int nbLabels = b.getShort() & 0xFFFF;
+		for (int i = 0; i < nbLabels; i++) {
+			String lang = readString(b);
+			labels.put(lang, readString(b));
+		}
+		List<String> schemes = new ArrayList<String>();
+		int nbSchemes = b.getShort() & 0xFFFF;
+		for (int i = 0; i < nbSchemes; i++) {
+			schemes.add(readString(b));
+		}
+		return new Entry(iri, labels, schemes);
+	}
+
+	private static String readString(ByteBuffer b) {
+		byte[] bytes = new byte[b.getInt()];
+		b.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 64-bits FNV-1a hash of the IRI, stable across JVMs
+	 */
+	static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return "LabelBundle [file=" + file + ", size=" + size + "]";
+	}
+
+	/**
+	 * The labels and concept schemes of an IRI
+	 */
+	public static class Entry {
+
+		protected String iri;
+		// labels by language, "" for labels without language
+		protected Map<String, String> labels;
+		protected List<String> schemes;
+
+		public Entry(String iri, Map<String, String> labels, List<String> schemes) {
+			super();
+			this.iri = iri;
+			this.labels = Collections.unmodifiableMap(labels);
+			this.schemes = Collections.unmodifiableList(schemes);
+		}
+
+		/**
+		 * Returns the label in the given language, or in the first fallback language having a label.
+		 *
+		 * @return the label, or null if there is no label in any of these languages
+		 */
+		public String getLabel(String lang, List<String> fallbackLanguages) {
+			String label = this.labels.get(lang);
+			if(label == null && fallbackLanguages != null) {
+				for (String aLang : fallbackLanguages) {
+					label = this.labels.get(aLang);
+					if(label != null) {
+						break;
+					}
+				}
+			}
+			return label;
+		}
+
+		public String getIri() {
+			return iri;
+		}
+
+		public Map<String, String> getLabels() {
+			return labels;
+		}
+
+		public List<String> getSchemes() {
+			return schemes;
+		}
+	}
+
+}
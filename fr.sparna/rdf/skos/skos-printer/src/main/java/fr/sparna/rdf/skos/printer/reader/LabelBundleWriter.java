@@ -0,0 +1,185 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.vocabulary.DC;
+import org.eclipse.rdf4j.model.vocabulary.DCTERMS;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.skos.toolkit.SKOS;
+
+/**
+ * Builds a {@link LabelBundle} from a dump of a vocabulary. The dump is parsed in a streaming way, only the labels
+ * and the concept schemes of the subjects are kept in memory.
+ * <p>For each language, the label is read from skos:prefLabel, or else rdfs:label, dcterms:title or dc:title, so that
+ * concept schemes and DBpedia-like resources also get a label.
+ *
+ * @author Thomas Francart
+ */
+public class LabelBundleWriter {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	// label properties, by order of preference
+	private static final List<String> LABEL_PROPERTIES = Arrays.asList(new String[] {
+			SKOS.PREF_LABEL,
+			RDFS.LABEL.stringValue(),
+			DCTERMS.TITLE.stringValue(),
+			DC.TITLE.stringValue()
+	});
+
+	protected Map<String, EntryBuilder> entries = new HashMap<String, EntryBuilder>();
+
+	/**
+	 * Reads the labels and concept schemes from an RDF dump. Can be called multiple times to merge multiple dumps in
+	 * the same bundle. Files ending in ".gz" are decompressed.
+	 */
+	public void read(File dump) throws IOException {
+		String fileName = dump.getName().endsWith(".gz")?dump.getName().substring(0, dump.getName().length() - 3):dump.getName();
+		RDFFormat format = Rio.getParserFormatForFileName(fileName).orElseThrow(() -> new IOException("Cannot determine RDF format of "+dump));
+		try(InputStream in = dump.getName().endsWith(".gz")?new GZIPInputStream(new FileInputStream(dump)):new FileInputStream(dump)) {
+			read(in, format);
+		}
+	}
+
+	public void read(InputStream in, RDFFormat format) throws IOException {
+		long start = System.currentTimeMillis();
+		RDFParser parser = Rio.createParser(format);
+		parser.setRDFHandler(new AbstractRDFHandler() {
+			@Override
+			public void handleStatement(Statement st) throws RDFHandlerException {
+				if(!(st.getSubject() instanceof IRI)) {
+					return;
+				}
+				String predicate = st.getPredicate().stringValue();
+				int rank = LABEL_PROPERTIES.indexOf(predicate);
+				if(rank >= 0 && st.getObject() instanceof Literal) {
+					Literal l = (Literal)st.getObject();
+					entry(st.getSubject().stringValue()).addLabel(l.getLanguage().orElse(""), l.getLabel(), rank);
+				} else if(predicate.equals(SKOS.IN_SCHEME) && st.getObject() instanceof IRI) {
+					entry(st.getSubject().stringValue()).schemes.add(st.getObject().stringValue());
+				}
+			}
+		});
+		parser.parse(in, "");
+		log.info("Read labels of "+this.entries.size()+" IRIs in "+(System.currentTimeMillis() - start)+" ms");
+	}
+
+	private EntryBuilder entry(String iri) {
+		return this.entries.computeIfAbsent(iri, k -> new EntryBuilder());
+	}
+
+	/**
+	 * Writes the bundle file
+	 */
+	public void write(File bundle) throws IOException {
+		// sort entries by hash of their IRI
+		List<String> iris = new ArrayList<String>(this.entries.keySet());
+		final Map<String, Long> hashes = new HashMap<String, Long>();
+		for (String anIri : iris) {
+			hashes.put(anIri, LabelBundle.hash(anIri));
+		}
+		iris.sort((i1, i2) -> Long.compare(hashes.get(i1), hashes.get(i2)));
+
+		// encode entries to know their offsets
+		List<byte[]> encoded = new ArrayList<byte[]>(iris.size());
+		for (String anIri : iris) {
+			encoded.add(encode(anIri, this.entries.get(anIri)));
+		}
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bundle)))) {
+			out.writeInt(LabelBundle.MAGIC);
+			out.writeInt(LabelBundle.VERSION);
+			out.writeInt(iris.size());
+			long offset = LabelBundle.HEADER_SIZE + (long)iris.size() * LabelBundle.INDEX_ENTRY_SIZE;
+			for (int i = 0; i < iris.size(); i++) {
+				out.writeLong(hashes.get(iris.get(i)));
+				out.writeLong(offset);
+				offset += encoded.get(i).length;
+			}
+			for (byte[] anEntry : encoded) {
+				out.write(anEntry);
+			}
+		}
+		log.info("Wrote label bundle "+bundle+" with "+iris.size()+" IRIs ("+bundle.length()+" bytes)");
+	}
+
+	private static byte[] encode(String iri, EntryBuilder entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		writeString(out, iri);
+		out.writeShort(Math.min(entry.labels.size(), 0xFFFF));
+		int n = 0;
+		for (Map.Entry<String, String> aLabel : entry.labels.entrySet()) {
+			if(n++ == 0xFFFF) break;
+			writeString(out, aLabel.getKey());
+			writeString(out, aLabel.getValue());
+		}
+		out.writeShort(Math.min(entry.schemes.size(), 0xFFFF));
+		n = 0;
+		for (String aScheme : entry.schemes) {
+			if(n++ == 0xFFFF) break;
+			writeString(out, aScheme);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static class EntryBuilder {
+		Map<String, String> labels = new HashMap<String, String>(4);
+		Map<String, Integer> labelRanks = new HashMap<String, Integer>(4);
+		Set<String> schemes = new LinkedHashSet<String>(2);
+
+		void addLabel(String lang, String label, int rank) {
+			Integer currentRank = this.labelRanks.get(lang);
+			if(currentRank == null || rank < currentRank) {
+				this.labels.put(lang, label);
+				this.labelRanks.put(lang, rank);
+			}
+		}
+	}
+
+	public static void main(String... args) throws Exception {
+		LabelBundleWriter writer = new LabelBundleWriter();
+		for (int i = 0; i < args.length - 1; i++) {
+			writer.read(new File(args[i]));
+		}
+		writer.write(new File(args[args.length - 1]));
+
+		LabelBundle bundle = LabelBundle.open(new File(args[args.length - 1]));
+		System.out.println(bundle);
+	}
+
+}
@@ -1,11 +1,14 @@
 package fr.sparna.rdf.skos.printer.reader;
 
 import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.core.StopFilter;
 import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.util.CharArraySet;
 import org.apache.lucene.analysis.util.ElisionFilter;
 
 import fr.sparna.lucene.CharArraySetFactory;
@@ -13,26 +16,53 @@ import fr.sparna.lucene.LuceneUtil;
 import fr.sparna.lucene.LuceneVersion;
 
 
+/**
+ * Tokenizes labels with a Lucene analyzer, removing stopwords and elisions of the language.
+ * <p>The Analyzer reuses its token streams per thread, so a single instance can be used by multiple threads;
+ * use <code>forLanguage</code> to get a shared instance.
+ */
 public class LuceneTokenizer implements IndexTokenizerIfc {
 
+	// max number of languages for which a tokenizer is kept, the language comes from the request
+	private static final int MAX_TOKENIZERS = 16;
+	
+	// one tokenizer per language, the least recently used are dropped
+	private static final Map<String, LuceneTokenizer> TOKENIZERS = new LinkedHashMap<String, LuceneTokenizer>(MAX_TOKENIZERS, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LuceneTokenizer> eldest) {
+			return size() > MAX_TOKENIZERS;
+		}
+	};
+	
 	protected Analyzer analyzer;
 	protected String lang;
 	
 	public LuceneTokenizer(final String lang) {
 		this.lang = lang;
+		final CharArraySet stopWords = CharArraySetFactory.createStopWordsFactory().createCharArraySet(lang, true);
+		final CharArraySet contractions = CharArraySetFactory.createContractionsFactory().createCharArraySet(lang, true);
 		analyzer = new Analyzer() {
 			
 			@Override
 			protected TokenStreamComponents createComponents(String arg0, Reader reader) {
 				Tokenizer source = new StandardTokenizer(LuceneVersion.VERSION, reader);
-				StopFilter stopFilter = new StopFilter(LuceneVersion.VERSION, source, CharArraySetFactory.createStopWordsFactory().createCharArraySet(lang, true));
-				ElisionFilter elisionFilter = new ElisionFilter(stopFilter, CharArraySetFactory.createContractionsFactory().createCharArraySet(lang, true));
+				StopFilter stopFilter = new StopFilter(LuceneVersion.VERSION, source, stopWords);
+				ElisionFilter elisionFilter = new ElisionFilter(stopFilter, contractions);
 				return new TokenStreamComponents(source, elisionFilter);
 			}
 			
 		};
 	}
 	
+	/**
+	 * @return a shared tokenizer for the given language
+	 */
+	public static LuceneTokenizer forLanguage(String lang) {
+		synchronized(TOKENIZERS) {
+			return TOKENIZERS.computeIfAbsent(lang, l -> new LuceneTokenizer(l));
+		}
+	}
+	
 	@Override
 	public String[] tokenize(String s) {
 		return LuceneUtil.tokenizeString(this.analyzer, s).toArray(new String[] {});
@@ -0,0 +1,168 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.skos.printer.RenderTrace;
+import fr.sparna.rdf.skos.printer.schema.KosDocumentBody;
+import fr.sparna.rdf.skos.toolkit.DatasetFingerprint;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
+
+/**
+ * Reads the body of the document of every concept scheme of a dataset, reading the labels and the concepts of all
+ * the schemes in a single pass, instead of one pass per scheme.
+ * <p>The labels are loaded once in a {@link LabelTable} with <code>LabelTable.loadForAllSchemes</code>, which also
+ * routes each concept to the schemes it belongs to. Then, for each scheme, the generators created by the
+ * {@link GeneratorFactory} are run by a {@link BodyReader} on the view of the table for that scheme, so they only
+ * iterate on the concepts of that scheme, and share the labels with the generators of the other schemes.
+ * The cache of concept blocks and the trace, if set, are shared by all the schemes.
+ * <p>Concepts that are not in any scheme are not included.
+ *
+ * @author Thomas Francart
+ */
+public class MultiSchemeBodyReader {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	protected RepositoryConnection connection;
+
+	// creates the generators of the document of each scheme
+	protected GeneratorFactory generatorFactory;
+
+	// labels and concepts of all schemes; loaded on first read if not set
+	protected LabelTable labelTable;
+
+	// maximum number of generators to run at the same time, for each scheme
+	protected int maxThreads = Runtime.getRuntime().availableProcessors();
+
+	// executor shared by the application, can be null
+	protected ExecutorService executor;
+
+	// records the stages of the reading, can be null
+	protected RenderTrace trace;
+
+	// cache of concept block attributes, can be null
+	protected ConceptBlockCache conceptBlockCache;
+	// fingerprint of the dataset, part of the keys of the concept block cache, can be null
+	protected DatasetFingerprint datasetFingerprint;
+
+	public MultiSchemeBodyReader(RepositoryConnection connection, GeneratorFactory generatorFactory) {
+		super();
+		this.connection = connection;
+		this.generatorFactory = generatorFactory;
+	}
+
+	/**
+	 * @return the concept schemes of the dataset that contain at least one concept, in the order they were read
+	 */
+	public List<IRI> getConceptSchemes() {
+		return getLabelTable().getConceptSchemes();
+	}
+
+	/**
+	 * Reads the body of the document of each concept scheme.
+	 *
+	 * @param mainLang	language of the documents
+	 * @return the body of each document, by concept scheme, in the order of the schemes
+	 */
+	public Map<IRI, KosDocumentBody> readBodies(String mainLang) {
+		LabelTable table = getLabelTable();
+		Map<IRI, KosDocumentBody> bodies = new LinkedHashMap<IRI, KosDocumentBody>();
+		for (IRI aScheme : table.getConceptSchemes()) {
+			long start = System.currentTimeMillis();
+			BodyReader bodyReader = new BodyReader(this.generatorFactory.createGenerators(this.connection, aScheme));
+			bodyReader.setLabelTable(table.forScheme(aScheme));
+			bodyReader.setMaxThreads(this.maxThreads);
+			bodyReader.setExecutor(this.executor);
+			bodyReader.setTrace(this.trace);
+			if(this.conceptBlockCache != null) {
+				bodyReader.setConceptBlockCache(this.conceptBlockCache);
+				bodyReader.setDatasetFingerprint(this.datasetFingerprint);
+			}
+			bodies.put(aScheme, bodyReader.readBody(mainLang, aScheme));
+			log.debug("Read body of scheme "+aScheme+" in "+(System.currentTimeMillis() - start)+" ms");
+		}
+		return bodies;
+	}
+
+	/**
+	 * @return the label table of all schemes, loaded if needed
+	 */
+	public LabelTable getLabelTable() {
+		if(this.labelTable == null || !this.labelTable.isLoadedForAllSchemes()) {
+			// when tracing, count the queries sent to load the labels
+			QueryCountingConnection countingConnection = (this.trace != null)?new QueryCountingConnection(this.connection):null;
+			try(RenderTrace.Timer timer = RenderTrace.start(this.trace, "labels")) {
+				this.labelTable = LabelTable.loadForAllSchemes((countingConnection != null)?countingConnection:this.connection);
+				if(countingConnection != null) {
+					timer.setQueryCount(countingConnection.getQueryCount());
+					timer.setSize(this.labelTable.size());
+				}
+			}
+		}
+		return labelTable;
+	}
+
+	/**
+	 * Sets the label table to use, which must have been loaded with <code>LabelTable.loadForAllSchemes</code>.
+	 */
+	public void setLabelTable(LabelTable labelTable) {
+		this.labelTable = labelTable;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public RenderTrace getTrace() {
+		return trace;
+	}
+
+	public void setTrace(RenderTrace trace) {
+		this.trace = trace;
+	}
+
+	public ConceptBlockCache getConceptBlockCache() {
+		return conceptBlockCache;
+	}
+
+	public void setConceptBlockCache(ConceptBlockCache conceptBlockCache) {
+		this.conceptBlockCache = conceptBlockCache;
+	}
+
+	public DatasetFingerprint getDatasetFingerprint() {
+		return datasetFingerprint;
+	}
+
+	public void setDatasetFingerprint(DatasetFingerprint datasetFingerprint) {
+		this.datasetFingerprint = datasetFingerprint;
+	}
+
+	/**
+	 * Creates the generators of the document of a concept scheme. A new set of generators is needed for each scheme,
+	 * since generators keep the state of the document they generate.
+	 */
+	public interface GeneratorFactory {
+		public List<AbstractKosDisplayGenerator> createGenerators(RepositoryConnection connection, IRI conceptScheme);
+	}
+
+}
@@ -0,0 +1,111 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.skos.printer.schema.ConceptBlock;
+
+/**
+ * Builds a list of concept blocks in two passes : the data of the blocks is first read concurrently, then the blocks
+ * are assembled one after the other, in their original order.
+ * <p>Reading is shared between the calling thread and the threads of the executor shared by the application : each
+ * thread uses its own copy of the ConceptBlockReader and its own connection to the repository, and picks the next
+ * batch of blocks to read until all are read.
+ * <p>Assembling the blocks allocates the IDs of the blocks and of their references. Since the
+ * {@link ConceptBlockIdAllocator} resolves hash collisions in the order in which IDs are allocated, doing it in a
+ * single thread, in the order of the blocks, keeps the IDs identical from one run to the next.
+ *
+ * @author Thomas Francart
+ */
+public class ParallelConceptBlockBuilder {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	// below this number of blocks, it is not worth sharing the work
+	public static final int MIN_PARALLEL_SIZE = 200;
+
+	// number of blocks a thread takes at once
+	private static final int BATCH_SIZE = 50;
+
+	// executor shared by the application, null to read everything in the calling thread
+	protected ExecutorService executor;
+	protected int threads;
+
+	public ParallelConceptBlockBuilder(ExecutorService executor, int threads) {
+		super();
+		this.executor = executor;
+		this.threads = threads;
+	}
+
+	/**
+	 * Builds a concept block for each index between 0 and size.
+	 *
+	 * @param size			number of blocks to build
+	 * @param cbReader		the reader to use, or to copy for each thread
+	 * @param connection	the connection to use, or to get a repository from to open a connection for each thread
+	 * @param read			reads the data of the block at a given index, called concurrently
+	 * @param assemble		builds the block at a given index from its data, called in the order of the indexes
+	 * @return the blocks, in the order of the indexes
+	 */
+	public <T> List<ConceptBlock> build(
+			final int size,
+			final ConceptBlockReader cbReader,
+			final RepositoryConnection connection,
+			final ReadFunction<T> read,
+			final AssembleFunction<T> assemble
+	) {
+		final List<T> data = new ArrayList<T>(Collections.<T>nCopies(size, null));
+
+		if(this.executor == null || this.threads <= 1 || size < MIN_PARALLEL_SIZE) {
+			for (int i = 0; i < size; i++) {
+				data.set(i, read.apply(cbReader, connection, i));
+			}
+		} else {
+			long start = System.currentTimeMillis();
+			final AtomicInteger next = new AtomicInteger(0);
+			int workers = Math.min(this.threads, (size + BATCH_SIZE - 1) / BATCH_SIZE);
+			WorkSharing.run(
+					this.executor,
+					workers - 1,
+					() -> readBatches(next, size, cbReader, connection, read, data),
+					() -> {
+						try(RepositoryConnection workerConnection = connection.getRepository().getConnection()) {
+							readBatches(next, size, cbReader.copy(), workerConnection, read, data);
+						}
+					}
+			);
+			log.debug("Read "+size+" concept blocks with up to "+workers+" threads in "+(System.currentTimeMillis() - start)+" ms");
+		}
+
+		List<ConceptBlock> blocks = new ArrayList<ConceptBlock>(size);
+		for (int i = 0; i < size; i++) {
+			blocks.add(assemble.apply(cbReader, data.get(i), i));
+		}
+		return blocks;
+	}
+
+	private <T> void readBatches(AtomicInteger next, int size, ConceptBlockReader reader, RepositoryConnection connection, ReadFunction<T> read, List<T> data) {
+		int batchStart;
+		while((batchStart = next.getAndAdd(BATCH_SIZE)) < size) {
+			for (int i = batchStart; i < Math.min(batchStart + BATCH_SIZE, size); i++) {
+				data.set(i, read.apply(reader, connection, i));
+			}
+		}
+	}
+
+	public interface ReadFunction<T> {
+		public T apply(ConceptBlockReader cbReader, RepositoryConnection connection, int index);
+	}
+
+	public interface AssembleFunction<T> {
+		public ConceptBlock apply(ConceptBlockReader cbReader, T data, int index);
+	}
+
+}
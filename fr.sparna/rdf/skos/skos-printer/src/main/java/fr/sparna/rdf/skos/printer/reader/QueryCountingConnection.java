@@ -0,0 +1,82 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.Query;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+
+/**
+ * Wraps a connection to count the queries and statement lookups sent through it. Closing this connection does
+ * <em>not</em> close the wrapped connection, so that it can be given temporarily to a display generator.
+ *
+ * @author Thomas Francart
+ */
+public class QueryCountingConnection extends RepositoryConnectionWrapper {
+
+	private AtomicLong queryCount = new AtomicLong();
+
+	public QueryCountingConnection(RepositoryConnection delegate) {
+		super(delegate.getRepository(), delegate);
+	}
+
+	@Override
+	public Query prepareQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException, RepositoryException {
+		this.queryCount.incrementAndGet();
+		return super.prepareQuery(ql, query, baseURI);
+	}
+
+	@Override
+	public TupleQuery prepareTupleQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException, RepositoryException {
+		this.queryCount.incrementAndGet();
+		return super.prepareTupleQuery(ql, query, baseURI);
+	}
+
+	@Override
+	public GraphQuery prepareGraphQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException, RepositoryException {
+		this.queryCount.incrementAndGet();
+		return super.prepareGraphQuery(ql, query, baseURI);
+	}
+
+	@Override
+	public BooleanQuery prepareBooleanQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException, RepositoryException {
+		this.queryCount.incrementAndGet();
+		return super.prepareBooleanQuery(ql, query, baseURI);
+	}
+
+	@Override
+	public RepositoryResult<Statement> getStatements(Resource subj, IRI pred, Value obj, boolean includeInferred, Resource... contexts) throws RepositoryException {
+		this.queryCount.incrementAndGet();
+		return super.getStatements(subj, pred, obj, includeInferred, contexts);
+	}
+
+	@Override
+	public boolean hasStatement(Resource subj, IRI pred, Value obj, boolean includeInferred, Resource... contexts) throws RepositoryException {
+		this.queryCount.incrementAndGet();
+		return super.hasStatement(subj, pred, obj, includeInferred, contexts);
+	}
+
+	@Override
+	public void close() throws RepositoryException {
+		// the wrapped connection is owned by the caller
+	}
+
+	/**
+	 * @return the number of queries and statement lookups sent through this connection
+	 */
+	public long getQueryCount() {
+		return this.queryCount.get();
+	}
+
+}
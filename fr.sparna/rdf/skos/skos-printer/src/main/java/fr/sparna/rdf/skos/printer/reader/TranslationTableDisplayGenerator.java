@@ -22,11 +22,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.Level;
-import fr.sparna.commons.lang.StringUtil;
+import fr.sparna.commons.lang.AccentFolder;
 import fr.sparna.rdf.rdf4j.toolkit.languages.Languages;
 import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.schema.ConceptBlock;
 import fr.sparna.rdf.skos.printer.schema.KosDisplay;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
@@ -34,6 +35,7 @@ import fr.sparna.rdf.skos.printer.schema.KosDocumentHeader;
 import fr.sparna.rdf.skos.printer.schema.Section;
 import fr.sparna.rdf.skos.printer.schema.Table;
 import fr.sparna.rdf.skos.toolkit.GetTranslationTableInSchemeHelper;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
 
 public class TranslationTableDisplayGenerator extends AbstractKosDisplayGenerator {
 
@@ -61,54 +63,71 @@ public class TranslationTableDisplayGenerator extends AbstractKosDisplayGenerato
 	{
 
 		// init ConceptBlockReader
-		this.cbReader.initInternal(lang, conceptScheme, this.displayId);
+		initConceptBlockReader(this.cbReader, lang, conceptScheme);
 		
 		// prepare body
 		KosDisplay d = new KosDisplay();
 		
 		// query for all the prefLabels correspondance
 		final List<QueryResultRow> queryResultRows = new ArrayList<QueryResultRow>();
-		GetTranslationTableInSchemeHelper helper = new GetTranslationTableInSchemeHelper(
-				lang,
-				targetLanguage,
-				conceptScheme
-		) {
-
-			@Override
-			protected void handleTranslation(
-					Resource concept,
-					Literal label1,
-					Literal label2
-			) throws TupleQueryResultHandlerException {
+		LabelTable labelTable = getLabelTable(conceptScheme);
+		if(labelTable != null) {
+			// rows are sorted once by the matrix, shared with the other translation tables : the sort is part of the
+			// reading of the first display that needs it, and is not timed separately
+			labelTable.getTranslationMatrix().visitTranslations(lang, targetLanguage, lang, (concept, label1, label2) -> {
 				QueryResultRow qrr = new QueryResultRow();
 				qrr.conceptURI = concept.stringValue();
 				// if no sourceConceptLabel in the main language, set the URI
-				qrr.label1 = (label1 != null)?label1.stringValue():concept.stringValue();
-				qrr.label2 = (label2 != null)?label2.stringValue():null;
+				qrr.label1 = (label1 != null)?label1:concept.stringValue();
+				qrr.label2 = label2;
 				queryResultRows.add(qrr);
-			}
+			});
+		} else {
+			GetTranslationTableInSchemeHelper helper = new GetTranslationTableInSchemeHelper(
+					lang,
+					targetLanguage,
+					conceptScheme
+			) {
+	
+				@Override
+				protected void handleTranslation(
+						Resource concept,
+						Literal label1,
+						Literal label2
+				) throws TupleQueryResultHandlerException {
+					QueryResultRow qrr = new QueryResultRow();
+					qrr.conceptURI = concept.stringValue();
+					// if no sourceConceptLabel in the main language, set the URI
+					qrr.label1 = (label1 != null)?label1.stringValue():concept.stringValue();
+					qrr.label2 = (label2 != null)?label2.stringValue():null;
+					queryResultRows.add(qrr);
+				}
+				
+			};
 			
-		};
-		
-		// execute fetch translations
-		Perform.on(connection).select(helper);				
+			// execute fetch translations
+			Perform.on(connection).select(helper);
 
-		// setup Collator
-		final Collator collator = Collator.getInstance(new Locale(lang));
-		collator.setStrength(Collator.SECONDARY);
-		// sort rows on first cell
-		Collections.sort(queryResultRows, new Comparator<QueryResultRow>() {
-			@Override
-			public int compare(QueryResultRow o1, QueryResultRow o2) {
-				if((o1 == null || o1.label1 == null) && (o2 == null || o2.label1 == null)) return 0;
-				if(o1 == null || o1.label1 == null) return 1;
-				if(o2 == null || o2.label1 == null) return -1;
-				return collator.compare(
-						o1.label1,
-						o2.label1
-				);
-			}			
-		});
+			// setup Collator
+			final Collator collator = Collator.getInstance(new Locale(lang));
+			collator.setStrength(Collator.SECONDARY);
+			// sort rows on first cell
+			try(RenderTrace.Timer timer = startStage("sort")) {
+				Collections.sort(queryResultRows, new Comparator<QueryResultRow>() {
+					@Override
+					public int compare(QueryResultRow o1, QueryResultRow o2) {
+						if((o1 == null || o1.label1 == null) && (o2 == null || o2.label1 == null)) return 0;
+						if(o1 == null || o1.label1 == null) return 1;
+						if(o2 == null || o2.label1 == null) return -1;
+						return collator.compare(
+								o1.label1,
+								o2.label1
+						);
+					}			
+				});
+				timer.setSize(queryResultRows.size());
+			}
+		}
 		
 		boolean addSections = queryResultRows.size() > 200;
 		log.debug("Processing "+queryResultRows.size()+" entries.");
@@ -120,7 +139,7 @@ public class TranslationTableDisplayGenerator extends AbstractKosDisplayGenerato
 				ConceptBlock cb1 = cbReader.readConceptBlock(connection, aRow.conceptURI, aRow.label1, cbReader.computeConceptBlockId(aRow.conceptURI, aRow.label1+"-"+lang), false);
 				ConceptBlock cb2 = cbReader.readConceptBlock(connection, aRow.conceptURI, aRow.label2, cbReader.computeConceptBlockId(aRow.conceptURI, aRow.label2+"-"+this.targetLanguage), false);
 				
-				String sectionTitle = StringUtil.withoutAccents(aRow.label1).toUpperCase().substring(0, 1);
+				String sectionTitle = AccentFolder.sectionLetter(aRow.label1);
 				if(currentSection == null || !sectionTitle.equals(currentSection.getTitle())) {
 					// on est passé à une nouvelle section
 					
@@ -28,6 +28,7 @@ import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilder;
 import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilderFactory;
 import fr.sparna.rdf.skos.printer.DisplayPrinter;
+import fr.sparna.rdf.skos.printer.RenderTrace;
 import fr.sparna.rdf.skos.printer.schema.ConceptBlock;
 import fr.sparna.rdf.skos.printer.schema.KosDisplay;
 import fr.sparna.rdf.skos.printer.schema.KosDocument;
@@ -35,6 +36,7 @@ import fr.sparna.rdf.skos.printer.schema.KosDocumentHeader;
 import fr.sparna.rdf.skos.printer.schema.Section;
 import fr.sparna.rdf.skos.printer.schema.Table;
 import fr.sparna.rdf.skos.toolkit.GetTranslationTableInSchemeHelper;
+import fr.sparna.rdf.skos.toolkit.LabelTable;
 
 public class TranslationTableReverseDisplayGenerator extends AbstractKosDisplayGenerator {
 
@@ -61,58 +63,75 @@ public class TranslationTableReverseDisplayGenerator extends AbstractKosDisplayG
 	public KosDisplay doGenerate(final String lang, final IRI conceptScheme) {
 
 		// init ConceptBlockReader
-		this.cbReader.initInternal(lang, conceptScheme, this.displayId);
+		initConceptBlockReader(this.cbReader, lang, conceptScheme);
 		
 		// prepare body
 		KosDisplay d = new KosDisplay();
 		
 		// query for all the prefLabels correspondance
 		final List<QueryResultRow> queryResultRows = new ArrayList<QueryResultRow>();
-		GetTranslationTableInSchemeHelper helper = new GetTranslationTableInSchemeHelper(
-				lang,
-				targetLanguage,
-				conceptScheme
-		) {
-
-			@Override
-			protected void handleTranslation(
-					Resource concept,
-					Literal label1,
-					Literal label2
-			) throws TupleQueryResultHandlerException {
+		LabelTable labelTable = getLabelTable(conceptScheme);
+		if(labelTable != null) {
+			// rows are sorted once by the matrix, shared with the other translation tables : the sort is part of the
+			// reading of the first display that needs it, and is not timed separately
+			labelTable.getTranslationMatrix().visitTranslations(lang, targetLanguage, targetLanguage, (concept, label1, label2) -> {
 				QueryResultRow qrr = new QueryResultRow();
 				qrr.conceptURI = concept.stringValue();
 				// if no sourceConceptLabel in the main language, set the URI
-				qrr.label1 = (label1 != null)?label1.stringValue():concept.stringValue();
-				qrr.label2 = (label2 != null)?label2.stringValue():null;
+				qrr.label1 = (label1 != null)?label1:concept.stringValue();
+				qrr.label2 = label2;
 				queryResultRows.add(qrr);
-			}
+			});
+		} else {
+			GetTranslationTableInSchemeHelper helper = new GetTranslationTableInSchemeHelper(
+					lang,
+					targetLanguage,
+					conceptScheme
+			) {
+	
+				@Override
+				protected void handleTranslation(
+						Resource concept,
+						Literal label1,
+						Literal label2
+				) throws TupleQueryResultHandlerException {
+					QueryResultRow qrr = new QueryResultRow();
+					qrr.conceptURI = concept.stringValue();
+					// if no sourceConceptLabel in the main language, set the URI
+					qrr.label1 = (label1 != null)?label1.stringValue():concept.stringValue();
+					qrr.label2 = (label2 != null)?label2.stringValue():null;
+					queryResultRows.add(qrr);
+				}
+				
+			};
 			
-		};
-		
-		// execute fetch translations
-		Perform.on(connection).select(helper);	
+			// execute fetch translations
+			Perform.on(connection).select(helper);
 
-		// setup Collator
-		final Collator collator = Collator.getInstance(new Locale(this.targetLanguage));
-		collator.setStrength(Collator.SECONDARY);
-		// sort rows on first cell
-		Collections.sort(queryResultRows, new Comparator<QueryResultRow>() {
-			@Override
-			public int compare(QueryResultRow o1, QueryResultRow o2) {
-				// both are null
-				if((o1 == null || o1.label2 == null) && (o2 == null || o2.label2 == null)) return 0;
-				// only o1 is null
-				if(o1 == null || o1.label2 == null) return 1;
-				// only o2 is null
-				if(o2 == null || o2.label2 == null) return -1;
-				// none is null
-				return collator.compare(
-						o1.label2,
-						o2.label2
-				);
-			}			
-		});
+			// setup Collator
+			final Collator collator = Collator.getInstance(new Locale(this.targetLanguage));
+			collator.setStrength(Collator.SECONDARY);
+			// sort rows on first cell
+			try(RenderTrace.Timer timer = startStage("sort")) {
+				Collections.sort(queryResultRows, new Comparator<QueryResultRow>() {
+					@Override
+					public int compare(QueryResultRow o1, QueryResultRow o2) {
+						// both are null
+						if((o1 == null || o1.label2 == null) && (o2 == null || o2.label2 == null)) return 0;
+						// only o1 is null
+						if(o1 == null || o1.label2 == null) return 1;
+						// only o2 is null
+						if(o2 == null || o2.label2 == null) return -1;
+						// none is null
+						return collator.compare(
+								o1.label2,
+								o2.label2
+						);
+					}			
+				});
+				timer.setSize(queryResultRows.size());
+			}
+		}
 		
 		
 		log.debug("Single section added to output");
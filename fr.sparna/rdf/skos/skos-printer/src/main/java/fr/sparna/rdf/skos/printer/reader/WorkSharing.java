@@ -0,0 +1,101 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares some work between the calling thread and the threads of an executor shared by the whole application.
+ * <p>The work is done by workers picking the next item to process until there is none left : the calling thread runs
+ * a worker itself, and up to <code>helpers</code> other workers are submitted to the executor. Helpers that have not
+ * started when the calling thread runs out of work are cancelled, so that the calling thread never waits for a task
+ * queued behind others; this is what allows tasks running on the executor to share their own work on the same
+ * executor without risking a deadlock.
+ *
+ * @author Thomas Francart
+ */
+class WorkSharing {
+
+	/**
+	 * @param executor		the shared executor, null to do all the work in the calling thread
+	 * @param helpers		max number of workers to submit to the executor
+	 * @param callerWorker	the worker run by the calling thread
+	 * @param helperWorker	the worker run by each helper
+	 */
+	static void run(ExecutorService executor, int helpers, Runnable callerWorker, Runnable helperWorker) {
+		List<Helper> started = new ArrayList<Helper>();
+		if(executor != null) {
+			for (int i = 0; i < helpers; i++) {
+				Helper aHelper = new Helper(helperWorker);
+				try {
+					aHelper.future = executor.submit(aHelper);
+				} catch (RejectedExecutionException e) {
+					// executor saturated or shut down, the calling thread does the remaining work
+					break;
+				}
+				started.add(aHelper);
+			}
+		}
+
+		Throwable failure = null;
+		try {
+			callerWorker.run();
+		} catch (RuntimeException | Error e) {
+			failure = e;
+		}
+
+		for (Helper aHelper : started) {
+			// a helper that did not start would find no work left
+			if(aHelper.state.compareAndSet(Helper.WAITING, Helper.CANCELLED)) {
+				aHelper.future.cancel(false);
+				continue;
+			}
+			try {
+				aHelper.future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				if(failure == null) {
+					failure = e.getCause();
+				}
+			}
+		}
+
+		if(failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		}
+		if(failure instanceof Error) {
+			throw (Error)failure;
+		}
+		if(failure != null) {
+			throw new RuntimeException(failure);
+		}
+	}
+
+	private static class Helper implements Runnable {
+		private static final int WAITING = 0;
+		private static final int RUNNING = 1;
+		private static final int CANCELLED = 2;
+
+		private final Runnable worker;
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+		private Future<?> future;
+
+		public Helper(Runnable worker) {
+			this.worker = worker;
+		}
+
+		@Override
+		public void run() {
+			if(this.state.compareAndSet(WAITING, RUNNING)) {
+				this.worker.run();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package fr.sparna.rdf.skos.printer.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpResourceCacheTest {
+
+	private static final String ETAG = "\"v1\"";
+	private static final String CONTENT = "<http://example.org/c> <http://www.w3.org/2004/02/skos/core#prefLabel> \"c\" .";
+
+	private HttpServer server;
+	private File cacheDir;
+	private AtomicInteger calls = new AtomicInteger();
+
+	@Before
+	public void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/concept", exchange -> {
+			calls.incrementAndGet();
+			if(ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("ETag", ETAG);
+				exchange.getResponseHeaders().set("Content-Type", "application/n-triples");
+				exchange.sendResponseHeaders(200, bytes.length);
+				try(OutputStream out = exchange.getResponseBody()) {
+					out.write(bytes);
+				}
+			}
+			exchange.close();
+		});
+		server.createContext("/broken", exchange -> {
+			calls.incrementAndGet();
+			exchange.sendResponseHeaders(500, -1);
+			exchange.close();
+		});
+		server.start();
+		cacheDir = Files.createTempDirectory("http-cache").toFile();
+	}
+
+	@After
+	public void after() {
+		server.stop(0);
+	}
+
+	private String url(String path) {
+		return "http://127.0.0.1:"+server.getAddress().getPort()+path;
+	}
+
+	@Test
+	public void testRevalidation() throws IOException {
+		HttpResourceCache cache = new HttpResourceCache(cacheDir);
+
+		HttpResourceCache.Resource r = cache.get(url("/concept"), "application/n-triples");
+		Assert.assertEquals(CONTENT, new String(r.getContent(), StandardCharsets.UTF_8));
+		Assert.assertEquals(1, calls.get());
+
+		// fresh : served from disk
+		cache.get(url("/concept"), "application/n-triples");
+		Assert.assertEquals(1, calls.get());
+		Assert.assertEquals(1, cache.getHits());
+
+		// stale : revalidated with the ETag
+		cache.setTtl(0);
+		r = cache.get(url("/concept"), "application/n-triples");
+		Assert.assertEquals(CONTENT, new String(r.getContent(), StandardCharsets.UTF_8));
+		Assert.assertEquals(2, calls.get());
+		Assert.assertEquals(1, cache.getRevalidated());
+	}
+
+	@Test
+	public void testCircuitBreaker() {
+		HttpResourceCache cache = new HttpResourceCache(cacheDir);
+		cache.setCircuitBreaker(new HostCircuitBreaker(2, 60000));
+
+		for (int i = 0; i < 5; i++) {
+			try {
+				cache.get(url("/broken"), null);
+				Assert.fail();
+			} catch (IOException expected) {
+			}
+		}
+		// the host is not called anymore after 2 failures
+		Assert.assertEquals(2, calls.get());
+		Assert.assertEquals(3, cache.getSkipped());
+	}
+
+}
@@ -0,0 +1,221 @@
+package fr.sparna.rdf.skos.toolkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+
+/**
+ * Computes a fingerprint of the content of a repository, to be used as part of a cache key for anything derived
+ * from that content (generated documents, visualisation data...).
+ * <p>The fingerprint is independent of the order in which statements are returned : each statement is hashed
+ * separately, and the statement hashes are combined with commutative operations, along with the number of
+ * statements. Blank nodes are hashed on their identifier, so the same file loaded twice in 2 different repositories
+ * may not have the same fingerprint if it contains blank nodes; the fingerprint of a given repository is stable as
+ * long as its content does not change.
+ * <p>Computing the fingerprint reads all the explicit statements of the repository once. The same pass can also
+ * compute a hash of each IRI (see <code>read</code>), that changes only when something displayed about this IRI
+ * changes : its own statements, in both directions, and the labels, notations and schemes of the resources it is
+ * linked to. This allows to keep what was derived from a single concept when other concepts are modified.
+ *
+ * @author Thomas Francart
+ */
+public class DatasetFingerprint {
+
+	// predicates describing a resource when it is displayed as a link from another one
+	private static final Set<String> LINK_PREDICATES = new HashSet<String>(Arrays.asList(
+			SKOS.PREF_LABEL,
+			SKOS.NOTATION,
+			SKOS.IN_SCHEME
+	));
+
+	protected String value;
+	// hash of each IRI, by IRI
+	protected Map<String, Long> iriHashes;
+
+	private DatasetFingerprint(String value, Map<String, Long> iriHashes) {
+		this.value = value;
+		this.iriHashes = iriHashes;
+	}
+
+	/**
+	 * @return the fingerprint of the whole dataset, the same as returned by <code>compute</code>
+	 */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the hash of the statements around the given IRI and of the labels of the resources it is linked to,
+	 * 0 if the IRI does not appear in the dataset
+	 */
+	public long getIriHash(String iri) {
+		Long h = this.iriHashes.get(iri);
+		return (h != null)?h:0;
+	}
+
+	@Override
+	public String toString() {
+		return value;
+	}
+
+	/**
+	 * Computes the fingerprint of the explicit statements readable through the given connection, along with the hash
+	 * of each IRI, in a single pass.
+	 */
+	public static DatasetFingerprint read(RepositoryConnection connection) {
+		long count = 0;
+		long sum = 0;
+		long xor = 0;
+
+		// resources are numbered in the order in which they are found
+		Map<Resource, Integer> ids = new HashMap<Resource, Integer>();
+		List<Resource> resources = new ArrayList<Resource>();
+		// hash of the statements having the resource as subject or object
+		long[] around = new long[1024];
+		// hash of the statements describing the resource when it is linked from another one
+		long[] described = new long[1024];
+		// subject and object of each statement between two resources
+		long[] links = new long[1024];
+		int linkCount = 0;
+
+		try(RepositoryResult<Statement> statements = connection.getStatements(null, null, null, false)) {
+			while(statements.hasNext()) {
+				Statement st = statements.next();
+				long h = hash(st);
+				sum += h;
+				xor ^= mix(h);
+				count++;
+
+				int s = id(ids, resources, st.getSubject());
+				int o = (st.getObject() instanceof Resource)?id(ids, resources, (Resource)st.getObject()):-1;
+				if(resources.size() > around.length) {
+					around = Arrays.copyOf(around, Math.max(resources.size(), around.length * 2));
+					described = Arrays.copyOf(described, around.length);
+				}
+
+				around[s] += mix(h);
+				if(LINK_PREDICATES.contains(st.getPredicate().stringValue())) {
+					described[s] += mix(h);
+				}
+				if(o >= 0) {
+					around[o] += mix(h);
+					if(linkCount == links.length) {
+						links = Arrays.copyOf(links, links.length * 2);
+					}
+					links[linkCount++] = ((long)s << 32) | o;
+				}
+			}
+		}
+
+		// add what is displayed of the linked resources
+		for (int i = 0; i < linkCount; i++) {
+			int s = (int)(links[i] >>> 32);
+			int o = (int)links[i];
+			around[s] += mix(described[o] ^ 0x5bd1e995L);
+			around[o] += mix(described[s] ^ 0x5bd1e995L);
+		}
+
+		Map<String, Long> iriHashes = new HashMap<String, Long>();
+		for (int i = 0; i < resources.size(); i++) {
+			if(resources.get(i) instanceof IRI) {
+				iriHashes.put(resources.get(i).stringValue(), around[i]);
+			}
+		}
+
+		return new DatasetFingerprint(
+				Long.toHexString(count)+"-"+Long.toHexString(sum)+"-"+Long.toHexString(xor),
+				Collections.unmodifiableMap(iriHashes)
+		);
+	}
+
+	private static int id(Map<Resource, Integer> ids, List<Resource> resources, Resource r) {
+		Integer id = ids.get(r);
+		if(id == null) {
+			id = resources.size();
+			ids.put(r, id);
+			resources.add(r);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the fingerprint of the explicit statements readable through the given connection
+	 */
+	public static String compute(RepositoryConnection connection) {
+		long count = 0;
+		long sum = 0;
+		long xor = 0;
+		try(RepositoryResult<Statement> statements = connection.getStatements(null, null, null, false)) {
+			while(statements.hasNext()) {
+				long h = hash(statements.next());
+				sum += h;
+				xor ^= mix(h);
+				count++;
+			}
+		}
+		return Long.toHexString(count)+"-"+Long.toHexString(sum)+"-"+Long.toHexString(xor);
+	}
+
+	/**
+	 * @return a 64-bits hash of a single statement, stable across JVMs
+	 */
+	public static long hash(Statement st) {
+		long h = 0xcbf29ce484222325L;
+		h = hash(h, st.getSubject());
+		h = hash(h, st.getPredicate());
+		h = hash(h, st.getObject());
+		h = hash(h, st.getContext());
+		return h;
+	}
+
+	private static long hash(long h, Value v) {
+		if(v == null) {
+			return hash(h, '\u0000');
+		}
+		if(v instanceof Literal) {
+			Literal l = (Literal)v;
+			h = hash(hash(h, '"'), l.getLabel());
+			h = (l.getLanguage().isPresent())?hash(hash(h, '@'), l.getLanguage().get()):hash(hash(h, '^'), l.getDatatype().stringValue());
+		} else {
+			h = hash(hash(h, (v instanceof BNode)?'_':'<'), v.stringValue());
+		}
+		return h;
+	}
+
+	private static long hash(long h, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			h = hash(h, s.charAt(i));
+		}
+		// separator, so that "ab"+"c" and "a"+"bc" differ
+		return hash(h, '\u0001');
+	}
+
+	// 64-bits FNV-1a
+	private static long hash(long h, char c) {
+		h ^= c;
+		h *= 0x100000001b3L;
+		return h;
+	}
+
+	// finalizer of splitmix64, so that the xor combination does not cancel out the sum
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+}
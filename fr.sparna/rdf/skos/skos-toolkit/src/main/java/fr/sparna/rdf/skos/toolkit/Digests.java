@@ -0,0 +1,44 @@
+package fr.sparna.rdf.skos.toolkit;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the SHA-256 digests used as cache keys and content hashes, as lowercase hexadecimal strings.
+ *
+ * @author Thomas Francart
+ */
+public class Digests {
+
+	private Digests() {
+	}
+
+	/**
+	 * @return the SHA-256 of the UTF-8 bytes of the given string, in hexadecimal
+	 */
+	public static String sha256(String s) {
+		return sha256(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the SHA-256 of the given bytes, taken one after the other, in hexadecimal
+	 */
+	public static String sha256(byte[]... parts) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (byte[] aPart : parts) {
+				digest.update(aPart);
+			}
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM supports SHA-256
+			throw new RuntimeException(e);
+		}
+	}
+
+}
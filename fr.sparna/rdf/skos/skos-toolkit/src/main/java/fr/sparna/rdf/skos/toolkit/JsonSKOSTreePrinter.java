@@ -39,6 +39,9 @@ public class JsonSKOSTreePrinter {
 	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
 	
 	private LabelReader labelReader;
+	// when set, labels are read from this table instead of the labelReader
+	private LabelTable labelTable;
+	private String lang;
 	private boolean prettyPrinting = false;
 
 	public JsonSKOSTreePrinter(LabelReader labelReader) {
@@ -46,6 +49,12 @@ public class JsonSKOSTreePrinter {
 		this.labelReader = labelReader;
 	}
 	
+	public JsonSKOSTreePrinter(LabelTable labelTable, String lang) {
+		super();
+		this.labelTable = labelTable;
+		this.lang = lang;
+	}
+	
 	public String printToString(GenericTree<SKOSTreeNode> tree) 
 	throws IOException, JsonGenerationException {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -65,13 +74,15 @@ public class JsonSKOSTreePrinter {
 		
 		Map<IRI, List<Value>> labels = new HashMap<IRI, List<Value>>();
 		
-		try {
-			IRIHarvester harvester = new IRIHarvester();
-			tree.visit(harvester);
-			log.debug("JsonSKOSTreePrinter : getting labels for "+harvester.iris.size()+" nodes");
-			labels = this.labelReader.getValues(harvester.iris);
-		} catch (GenericTreeVisitorException e) {
-			e.printStackTrace();
+		if(this.labelReader != null) {
+			try {
+				IRIHarvester harvester = new IRIHarvester();
+				tree.visit(harvester);
+				log.debug("JsonSKOSTreePrinter : getting labels for "+harvester.iris.size()+" nodes");
+				labels = this.labelReader.getValues(harvester.iris);
+			} catch (GenericTreeVisitorException e) {
+				e.printStackTrace();
+			}
 		}
 		
 		printConceptRec(tree.getRoot(), jg, labels);
@@ -86,8 +97,8 @@ public class JsonSKOSTreePrinter {
 		jg.writeStringField("uri", aNode.getData().iri.toString());
 		
 		// write name
-		if(labelReader != null) {
-			String label = LabelReader.display(labels.get(aNode.getData().getIri()));
+		if(labelReader != null || labelTable != null) {
+			String label = (labelTable != null)?readLabelFromTable(aNode.getData().getIri()):LabelReader.display(labels.get(aNode.getData().getIri()));
 			// make sure we have a label
 			if(label == null || label.equals("")) {
 				// default to the URI if no label has been generated
@@ -118,6 +129,12 @@ public class JsonSKOSTreePrinter {
 		jg.writeEndObject();	
 	}
 	
+	private String readLabelFromTable(IRI iri) {
+		String label = labelTable.getPrefLabel(iri, lang);
+		// fallback on a label without language
+		return (label != null)?label:labelTable.getPrefLabel(iri, "");
+	}
+	
 	class IRIHarvester implements GenericTreeVisitorIfc<SKOSTreeNode> {
 
 		List<IRI> iris = new ArrayList<IRI>();
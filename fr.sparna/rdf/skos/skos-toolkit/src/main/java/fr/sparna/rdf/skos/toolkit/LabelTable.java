@@ -0,0 +1,596 @@
+package fr.sparna.rdf.skos.toolkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
+import org.eclipse.rdf4j.query.AbstractTupleQueryResultHandler;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.rdf4j.toolkit.query.Perform;
+import fr.sparna.rdf.rdf4j.toolkit.repository.RepositoryBuilder;
+
+/**
+ * A read-only, in-memory table of the SKOS labels of a repository : skos:prefLabel, skos:altLabel, skos:hiddenLabel
+ * and skos:notation. The table is loaded in 2 queries, and is meant to be shared by all the display generators
+ * of a document (or by all the renderings of the same dataset), instead of each of them reading labels one by one.
+ * <p>IRIs are interned to an integer index, and labels are stored in per-language arrays indexed by that integer.
+ * When the table is loaded for a concept scheme, labels are loaded for the resources of that scheme, for the scheme
+ * itself, and for the resources that are not in any scheme, like collections, which can be referenced from the
+ * concepts of the scheme; labels of resources that only belong to other schemes are not loaded. The list of concepts in
+ * the scheme the table was loaded for is kept separately.
+ * <p>Labels are looked up by language range, with the same semantics as SPARQL <code>langMatches</code>, labels in
+ * exactly the given language tag coming first.
+ * <p>A table loaded with {@link #loadForAllSchemes(RepositoryConnection)} also knows the concepts of each concept
+ * scheme, read in the same pass, and gives a view of the table for each scheme with {@link #forScheme(IRI)} : views
+ * share the labels of the table, so that generating the documents of all the schemes of a dataset reads the labels once.
+ * <p>Once loaded, a table is never modified, and can be safely read by multiple threads.
+ *
+ * @author Thomas Francart
+ */
+public class LabelTable {
+
+	private static Logger log = LoggerFactory.getLogger(LabelTable.class.getName());
+
+	private static final String[] EMPTY = new String[0];
+
+	// IRI -> index of the IRI in the table
+	protected Map<IRI, Integer> index = new HashMap<IRI, Integer>();
+	// index -> IRI
+	protected List<IRI> iris = new ArrayList<IRI>();
+	// labels, per language tag as found in the data
+	protected Map<String, LanguageLabels> labels = new HashMap<String, LanguageLabels>();
+	// notations are language-independant
+	protected String[] notations = EMPTY;
+	// indexes of the concepts in the scheme, in the order they were read
+	protected int[] conceptsInScheme = new int[0];
+	// the concept scheme this table was loaded for, can be null
+	protected IRI conceptScheme;
+	// translations of the concepts in the scheme, built on first use
+	private TranslationMatrix translationMatrix;
+	// indexes of the concepts of each scheme, in the order of the schemes; null if not loaded for all schemes
+	protected Map<IRI, int[]> conceptsBySchemes;
+	// labels of the languages matching each language range, computed on first use
+	private Map<String, List<LanguageLabels>> matchingLabels = new ConcurrentHashMap<String, List<LanguageLabels>>();
+
+	protected LabelTable(IRI conceptScheme) {
+		this.conceptScheme = conceptScheme;
+	}
+
+	/**
+	 * Loads the labels of the given repository. The concept scheme is used to select the list of concepts returned by
+	 * <code>getConceptsInScheme()</code>, and to skip the labels of the resources of other schemes; it can be null to
+	 * select all concepts and labels.
+	 *
+	 * @param connection		connection to read labels from
+	 * @param conceptScheme		concept scheme to select concepts and labels in, can be null
+	 * @return a new LabelTable
+	 */
+	public static LabelTable load(RepositoryConnection connection, IRI conceptScheme) {
+		long start = System.currentTimeMillis();
+		final LabelTable table = new LabelTable(conceptScheme);
+
+		readLabels(connection, table, conceptScheme);
+
+		String conceptsQuery = ""
+				+ "SELECT DISTINCT ?concept WHERE {"+"\n"
+				+ "	?concept a <"+SKOS.CONCEPT+"> ."+"\n"
+				+ ((conceptScheme != null)?"	?concept <"+SKOS.IN_SCHEME+"> <"+conceptScheme.stringValue()+"> ."+"\n":"")
+				+ "}";
+
+		final List<Integer> concepts = new ArrayList<Integer>();
+		Perform.on(connection).select(conceptsQuery, new AbstractTupleQueryResultHandler() {
+			@Override
+			public void handleSolution(BindingSet binding) throws TupleQueryResultHandlerException {
+				Value concept = binding.getValue("concept");
+				if(concept instanceof IRI) {
+					concepts.add(table.intern((IRI)concept));
+				}
+			}
+		});
+
+		table.conceptsInScheme = new int[concepts.size()];
+		for (int i = 0; i < concepts.size(); i++) {
+			table.conceptsInScheme[i] = concepts.get(i);
+		}
+		table.trim();
+
+		log.debug("Loaded label table of "+table.size()+" IRIs, "+table.conceptsInScheme.length+" concepts and "+table.labels.size()+" languages in "+(System.currentTimeMillis() - start)+" ms");
+		return table;
+	}
+
+	/**
+	 * Loads the labels of the given repository, along with the concepts of every concept scheme, read in a single query.
+	 * The returned table lists all the concepts of the repository; use {@link #forScheme(IRI)} to get the table of each scheme.
+	 *
+	 * @param connection		connection to read labels from
+	 * @return a new LabelTable, loaded for all schemes
+	 */
+	public static LabelTable loadForAllSchemes(RepositoryConnection connection) {
+		long start = System.currentTimeMillis();
+		final LabelTable table = new LabelTable(null);
+		readLabels(connection, table, null);
+
+		String conceptsQuery = ""
+				+ "SELECT ?concept ?scheme WHERE {"+"\n"
+				+ "	?concept a <"+SKOS.CONCEPT+"> ."+"\n"
+				+ "	OPTIONAL { ?concept <"+SKOS.IN_SCHEME+"> ?scheme . }"+"\n"
+				+ "}";
+
+		final Set<Integer> concepts = new LinkedHashSet<Integer>();
+		final Map<IRI, Set<Integer>> conceptsBySchemes = new LinkedHashMap<IRI, Set<Integer>>();
+		Perform.on(connection).select(conceptsQuery, new AbstractTupleQueryResultHandler() {
+			@Override
+			public void handleSolution(BindingSet binding) throws TupleQueryResultHandlerException {
+				Value concept = binding.getValue("concept");
+				if(!(concept instanceof IRI)) {
+					return;
+				}
+				int i = table.intern((IRI)concept);
+				concepts.add(i);
+				Value scheme = binding.getValue("scheme");
+				if(scheme instanceof IRI) {
+					Set<Integer> conceptsInScheme = conceptsBySchemes.get(scheme);
+					if(conceptsInScheme == null) {
+						conceptsInScheme = new LinkedHashSet<Integer>();
+						conceptsBySchemes.put((IRI)scheme, conceptsInScheme);
+					}
+					conceptsInScheme.add(i);
+				}
+			}
+		});
+
+		table.conceptsInScheme = toArray(concepts);
+		table.conceptsBySchemes = new LinkedHashMap<IRI, int[]>();
+		for (Map.Entry<IRI, Set<Integer>> e : conceptsBySchemes.entrySet()) {
+			table.conceptsBySchemes.put(e.getKey(), toArray(e.getValue()));
+		}
+		table.trim();
+
+		log.debug("Loaded label table of "+table.size()+" IRIs, "+table.conceptsInScheme.length+" concepts in "+conceptsBySchemes.size()+" schemes and "+table.labels.size()+" languages in "+(System.currentTimeMillis() - start)+" ms");
+		return table;
+	}
+
+	/**
+	 * Reads the labels of the resources of the given scheme, of the scheme itself and of the resources without scheme;
+	 * or of all the resources if the scheme is null.
+	 */
+	private static void readLabels(RepositoryConnection connection, final LabelTable table, IRI conceptScheme) {
+		String labelsQuery = ""
+				+ "SELECT ?x ?p ?label WHERE {"+"\n"
+				+ "	VALUES ?p { <"+SKOS.PREF_LABEL+"> <"+SKOS.ALT_LABEL+"> <"+SKOS.HIDDEN_LABEL+"> <"+SKOS.NOTATION+"> }"+"\n"
+				+ "	?x ?p ?label ."+"\n"
+				+ ((conceptScheme != null)
+						?"	FILTER(?x = <"+conceptScheme.stringValue()+"> || EXISTS { ?x <"+SKOS.IN_SCHEME+"> <"+conceptScheme.stringValue()+"> } || NOT EXISTS { ?x <"+SKOS.IN_SCHEME+"> ?anyScheme })"+"\n"
+						:"")
+				+ "}";
+
+		Perform.on(connection).select(labelsQuery, new AbstractTupleQueryResultHandler() {
+			@Override
+			public void handleSolution(BindingSet binding) throws TupleQueryResultHandlerException {
+				Value x = binding.getValue("x");
+				Value label = binding.getValue("label");
+				if(!(x instanceof IRI) || !(label instanceof Literal)) {
+					return;
+				}
+				table.add((IRI)x, binding.getValue("p").stringValue(), (Literal)label);
+			}
+		});
+	}
+
+	private static int[] toArray(Set<Integer> values) {
+		int[] result = new int[values.size()];
+		int i = 0;
+		for (Integer v : values) {
+			result[i++] = v;
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if this table was loaded with {@link #loadForAllSchemes(RepositoryConnection)}
+	 */
+	public boolean isLoadedForAllSchemes() {
+		return this.conceptsBySchemes != null;
+	}
+
+	/**
+	 * @return the concept schemes that have at least one concept, in the order they were read; empty if this table was
+	 * not loaded for all schemes
+	 */
+	public List<IRI> getConceptSchemes() {
+		return (this.conceptsBySchemes != null)?new ArrayList<IRI>(this.conceptsBySchemes.keySet()):Collections.<IRI>emptyList();
+	}
+
+	/**
+	 * Returns a view of this table for the given scheme, sharing the labels of this table, and listing the concepts of that
+	 * scheme only. This table must have been loaded with {@link #loadForAllSchemes(RepositoryConnection)}.
+	 *
+	 * @param conceptScheme		the concept scheme, or null to get this table
+	 * @return a table loaded for the given scheme
+	 */
+	public LabelTable forScheme(IRI conceptScheme) {
+		if(this.conceptsBySchemes == null) {
+			throw new IllegalStateException("Label table was not loaded for all schemes");
+		}
+		if(conceptScheme == null) {
+			return this;
+		}
+		LabelTable view = new LabelTable(conceptScheme);
+		view.index = this.index;
+		view.iris = this.iris;
+		view.labels = this.labels;
+		view.notations = this.notations;
+		int[] concepts = this.conceptsBySchemes.get(conceptScheme);
+		view.conceptsInScheme = (concepts != null)?concepts:new int[0];
+		return view;
+	}
+
+	protected int intern(IRI iri) {
+		Integer i = this.index.get(iri);
+		if(i == null) {
+			i = this.iris.size();
+			this.iris.add(iri);
+			this.index.put(iri, i);
+		}
+		return i;
+	}
+
+	protected void add(IRI subject, String property, Literal label) {
+		int i = intern(subject);
+		if(property.equals(SKOS.NOTATION)) {
+			this.notations = ensureCapacity(this.notations, i);
+			// keep the first notation only
+			if(this.notations[i] == null) {
+				this.notations[i] = label.stringValue();
+			}
+			return;
+		}
+
+		String lang = label.getLanguage().orElse("");
+		LanguageLabels ll = this.labels.get(lang);
+		if(ll == null) {
+			ll = new LanguageLabels();
+			this.labels.put(lang, ll);
+		}
+
+		if(property.equals(SKOS.PREF_LABEL)) {
+			ll.prefLabels = ensureCapacity(ll.prefLabels, i);
+			// keep the first prefLabel only, there should be only one per language
+			if(ll.prefLabels[i] == null) {
+				ll.prefLabels[i] = label.stringValue();
+			}
+		} else if(property.equals(SKOS.ALT_LABEL)) {
+			ll.altLabels = ensureCapacity(ll.altLabels, i);
+			ll.altLabels[i] = append(ll.altLabels[i], label.stringValue());
+		} else if(property.equals(SKOS.HIDDEN_LABEL)) {
+			ll.hiddenLabels = ensureCapacity(ll.hiddenLabels, i);
+			ll.hiddenLabels[i] = append(ll.hiddenLabels[i], label.stringValue());
+		}
+	}
+
+	/**
+	 * Shrinks all arrays to the number of IRIs in the table
+	 */
+	protected void trim() {
+		int size = this.iris.size();
+		this.notations = Arrays.copyOf(this.notations, size);
+		for (LanguageLabels ll : this.labels.values()) {
+			ll.prefLabels = Arrays.copyOf(ll.prefLabels, size);
+			ll.altLabels = Arrays.copyOf(ll.altLabels, size);
+			ll.hiddenLabels = Arrays.copyOf(ll.hiddenLabels, size);
+		}
+	}
+
+	/**
+	 * @return the index of this IRI in the table, or -1 if the IRI does not have any label
+	 */
+	public int indexOf(IRI iri) {
+		Integer i = this.index.get(iri);
+		return (i != null)?i:-1;
+	}
+
+	public IRI getIri(int i) {
+		return this.iris.get(i);
+	}
+
+	public int size() {
+		return this.iris.size();
+	}
+
+	/**
+	 * @return the language tags in which labels are available
+	 */
+	public Set<String> getLanguages() {
+		return Collections.unmodifiableSet(this.labels.keySet());
+	}
+
+	/**
+	 * @return the concept scheme this table was loaded for, possibly null
+	 */
+	public IRI getConceptScheme() {
+		return conceptScheme;
+	}
+
+	/**
+	 * @return true if the list of concepts of this table corresponds to the given concept scheme
+	 */
+	public boolean isLoadedFor(IRI conceptScheme) {
+		return Objects.equals(this.conceptScheme, conceptScheme);
+	}
+
+	/**
+	 * @return the IRIs of the concepts in the scheme this table was loaded for
+	 */
+	public List<IRI> getConceptsInScheme() {
+		List<IRI> result = new ArrayList<IRI>(this.conceptsInScheme.length);
+		for (int i : this.conceptsInScheme) {
+			result.add(this.iris.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the prefLabel of the IRI in a language tag that matches the given language range, or null. A label in
+	 * exactly the given tag is returned first.
+	 */
+	public String getPrefLabel(IRI iri, String lang) {
+		return getPrefLabelMatching(iri, lang);
+	}
+
+	/**
+	 * Returns the prefLabel of the IRI in a language tag that matches the given language range,
+	 * with the same semantics as SPARQL <code>langMatches</code>, or null.
+	 */
+	public String getPrefLabelMatching(IRI iri, String langRange) {
+		int i = indexOf(iri);
+		return (i < 0)?null:getPrefLabelMatching(i, langRange);
+	}
+
+	/**
+	 * @return the altLabels of the IRI in the language tags that match the given language range
+	 */
+	public List<String> getAltLabels(IRI iri, String lang) {
+		int i = indexOf(iri);
+		if(i < 0) {
+			return Collections.emptyList();
+		}
+		List<String> result = new ArrayList<String>();
+		for (LanguageLabels ll : matching(lang)) {
+			if(ll.altLabels[i] != null) {
+				result.addAll(Arrays.asList(ll.altLabels[i]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the hiddenLabels of the IRI in the language tags that match the given language range
+	 */
+	public List<String> getHiddenLabels(IRI iri, String lang) {
+		int i = indexOf(iri);
+		if(i < 0) {
+			return Collections.emptyList();
+		}
+		List<String> result = new ArrayList<String>();
+		for (LanguageLabels ll : matching(lang)) {
+			if(ll.hiddenLabels[i] != null) {
+				result.addAll(Arrays.asList(ll.hiddenLabels[i]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the first notation of the IRI, or null
+	 */
+	public String getNotation(IRI iri) {
+		int i = indexOf(iri);
+		return (i < 0)?null:this.notations[i];
+	}
+
+	/**
+	 * Iterates on the labels of the concepts in the scheme, with the same results as <code>GetLabelsInSchemeHelper</code> :
+	 * each prefLabel in the given language, each altLabel in the given language along with the prefLabel, and the URI of
+	 * the concepts that don't have a prefLabel in the given language.
+	 *
+	 * @param lang		language range to read labels in
+	 * @param handler	handler notified of each label
+	 */
+	public void visitLabelsInScheme(String lang, LabelInSchemeHandler handler) {
+		List<LanguageLabels> matching = matching(lang);
+		for (int c : this.conceptsInScheme) {
+			IRI concept = this.iris.get(c);
+			boolean hasPref = false;
+			for (LanguageLabels ll : matching) {
+				if(ll.prefLabels[c] != null) {
+					hasPref = true;
+					handler.handleLabel(ll.prefLabels[c], null, concept);
+				}
+			}
+
+			if(!hasPref) {
+				handler.handleLabel(concept.stringValue(), null, concept);
+				continue;
+			}
+
+			for (LanguageLabels altLl : matching) {
+				if(altLl.altLabels[c] == null) {
+					continue;
+				}
+				for (String anAlt : altLl.altLabels[c]) {
+					for (LanguageLabels prefLl : matching) {
+						if(prefLl.prefLabels[c] != null) {
+							handler.handleLabel(anAlt, prefLl.prefLabels[c], concept);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Iterates on the concepts in the scheme with their prefLabel in 2 languages, with the same results
+	 * as <code>GetTranslationTableInSchemeHelper</code>. Missing labels are notified as null.
+	 *
+	 * @param lang1		first language range
+	 * @param lang2		second language range
+	 * @param handler	handler notified of each concept
+	 */
+	public void visitTranslationsInScheme(String lang1, String lang2, TranslationHandler handler) {
+		for (int c : this.conceptsInScheme) {
+			handler.handleTranslation(
+					this.iris.get(c),
+					getPrefLabelMatching(c, lang1),
+					getPrefLabelMatching(c, lang2)
+			);
+		}
+	}
+
+	/**
+	 * @return the concept x language matrix of the prefLabels of the concepts in the scheme, shared by all the
+	 * translation tables built from this table
+	 */
+	public synchronized TranslationMatrix getTranslationMatrix() {
+		if(this.translationMatrix == null) {
+			this.translationMatrix = new TranslationMatrix(this);
+		}
+		return this.translationMatrix;
+	}
+
+	protected String getPrefLabelMatching(int i, String langRange) {
+		for (LanguageLabels ll : matching(langRange)) {
+			if(ll.prefLabels[i] != null) {
+				return ll.prefLabels[i];
+			}
+		}
+		return null;
+	}
+
+	protected List<LanguageLabels> matching(String langRange) {
+		String key = (langRange != null)?langRange:"";
+		List<LanguageLabels> result = this.matchingLabels.get(key);
+		if(result == null) {
+			result = computeMatching(key);
+			this.matchingLabels.put(key, result);
+		}
+		return result;
+	}
+
+	private List<LanguageLabels> computeMatching(String langRange) {
+		List<LanguageLabels> result = new ArrayList<LanguageLabels>();
+		// give priority to the exact language tag
+		LanguageLabels exact = this.labels.get((langRange != null)?langRange:"");
+		if(exact != null) {
+			result.add(exact);
+		}
+		for (Map.Entry<String, LanguageLabels> e : this.labels.entrySet()) {
+			if(e.getValue() != exact && langMatches(e.getKey(), langRange)) {
+				result.add(e.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Same semantics as SPARQL <code>langMatches</code> : an empty range matches only labels without language,
+	 * "*" matches any non-empty tag, otherwise the tag must be equal to the range or start with the range followed by '-'.
+	 */
+	public static boolean langMatches(String tag, String range) {
+		if(range == null || range.equals("")) {
+			return tag.equals("");
+		}
+		if(range.equals("*")) {
+			return !tag.equals("");
+		}
+		return tag.equalsIgnoreCase(range)
+				||
+				(tag.length() > range.length() && tag.charAt(range.length()) == '-' && tag.regionMatches(true, 0, range, 0, range.length()));
+	}
+
+	private static String[] ensureCapacity(String[] array, int i) {
+		if(i < array.length) {
+			return array;
+		}
+		return Arrays.copyOf(array, Math.max(i + 1, array.length * 2));
+	}
+
+	private static String[][] ensureCapacity(String[][] array, int i) {
+		if(i < array.length) {
+			return array;
+		}
+		return Arrays.copyOf(array, Math.max(i + 1, array.length * 2));
+	}
+
+	private static String[] append(String[] array, String value) {
+		if(array == null) {
+			return new String[] { value };
+		}
+		String[] result = Arrays.copyOf(array, array.length + 1);
+		result[array.length] = value;
+		return result;
+	}
+
+	/**
+	 * Labels of a single language tag, indexed by the IRI index in the table
+	 */
+	protected static class LanguageLabels {
+		protected String[] prefLabels = EMPTY;
+		protected String[][] altLabels = new String[0][];
+		protected String[][] hiddenLabels = new String[0][];
+	}
+
+	public interface LabelInSchemeHandler {
+		/**
+		 * @param label		the label, or the URI of the concept if it does not have a prefLabel
+		 * @param prefLabel	the prefLabel if label is an altLabel, null otherwise
+		 * @param concept	the concept
+		 */
+		public void handleLabel(String label, String prefLabel, IRI concept);
+	}
+
+	public interface TranslationHandler {
+		public void handleTranslation(IRI concept, String label1, String label2);
+	}
+
+	public static void main(String... args) throws Exception {
+		Repository r = RepositoryBuilder.fromRdf(
+				"@prefix skos: <"+SKOS.NAMESPACE+"> ."+"\n" +
+				"@prefix test: <http://www.test.fr/skos/> ."+"\n" +
+				"test:_1 a skos:Concept ; skos:inScheme test:_scheme ; skos:prefLabel \"C-1-pref\"@fr; skos:altLabel \"A-1-alt\"@fr ." +
+				"test:_2 a skos:Concept ; skos:inScheme test:_scheme ; skos:prefLabel \"B-2-pref\"@fr ; skos:prefLabel \"B-2-pref\"@en ." +
+				"test:_3 a skos:Concept ; skos:inScheme test:_anotherScheme ; skos:prefLabel \"D-3-pref\"@fr ."
+		);
+		try(RepositoryConnection connection = r.getConnection()) {
+			LabelTable table = LabelTable.load(connection, SimpleValueFactory.getInstance().createIRI("http://www.test.fr/skos/_scheme"));
+			table.visitLabelsInScheme("fr", (label, prefLabel, concept) -> {
+				System.out.println(label+" / "+prefLabel+" / "+concept);
+			});
+			table.visitTranslationsInScheme("fr", "en", (concept, label1, label2) -> {
+				System.out.println(concept+" : "+label1+" / "+label2);
+			});
+
+			LabelTable all = LabelTable.loadForAllSchemes(connection);
+			for (IRI aScheme : all.getConceptSchemes()) {
+				System.out.println(aScheme+" : "+all.forScheme(aScheme).getConceptsInScheme());
+			}
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package fr.sparna.rdf.skos.toolkit;
+
+import org.eclipse.rdf4j.model.IRI;
+
+/**
+ * Reads the sort criteria of a node from a LabelTable : the notation if available, or the prefLabel
+ * in the given language.
+ *
+ * @author Thomas Francart
+ */
+public class SKOSNodeSortCriteriaLabelTableReader implements SKOSNodeSortCriteriaReader {
+
+	protected LabelTable labelTable;
+	protected String lang;
+
+	public SKOSNodeSortCriteriaLabelTableReader(LabelTable labelTable, String lang) {
+		super();
+		this.labelTable = labelTable;
+		this.lang = lang;
+	}
+
+	@Override
+	public String getLang() {
+		return lang;
+	}
+
+	@Override
+	public String readSortCriteria(IRI node) {
+		String notation = labelTable.getNotation(node);
+		return (notation != null)?notation:labelTable.getPrefLabel(node, lang);
+	}
+
+}
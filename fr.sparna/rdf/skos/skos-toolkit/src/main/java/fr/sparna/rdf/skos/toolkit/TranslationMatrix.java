@@ -0,0 +1,116 @@
+package fr.sparna.rdf.skos.toolkit;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.rdf4j.model.IRI;
+
+/**
+ * A concept x language table of the prefLabels of the concepts of a scheme, from which all the translation tables
+ * of a document are derived, instead of reading the labels of each pair of languages separately.
+ * <p>Rows are the concepts in the scheme of the {@link LabelTable} the matrix is built from, and columns are the
+ * requested languages; a column is computed once, the first time a language is requested, with the same language
+ * matching rules as <code>LabelTable.visitTranslationsInScheme</code>. The order of the rows sorted on the labels
+ * of a language is also computed once per language, with a collator for that language, and shared by every table
+ * sorted on that language (the direct table of a main language, and the reverse tables of a target language).
+ * <p>A matrix is obtained with <code>LabelTable.getTranslationMatrix()</code>, and can be used by multiple threads.
+ *
+ * @author Thomas Francart
+ */
+public class TranslationMatrix {
+
+	protected LabelTable labelTable;
+	// row -> index of the concept in the label table
+	protected int[] rows;
+
+	// language -> label of each row in that language, null if none
+	protected Map<String, String[]> columns = new ConcurrentHashMap<String, String[]>();
+	// language -> rows sorted on the label in that language
+	protected Map<String, int[]> sortedRows = new ConcurrentHashMap<String, int[]>();
+
+	protected TranslationMatrix(LabelTable labelTable) {
+		this.labelTable = labelTable;
+		this.rows = labelTable.conceptsInScheme;
+	}
+
+	/**
+	 * @return the number of rows (concepts) of the matrix
+	 */
+	public int size() {
+		return this.rows.length;
+	}
+
+	public IRI getConcept(int row) {
+		return this.labelTable.getIri(this.rows[row]);
+	}
+
+	/**
+	 * @return the prefLabel of the concept at the given row in the given language, or null
+	 */
+	public String getLabel(int row, String lang) {
+		return column(lang)[row];
+	}
+
+	/**
+	 * @return the labels of all rows in the given language
+	 */
+	protected String[] column(String lang) {
+		return this.columns.computeIfAbsent((lang != null)?lang:"", l -> {
+			String[] column = new String[this.rows.length];
+			for (int r = 0; r < this.rows.length; r++) {
+				column[r] = this.labelTable.getPrefLabelMatching(this.rows[r], l);
+			}
+			return column;
+		});
+	}
+
+	/**
+	 * Returns the rows sorted on their label in the given language, with a collator for that language. Rows without
+	 * a label in that language are sorted on their URI.
+	 */
+	public int[] getSortedRows(String lang) {
+		return this.sortedRows.computeIfAbsent((lang != null)?lang:"", l -> {
+			String[] column = column(l);
+			Collator collator = Collator.getInstance(new Locale(l));
+			collator.setStrength(Collator.SECONDARY);
+
+			// compute each collation key once, instead of comparing strings at each comparison of the sort
+			final CollationKey[] keys = new CollationKey[this.rows.length];
+			Integer[] sorted = new Integer[this.rows.length];
+			for (int r = 0; r < this.rows.length; r++) {
+				keys[r] = collator.getCollationKey((column[r] != null)?column[r]:getConcept(r).stringValue());
+				sorted[r] = r;
+			}
+			// stable sort, rows with the same label stay in the order of the scheme
+			Arrays.sort(sorted, Comparator.comparing((Integer r) -> keys[r]));
+
+			int[] result = new int[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				result[i] = sorted[i];
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Visits the labels in 2 languages of each concept, sorted on the labels of <code>sortLang</code>.
+	 *
+	 * @param lang1		first language, passed as label1 to the handler
+	 * @param lang2		second language, passed as label2 to the handler
+	 * @param sortLang	language to sort on, usually lang1 or lang2
+	 * @param handler	the handler to notify
+	 */
+	public void visitTranslations(String lang1, String lang2, String sortLang, LabelTable.TranslationHandler handler) {
+		String[] column1 = column(lang1);
+		String[] column2 = column(lang2);
+		for (int r : getSortedRows(sortLang)) {
+			handler.handleTranslation(getConcept(r), column1[r], column2[r]);
+		}
+	}
+
+}
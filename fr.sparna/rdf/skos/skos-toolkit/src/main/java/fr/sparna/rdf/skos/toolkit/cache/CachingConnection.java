@@ -0,0 +1,223 @@
+package fr.sparna.rdf.skos.toolkit.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.UnionIteration;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.Query;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.TupleQueryResultHandler;
+import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+
+import fr.sparna.rdf.skos.toolkit.cache.QueryResultCache.Tuples;
+
+/**
+ * Connection of a {@link CachingRepository} : SELECT and ASK queries prepared on this connection are evaluated through
+ * the {@link QueryResultCache}; the key of a query is computed when it is evaluated, so it includes the bindings set on
+ * the prepared query.
+ *
+ * @author Thomas Francart
+ */
+public class CachingConnection extends RepositoryConnectionWrapper {
+
+	protected String source;
+	protected QueryResultCache cache;
+
+	public CachingConnection(Repository repository, RepositoryConnection delegate, String source, QueryResultCache cache) {
+		super(repository, delegate);
+		this.source = source;
+		this.cache = cache;
+	}
+
+	@Override
+	public TupleQuery prepareTupleQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException, RepositoryException {
+		return new CachingTupleQuery(super.prepareTupleQuery(ql, query, baseURI), query);
+	}
+
+	@Override
+	public BooleanQuery prepareBooleanQuery(QueryLanguage ql, String query, String baseURI) throws MalformedQueryException, RepositoryException {
+		return new CachingBooleanQuery(super.prepareBooleanQuery(ql, query, baseURI), query);
+	}
+
+	/**
+	 * Delegates the settings of the query to the query prepared on the endpoint
+	 */
+	protected abstract class DelegatingQuery<Q extends Query> implements Query {
+
+		protected Q delegate;
+		protected String queryString;
+
+		public DelegatingQuery(Q delegate, String queryString) {
+			this.delegate = delegate;
+			this.queryString = queryString;
+		}
+
+		protected String key() {
+			Dataset dataset = this.delegate.getDataset();
+			return QueryResultCache.key(
+					source,
+					this.queryString,
+					this.delegate.getBindings(),
+					(dataset != null)?dataset.toString():null,
+					this.delegate.getIncludeInferred()
+			);
+		}
+
+		@Override
+		public void setBinding(String name, Value value) {
+			this.delegate.setBinding(name, value);
+		}
+
+		@Override
+		public void removeBinding(String name) {
+			this.delegate.removeBinding(name);
+		}
+
+		@Override
+		public void clearBindings() {
+			this.delegate.clearBindings();
+		}
+
+		@Override
+		public BindingSet getBindings() {
+			return this.delegate.getBindings();
+		}
+
+		@Override
+		public void setDataset(Dataset dataset) {
+			this.delegate.setDataset(dataset);
+		}
+
+		@Override
+		public Dataset getDataset() {
+			return this.delegate.getDataset();
+		}
+
+		@Override
+		public void setIncludeInferred(boolean includeInferred) {
+			this.delegate.setIncludeInferred(includeInferred);
+		}
+
+		@Override
+		public boolean getIncludeInferred() {
+			return this.delegate.getIncludeInferred();
+		}
+
+		@Override
+		public void setMaxExecutionTime(int maxExecutionTime) {
+			this.delegate.setMaxExecutionTime(maxExecutionTime);
+		}
+
+		@Override
+		public int getMaxExecutionTime() {
+			return this.delegate.getMaxExecutionTime();
+		}
+
+		// deprecated equivalents of the max execution time
+		public void setMaxQueryTime(int maxQueryTime) {
+			this.delegate.setMaxExecutionTime(maxQueryTime);
+		}
+
+		public int getMaxQueryTime() {
+			return this.delegate.getMaxExecutionTime();
+		}
+	}
+
+	protected class CachingTupleQuery extends DelegatingQuery<TupleQuery> implements TupleQuery {
+
+		public CachingTupleQuery(TupleQuery delegate, String queryString) {
+			super(delegate, queryString);
+		}
+
+		/**
+		 * Reads the result of the query, up to the max number of rows kept in the cache; if there are more, the rest of
+		 * the result is left open in the returned Tuples, and the caller must read it and close it.
+		 */
+		protected Tuples getTuples() {
+			final int maxRows = cache.getMaxRows();
+			return cache.getTuples(key(), () -> {
+				TupleQueryResult result = this.delegate.evaluate();
+				try {
+					List<String> bindingNames = new ArrayList<String>(result.getBindingNames());
+					List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+					while(result.hasNext()) {
+						if(bindingSets.size() >= maxRows) {
+							// too large to be kept, the rest is streamed from the endpoint
+							return new Tuples(bindingNames, bindingSets, result);
+						}
+						bindingSets.add(result.next());
+					}
+					result.close();
+					return new Tuples(bindingNames, bindingSets);
+				} catch (RuntimeException e) {
+					result.close();
+					throw e;
+				}
+			});
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public TupleQueryResult evaluate() throws QueryEvaluationException {
+			Tuples tuples = getTuples();
+			if(tuples.isComplete()) {
+				return new IteratingTupleQueryResult(tuples.getBindingNames(), tuples.getBindingSets());
+			}
+			return new IteratingTupleQueryResult(
+					tuples.getBindingNames(),
+					new UnionIteration<BindingSet, QueryEvaluationException>(
+							new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(tuples.getBindingSets().iterator()),
+							tuples.getRest()
+					)
+			);
+		}
+
+		@Override
+		public void evaluate(TupleQueryResultHandler handler) throws QueryEvaluationException, TupleQueryResultHandlerException {
+			Tuples tuples = getTuples();
+			try {
+				handler.startQueryResult(tuples.getBindingNames());
+				for (BindingSet aBindingSet : tuples.getBindingSets()) {
+					handler.handleSolution(aBindingSet);
+				}
+				if(!tuples.isComplete()) {
+					while(tuples.getRest().hasNext()) {
+						handler.handleSolution(tuples.getRest().next());
+					}
+				}
+				handler.endQueryResult();
+			} finally {
+				if(!tuples.isComplete()) {
+					tuples.getRest().close();
+				}
+			}
+		}
+	}
+
+	protected class CachingBooleanQuery extends DelegatingQuery<BooleanQuery> implements BooleanQuery {
+
+		public CachingBooleanQuery(BooleanQuery delegate, String queryString) {
+			super(delegate, queryString);
+		}
+
+		@Override
+		public boolean evaluate() throws QueryEvaluationException {
+			return cache.getBoolean(key(), () -> this.delegate.evaluate());
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package fr.sparna.rdf.skos.toolkit.cache;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryWrapper;
+
+/**
+ * Wraps the repository of a remote SPARQL endpoint so that the results of SELECT and ASK queries are kept in a
+ * {@link QueryResultCache} : repeated displays and visualizations of the same endpoint are then served locally.
+ * Other operations are sent to the endpoint.
+ * <p>Results are reused until they expire from the cache, so changes in the endpoint data are seen after the
+ * time-to-live of the cache.
+ * <p>Usage : <code>new CachingRepository(RepositoryBuilderFactory.fromString(endpointUrl).get(), endpointUrl, cache)</code>
+ *
+ * @author Thomas Francart
+ */
+public class CachingRepository extends RepositoryWrapper {
+
+	// identifies the endpoint in the keys of the cache
+	protected String source;
+	protected QueryResultCache cache;
+
+	/**
+	 * @param delegate	the repository of the endpoint
+	 * @param source	identifies the endpoint in the keys of the cache, typically its URL
+	 * @param cache		the cache of the query results, can be shared by multiple repositories
+	 */
+	public CachingRepository(Repository delegate, String source, QueryResultCache cache) {
+		super(delegate);
+		this.source = source;
+		this.cache = cache;
+	}
+
+	@Override
+	public RepositoryConnection getConnection() throws RepositoryException {
+		return new CachingConnection(this, super.getConnection(), this.source, this.cache);
+	}
+
+	public QueryResultCache getCache() {
+		return cache;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+}
@@ -0,0 +1,450 @@
+package fr.sparna.rdf.skos.toolkit.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.AbstractTupleQueryResultHandler;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
+import org.eclipse.rdf4j.query.resultio.QueryResultIO;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.sparna.rdf.skos.toolkit.Digests;
+
+/**
+ * Stores the results of SELECT and ASK queries on local disk, so that the same queries sent again to a remote SPARQL
+ * endpoint are answered locally. Used through a {@link CachingRepository}.
+ * <p>Results are keyed by the source (the endpoint URL), the normalized query text (see {@link #normalize(String)}),
+ * the bindings, the dataset and the inference flag of the query. SELECT results are stored in the binary SPARQL
+ * results format. Results older than the time-to-live are not reused; when the cache exceeds its max size, the oldest
+ * results are deleted. Results of more than a max number of rows, or weighing more than a tenth of the max size, are
+ * not kept, so that a single large result does not evict all the others.
+ * <p>Identical queries sent at the same time by different threads are read from disk or evaluated only once : the other
+ * threads wait for the result of the first one.
+ * <p>The cache can be used by multiple threads, and shared by multiple repositories.
+ *
+ * @author Thomas Francart
+ */
+public class QueryResultCache {
+
+	private Logger log = LoggerFactory.getLogger(this.getClass().getName());
+
+	private static final String TUPLE_EXTENSION = ".srb";
+	private static final String BOOLEAN_EXTENSION = ".ask";
+
+	// given to the threads waiting for a result that was too large to be shared, so that they evaluate the query themselves
+	private static final Object TOO_LARGE = new Object();
+
+	protected File directory;
+	// time during which a result is reused, in ms
+	protected long ttl;
+	// max size of the results on disk, in bytes
+	protected long maxSize;
+	// max number of rows of a SELECT result kept in the cache
+	protected int maxRows = 100000;
+
+	protected AtomicLong size = new AtomicLong();
+
+	// queries being evaluated, by key
+	protected ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<String, CompletableFuture<Object>>();
+
+	protected AtomicLong hits = new AtomicLong();
+	protected AtomicLong misses = new AtomicLong();
+	protected AtomicLong joined = new AtomicLong();
+	protected AtomicLong tooLarge = new AtomicLong();
+
+	/**
+	 * @param directory	where the results are stored; created if needed
+	 * @param ttl		time during which a result is reused, in ms
+	 * @param maxSize	max size of the results on disk, in bytes
+	 */
+	public QueryResultCache(File directory, long ttl, long maxSize) {
+		super();
+		this.directory = directory;
+		this.ttl = ttl;
+		this.maxSize = maxSize;
+		this.directory.mkdirs();
+		for (File aFile : listResults()) {
+			this.size.addAndGet(aFile.length());
+		}
+		log.info("Opened query results cache in "+directory+" ("+(this.size.get() / 1024)+" KB)");
+	}
+
+	/**
+	 * Evaluates a SELECT query, or reads its result from the cache
+	 */
+	public Tuples getTuples(String key, Evaluation<Tuples> evaluation) {
+		return get("t"+key, TUPLE_EXTENSION, evaluation);
+	}
+
+	/**
+	 * Evaluates an ASK query, or reads its result from the cache
+	 */
+	public boolean getBoolean(String key, Evaluation<Boolean> evaluation) {
+		return get("b"+key, BOOLEAN_EXTENSION, evaluation);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(String key, String extension, Evaluation<T> evaluation) {
+		CompletableFuture<Object> future = new CompletableFuture<Object>();
+		CompletableFuture<Object> running = this.inFlight.putIfAbsent(key, future);
+		if(running != null) {
+			// the same query is being read or evaluated by another thread
+			this.joined.incrementAndGet();
+			Object result;
+			try {
+				result = running.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new QueryEvaluationException(e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException)e.getCause();
+				}
+				throw new QueryEvaluationException(e.getCause());
+			}
+			// a result too large to be kept is not shared either
+			return (result == TOO_LARGE)?evaluation.evaluate():(T)result;
+		}
+
+		try {
+			File file = new File(this.directory, key.substring(1, 3)+File.separator+key+extension);
+			T result = read(file);
+			if(result != null) {
+				this.hits.incrementAndGet();
+			} else {
+				this.misses.incrementAndGet();
+				result = evaluation.evaluate();
+				if(result instanceof Tuples && !((Tuples)result).isComplete()) {
+					this.tooLarge.incrementAndGet();
+					future.complete(TOO_LARGE);
+					return result;
+				}
+				write(file, result);
+			}
+			future.complete(result);
+			return result;
+		} catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inFlight.remove(key);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T read(File file) {
+		if(!file.exists()) {
+			return null;
+		}
+		if(System.currentTimeMillis() - file.lastModified() > this.ttl) {
+			delete(file);
+			return null;
+		}
+		try(InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			if(file.getName().endsWith(BOOLEAN_EXTENSION)) {
+				return (T)Boolean.valueOf(in.read() == '1');
+			}
+			final Tuples tuples = new Tuples();
+			QueryResultIO.parseTuple(in, TupleQueryResultFormat.BINARY, new AbstractTupleQueryResultHandler() {
+				@Override
+				public void startQueryResult(List<String> bindingNames) throws TupleQueryResultHandlerException {
+					tuples.bindingNames = bindingNames;
+				}
+
+				@Override
+				public void handleSolution(BindingSet bindingSet) throws TupleQueryResultHandlerException {
+					tuples.bindingSets.add(bindingSet);
+				}
+			}, SimpleValueFactory.getInstance());
+			return (T)tuples;
+		} catch (Exception e) {
+			log.warn("Cannot read cached query result "+file+", evaluating the query again", e);
+			delete(file);
+			return null;
+		}
+	}
+
+	private void write(File file, Object result) {
+		try {
+			file.getParentFile().mkdirs();
+			File tmp = File.createTempFile("result-", ".tmp", file.getParentFile());
+			try {
+				try(OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+					if(result instanceof Boolean) {
+						out.write(((Boolean)result)?'1':'0');
+					} else {
+						Tuples tuples = (Tuples)result;
+						TupleQueryResultWriter writer = QueryResultIO.createTupleWriter(TupleQueryResultFormat.BINARY, out);
+						writer.startQueryResult(tuples.bindingNames);
+						for (BindingSet aBindingSet : tuples.bindingSets) {
+							writer.handleSolution(aBindingSet);
+						}
+						writer.endQueryResult();
+					}
+				}
+				if(tmp.length() > this.maxSize / 10) {
+					// would evict a large part of the cache
+					this.tooLarge.incrementAndGet();
+					return;
+				}
+				long previous = file.length();
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				this.size.addAndGet(file.length() - previous);
+			} finally {
+				tmp.delete();
+			}
+		} catch (Exception e) {
+			log.warn("Cannot write query result to "+file, e);
+			return;
+		}
+
+		if(this.size.get() > this.maxSize) {
+			evict();
+		}
+	}
+
+	/**
+	 * Deletes the oldest results until the cache is under 90% of its max size
+	 */
+	protected synchronized void evict() {
+		if(this.size.get() <= this.maxSize) {
+			return;
+		}
+		List<File> results = listResults();
+		results.sort(Comparator.comparingLong(File::lastModified));
+		long target = this.maxSize * 9 / 10;
+		int deleted = 0;
+		for (File aFile : results) {
+			if(this.size.get() <= target) {
+				break;
+			}
+			delete(aFile);
+			deleted++;
+		}
+		log.debug("Evicted "+deleted+" query results, "+this);
+	}
+
+	private void delete(File file) {
+		long length = file.length();
+		if(file.delete()) {
+			this.size.addAndGet(-length);
+		}
+	}
+
+	private List<File> listResults() {
+		List<File> result = new ArrayList<File>();
+		File[] subdirs = this.directory.listFiles(File::isDirectory);
+		if(subdirs == null) {
+			return result;
+		}
+		for (File aDir : subdirs) {
+			File[] files = aDir.listFiles((dir, name) -> name.endsWith(TUPLE_EXTENSION) || name.endsWith(BOOLEAN_EXTENSION));
+			if(files != null) {
+				result.addAll(Arrays.asList(files));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Deletes all the results
+	 */
+	public synchronized void clear() {
+		for (File aFile : listResults()) {
+			delete(aFile);
+		}
+	}
+
+	/**
+	 * Computes the key of a query
+	 *
+	 * @param source			identifies the data the query is sent to, typically the endpoint URL
+	 * @param query				the query text
+	 * @param bindings			the bindings set on the query
+	 * @param dataset			the dataset of the query, as a String, or null
+	 * @param includeInferred	the inference flag of the query
+	 */
+	public static String key(String source, String query, BindingSet bindings, String dataset, boolean includeInferred) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(source).append('\n');
+		sb.append(normalize(query)).append('\n');
+		// bindings are sorted by name, so that the order in which they were set does not matter
+		TreeMap<String, Value> sortedBindings = new TreeMap<String, Value>();
+		if(bindings != null) {
+			for (Binding aBinding : bindings) {
+				sortedBindings.put(aBinding.getName(), aBinding.getValue());
+			}
+		}
+		sb.append(sortedBindings).append('\n');
+		sb.append(dataset).append('\n');
+		sb.append(includeInferred);
+		return Digests.sha256(sb.toString());
+	}
+
+	/**
+	 * Normalizes the text of a query, so that queries that differ only in their spacing have the same key : leading and
+	 * trailing whitespaces are removed, and each sequence of whitespaces is replaced by a single space, or a single line
+	 * break if it contains one (since line breaks end comments). String literals are kept as is.
+	 */
+	public static String normalize(String query) {
+		StringBuilder sb = new StringBuilder(query.length());
+		int length = query.length();
+		int i = 0;
+		while(i < length) {
+			char c = query.charAt(i);
+			if(c == '"' || c == '\'') {
+				// string literal, possibly long, copied as is up to its closing quote
+				boolean isLong = (i + 2 < length && query.charAt(i + 1) == c && query.charAt(i + 2) == c);
+				int end = (isLong)?i + 3:i + 1;
+				while(end < length) {
+					char e = query.charAt(end);
+					if(e == '\\') {
+						end += 2;
+						continue;
+					}
+					if(e == c && (!isLong || (end + 2 < length && query.charAt(end + 1) == c && query.charAt(end + 2) == c))) {
+						end += (isLong)?3:1;
+						break;
+					}
+					end++;
+				}
+				end = Math.min(end, length);
+				sb.append(query, i, end);
+				i = end;
+			} else if(Character.isWhitespace(c)) {
+				boolean lineBreak = false;
+				while(i < length && Character.isWhitespace(query.charAt(i))) {
+					lineBreak |= (query.charAt(i) == '\n');
+					i++;
+				}
+				if(sb.length() > 0 && i < length) {
+					sb.append((lineBreak)?'\n':' ');
+				}
+			} else {
+				sb.append(c);
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+
+	public long getSize() {
+		return size.get();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of queries that waited for the result of the same query evaluated by another thread
+	 */
+	public long getJoined() {
+		return joined.get();
+	}
+
+	/**
+	 * @return number of results that were not kept because they had too many rows or were too large
+	 */
+	public long getTooLarge() {
+		return tooLarge.get();
+	}
+
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	/**
+	 * @param maxRows	max number of rows of a SELECT result kept in the cache; larger results are streamed from the endpoint
+	 */
+	public void setMaxRows(int maxRows) {
+		this.maxRows = maxRows;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryResultCache [directory=" + directory + ", size=" + size + ", hits=" + hits + ", misses=" + misses + ", joined=" + joined + ", tooLarge=" + tooLarge + "]";
+	}
+
+	/**
+	 * Evaluates a query on the endpoint
+	 */
+	public interface Evaluation<T> {
+		public T evaluate() throws QueryEvaluationException;
+	}
+
+	/**
+	 * The result of a SELECT query, held in memory. A result with more rows than the cache keeps holds its first rows,
+	 * and the rest of the result still to be read from the endpoint.
+	 */
+	public static class Tuples {
+		protected List<String> bindingNames = Collections.emptyList();
+		protected List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		// rows following the bindingSets, not read yet; null if the result is complete
+		protected TupleQueryResult rest;
+
+		public Tuples() {
+		}
+
+		public Tuples(List<String> bindingNames, List<BindingSet> bindingSets) {
+			this(bindingNames, bindingSets, null);
+		}
+
+		public Tuples(List<String> bindingNames, List<BindingSet> bindingSets, TupleQueryResult rest) {
+			this.bindingNames = bindingNames;
+			this.bindingSets = bindingSets;
+			this.rest = rest;
+		}
+
+		/**
+		 * @return true if all the rows are held in memory
+		 */
+		public boolean isComplete() {
+			return rest == null;
+		}
+
+		public TupleQueryResult getRest() {
+			return rest;
+		}
+
+		public List<String> getBindingNames() {
+			return bindingNames;
+		}
+
+		public List<BindingSet> getBindingSets() {
+			return bindingSets;
+		}
+	}
+
+}
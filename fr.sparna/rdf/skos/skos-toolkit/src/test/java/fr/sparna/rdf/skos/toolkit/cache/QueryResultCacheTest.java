@@ -0,0 +1,240 @@
+package fr.sparna.rdf.skos.toolkit.cache;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.sparna.rdf.skos.toolkit.cache.QueryResultCache.Tuples;
+
+public class QueryResultCacheTest {
+
+	private static final List<String> NAMES = Collections.singletonList("label");
+
+	private File directory;
+
+	@Before
+	public void before() throws Exception {
+		this.directory = Files.createTempDirectory("query-cache-test").toFile();
+	}
+
+	@After
+	public void after() {
+		delete(this.directory);
+	}
+
+	@Test
+	public void resultReadFromDisk() {
+		QueryResultCache cache = new QueryResultCache(this.directory, 60000, 1024 * 1024);
+		AtomicInteger evaluations = new AtomicInteger();
+		String key = key("SELECT ?label WHERE { ?x skos:prefLabel ?label }");
+
+		Tuples first = cache.getTuples(key, () -> {
+			evaluations.incrementAndGet();
+			return tuples("Économie", "élevage");
+		});
+		Tuples second = cache.getTuples(key, () -> {
+			evaluations.incrementAndGet();
+			return tuples("other");
+		});
+
+		Assert.assertEquals(1, evaluations.get());
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(first.getBindingNames(), second.getBindingNames());
+		Assert.assertEquals(first.getBindingSets(), second.getBindingSets());
+
+		// a new cache on the same directory counts the results already there
+		Assert.assertEquals(cache.getSize(), new QueryResultCache(this.directory, 60000, 1024 * 1024).getSize());
+	}
+
+	@Test
+	public void sameKeyEvaluatedOnce() throws Exception {
+		final QueryResultCache cache = new QueryResultCache(this.directory, 60000, 1024 * 1024);
+		final AtomicInteger evaluations = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final String key = key("SELECT * WHERE { ?s ?p ?o }");
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Tuples> first = executor.submit(() -> cache.getTuples(key, () -> {
+				evaluations.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return tuples("a", "b");
+			}));
+			Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+			Future<Tuples> second = executor.submit(() -> cache.getTuples(key, () -> {
+				evaluations.incrementAndGet();
+				return tuples("c");
+			}));
+			// wait for the second thread to join the first one
+			long deadline = System.currentTimeMillis() + 5000;
+			while(cache.getJoined() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+
+			Assert.assertEquals(1, cache.getJoined());
+			Assert.assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+			Assert.assertEquals(1, evaluations.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failureNotKept() throws Exception {
+		final QueryResultCache cache = new QueryResultCache(this.directory, 60000, 1024 * 1024);
+		final String key = key("ASK { ?s ?p ?o }");
+		try {
+			cache.getBoolean(key, () -> {
+				throw new IllegalStateException("endpoint down");
+			});
+			Assert.fail("Expected the evaluation failure");
+		} catch (IllegalStateException expected) {
+			// ok
+		}
+		// a failure is not kept
+		Assert.assertTrue(cache.getBoolean(key, () -> true));
+	}
+
+	@Test
+	public void largeResultNotKept() {
+		QueryResultCache cache = new QueryResultCache(this.directory, 60000, 2000);
+		AtomicInteger evaluations = new AtomicInteger();
+		String key = key("SELECT ?label WHERE { ?x rdfs:label ?label }");
+		char[] large = new char[500];
+		Arrays.fill(large, 'x');
+
+		for (int i = 0; i < 2; i++) {
+			cache.getTuples(key, () -> {
+				evaluations.incrementAndGet();
+				return tuples(new String(large));
+			});
+		}
+
+		Assert.assertEquals(2, evaluations.get());
+		Assert.assertEquals(2, cache.getTooLarge());
+		Assert.assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void incompleteResultNotKept() {
+		QueryResultCache cache = new QueryResultCache(this.directory, 60000, 1024 * 1024);
+		AtomicInteger evaluations = new AtomicInteger();
+		String key = key("SELECT ?label WHERE { ?x skos:altLabel ?label }");
+
+		for (int i = 0; i < 2; i++) {
+			Tuples result = cache.getTuples(key, () -> {
+				evaluations.incrementAndGet();
+				List<BindingSet> rest = tuples("c", "d").getBindingSets();
+				return new Tuples(NAMES, tuples("a", "b").getBindingSets(), new IteratingTupleQueryResult(NAMES, rest));
+			});
+			Assert.assertFalse(result.isComplete());
+		}
+
+		Assert.assertEquals(2, evaluations.get());
+		Assert.assertEquals(2, cache.getTooLarge());
+		Assert.assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void sizeBoundedByEviction() {
+		long maxSize = 4000;
+		QueryResultCache cache = new QueryResultCache(this.directory, 60000, maxSize);
+		for (int i = 0; i < 500; i++) {
+			final int n = i;
+			cache.getTuples(key("SELECT ?label WHERE { ?x skos:notation \""+n+"\" }"), () -> tuples("label "+n));
+			Assert.assertTrue(cache.getSize() <= maxSize);
+		}
+		Assert.assertEquals(500, cache.getMisses());
+		Assert.assertTrue(cache.getSize() > 0);
+	}
+
+	@Test
+	public void booleanResults() {
+		QueryResultCache cache = new QueryResultCache(this.directory, 60000, 1024 * 1024);
+		AtomicInteger evaluations = new AtomicInteger();
+		String yes = key("ASK { ?s a skos:Concept }");
+		String no = key("ASK { ?s a skos:Collection }");
+
+		for (int i = 0; i < 2; i++) {
+			Assert.assertTrue(cache.getBoolean(yes, () -> {
+				evaluations.incrementAndGet();
+				return true;
+			}));
+			Assert.assertFalse(cache.getBoolean(no, () -> {
+				evaluations.incrementAndGet();
+				return false;
+			}));
+		}
+		Assert.assertEquals(2, evaluations.get());
+		Assert.assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void expiredResultEvaluatedAgain() throws Exception {
+		QueryResultCache cache = new QueryResultCache(this.directory, 0, 1024 * 1024);
+		AtomicInteger evaluations = new AtomicInteger();
+		String key = key("ASK { ?s a skos:ConceptScheme }");
+		cache.getBoolean(key, () -> evaluations.incrementAndGet() > 0);
+		Thread.sleep(10);
+		cache.getBoolean(key, () -> evaluations.incrementAndGet() > 0);
+		Assert.assertEquals(2, evaluations.get());
+	}
+
+	@Test
+	public void normalizedQueriesHaveSameKey() {
+		Assert.assertEquals(
+				key("SELECT ?x\n  WHERE { ?x ?p \"a  b\" }"),
+				key("  SELECT ?x\nWHERE {  ?x ?p \"a  b\" }  ")
+		);
+		Assert.assertFalse(key("SELECT ?x WHERE { ?x ?p \"a  b\" }").equals(key("SELECT ?x WHERE { ?x ?p \"a b\" }")));
+	}
+
+	private static String key(String query) {
+		return QueryResultCache.key("http://example.org/sparql", query, null, null, true);
+	}
+
+	private static Tuples tuples(String... labels) {
+		List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+		for (String aLabel : labels) {
+			bindingSets.add(new ListBindingSet(NAMES, SimpleValueFactory.getInstance().createLiteral(aLabel)));
+		}
+		return new Tuples(NAMES, bindingSets);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for (File aChild : children) {
+				delete(aChild);
+			}
+		}
+		file.delete();
+	}
+
+}